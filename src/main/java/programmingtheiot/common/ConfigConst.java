@@ -61,6 +61,7 @@ public class ConfigConst
 	public static final String NAME_PROP        = "name";
 	public static final String TYPE_ID_PROP     = "typeID";
 	public static final String TIMESTAMP_PROP   = "timeStamp";
+	public static final String TIMESTAMP_MILLIS_PROP = "timeStampMillis";
 	public static final String HAS_ERROR_PROP   = "hasError";
 	public static final String STATUS_CODE_PROP = "statusCode";
 	public static final String LOCATION_ID_PROP = "locationID";
@@ -81,6 +82,8 @@ public class ConfigConst
 	
 	public static final String SENSOR_DATA_LIST_PROP      = "sensorDataList";
 	public static final String SYSTEM_PERF_DATA_LIST_PROP = "systemPerfDataList";
+	public static final String BATCH_DATA_LIST_PROP       = "dataList";
+	public static final String TIMESTAMP_OFFSET_PROP      = "timeOffset";
 	
 	/*****
 	 * Resource and Topic Names
@@ -166,8 +169,14 @@ public class ConfigConst
 	public static final String OPCUA   = "Opcua";
 	public static final String SMTP    = "Smtp";
 	public static final String DATA    = "Data";
+	public static final String INGEST  = "Ingest";
+	public static final String RULES   = "Rules";
+	public static final String ANALYTICS = "Analytics";
 	
 	public static final String DEVICE_LOCATION_ID_KEY        = "deviceLocationID";
+	public static final String DEVICE_LATITUDE_KEY           = "deviceLatitude";
+	public static final String DEVICE_LONGITUDE_KEY          = "deviceLongitude";
+	public static final String DEVICE_ELEVATION_KEY          = "deviceElevation";
 	
 	public static final String ENABLE_MQTT_CLIENT_KEY        = "enableMqttClient";
 	public static final String ENABLE_COAP_CLIENT_KEY        = "enableCoapClient";
@@ -176,6 +185,29 @@ public class ConfigConst
 	public static final String ENABLE_SMTP_CLIENT_KEY        = "enableSmtpClient";
 	public static final String ENABLE_PERSISTENCE_CLIENT_KEY = "enablePersistenceClient";
 	public static final String ENABLE_SYSTEM_PERF_KEY        = "enableSystemPerformance";
+	public static final String ENABLE_CONFIG_RELOAD_KEY      = "enableConfigReload";
+	
+	public static final String PIPELINE_QUEUE_SIZE_KEY       = "pipelineQueueSize";
+	public static final String DECODE_WORKERS_KEY            = "decodeWorkers";
+	public static final String ANALYZE_WORKERS_KEY           = "analyzeWorkers";
+	public static final String FAN_OUT_WORKERS_KEY           = "fanOutWorkers";
+	public static final String CONTROL_WORKERS_KEY           = "controlWorkers";
+	
+	public static final String QUEUE_SIZE_KEY                = "queueSize";
+	public static final String SAMPLE_RATE_KEY               = "sampleRate";
+	public static final String DEFAULT_POLICY_KEY            = "defaultPolicy";
+	public static final String BLOCK_TIMEOUT_MILLIS_KEY      = "blockTimeoutMillis";
+	
+	public static final String ENABLE_RULES_KEY              = "enableRules";
+	public static final String SENSOR_TYPE_KEY               = "sensorType";
+	public static final String TRIGGER_KEY                   = "trigger";
+	public static final String ON_VALUE_KEY                  = "onValue";
+	public static final String OFF_VALUE_KEY                 = "offValue";
+	public static final String WINDOW_SIZE_KEY               = "windowSize";
+	public static final String ACTUATOR_TYPE_KEY             = "actuatorType";
+	public static final String ACTUATOR_NAME_KEY             = "actuatorName";
+	public static final String ACTUATOR_VALUE_KEY            = "actuatorValue";
+	public static final String WINDOW_MILLIS_KEY             = "windowMillis";
 	
 	public static final String AWS_CLOUD_SVC_NAME     = "AWS";
 	public static final String AZURE_CLOUD_SVC_NAME   = "Azure";
@@ -193,6 +225,10 @@ public class ConfigConst
 	public static final String OPCUA_GATEWAY_SERVICE = OPCUA   + "." + GATEWAY_SERVICE;
 	public static final String SMTP_GATEWAY_SERVICE  = SMTP    + "." + GATEWAY_SERVICE;
 	public static final String DATA_GATEWAY_SERVICE  = DATA    + "." + GATEWAY_SERVICE;
+	public static final String INGEST_GATEWAY_SERVICE = INGEST + "." + GATEWAY_SERVICE;
+	public static final String RULES_GATEWAY_SERVICE  = RULES  + "." + GATEWAY_SERVICE;
+	public static final String RULE_SECTION_PREFIX    = "Rule.";
+	public static final String ANALYTICS_GATEWAY_SERVICE = ANALYTICS + "." + GATEWAY_SERVICE;
 
 	public static final String FROM_ADDRESS_KEY     = "fromAddr";
 	public static final String TO_ADDRESS_KEY       = "toAddr";
@@ -201,6 +237,10 @@ public class ConfigConst
 	
 	public static final String BASE_URL_KEY         = "baseUrl";
 	public static final String BASE_TOPIC_KEY       = "baseTopic";
+	
+	// appended to a resource topic for payloads holding a batch of readings
+	public static final String BATCH_TOPIC_SUFFIX   = "/Batch";
+	
 	public static final String CLIENT_ENDPOINT_KEY  = "clientEndpoint";
 
 	public static final String HOST_KEY             = "host";
@@ -222,6 +262,38 @@ public class ConfigConst
 	public static final String API_TOKEN_KEY          = "apiToken";
 	
 	public static final String CLOUD_SERVICE_NAME_KEY = "cloudServiceName";
+	
+	public static final String DEADBAND_KEY             = "deadband";
+	public static final String MAX_INTERVAL_MILLIS_KEY  = "maxIntervalMillis";
+	public static final String BUCKET_MILLIS_KEY        = "bucketMillis";
+	public static final String SEND_BUCKET_MIN_MAX_KEY  = "sendBucketMinMax";
+	
+	public static final String ENABLE_SPOOL_KEY          = "enableSpool";
+	public static final String SPOOL_DIR_KEY             = "spoolDir";
+	public static final String SPOOL_SEGMENT_BYTES_KEY   = "spoolSegmentBytes";
+	public static final String SPOOL_MAX_BYTES_KEY       = "spoolMaxBytes";
+	public static final String SPOOL_MAX_AGE_MILLIS_KEY  = "spoolMaxAgeMillis";
+	public static final String SPOOL_DRAIN_RATE_KEY      = "spoolDrainRate";
+	
+	public static final String ENABLE_BATCHING_KEY        = "enableBatching";
+	public static final String BATCH_MIN_ITEMS_KEY        = "batchMinItems";
+	public static final String BATCH_MAX_ITEMS_KEY        = "batchMaxItems";
+	public static final String BATCH_MAX_DELAY_MILLIS_KEY = "batchMaxDelayMillis";
+	public static final String MAX_INFLIGHT_BATCHES_KEY   = "maxInflightBatches";
+	
+	public static final String CLOUD_TARGETS_KEY          = "cloudTargets";
+	public static final String TARGET_QUEUE_SIZE_KEY      = "targetQueueSize";
+	public static final String MAX_RETRIES_KEY            = "maxRetries";
+	public static final String RETRY_BASE_MILLIS_KEY      = "retryBaseMillis";
+	public static final String RETRY_MAX_MILLIS_KEY       = "retryMaxMillis";
+	
+	public static final String ENABLE_RATE_CONTROL_KEY           = "enableRateControl";
+	public static final String RATE_CONTROL_INTERVAL_MILLIS_KEY  = "rateControlIntervalMillis";
+	public static final String TARGET_ACK_LATENCY_MILLIS_KEY     = "targetAckLatencyMillis";
+	public static final String MAX_FAILURE_RATE_KEY              = "maxFailureRate";
+	public static final String MAX_BUCKET_MILLIS_KEY             = "maxBucketMillis";
+	public static final String MAX_COMPRESSION_LEVEL_KEY         = "maxCompressionLevel";
+	public static final String UPLINK_BUDGET_BYTES_PER_HOUR_KEY  = "uplinkBudgetBytesPerHour";
 
 	public static final String CONFIG_FILE_KEY      = "configFile";
 	public static final String CERT_FILE_KEY        = "certFile";
@@ -234,8 +306,23 @@ public class ConfigConst
 	public static final String USE_WEB_ACCESS_KEY   = "useWebAccess";
 	public static final String POLL_CYCLES_KEY      = "pollCycleSecs";
 	public static final String KEEP_ALIVE_KEY       = "keepAlive";
+	public static final String CLIENT_ID_KEY        = "clientID";
 	public static final String DEFAULT_QOS_KEY      = "defaultQos";
 	public static final String ENABLE_CON_MSGS_KEY  = "enableConfirmedMsgs";
+	public static final String DATA_FORMAT_KEY      = "dataFormat";
+	public static final String MAX_INFLIGHT_KEY     = "maxInflight";
+	public static final String CONTROL_MAX_INFLIGHT_KEY = "controlMaxInflight";
+	public static final String ENABLE_CONTROL_CONNECTION_KEY = "enableControlConnection";
+	public static final String ENABLE_ASYNC_KEY     = "enableAsync";
+	public static final String PERSISTENCE_TYPE_KEY = "persistenceType";
+	public static final String PERSISTENCE_DIR_KEY  = "persistenceDir";
+	public static final String OFFLINE_BUFFER_TYPE_KEY         = "offlineBufferType";
+	public static final String OFFLINE_BUFFER_MAX_MESSAGES_KEY = "offlineBufferMaxMessages";
+	public static final String OFFLINE_BUFFER_DIR_KEY          = "offlineBufferDir";
+	public static final String OFFLINE_BUFFER_DRAIN_RATE_KEY   = "offlineBufferDrainRate";
+	public static final String RECONNECT_MIN_DELAY_MILLIS_KEY  = "reconnectMinDelayMillis";
+	public static final String RECONNECT_MAX_DELAY_MILLIS_KEY  = "reconnectMaxDelayMillis";
+	public static final String CONNECTION_POOL_SIZE_KEY        = "connectionPoolSize";
 	
 	public static final String IMAGE_PREPROCESS_PATH_KEY = "imgPreprocessPath";
 	
@@ -0,0 +1,176 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.common;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a single configuration file for changes using a
+ * {@link WatchService} on its parent directory, and runs the given
+ * reload action on its own daemon thread once the file has been
+ * quiet for a short period (editors often write a file in several steps).
+ *
+ */
+class ConfigFileWatcher implements Runnable
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(ConfigFileWatcher.class.getName());
+	
+	public static final long DEFAULT_QUIET_PERIOD_MILLIS = 500L;
+	
+	
+	// private var's
+	
+	private final Path     configFile;
+	private final Runnable reloadAction;
+	private final long     quietPeriodMillis;
+	
+	private WatchService watchService = null;
+	private Thread       watchThread  = null;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param configFile The file to watch.
+	 * @param reloadAction The action to run after the file changes.
+	 */
+	ConfigFileWatcher(Path configFile, Runnable reloadAction)
+	{
+		super();
+		
+		this.configFile        = configFile.toAbsolutePath();
+		this.reloadAction      = reloadAction;
+		this.quietPeriodMillis = DEFAULT_QUIET_PERIOD_MILLIS;
+	}
+	
+	
+	// public methods
+	
+	@Override
+	public void run()
+	{
+		WatchService ws = this.watchService;
+		
+		try {
+			while (ws != null) {
+				if (! isConfigFileEvent(ws.take())) {
+					continue;
+				}
+				
+				// wait until the file stops changing
+				WatchKey key;
+				
+				while ((key = ws.poll(this.quietPeriodMillis, TimeUnit.MILLISECONDS)) != null) {
+					isConfigFileEvent(key);
+				}
+				
+				_Logger.info("Config file changed. Reloading: " + this.configFile);
+				
+				try {
+					this.reloadAction.run();
+				} catch (RuntimeException e) {
+					_Logger.log(Level.WARNING, "Failed to reload config file: " + this.configFile, e);
+				}
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// stopped
+		}
+	}
+	
+	
+	// package methods
+	
+	/**
+	 * Registers the watch and starts the watcher thread.
+	 * 
+	 * @return boolean True on success; false otherwise.
+	 */
+	synchronized boolean startWatcher()
+	{
+		if (this.watchThread != null) {
+			return true;
+		}
+		
+		try {
+			this.watchService = FileSystems.getDefault().newWatchService();
+			
+			this.configFile.getParent().register(
+				this.watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+			
+			this.watchThread = new Thread(this, "ConfigFileWatcher");
+			this.watchThread.setDaemon(true);
+			this.watchThread.start();
+			
+			_Logger.info("Watching config file for changes: " + this.configFile);
+			
+			return true;
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to watch config file: " + this.configFile, e);
+			
+			stopWatcher();
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Stops the watcher thread.
+	 * 
+	 */
+	synchronized void stopWatcher()
+	{
+		if (this.watchService != null) {
+			try {
+				this.watchService.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		
+		this.watchService = null;
+		this.watchThread  = null;
+	}
+	
+	
+	// private methods
+	
+	private boolean isConfigFileEvent(WatchKey key)
+	{
+		boolean isMatch = false;
+		
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW ||
+				this.configFile.getFileName().equals(event.context())) {
+				isMatch = true;
+			}
+		}
+		
+		key.reset();
+		
+		return isMatch;
+	}
+	
+}
@@ -0,0 +1,380 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+import org.apache.commons.configuration.PropertyConverter;
+import org.apache.commons.configuration.SubnodeConfiguration;
+
+/**
+ * Immutable, pre-parsed copy of a loaded configuration file, organized
+ * as section name -> property name -> value.
+ * <p>
+ * Each value is converted to int, float and boolean once, when the
+ * snapshot is created, using the same conversion rules as Apache
+ * Commons Configuration; reads are then simple map lookups that
+ * require no locking. {@link ConfigUtil} publishes a new instance
+ * whenever the configuration is (re)loaded.
+ *
+ */
+public final class ConfigSnapshot
+{
+	// static
+	
+	/**
+	 * Used when no configuration has been loaded.
+	 */
+	public static final ConfigSnapshot EMPTY = new ConfigSnapshot();
+	
+	
+	// private var's
+	
+	private final Map<String, Map<String, Entry>> sections;
+	private final DeviceMetadata deviceMetadata;
+	
+	
+	// constructors
+	
+	private ConfigSnapshot()
+	{
+		super();
+		
+		this.sections       = Collections.emptyMap();
+		this.deviceMetadata = DeviceMetadata.DEFAULT;
+	}
+	
+	/**
+	 * Constructor. Copies and pre-parses all sections of 'config'.
+	 * 
+	 * @param config The loaded configuration.
+	 */
+	public ConfigSnapshot(HierarchicalINIConfiguration config)
+	{
+		super();
+		
+		Map<String, Map<String, Entry>> sectionMap = new HashMap<>();
+		
+		for (String sectionName : config.getSections()) {
+			if (sectionName == null) {
+				continue;
+			}
+			
+			SubnodeConfiguration subNodeConfig = config.getSection(sectionName);
+			Map<String, Entry> propMap = new HashMap<>();
+			
+			for (Iterator<String> keys = subNodeConfig.getKeys(); keys.hasNext(); ) {
+				String key = keys.next();
+				
+				propMap.put(key, new Entry(subNodeConfig.getString(key)));
+			}
+			
+			sectionMap.put(sectionName, Collections.unmodifiableMap(propMap));
+		}
+		
+		this.sections       = Collections.unmodifiableMap(sectionMap);
+		this.deviceMetadata = createDeviceMetadata();
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Returns the device location properties of this snapshot.
+	 * 
+	 * @return DeviceMetadata
+	 */
+	public DeviceMetadata getDeviceMetadata()
+	{
+		return this.deviceMetadata;
+	}
+	
+	/**
+	 * Returns the names of all sections in this snapshot.
+	 * 
+	 * @return Set<String> An unmodifiable set of section names.
+	 */
+	public Set<String> getSectionNames()
+	{
+		return this.sections.keySet();
+	}
+	
+	/**
+	 * Returns the raw String properties of the given section.
+	 * 
+	 * @param section The section name.
+	 * @return Map<String, String> An unmodifiable property name -> value map,
+	 * which is empty if the section doesn't exist.
+	 */
+	public Map<String, String> getSection(String section)
+	{
+		Map<String, Entry> propMap = this.sections.get(section);
+		
+		if (propMap == null) {
+			return Collections.emptyMap();
+		}
+		
+		Map<String, String> props = new HashMap<>(propMap.size() * 2);
+		
+		for (Map.Entry<String, Entry> e : propMap.entrySet()) {
+			props.put(e.getKey(), e.getValue().value);
+		}
+		
+		return Collections.unmodifiableMap(props);
+	}
+	
+	/**
+	 * Returns the names of the properties within 'section' that were added,
+	 * removed or modified between 'previous' and this snapshot.
+	 * 
+	 * @param section The section name.
+	 * @param previous The snapshot to compare against. If null, {@link #EMPTY} is used.
+	 * @return Set<String> The changed property names; empty if none changed.
+	 */
+	public Set<String> getUpdatedKeys(String section, ConfigSnapshot previous)
+	{
+		Map<String, Entry> oldProps = (previous != null ? previous : EMPTY).sections.get(section);
+		Map<String, Entry> newProps = this.sections.get(section);
+		
+		if (oldProps == null) oldProps = Collections.emptyMap();
+		if (newProps == null) newProps = Collections.emptyMap();
+		
+		Set<String> updatedKeys = new HashSet<>();
+		
+		for (Map.Entry<String, Entry> e : newProps.entrySet()) {
+			Entry oldEntry = oldProps.get(e.getKey());
+			
+			if (oldEntry == null || ! Objects.equals(oldEntry.value, e.getValue().value)) {
+				updatedKeys.add(e.getKey());
+			}
+		}
+		
+		for (String key : oldProps.keySet()) {
+			if (! newProps.containsKey(key)) {
+				updatedKeys.add(key);
+			}
+		}
+		
+		return updatedKeys;
+	}
+	
+	public boolean hasSection(String section)
+	{
+		return this.sections.containsKey(section);
+	}
+	
+	public boolean hasProperty(String section, String propName)
+	{
+		return (getEntry(section, propName) != null);
+	}
+	
+	public String getProperty(String section, String propName, String defaultVal)
+	{
+		Entry entry = getEntry(section, propName);
+		
+		return (entry != null ? entry.value : defaultVal);
+	}
+	
+	/**
+	 * Returns the boolean value of the given property.
+	 * 
+	 * @param section The section name.
+	 * @param propName The property name.
+	 * @param defaultVal The value to return if the property doesn't exist.
+	 * @return boolean
+	 * @exception ConversionException Thrown if 'propName' does not map to a boolean.
+	 */
+	public boolean getBoolean(String section, String propName, boolean defaultVal)
+	{
+		Entry entry = getEntry(section, propName);
+		
+		if (entry == null) {
+			return defaultVal;
+		}
+		
+		if (entry.boolVal == null) {
+			throw new ConversionException("'" + propName + "' doesn't map to a boolean.");
+		}
+		
+		return entry.boolVal;
+	}
+	
+	/**
+	 * Returns the int value of the given property.
+	 * 
+	 * @param section The section name.
+	 * @param propName The property name.
+	 * @return int
+	 * @exception NoSuchElementException Thrown if 'propName' doesn't exist.
+	 * @exception ConversionException Thrown if 'propName' does not map to an int.
+	 */
+	public int getInteger(String section, String propName)
+	{
+		return getIntEntry(getRequiredEntry(section, propName), propName);
+	}
+	
+	/**
+	 * Returns the int value of the given property.
+	 * 
+	 * @param section The section name.
+	 * @param propName The property name.
+	 * @param defaultVal The value to return if the property doesn't exist.
+	 * @return int
+	 * @exception ConversionException Thrown if 'propName' does not map to an int.
+	 */
+	public int getInteger(String section, String propName, int defaultVal)
+	{
+		Entry entry = getEntry(section, propName);
+		
+		return (entry != null ? getIntEntry(entry, propName) : defaultVal);
+	}
+	
+	/**
+	 * Returns the float value of the given property.
+	 * 
+	 * @param section The section name.
+	 * @param propName The property name.
+	 * @return float
+	 * @exception NoSuchElementException Thrown if 'propName' doesn't exist.
+	 * @exception ConversionException Thrown if 'propName' does not map to a float.
+	 */
+	public float getFloat(String section, String propName)
+	{
+		return getFloatEntry(getRequiredEntry(section, propName), propName);
+	}
+	
+	/**
+	 * Returns the float value of the given property.
+	 * 
+	 * @param section The section name.
+	 * @param propName The property name.
+	 * @param defaultVal The value to return if the property doesn't exist.
+	 * @return float
+	 * @exception ConversionException Thrown if 'propName' does not map to a float.
+	 */
+	public float getFloat(String section, String propName, float defaultVal)
+	{
+		Entry entry = getEntry(section, propName);
+		
+		return (entry != null ? getFloatEntry(entry, propName) : defaultVal);
+	}
+	
+	
+	// private methods
+	
+	private DeviceMetadata createDeviceMetadata()
+	{
+		String section = ConfigConst.GATEWAY_DEVICE;
+		String locID   = getProperty(section, ConfigConst.DEVICE_LOCATION_ID_KEY, ConfigConst.NOT_SET);
+		
+		try {
+			return new DeviceMetadata(
+				locID,
+				getFloat(section, ConfigConst.DEVICE_LATITUDE_KEY, ConfigConst.DEFAULT_LAT),
+				getFloat(section, ConfigConst.DEVICE_LONGITUDE_KEY, ConfigConst.DEFAULT_LON),
+				getFloat(section, ConfigConst.DEVICE_ELEVATION_KEY, ConfigConst.DEFAULT_ELEVATION));
+		} catch (ConversionException e) {
+			return new DeviceMetadata(
+				locID, ConfigConst.DEFAULT_LAT, ConfigConst.DEFAULT_LON, ConfigConst.DEFAULT_ELEVATION);
+		}
+	}
+	
+	private Entry getEntry(String section, String propName)
+	{
+		Map<String, Entry> propMap = this.sections.get(section);
+		
+		return (propMap != null ? propMap.get(propName) : null);
+	}
+	
+	private Entry getRequiredEntry(String section, String propName)
+	{
+		Entry entry = getEntry(section, propName);
+		
+		if (entry == null) {
+			throw new NoSuchElementException("'" + propName + "' doesn't map to an existing object.");
+		}
+		
+		return entry;
+	}
+	
+	private int getIntEntry(Entry entry, String propName)
+	{
+		if (entry.intVal == null) {
+			throw new ConversionException("'" + propName + "' doesn't map to an int.");
+		}
+		
+		return entry.intVal;
+	}
+	
+	private float getFloatEntry(Entry entry, String propName)
+	{
+		if (entry.floatVal == null) {
+			throw new ConversionException("'" + propName + "' doesn't map to a float.");
+		}
+		
+		return entry.floatVal;
+	}
+	
+	
+	// private classes
+	
+	/**
+	 * A single property value, along with its pre-parsed typed forms.
+	 * A typed form is null if the value can't be converted to that type.
+	 */
+	private static final class Entry
+	{
+		final String  value;
+		final Integer intVal;
+		final Float   floatVal;
+		final Boolean boolVal;
+		
+		Entry(String value)
+		{
+			Integer intVal   = null;
+			Float   floatVal = null;
+			Boolean boolVal  = null;
+			
+			if (value != null) {
+				try {
+					intVal = PropertyConverter.toInteger(value);
+				} catch (ConversionException e) {
+					// not an int
+				}
+				
+				try {
+					floatVal = PropertyConverter.toFloat(value);
+				} catch (ConversionException e) {
+					// not a float
+				}
+				
+				try {
+					boolVal = PropertyConverter.toBoolean(value);
+				} catch (ConversionException e) {
+					// not a boolean
+				}
+			}
+			
+			this.value    = value;
+			this.intVal   = intVal;
+			this.floatVal = floatVal;
+			this.boolVal  = boolVal;
+		}
+	}
+	
+}
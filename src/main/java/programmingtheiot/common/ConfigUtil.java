@@ -10,7 +10,13 @@ package programmingtheiot.common;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,6 +25,15 @@ import org.apache.commons.configuration.*;
 /**
  * A simple utility wrapper around the Apache Commons
  * configuration infrastructure.
+ * <p>
+ * The loaded configuration is published as an immutable
+ * {@link ConfigSnapshot}, which is replaced as a whole on reload.
+ * All getters read from the current snapshot without locking.
+ * <p>
+ * The configuration file can be reloaded at runtime, either explicitly via
+ * {@link #reloadConfig()} or automatically by a file watcher (see
+ * {@link #startConfigWatcher()}). After each successful reload, registered
+ * {@link IConfigUpdateListener}s are notified of the sections that changed.
  * 
  */
 public class ConfigUtil
@@ -45,9 +60,18 @@ public class ConfigUtil
 	
 	private HierarchicalINIConfiguration sectionProperties = null;
 	
-	private boolean isLoaded = false;
+	private volatile boolean isLoaded = false;
 	private String  configFileName = ConfigConst.DEFAULT_CONFIG_FILE_NAME;
 	
+	// replaced as a whole on each (re)load; never modified
+	private volatile ConfigSnapshot snapshot = ConfigSnapshot.EMPTY;
+	
+	private File loadedConfigFile = null;
+	private ConfigFileWatcher configWatcher = null;
+	
+	private final Map<String, CopyOnWriteArrayList<IConfigUpdateListener>> updateListeners = new ConcurrentHashMap<>();
+	private final Map<String, CopyOnWriteArrayList<IConfigUpdateListener>> prefixUpdateListeners = new ConcurrentHashMap<>();
+	
 	
 	// constructors
 	
@@ -96,163 +120,168 @@ public class ConfigUtil
 		}
 	}
 	
+	/**
+	 * Returns the device location properties resolved from the
+	 * {@link ConfigConst#GATEWAY_DEVICE} section when the configuration
+	 * was last loaded. This does not lock, and is intended for hot paths
+	 * such as data object construction.
+	 * 
+	 * @return DeviceMetadata The current device metadata; never null.
+	 */
+	public DeviceMetadata getDeviceMetadata()
+	{
+		return this.snapshot.getDeviceMetadata();
+	}
+	
+	/**
+	 * Returns the immutable snapshot of the most recently loaded configuration.
+	 * Callers that need several properties that must be consistent with each
+	 * other (e.g. host and port) should read them all from one snapshot.
+	 * 
+	 * @return ConfigSnapshot The current snapshot; never null.
+	 */
+	public ConfigSnapshot getSnapshot()
+	{
+		return this.snapshot;
+	}
+	
 	/**
 	 * Returns the requested property from the given section.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @return String The value for 'propName'. If no mapping exists,
 	 * a {@link ConversionException will be thrown}.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a String.
 	 */
-	public synchronized String getProperty(String section, String propName)
+	public String getProperty(String section, String propName)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return subNodeConfig.getString(propName);
+		return this.snapshot.getProperty(section, propName, null);
 	}
 	
 	/**
 	 * Returns the requested property from the given section.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @param defaultVal The default value if the property doesn't exist.
 	 * @return String The value for 'propName'. If no mapping exists,
 	 * a {@link ConversionException will be thrown}.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a String.
 	 */
-	public synchronized String getProperty(String section, String propName, String defaultVal)
+	public String getProperty(String section, String propName, String defaultVal)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return subNodeConfig.getString(propName, defaultVal);
+		return this.snapshot.getProperty(section, propName, defaultVal);
 	}
 	
 	/**
 	 * Returns the requested property from the given section.
 	 * 
-	 * @param section The section from which to retrieve the value for 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve the value for 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @return boolean The value for 'propName'. If no mapping exists,
 	 * a {@link ConversionException will be thrown}.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a boolean.
 	 */
-	public synchronized boolean getBoolean(String section, String propName)
+	public boolean getBoolean(String section, String propName)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return subNodeConfig.getBoolean(propName, false);
+		return this.snapshot.getBoolean(section, propName, false);
+	}
+	
+	/**
+	 * Returns the requested property from the given section.
+	 * 
+	 * @param section The section from which to retrieve the value for 'propName'.
+	 * @param propName The name of the property to retrieve.
+	 * @param defaultVal The default value if the property doesn't exist.
+	 * @return boolean The value for 'propName', or 'defaultVal'.
+	 * @Exception ConversionException Thrown if 'propName' does not map to a boolean.
+	 */
+	public boolean getBoolean(String section, String propName, boolean defaultVal)
+	{
+		return this.snapshot.getBoolean(section, propName, defaultVal);
 	}
 	
 	/**
 	 * Returns the requested property from the given section.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @return int The value for 'propName'. If no mapping exists,
 	 * a {@link ConversionException will be thrown}.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a int.
 	 */
-	public synchronized int getInteger(String section, String propName)
+	public int getInteger(String section, String propName)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return subNodeConfig.getInt(propName);
+		return this.snapshot.getInteger(section, propName);
 	}
 	
 	/**
 	 * Returns the requested property from the given section.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @param defaultVal The default value if the property doesn't exist.
 	 * @return int The value for 'propName'. If no mapping exists,
 	 * a {@link ConversionException will be thrown}.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a int.
 	 */
-	public synchronized int getInteger(String section, String propName, int defaultVal)
+	public int getInteger(String section, String propName, int defaultVal)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return subNodeConfig.getInt(propName, defaultVal);
+		return this.snapshot.getInteger(section, propName, defaultVal);
 	}
 	
 	/**
 	 * Returns the requested property from the given section.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @return float The value for 'propName'. If no mapping exists,
 	 * a {@link ConversionException will be thrown}.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a float.
 	 */
-	public synchronized float getFloat(String section, String propName)
+	public float getFloat(String section, String propName)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return subNodeConfig.getFloat(propName);
+		return this.snapshot.getFloat(section, propName);
 	}
 	
 	/**
 	 * Returns the requested property from the given section.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @param defaultVal The default value if the property doesn't exist.
 	 * @return float The value for 'propName'. If no mapping exists,
 	 * a {@link ConversionException will be thrown}.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a float.
 	 */
-	public synchronized float getFloat(String section, String propName, float defaultVal)
+	public float getFloat(String section, String propName, float defaultVal)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return subNodeConfig.getFloat(propName, defaultVal);
+		return this.snapshot.getFloat(section, propName, defaultVal);
 	}
 	
 	/**
 	 * Returns true if the requested property exists in the given section.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created.
+	 * @param section The section from which to retrieve 'propName'.
 	 * @param propName The name of the property to retrieve.
 	 * @return boolean True if the property exists; false otherwise.
 	 * @Exception ConversionException Thrown if 'propName' does not map to a String.
 	 */
-	public synchronized boolean hasProperty(String section, String propName)
+	public boolean hasProperty(String section, String propName)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return (subNodeConfig.getProperty(propName) != null);
+		return this.snapshot.hasProperty(section, propName);
 	}
 	
 	/**
-	 * Returns true if the requested section exists and / or contains
-	 * any properties within the loaded configuration.
-	 * <p>
-	 * NOTE: The underlying configuration handler will create 'section' if
-	 * it doesn't already exist; hence, it can make for large configurations
-	 * if this method is called with a different non-existent section name
-	 * often, even if they remain empty (which is the default case).
+	 * Returns true if the requested section exists within the loaded configuration.
 	 * 
-	 * @param section The section from which to retrieve 'propName'. If it
-	 * doesn't exist, it will be created as an empty section.
-	 * @return boolean True on success; false otherwise.
-	 * @Exception ConversionException Thrown if 'section' does not map to a String.
+	 * @param section The section name.
+	 * @return boolean True if the section exists; false otherwise.
 	 */
-	public synchronized boolean hasSection(String section)
+	public boolean hasSection(String section)
 	{
-		SubnodeConfiguration subNodeConfig = sectionProperties.getSection(section);
-		
-		return (subNodeConfig != null);// && subNodeConfig.isEmpty());
+		return this.snapshot.hasSection(section);
 	}
 	
 	/**
@@ -268,6 +297,148 @@ public class ConfigUtil
 		return isLoaded;
 	}
 	
+	/**
+	 * Registers 'listener' to be notified when any property within 'section'
+	 * changes on reload.
+	 * 
+	 * @param section The section to listen to (e.g. {@link ConfigConst#GATEWAY_DEVICE}).
+	 * @param listener The listener to register.
+	 * @return boolean True if registered; false if either parameter is null.
+	 */
+	public boolean addConfigUpdateListener(String section, IConfigUpdateListener listener)
+	{
+		if (section == null || listener == null) {
+			return false;
+		}
+		
+		this.updateListeners.computeIfAbsent(section, key -> new CopyOnWriteArrayList<>()).addIfAbsent(listener);
+		
+		return true;
+	}
+	
+	/**
+	 * Removes a listener previously registered for 'section'.
+	 * 
+	 * @param section The section the listener was registered for.
+	 * @param listener The listener to remove.
+	 * @return boolean True if the listener was removed; false otherwise.
+	 */
+	public boolean removeConfigUpdateListener(String section, IConfigUpdateListener listener)
+	{
+		List<IConfigUpdateListener> listeners = (section != null ? this.updateListeners.get(section) : null);
+		
+		return (listeners != null && listeners.remove(listener));
+	}
+	
+	/**
+	 * Registers 'listener' to be notified when any section whose name starts
+	 * with 'sectionPrefix' is added, removed or changed on reload. Unlike
+	 * {@link #addConfigUpdateListener(String, IConfigUpdateListener)}, this
+	 * also covers sections that don't exist yet.
+	 * 
+	 * @param sectionPrefix The section name prefix (e.g. {@link ConfigConst#RULE_SECTION_PREFIX}).
+	 * @param listener The listener to register.
+	 * @return boolean True if registered; false if either parameter is null.
+	 */
+	public boolean addConfigPrefixListener(String sectionPrefix, IConfigUpdateListener listener)
+	{
+		if (sectionPrefix == null || listener == null) {
+			return false;
+		}
+		
+		this.prefixUpdateListeners.computeIfAbsent(sectionPrefix, key -> new CopyOnWriteArrayList<>()).addIfAbsent(listener);
+		
+		return true;
+	}
+	
+	/**
+	 * Removes a listener previously registered for 'sectionPrefix'.
+	 * 
+	 * @param sectionPrefix The section name prefix the listener was registered for.
+	 * @param listener The listener to remove.
+	 * @return boolean True if the listener was removed; false otherwise.
+	 */
+	public boolean removeConfigPrefixListener(String sectionPrefix, IConfigUpdateListener listener)
+	{
+		List<IConfigUpdateListener> listeners = (sectionPrefix != null ? this.prefixUpdateListeners.get(sectionPrefix) : null);
+		
+		return (listeners != null && listeners.remove(listener));
+	}
+	
+	/**
+	 * Reloads the most recently loaded configuration file and publishes a new
+	 * snapshot, then notifies the listeners of each section that changed.
+	 * If the file is missing or can't be loaded, the current configuration is
+	 * kept and no listeners are notified.
+	 * 
+	 * @return boolean True on success; false otherwise.
+	 */
+	public boolean reloadConfig()
+	{
+		ConfigSnapshot prevSnapshot = null;
+		ConfigSnapshot newSnapshot  = null;
+		
+		synchronized (this) {
+			if (this.loadedConfigFile == null || ! this.loadedConfigFile.exists()) {
+				_Logger.warning("Config file not available for reload: " + this.loadedConfigFile);
+				
+				return false;
+			}
+			
+			prevSnapshot = this.snapshot;
+			
+			if (! loadConfig(this.loadedConfigFile.getPath()) || this.snapshot == prevSnapshot) {
+				return false;
+			}
+			
+			newSnapshot = this.snapshot;
+		}
+		
+		notifyUpdateListeners(prevSnapshot, newSnapshot);
+		
+		return true;
+	}
+	
+	/**
+	 * Starts watching the loaded configuration file, reloading it via
+	 * {@link #reloadConfig()} whenever it changes. Does nothing if the
+	 * watcher is already running.
+	 * 
+	 * @return boolean True if the watcher is running; false otherwise.
+	 */
+	public synchronized boolean startConfigWatcher()
+	{
+		if (this.configWatcher == null) {
+			if (this.loadedConfigFile == null) {
+				_Logger.warning("No config file loaded. Ignoring config watcher start request.");
+				
+				return false;
+			}
+			
+			ConfigFileWatcher watcher = new ConfigFileWatcher(this.loadedConfigFile.toPath(), this::reloadConfig);
+			
+			if (! watcher.startWatcher()) {
+				return false;
+			}
+			
+			this.configWatcher = watcher;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Stops the configuration file watcher, if running.
+	 * 
+	 */
+	public synchronized void stopConfigWatcher()
+	{
+		if (this.configWatcher != null) {
+			this.configWatcher.stopWatcher();
+			this.configWatcher = null;
+		}
+	}
+	
 	/**
 	 * Attempts to load a separate configuration 'credential' file comprised
 	 * of simple key = value pairs. The assumption with this call is that
@@ -336,6 +507,56 @@ public class ConfigUtil
 		sectionProperties = new HierarchicalINIConfiguration();
 	}
 	
+	/**
+	 * Notifies the listeners of each section that differs between the two
+	 * snapshots. A failing listener doesn't prevent notification of the others.
+	 * 
+	 * @param prevSnapshot The snapshot replaced by the reload.
+	 * @param newSnapshot The snapshot published by the reload.
+	 */
+	private void notifyUpdateListeners(ConfigSnapshot prevSnapshot, ConfigSnapshot newSnapshot)
+	{
+		for (Map.Entry<String, CopyOnWriteArrayList<IConfigUpdateListener>> e : this.updateListeners.entrySet()) {
+			notifyUpdateListeners(e.getKey(), e.getValue(), prevSnapshot, newSnapshot);
+		}
+		
+		if (this.prefixUpdateListeners.isEmpty()) {
+			return;
+		}
+		
+		// include sections that were removed, as well as added or kept ones
+		Set<String> sections = new TreeSet<>(newSnapshot.getSectionNames());
+		sections.addAll(prevSnapshot.getSectionNames());
+		
+		for (Map.Entry<String, CopyOnWriteArrayList<IConfigUpdateListener>> e : this.prefixUpdateListeners.entrySet()) {
+			for (String section : sections) {
+				if (section.startsWith(e.getKey())) {
+					notifyUpdateListeners(section, e.getValue(), prevSnapshot, newSnapshot);
+				}
+			}
+		}
+	}
+	
+	private void notifyUpdateListeners(
+		String section, List<IConfigUpdateListener> listeners, ConfigSnapshot prevSnapshot, ConfigSnapshot newSnapshot)
+	{
+		Set<String> updatedKeys = newSnapshot.getUpdatedKeys(section, prevSnapshot);
+		
+		if (updatedKeys.isEmpty()) {
+			return;
+		}
+		
+		_Logger.info("Config section updated: " + section + " " + updatedKeys);
+		
+		for (IConfigUpdateListener listener : listeners) {
+			try {
+				listener.onConfigUpdate(section, updatedKeys, newSnapshot);
+			} catch (RuntimeException ex) {
+				_Logger.log(Level.WARNING, "Config update listener failed for section: " + section, ex);
+			}
+		}
+	}
+	
 	/**
 	 * Attempts to load the configuration file set by the constructor
 	 * (likely set a lookup to the system properties).
@@ -377,6 +598,8 @@ public class ConfigUtil
 				
 				sectionProperties.setFileName(cfgFile.getAbsoluteFile().toString());
 				sectionProperties.load();
+				this.snapshot = new ConfigSnapshot(sectionProperties);
+				this.loadedConfigFile = cfgFile.getAbsoluteFile();
 				isLoaded = true;
 			} catch (ConfigurationException e) {
 				_Logger.log(
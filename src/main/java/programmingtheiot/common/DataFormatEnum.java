@@ -0,0 +1,164 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.common;
+
+/**
+ * The payload encodings supported for data messages exchanged
+ * with the CDA and the cloud.
+ * <p>
+ * CoAP advertises the encoding via the content-format option using
+ * the registered IDs below. MQTT (3.1.1) has no message properties,
+ * so non-default encodings are signalled with a topic suffix (e.g.
+ * 'PIOT/ConstrainedDevice/SensorMsg/cbor'); the JSON topic has no
+ * suffix so existing subscribers are unaffected.
+ * 
+ */
+public enum DataFormatEnum
+{
+	// static
+	
+	/** application/json (CoAP content-format 50, RFC 7252) */
+	JSON("json", 50, ""),
+	
+	/** application/cbor (CoAP content-format 60, RFC 7049) */
+	CBOR("cbor", 60, "/cbor");
+	
+	/**
+	 * Convenience method for looking up the enum type based on its
+	 * name (case insensitive), as used in the configuration file.
+	 * 
+	 * @param name The format name (e.g. 'JSON', 'cbor').
+	 * @return DataFormatEnum The enum instance, or {@link #JSON} if not found.
+	 */
+	public static DataFormatEnum getEnumFromName(String name)
+	{
+		if (name != null) {
+			for (DataFormatEnum format : values()) {
+				if (format.name.equalsIgnoreCase(name.trim())) {
+					return format;
+				}
+			}
+		}
+		
+		return JSON;
+	}
+	
+	/**
+	 * Convenience method for looking up the enum type based on the
+	 * CoAP content-format ID.
+	 * 
+	 * @param contentFormat The CoAP content-format ID.
+	 * @return DataFormatEnum The enum instance, or null if not supported.
+	 */
+	public static DataFormatEnum getEnumFromContentFormat(int contentFormat)
+	{
+		for (DataFormatEnum format : values()) {
+			if (format.contentFormat == contentFormat) {
+				return format;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Convenience method for determining the encoding of an MQTT
+	 * message based on its topic suffix.
+	 * 
+	 * @param topic The full topic name.
+	 * @return DataFormatEnum The enum instance. Defaults to {@link #JSON}.
+	 */
+	public static DataFormatEnum getEnumFromTopic(String topic)
+	{
+		if (topic != null) {
+			for (DataFormatEnum format : values()) {
+				if (format.topicSuffix.length() > 0 && topic.endsWith(format.topicSuffix)) {
+					return format;
+				}
+			}
+		}
+		
+		return JSON;
+	}
+	
+	
+	// private var's
+	
+	private String name = "";
+	private int    contentFormat = 0;
+	private String topicSuffix = "";
+	
+	
+	// constructor
+	
+	private DataFormatEnum(String name, int contentFormat, String topicSuffix)
+	{
+		this.name = name;
+		this.contentFormat = contentFormat;
+		this.topicSuffix = topicSuffix;
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * 
+	 * @return int The CoAP content-format ID for this encoding.
+	 */
+	public int getContentFormat()
+	{
+		return this.contentFormat;
+	}
+	
+	/**
+	 * 
+	 * @return String The name of this encoding, as used in the configuration file.
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	/**
+	 * 
+	 * @return String The MQTT topic suffix for this encoding (empty for JSON).
+	 */
+	public String getTopicSuffix()
+	{
+		return this.topicSuffix;
+	}
+	
+	/**
+	 * Returns the MQTT topic to use for publishing the given resource
+	 * using this encoding.
+	 * 
+	 * @param resource The resource.
+	 * @return String The topic name.
+	 */
+	public String getTopicName(ResourceNameEnum resource)
+	{
+		return resource.getResourceName() + this.topicSuffix;
+	}
+	
+	/**
+	 * Strips this encoding's suffix (if any) from the given topic.
+	 * 
+	 * @param topic The full topic name.
+	 * @return String The topic without the encoding suffix.
+	 */
+	public String stripTopicSuffix(String topic)
+	{
+		if (topic != null && this.topicSuffix.length() > 0 && topic.endsWith(this.topicSuffix)) {
+			return topic.substring(0, topic.length() - this.topicSuffix.length());
+		}
+		
+		return topic;
+	}
+	
+}
@@ -0,0 +1,101 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.common;
+
+/**
+ * Immutable holder for the location properties of this device, as
+ * configured in the {@link ConfigConst#GATEWAY_DEVICE} section.
+ * <p>
+ * An instance is resolved by {@link ConfigUtil} each time the
+ * configuration is loaded, and can be retrieved without locking via
+ * {@link ConfigUtil#getDeviceMetadata()}. This allows every new data
+ * object to pick up its default location without a config lookup.
+ *
+ */
+public final class DeviceMetadata
+{
+	// static
+	
+	/**
+	 * Used when no configuration has been loaded.
+	 */
+	public static final DeviceMetadata DEFAULT =
+		new DeviceMetadata(
+			ConfigConst.NOT_SET, ConfigConst.DEFAULT_LAT, ConfigConst.DEFAULT_LON, ConfigConst.DEFAULT_ELEVATION);
+	
+	
+	// private var's
+	
+	private final String locationID;
+	private final float  latitude;
+	private final float  longitude;
+	private final float  elevation;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param locationID The device location ID. If null or empty, {@link ConfigConst#NOT_SET} is used.
+	 * @param latitude The device latitude.
+	 * @param longitude The device longitude.
+	 * @param elevation The device elevation.
+	 */
+	public DeviceMetadata(String locationID, float latitude, float longitude, float elevation)
+	{
+		super();
+		
+		this.locationID = (locationID != null && locationID.trim().length() > 0 ? locationID : ConfigConst.NOT_SET);
+		this.latitude   = latitude;
+		this.longitude  = longitude;
+		this.elevation  = elevation;
+	}
+	
+	
+	// public methods
+	
+	public String getLocationID()
+	{
+		return this.locationID;
+	}
+	
+	public float getLatitude()
+	{
+		return this.latitude;
+	}
+	
+	public float getLongitude()
+	{
+		return this.longitude;
+	}
+	
+	public float getElevation()
+	{
+		return this.elevation;
+	}
+	
+	/**
+	 * Returns a string representation of this instance.
+	 * 
+	 * @return String The string representing this instance, returned in CSV 'key=value' format.
+	 */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append(ConfigConst.LOCATION_ID_PROP).append('=').append(this.locationID).append(',');
+		sb.append(ConfigConst.LATITUDE_PROP).append('=').append(this.latitude).append(',');
+		sb.append(ConfigConst.LONGITUDE_PROP).append('=').append(this.longitude).append(',');
+		sb.append(ConfigConst.ELEVATION_PROP).append('=').append(this.elevation);
+		
+		return sb.toString();
+	}
+	
+}
@@ -0,0 +1,33 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.common;
+
+import java.util.Set;
+
+/**
+ * Interface definition for listeners that apply configuration changes
+ * in place when the configuration file is reloaded. Listeners are
+ * registered per section via
+ * {@link ConfigUtil#addConfigUpdateListener(String, IConfigUpdateListener)}.
+ *
+ */
+public interface IConfigUpdateListener
+{
+	/**
+	 * Callback invoked on the reload thread after a new configuration has
+	 * been published, once for each registered section with at least one
+	 * added, removed or modified property.
+	 * 
+	 * @param section The section that changed.
+	 * @param updatedKeys The names of the properties that changed within 'section'.
+	 * @param snapshot The newly published configuration; read the new values from this.
+	 */
+	public void onConfigUpdate(String section, Set<String> updatedKeys, ConfigSnapshot snapshot);
+	
+}
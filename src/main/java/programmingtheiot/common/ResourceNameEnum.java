@@ -85,6 +85,7 @@ public enum ResourceNameEnum
 	private String resourceType = "";
 	private boolean isLocalToGDA = false;
 	private boolean isObservable = false;
+	private boolean isControlResource = false;
 	
 	
 	// constructor
@@ -106,6 +107,11 @@ public enum ResourceNameEnum
 		this.resourceType = resourceType;
 		this.isLocalToGDA = isLocalToGda;
 		this.isObservable = isObservable;
+		
+		this.isControlResource =
+			ConfigConst.ACTUATOR_CMD.equals(resourceType) ||
+			ConfigConst.ACTUATOR_RESPONSE.equals(resourceType) ||
+			ConfigConst.MGMT_STATUS_CMD.equals(resourceType);
 	}
 	
 	
@@ -186,4 +192,15 @@ public enum ResourceNameEnum
 		return this.isObservable;
 	}
 	
+	/**
+	 * 
+	 * @return boolean True if this resource carries control-plane traffic
+	 * (actuator commands and responses, and management commands), which is
+	 * prioritized over telemetry; false otherwise.
+	 */
+	public boolean isControlResource()
+	{
+		return this.isControlResource;
+	}
+	
 }
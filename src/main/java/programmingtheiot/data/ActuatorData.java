@@ -20,9 +20,15 @@ public class ActuatorData extends BaseIotData implements Serializable
 {
 	// static
 	
+	private static final long serialVersionUID = -2786473825926138147L;
+	
 	
 	// private var's
 	
+	private int     command        = ConfigConst.DEFAULT_COMMAND;
+	private float   value          = ConfigConst.DEFAULT_VAL;
+	private boolean isResponse     = false;
+	private String  stateData      = "";
     
     
 	// constructors
@@ -41,25 +47,52 @@ public class ActuatorData extends BaseIotData implements Serializable
 	
 	public int getCommand()
 	{
-		return 0;
+		return this.command;
+	}
+	
+	public String getStateData()
+	{
+		return this.stateData;
 	}
 	
 	public float getValue()
 	{
-		return 0.0f;
+		return this.value;
 	}
 	
 	public boolean isResponseFlagEnabled()
 	{
-		return false;
+		return this.isResponse;
+	}
+	
+	public void setAsResponse()
+	{
+		super.updateTimeStamp();
+		
+		this.isResponse = true;
 	}
 	
 	public void setCommand(int command)
 	{
+		super.updateTimeStamp();
+		
+		this.command = command;
+	}
+	
+	public void setStateData(String stateData)
+	{
+		super.updateTimeStamp();
+		
+		if (stateData != null) {
+			this.stateData = stateData;
+		}
 	}
 	
 	public void setValue(float val)
 	{
+		super.updateTimeStamp();
+		
+		this.value = val;
 	}
 	
 	/**
@@ -88,6 +121,34 @@ public class ActuatorData extends BaseIotData implements Serializable
 	 */
 	protected void handleUpdateData(BaseIotData data)
 	{
+		if (data instanceof ActuatorData) {
+			ActuatorData aData = (ActuatorData) data;
+			
+			this.setCommand(aData.getCommand());
+			this.setValue(aData.getValue());
+			this.setStateData(aData.getStateData());
+			
+			if (aData.isResponseFlagEnabled()) {
+				this.isResponse = true;
+			}
+		}
+	}
+	
+	
+	// package methods
+	
+	/* (non-Javadoc)
+	 * @see programmingtheiot.data.BaseIotData#resetData()
+	 */
+	@Override
+	void resetData()
+	{
+		super.resetData();
+		
+		this.command    = ConfigConst.DEFAULT_COMMAND;
+		this.value      = ConfigConst.DEFAULT_VAL;
+		this.isResponse = false;
+		this.stateData  = "";
 	}
 	
 }
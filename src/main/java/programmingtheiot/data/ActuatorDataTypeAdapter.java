@@ -0,0 +1,63 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import programmingtheiot.common.ConfigConst;
+
+/**
+ * Streaming Gson type adapter for {@link ActuatorData}.
+ *
+ */
+class ActuatorDataTypeAdapter extends BaseIotDataTypeAdapter<ActuatorData>
+{
+	// protected methods
+	
+	@Override
+	protected ActuatorData createInstance()
+	{
+		return new ActuatorData();
+	}
+	
+	@Override
+	protected void writeFields(JsonWriter writer, ActuatorData data) throws IOException
+	{
+		writer.name(ConfigConst.COMMAND_PROP).value(data.getCommand());
+		writeFloat(writer, ConfigConst.VALUE_PROP, data.getValue());
+		writer.name(ConfigConst.IS_RESPONSE_PROP).value(data.isResponseFlagEnabled());
+		writer.name(ConfigConst.STATE_DATA_PROP).value(data.getStateData());
+	}
+	
+	@Override
+	protected boolean readField(String name, JsonReader reader, ActuatorData data) throws IOException
+	{
+		switch (name) {
+			case ConfigConst.COMMAND_PROP:
+				data.setCommand(reader.nextInt()); return true;
+				
+			case ConfigConst.VALUE_PROP:
+				data.setValue((float) reader.nextDouble()); return true;
+				
+			case ConfigConst.IS_RESPONSE_PROP:
+				if (reader.nextBoolean()) data.setAsResponse();
+				return true;
+				
+			case ConfigConst.STATE_DATA_PROP:
+				data.setStateData(reader.nextString()); return true;
+				
+			default:
+				return false;
+		}
+	}
+	
+}
@@ -10,10 +10,11 @@ package programmingtheiot.data;
 
 import java.io.Serializable;
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.DeviceMetadata;
 
 /**
  * Base class for common properties and helper methods for all
@@ -35,7 +36,6 @@ public abstract class BaseIotData implements Serializable
 	// private var's
 	
     private String  name       = ConfigConst.NOT_SET;
-	private String  timeStamp  = "";
     private int     statusCode = ConfigConst.DEFAULT_STATUS;
     private int     typeID     = ConfigConst.DEFAULT_TYPE_ID;
     
@@ -45,6 +45,10 @@ public abstract class BaseIotData implements Serializable
     private float   elevation  = ConfigConst.DEFAULT_ELEVATION;
     
     private long    timeStampMillis = 0L;
+    private int     timeStampNanos  = 0;
+    
+    // formatted lazily from timeStampMillis / timeStampNanos and cached
+    private transient String timeStamp = null;
 
     
 	// constructors
@@ -52,18 +56,15 @@ public abstract class BaseIotData implements Serializable
 	/**
 	 * Default.
 	 * 
-	 * Initializes the location ID from the config file and updates the timestamp.
+	 * Initializes the location properties from the device metadata cached by
+	 * {@see ConfigUtil#getDeviceMetadata()} and updates the timestamp.
 	 * 
 	 */
 	protected BaseIotData()
 	{
 		super();
 		
-		String locID =
-			ConfigUtil.getInstance().getProperty(
-				ConfigConst.GATEWAY_DEVICE, ConfigConst.DEVICE_LOCATION_ID_KEY);
-		
-		this.setLocationID(locID);
+		applyDeviceMetadata();
 		
 		updateTimeStamp();
 	}
@@ -138,12 +139,22 @@ public abstract class BaseIotData implements Serializable
 	 * The timestamp is represented as a String in ISO 8601 format, as follows:
 	 * <p>
 	 * e.g. 2020-12-27T10:13:30Z
+	 * <p>
+	 * The String is only created on the first call after the timestamp changes,
+	 * and is cached until the next change.
 	 * 
 	 * @return A stringified timestamp.
 	 */
 	public String getTimeStamp()
 	{
-		return this.timeStamp;
+		String ts = this.timeStamp;
+		
+		if (ts == null) {
+			ts = IsoTimeStampFormatter.format(this.timeStampMillis, this.timeStampNanos);
+			this.timeStamp = ts;
+		}
+		
+		return ts;
 	}
 	
 	/**
@@ -280,7 +291,7 @@ public abstract class BaseIotData implements Serializable
 		
 		sb.append(ConfigConst.NAME_PROP).append('=').append(',');
 		sb.append(ConfigConst.TYPE_ID_PROP).append('=').append(this.typeID).append(',');
-		sb.append(ConfigConst.TIMESTAMP_PROP).append('=').append(this.timeStamp).append(',');
+		sb.append(ConfigConst.TIMESTAMP_PROP).append('=').append(getTimeStamp()).append(',');
 		sb.append(ConfigConst.STATUS_CODE_PROP).append('=').append(this.statusCode).append(',');
 		sb.append(ConfigConst.HAS_ERROR_PROP).append('=').append(this.hasError()).append(',');
 		sb.append(ConfigConst.LOCATION_ID_PROP).append('=').append(this.locationID).append(',');
@@ -335,11 +346,9 @@ public abstract class BaseIotData implements Serializable
 	
 	/**
 	 * Stores the latest timestamp in milliseconds (since the Epoch) within
-	 * {@see #timeStampMillis}, then sets the internal time stamp string
-	 * {@see #timeStamp} to represent a new Date based on {@see #timeStampMillis}
-	 * in ISO 8601 format using {@see DateTimeFormatter.ISO_INSTANT}, as follows:
-	 * <p>
-	 * e.g. 2020-12-27T10:13:30Z
+	 * {@see #timeStampMillis}, along with the remaining sub-millisecond
+	 * precision of the system clock. The ISO 8601 string returned by
+	 * {@see #getTimeStamp()} is not created here; it's formatted on demand.
 	 * 
 	 */
 	protected final void updateTimeStamp()
@@ -347,7 +356,78 @@ public abstract class BaseIotData implements Serializable
 		Instant instant = Instant.now();
 		
 		this.timeStampMillis = instant.toEpochMilli();
-		this.timeStamp       = DateTimeFormatter.ISO_INSTANT.format(instant);
+		this.timeStampNanos  = instant.getNano() % 1000000;
+		this.timeStamp       = null;
+	}
+	
+	
+	// package methods
+	
+	/**
+	 * Resets all properties to the values of a newly constructed instance
+	 * (including a new timestamp), so the instance can be reused to decode
+	 * another message. Sub-classes with their own properties override this
+	 * and call the super-class implementation first.
+	 * 
+	 */
+	void resetData()
+	{
+		this.name       = ConfigConst.NOT_SET;
+		this.statusCode = ConfigConst.DEFAULT_STATUS;
+		this.typeID     = ConfigConst.DEFAULT_TYPE_ID;
+		
+		applyDeviceMetadata();
+		
+		updateTimeStamp();
+	}
+	
+	/**
+	 * Restores the timestamp from the given millis since the Epoch. This is
+	 * used by the codecs within this package when decoding a payload, so the
+	 * decoded instance keeps the timestamp of the sender instead of the
+	 * time of decoding.
+	 * 
+	 * @param millis The timestamp in milliseconds since the Epoch.
+	 */
+	final void setTimeStampMillis(long millis)
+	{
+		this.timeStampMillis = millis;
+		this.timeStampNanos  = 0;
+		this.timeStamp       = null;
+	}
+	
+	/**
+	 * Restores the timestamp from the given ISO 8601 string. If the string
+	 * can't be parsed, the current timestamp is left as-is.
+	 * 
+	 * @param timeStamp The ISO 8601 timestamp (e.g. 2020-12-27T10:13:30Z).
+	 */
+	final void setTimeStamp(String timeStamp)
+	{
+		if (timeStamp != null && timeStamp.length() > 0) {
+			try {
+				Instant instant = Instant.parse(timeStamp);
+				
+				this.timeStampMillis = instant.toEpochMilli();
+				this.timeStampNanos  = instant.getNano() % 1000000;
+				this.timeStamp       = timeStamp;
+			} catch (DateTimeParseException e) {
+				// ignore - keep the existing timestamp
+			}
+		}
+	}
+	
+	
+	// private methods
+	
+	private void applyDeviceMetadata()
+	{
+		DeviceMetadata metadata = ConfigUtil.getInstance().getDeviceMetadata();
+		
+		this.locationID = metadata.getLocationID();
+		this.latitude   = metadata.getLatitude();
+		this.longitude  = metadata.getLongitude();
+		this.elevation  = metadata.getElevation();
 	}
 	
 }
@@ -0,0 +1,192 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import programmingtheiot.common.ConfigConst;
+
+/**
+ * Streaming Gson type adapter for the properties shared by all
+ * {@link BaseIotData} sub-classes. Sub-classes of this adapter
+ * write and read their own properties via the template methods
+ * {@link #writeFields(JsonWriter, BaseIotData)} and
+ * {@link #readField(String, JsonReader, BaseIotData)}.
+ * <p>
+ * No reflection and no intermediate JSON tree is used; properties
+ * are written and read directly against the token stream.
+ *
+ * @param <T> The {@link BaseIotData} sub-class handled by this adapter.
+ */
+abstract class BaseIotDataTypeAdapter<T extends BaseIotData> extends TypeAdapter<T>
+{
+	// public methods
+	
+	@Override
+	public void write(JsonWriter writer, T data) throws IOException
+	{
+		if (data == null) {
+			writer.nullValue();
+			return;
+		}
+		
+		writer.beginObject();
+		
+		writer.name(ConfigConst.NAME_PROP).value(data.getName());
+		writer.name(ConfigConst.TYPE_ID_PROP).value(data.getTypeID());
+		writer.name(ConfigConst.TIMESTAMP_PROP).value(data.getTimeStamp());
+		writer.name(ConfigConst.TIMESTAMP_MILLIS_PROP).value(data.getTimeStampMillis());
+		writer.name(ConfigConst.STATUS_CODE_PROP).value(data.getStatusCode());
+		writer.name(ConfigConst.HAS_ERROR_PROP).value(data.hasError());
+		writer.name(ConfigConst.LOCATION_ID_PROP).value(data.getLocationID());
+		writeFloat(writer, ConfigConst.LATITUDE_PROP, data.getLatitude());
+		writeFloat(writer, ConfigConst.LONGITUDE_PROP, data.getLongitude());
+		writeFloat(writer, ConfigConst.ELEVATION_PROP, data.getElevation());
+		
+		writeFields(writer, data);
+		
+		writer.endObject();
+	}
+	
+	@Override
+	public T read(JsonReader reader) throws IOException
+	{
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		
+		T data = createInstance();
+		
+		readInto(reader, data);
+		
+		return data;
+	}
+	
+	/**
+	 * Reads the next JSON object from 'reader' into the given instance.
+	 * Unknown properties are skipped. The timestamp is applied last so
+	 * the sub-class setters (which refresh the timestamp) don't
+	 * overwrite the decoded value.
+	 * 
+	 * @param reader The reader positioned at the start of a JSON object.
+	 * @param data The instance to populate.
+	 * @throws IOException If the stream is malformed.
+	 */
+	void readInto(JsonReader reader, T data) throws IOException
+	{
+		String timeStamp = null;
+		long   timeStampMillis = -1L;
+		
+		reader.beginObject();
+		
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			
+			switch (name) {
+				case ConfigConst.NAME_PROP:
+					data.setName(reader.nextString()); break;
+					
+				case ConfigConst.TYPE_ID_PROP:
+					data.setTypeID(reader.nextInt()); break;
+					
+				case ConfigConst.TIMESTAMP_PROP:
+					timeStamp = reader.nextString(); break;
+					
+				case ConfigConst.TIMESTAMP_MILLIS_PROP:
+					timeStampMillis = reader.nextLong(); break;
+					
+				case ConfigConst.STATUS_CODE_PROP:
+					data.setStatusCode(reader.nextInt()); break;
+					
+				case ConfigConst.LOCATION_ID_PROP:
+					data.setLocationID(reader.nextString()); break;
+					
+				case ConfigConst.LATITUDE_PROP:
+					data.setLatitude((float) reader.nextDouble()); break;
+					
+				case ConfigConst.LONGITUDE_PROP:
+					data.setLongitude((float) reader.nextDouble()); break;
+					
+				case ConfigConst.ELEVATION_PROP:
+					data.setElevation((float) reader.nextDouble()); break;
+					
+				default:
+					if (! readField(name, reader, data)) {
+						reader.skipValue();
+					}
+			}
+		}
+		
+		reader.endObject();
+		
+		if (timeStampMillis >= 0L) {
+			data.setTimeStampMillis(timeStampMillis);
+		} else {
+			data.setTimeStamp(timeStamp);
+		}
+	}
+	
+	
+	// protected methods
+	
+	/**
+	 * Template method to create a new, empty instance of the handled type.
+	 * 
+	 * @return T
+	 */
+	protected abstract T createInstance();
+	
+	/**
+	 * Template method to write the sub-class specific properties. The
+	 * enclosing JSON object has already been started by the caller.
+	 * 
+	 * @param writer The JSON writer.
+	 * @param data The (non-null) instance to write.
+	 * @throws IOException If the write fails.
+	 */
+	protected abstract void writeFields(JsonWriter writer, T data) throws IOException;
+	
+	/**
+	 * Template method to read a sub-class specific property.
+	 * 
+	 * @param name The property name just read from 'reader'.
+	 * @param reader The JSON reader, positioned at the property value.
+	 * @param data The instance to populate.
+	 * @return boolean True if the property was consumed; false if it's unknown.
+	 * @throws IOException If the stream is malformed.
+	 */
+	protected abstract boolean readField(String name, JsonReader reader, T data) throws IOException;
+	
+	/**
+	 * Writes the given float as a JSON number without widening it to a
+	 * double first (which would add spurious digits, e.g. 0.1 vs.
+	 * 0.10000000149011612).
+	 * 
+	 * @param writer The JSON writer.
+	 * @param name The property name.
+	 * @param val The value to write.
+	 * @throws IOException If the write fails.
+	 */
+	protected static void writeFloat(JsonWriter writer, String name, float val) throws IOException
+	{
+		writer.name(name).value(Float.valueOf(val));
+	}
+	
+}
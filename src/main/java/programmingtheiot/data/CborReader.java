@@ -0,0 +1,374 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal CBOR (RFC 8949) decoder matching {@link CborWriter}. Reads
+ * directly from a {@link ByteBuffer}. Indefinite-length items aren't
+ * supported (they're never produced by {@link CborWriter}); tags are
+ * skipped.
+ * <p>
+ * Not thread-safe.
+ *
+ */
+final class CborReader
+{
+	// private var's
+	
+	private ByteBuffer source = null;
+	
+	
+	// public methods
+	
+	/**
+	 * Sets the source to decode from. Bytes between the source's position
+	 * and limit are consumed as they're read.
+	 * 
+	 * @param source The source buffer.
+	 * @return CborReader This instance, for convenience.
+	 */
+	public CborReader reset(ByteBuffer source)
+	{
+		this.source = source;
+		
+		return this;
+	}
+	
+	public boolean hasRemaining()
+	{
+		return this.source.hasRemaining();
+	}
+	
+	/**
+	 * Returns the major type of the next item without consuming it.
+	 * 
+	 * @return int The major type (0 - 7).
+	 * @throws IOException If no data remains.
+	 */
+	public int peekMajorType() throws IOException
+	{
+		skipTags();
+		
+		return (peek() & 0xFF) >>> 5;
+	}
+	
+	/**
+	 * Returns true (and consumes the item) if the next item is null or undefined.
+	 * 
+	 * @return boolean
+	 * @throws IOException If no data remains.
+	 */
+	public boolean nextIsNull() throws IOException
+	{
+		skipTags();
+		
+		int initial = peek() & 0xFF;
+		
+		if (initial == ((CborWriter.MAJOR_SIMPLE << 5) | CborWriter.SIMPLE_NULL) ||
+			initial == ((CborWriter.MAJOR_SIMPLE << 5) | (CborWriter.SIMPLE_NULL + 1)))
+		{
+			this.source.get();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	public int readMapHeader() throws IOException
+	{
+		return (int) readLength(CborWriter.MAJOR_MAP);
+	}
+	
+	public int readArrayHeader() throws IOException
+	{
+		return (int) readLength(CborWriter.MAJOR_ARRAY);
+	}
+	
+	public long readLong() throws IOException
+	{
+		skipTags();
+		
+		int initial = get();
+		int major   = initial >>> 5;
+		
+		if (major == CborWriter.MAJOR_UNSIGNED) {
+			return readArgument(initial);
+		} else if (major == CborWriter.MAJOR_NEGATIVE) {
+			return -1L - readArgument(initial);
+		} else if (major == CborWriter.MAJOR_SIMPLE) {
+			return (long) readFloatValue(initial);
+		}
+		
+		throw new IOException("Expected CBOR integer, but found major type " + major);
+	}
+	
+	public int readInt() throws IOException
+	{
+		return (int) readLong();
+	}
+	
+	public float readFloat() throws IOException
+	{
+		skipTags();
+		
+		int initial = get();
+		int major   = initial >>> 5;
+		
+		if (major == CborWriter.MAJOR_UNSIGNED) {
+			return readArgument(initial);
+		} else if (major == CborWriter.MAJOR_NEGATIVE) {
+			return -1L - readArgument(initial);
+		} else if (major == CborWriter.MAJOR_SIMPLE) {
+			return (float) readFloatValue(initial);
+		}
+		
+		throw new IOException("Expected CBOR float, but found major type " + major);
+	}
+	
+	public boolean readBoolean() throws IOException
+	{
+		skipTags();
+		
+		int initial = get();
+		
+		if (initial == ((CborWriter.MAJOR_SIMPLE << 5) | CborWriter.SIMPLE_TRUE)) {
+			return true;
+		} else if (initial == ((CborWriter.MAJOR_SIMPLE << 5) | CborWriter.SIMPLE_FALSE)) {
+			return false;
+		}
+		
+		throw new IOException("Expected CBOR boolean, but found initial byte " + initial);
+	}
+	
+	public String readString() throws IOException
+	{
+		return readString(null);
+	}
+	
+	/**
+	 * Reads a text string. If its bytes match 'current' (compared without
+	 * decoding), 'current' is returned instead of a new String. This keeps
+	 * decoding into a reused instance allocation-free when names and
+	 * location IDs repeat from message to message.
+	 * 
+	 * @param current The candidate value to reuse. May be null.
+	 * @return String The decoded value.
+	 * @throws IOException If the data is malformed.
+	 */
+	public String readString(String current) throws IOException
+	{
+		int len = (int) readLength(CborWriter.MAJOR_TEXT);
+		
+		if (len > this.source.remaining()) {
+			throw new IOException("Truncated CBOR text string.");
+		}
+		
+		if (current != null && matchesAscii(current, len)) {
+			this.source.position(this.source.position() + len);
+			
+			return current;
+		}
+		
+		String val;
+		
+		if (this.source.hasArray()) {
+			val = new String(
+				this.source.array(), this.source.arrayOffset() + this.source.position(), len, StandardCharsets.UTF_8);
+			
+			this.source.position(this.source.position() + len);
+		} else {
+			byte[] bytes = new byte[len];
+			this.source.get(bytes);
+			val = new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		return val;
+	}
+	
+	/**
+	 * Skips the next complete item, including any nested items.
+	 * 
+	 * @throws IOException If the data is malformed.
+	 */
+	public void skipValue() throws IOException
+	{
+		skipTags();
+		
+		int initial = get();
+		int major   = initial >>> 5;
+		
+		switch (major) {
+			case CborWriter.MAJOR_UNSIGNED:
+			case CborWriter.MAJOR_NEGATIVE:
+				readArgument(initial);
+				break;
+				
+			case CborWriter.MAJOR_BYTES:
+			case CborWriter.MAJOR_TEXT:
+				long len = readArgument(initial);
+				
+				if (len < 0 || len > this.source.remaining()) {
+					throw new IOException("Invalid CBOR string length: " + len);
+				}
+				
+				this.source.position(this.source.position() + (int) len);
+				break;
+				
+			case CborWriter.MAJOR_ARRAY:
+				for (long i = readArgument(initial); i > 0; i--) {
+					skipValue();
+				}
+				
+				break;
+				
+			case CborWriter.MAJOR_MAP:
+				for (long i = readArgument(initial); i > 0; i--) {
+					skipValue();
+					skipValue();
+				}
+				
+				break;
+				
+			default:
+				if ((initial & 0x1F) >= 24) {
+					readArgument(initial);
+				}
+		}
+	}
+	
+	
+	// private methods
+	
+	private boolean matchesAscii(String val, int len)
+	{
+		if (val.length() != len) {
+			return false;
+		}
+		
+		int pos = this.source.position();
+		
+		for (int i = 0; i < len; i++) {
+			char c = val.charAt(i);
+			
+			if (c >= 0x80 || this.source.get(pos + i) != (byte) c) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private long readLength(int expectedMajorType) throws IOException
+	{
+		skipTags();
+		
+		int initial = get();
+		int major   = initial >>> 5;
+		
+		if (major != expectedMajorType) {
+			throw new IOException("Expected CBOR major type " + expectedMajorType + ", but found " + major);
+		}
+		
+		long len = readArgument(initial);
+		
+		// an 8-byte argument may be negative, and each item takes at least one byte
+		if (len < 0 || len > this.source.remaining()) {
+			throw new IOException("Invalid CBOR item length: " + len);
+		}
+		
+		return len;
+	}
+	
+	private long readArgument(int initial) throws IOException
+	{
+		int info = initial & 0x1F;
+		
+		try {
+			if (info < 24) {
+				return info;
+			} else if (info == 24) {
+				return this.source.get() & 0xFFL;
+			} else if (info == 25) {
+				return this.source.getShort() & 0xFFFFL;
+			} else if (info == 26) {
+				return this.source.getInt() & 0xFFFFFFFFL;
+			} else if (info == 27) {
+				return this.source.getLong();
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated CBOR data.", e);
+		}
+		
+		throw new IOException("Unsupported CBOR additional info (indefinite length?): " + info);
+	}
+	
+	private double readFloatValue(int initial) throws IOException
+	{
+		try {
+			switch (initial & 0x1F) {
+				case CborWriter.FLOAT_HALF:   return halfToFloat(this.source.getShort());
+				case CborWriter.FLOAT_SINGLE: return Float.intBitsToFloat(this.source.getInt());
+				case CborWriter.FLOAT_DOUBLE: return Double.longBitsToDouble(this.source.getLong());
+				
+				default:
+					throw new IOException("Expected CBOR float, but found simple value " + (initial & 0x1F));
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated CBOR data.", e);
+		}
+	}
+	
+	private void skipTags() throws IOException
+	{
+		while (this.source.hasRemaining() && ((peek() & 0xFF) >>> 5) == CborWriter.MAJOR_TAG) {
+			readArgument(get());
+		}
+	}
+	
+	private byte peek() throws IOException
+	{
+		if (! this.source.hasRemaining()) {
+			throw new IOException("Truncated CBOR data.");
+		}
+		
+		return this.source.get(this.source.position());
+	}
+	
+	private int get() throws IOException
+	{
+		if (! this.source.hasRemaining()) {
+			throw new IOException("Truncated CBOR data.");
+		}
+		
+		return this.source.get() & 0xFF;
+	}
+	
+	private static float halfToFloat(short half)
+	{
+		int bits     = half & 0xFFFF;
+		int sign     = (bits & 0x8000) << 16;
+		int exponent = (bits >>> 10) & 0x1F;
+		int mantissa = bits & 0x3FF;
+		
+		if (exponent == 0) {
+			float val = mantissa * 5.9604645E-8f; // 2^-24
+			return (sign != 0 ? -val : val);
+		} else if (exponent == 0x1F) {
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+		}
+		
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+	}
+	
+}
@@ -0,0 +1,273 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Minimal CBOR (RFC 8949) encoder covering the subset of types used
+ * by the IoT data codecs: unsigned / negative integers, single
+ * precision floats, booleans, null, UTF-8 text strings, and
+ * definite-length arrays and maps.
+ * <p>
+ * The backing array is kept across {@link #reset()} calls so a
+ * per-thread instance doesn't allocate in steady state.
+ * <p>
+ * Not thread-safe.
+ *
+ */
+final class CborWriter
+{
+	// static
+	
+	static final int MAJOR_UNSIGNED = 0;
+	static final int MAJOR_NEGATIVE = 1;
+	static final int MAJOR_BYTES    = 2;
+	static final int MAJOR_TEXT     = 3;
+	static final int MAJOR_ARRAY    = 4;
+	static final int MAJOR_MAP      = 5;
+	static final int MAJOR_TAG      = 6;
+	static final int MAJOR_SIMPLE   = 7;
+	
+	static final int SIMPLE_FALSE  = 20;
+	static final int SIMPLE_TRUE   = 21;
+	static final int SIMPLE_NULL   = 22;
+	static final int FLOAT_HALF    = 25;
+	static final int FLOAT_SINGLE  = 26;
+	static final int FLOAT_DOUBLE  = 27;
+	
+	private static final int DEFAULT_CAPACITY = 256;
+	private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+	
+	
+	// private var's
+	
+	private byte[] buf   = new byte[DEFAULT_CAPACITY];
+	private int    count = 0;
+	
+	
+	// public methods
+	
+	/**
+	 * Clears the content so the instance can be reused.
+	 * 
+	 */
+	public void reset()
+	{
+		this.count = 0;
+		
+		if (this.buf.length > MAX_RETAINED_CAPACITY) {
+			this.buf = new byte[DEFAULT_CAPACITY];
+		}
+	}
+	
+	public int size()
+	{
+		return this.count;
+	}
+	
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(this.buf, this.count);
+	}
+	
+	/**
+	 * Copies the encoded bytes into 'dest' at its current position.
+	 * 
+	 * @param dest The destination buffer.
+	 * @return boolean True if the bytes fit and were copied; false otherwise
+	 * (in which case 'dest' is left untouched).
+	 */
+	public boolean writeTo(ByteBuffer dest)
+	{
+		if (dest.remaining() < this.count) {
+			return false;
+		}
+		
+		dest.put(this.buf, 0, this.count);
+		
+		return true;
+	}
+	
+	public CborWriter writeArrayHeader(int size)
+	{
+		writeTypeAndLength(MAJOR_ARRAY, size);
+		
+		return this;
+	}
+	
+	public CborWriter writeMapHeader(int size)
+	{
+		writeTypeAndLength(MAJOR_MAP, size);
+		
+		return this;
+	}
+	
+	public CborWriter writeInt(long val)
+	{
+		if (val >= 0) {
+			writeTypeAndLength(MAJOR_UNSIGNED, val);
+		} else {
+			writeTypeAndLength(MAJOR_NEGATIVE, -1L - val);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Writes 'val' as a single precision float (5 bytes).
+	 * 
+	 * @param val The value to write.
+	 * @return CborWriter This instance, for convenience.
+	 */
+	public CborWriter writeFloat(float val)
+	{
+		int bits = Float.floatToIntBits(val);
+		
+		ensureCapacity(5);
+		
+		this.buf[this.count++] = (byte) ((MAJOR_SIMPLE << 5) | FLOAT_SINGLE);
+		this.buf[this.count++] = (byte) (bits >>> 24);
+		this.buf[this.count++] = (byte) (bits >>> 16);
+		this.buf[this.count++] = (byte) (bits >>> 8);
+		this.buf[this.count++] = (byte) bits;
+		
+		return this;
+	}
+	
+	public CborWriter writeBoolean(boolean val)
+	{
+		ensureCapacity(1);
+		
+		this.buf[this.count++] = (byte) ((MAJOR_SIMPLE << 5) | (val ? SIMPLE_TRUE : SIMPLE_FALSE));
+		
+		return this;
+	}
+	
+	public CborWriter writeNull()
+	{
+		ensureCapacity(1);
+		
+		this.buf[this.count++] = (byte) ((MAJOR_SIMPLE << 5) | SIMPLE_NULL);
+		
+		return this;
+	}
+	
+	/**
+	 * Writes 'val' as a UTF-8 text string, or null if 'val' is null.
+	 * 
+	 * @param val The value to write.
+	 * @return CborWriter This instance, for convenience.
+	 */
+	public CborWriter writeString(String val)
+	{
+		if (val == null) {
+			return writeNull();
+		}
+		
+		int len = val.length();
+		int utf8Len = encodedLength(val);
+		
+		writeTypeAndLength(MAJOR_TEXT, utf8Len);
+		ensureCapacity(utf8Len);
+		
+		for (int i = 0; i < len; i++) {
+			char c = val.charAt(i);
+			
+			if (c < 0x80) {
+				this.buf[this.count++] = (byte) c;
+			} else if (c < 0x800) {
+				this.buf[this.count++] = (byte) (0xC0 | (c >> 6));
+				this.buf[this.count++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(val.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, val.charAt(++i));
+				
+				this.buf[this.count++] = (byte) (0xF0 | (cp >> 18));
+				this.buf[this.count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				this.buf[this.count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				this.buf[this.count++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				this.buf[this.count++] = (byte) '?';
+			} else {
+				this.buf[this.count++] = (byte) (0xE0 | (c >> 12));
+				this.buf[this.count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				this.buf[this.count++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		
+		return this;
+	}
+	
+	
+	// private methods
+	
+	private void writeTypeAndLength(int majorType, long len)
+	{
+		ensureCapacity(9);
+		
+		int type = majorType << 5;
+		
+		if (len < 24) {
+			this.buf[this.count++] = (byte) (type | (int) len);
+		} else if (len <= 0xFFL) {
+			this.buf[this.count++] = (byte) (type | 24);
+			this.buf[this.count++] = (byte) len;
+		} else if (len <= 0xFFFFL) {
+			this.buf[this.count++] = (byte) (type | 25);
+			this.buf[this.count++] = (byte) (len >>> 8);
+			this.buf[this.count++] = (byte) len;
+		} else if (len <= 0xFFFFFFFFL) {
+			this.buf[this.count++] = (byte) (type | 26);
+			this.buf[this.count++] = (byte) (len >>> 24);
+			this.buf[this.count++] = (byte) (len >>> 16);
+			this.buf[this.count++] = (byte) (len >>> 8);
+			this.buf[this.count++] = (byte) len;
+		} else {
+			this.buf[this.count++] = (byte) (type | 27);
+			
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				this.buf[this.count++] = (byte) (len >>> shift);
+			}
+		}
+	}
+	
+	private int encodedLength(String val)
+	{
+		int len = val.length();
+		int utf8Len = 0;
+		
+		for (int i = 0; i < len; i++) {
+			char c = val.charAt(i);
+			
+			if (c < 0x80) {
+				utf8Len += 1;
+			} else if (c < 0x800) {
+				utf8Len += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(val.charAt(i + 1))) {
+				utf8Len += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				utf8Len += 1;
+			} else {
+				utf8Len += 3;
+			}
+		}
+		
+		return utf8Len;
+	}
+	
+	private void ensureCapacity(int extra)
+	{
+		if (this.count + extra > this.buf.length) {
+			this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length * 2, this.count + extra));
+		}
+	}
+	
+}
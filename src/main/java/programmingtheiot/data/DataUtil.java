@@ -8,21 +8,58 @@
 
 package programmingtheiot.data;
 
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
 
 /**
- * Shell representation of class for student implementation.
+ * JSON encode / decode support for all {@link BaseIotData} sub-classes.
+ * <p>
+ * Encoding and decoding use hand-written streaming Gson type adapters
+ * (no reflection, no intermediate JSON tree). In addition to the String
+ * based methods, each type has byte[] and {@link ByteBuffer} overloads
+ * that encode / decode UTF-8 directly, so MQTT and CoAP payloads never
+ * need to be converted to a String first. The byte buffers used for
+ * this are cached per thread.
+ * <p>
+ * A compact CBOR encoding (integer keys instead of property names) is
+ * also supported for all types, and {@link #dataToBytes(BaseIotData, DataFormatEnum)}
+ * / {@link #bytesToData(ByteBuffer, Class, DataFormatEnum)} let connectors
+ * use whichever {@link DataFormatEnum} they're configured for.
+ * <p>
+ * Sensor and system performance readings can also be encoded as a batch
+ * in a single payload, with the shared location / type properties sent
+ * once per batch (see {@link #sensorDataBatchToBytes(List, DataFormatEnum)}).
+ * <p>
+ * For the ingest hot path, SensorData and ActuatorData can be decoded into a
+ * caller-supplied instance, e.g. one taken from {@link #getSensorDataPool()},
+ * instead of allocating a new one per message. With CBOR, decoding into a
+ * reused instance doesn't allocate once names and location IDs repeat.
  *
  */
 public class DataUtil
 {
 	// static
 	
+	private static final Logger _Logger =
+		Logger.getLogger(DataUtil.class.getName());
+	
 	private static final DataUtil _Instance = new DataUtil();
 
 	/**
@@ -35,9 +72,33 @@ public class DataUtil
 		return _Instance;
 	}
 	
+	private static final ThreadLocal<Utf8ByteArrayWriter> _ByteWriter =
+		ThreadLocal.withInitial(Utf8ByteArrayWriter::new);
+	
+	private static final ThreadLocal<Utf8ByteBufferReader> _ByteReader =
+		ThreadLocal.withInitial(Utf8ByteBufferReader::new);
+	
+	private static final ThreadLocal<CborWriter> _CborWriter =
+		ThreadLocal.withInitial(CborWriter::new);
+	
+	private static final ThreadLocal<CborReader> _CborReader =
+		ThreadLocal.withInitial(CborReader::new);
+	
 	
 	// private var's
 	
+	private SensorDataTypeAdapter            sensorDataAdapter   = new SensorDataTypeAdapter();
+	private ActuatorDataTypeAdapter          actuatorDataAdapter = new ActuatorDataTypeAdapter();
+	private SystemPerformanceDataTypeAdapter sysPerfDataAdapter  = new SystemPerformanceDataTypeAdapter();
+	private SystemStateDataTypeAdapter       sysStateDataAdapter =
+		new SystemStateDataTypeAdapter(this.sensorDataAdapter, this.sysPerfDataAdapter);
+	
+	private IotDataCborCodec  cborCodec  = new IotDataCborCodec();
+	private IotDataBatchCodec batchCodec = new IotDataBatchCodec(this.cborCodec);
+	
+	private IotDataObjectPool<SensorData>   sensorDataPool   = new IotDataObjectPool<>(SensorData::new);
+	private IotDataObjectPool<ActuatorData> actuatorDataPool = new IotDataObjectPool<>(ActuatorData::new);
+	
 	
 	// constructors
 	
@@ -55,41 +116,718 @@ public class DataUtil
 	
 	public String actuatorDataToJson(ActuatorData actuatorData)
 	{
-		return null;
+		return toJson(this.actuatorDataAdapter, actuatorData);
 	}
 	
 	public String sensorDataToJson(SensorData sensorData)
 	{
-		return null;
+		return toJson(this.sensorDataAdapter, sensorData);
 	}
 	
 	public String systemPerformanceDataToJson(SystemPerformanceData sysPerfData)
 	{
-		return null;
+		return toJson(this.sysPerfDataAdapter, sysPerfData);
 	}
 	
 	public String systemStateDataToJson(SystemStateData sysStateData)
 	{
-		return null;
+		return toJson(this.sysStateDataAdapter, sysStateData);
 	}
 	
 	public ActuatorData jsonToActuatorData(String jsonData)
 	{
-		return null;
+		return (jsonData != null ? fromJson(this.actuatorDataAdapter, new StringReader(jsonData)) : null);
 	}
 	
 	public SensorData jsonToSensorData(String jsonData)
 	{
-		return null;
+		return (jsonData != null ? fromJson(this.sensorDataAdapter, new StringReader(jsonData)) : null);
 	}
 	
 	public SystemPerformanceData jsonToSystemPerformanceData(String jsonData)
 	{
-		return null;
+		return (jsonData != null ? fromJson(this.sysPerfDataAdapter, new StringReader(jsonData)) : null);
 	}
 	
 	public SystemStateData jsonToSystemStateData(String jsonData)
 	{
+		return (jsonData != null ? fromJson(this.sysStateDataAdapter, new StringReader(jsonData)) : null);
+	}
+	
+	// byte[] and ByteBuffer encoding
+	
+	/**
+	 * Encodes 'actuatorData' as UTF-8 JSON.
+	 * 
+	 * @param actuatorData The data to encode.
+	 * @return byte[] The encoded bytes, or null if 'actuatorData' is null or encoding fails.
+	 */
+	public byte[] actuatorDataToJsonBytes(ActuatorData actuatorData)
+	{
+		return toJsonBytes(this.actuatorDataAdapter, actuatorData);
+	}
+	
+	/**
+	 * Encodes 'actuatorData' as UTF-8 JSON into 'dest', starting at its current position.
+	 * 
+	 * @param actuatorData The data to encode.
+	 * @param dest The destination buffer.
+	 * @return int The number of bytes written, or -1 if the data is null, encoding
+	 * fails or the result doesn't fit in 'dest' (in which case 'dest' is untouched).
+	 */
+	public int actuatorDataToJson(ActuatorData actuatorData, ByteBuffer dest)
+	{
+		return toJson(this.actuatorDataAdapter, actuatorData, dest);
+	}
+	
+	public byte[] sensorDataToJsonBytes(SensorData sensorData)
+	{
+		return toJsonBytes(this.sensorDataAdapter, sensorData);
+	}
+	
+	public int sensorDataToJson(SensorData sensorData, ByteBuffer dest)
+	{
+		return toJson(this.sensorDataAdapter, sensorData, dest);
+	}
+	
+	public byte[] systemPerformanceDataToJsonBytes(SystemPerformanceData sysPerfData)
+	{
+		return toJsonBytes(this.sysPerfDataAdapter, sysPerfData);
+	}
+	
+	public int systemPerformanceDataToJson(SystemPerformanceData sysPerfData, ByteBuffer dest)
+	{
+		return toJson(this.sysPerfDataAdapter, sysPerfData, dest);
+	}
+	
+	public byte[] systemStateDataToJsonBytes(SystemStateData sysStateData)
+	{
+		return toJsonBytes(this.sysStateDataAdapter, sysStateData);
+	}
+	
+	public int systemStateDataToJson(SystemStateData sysStateData, ByteBuffer dest)
+	{
+		return toJson(this.sysStateDataAdapter, sysStateData, dest);
+	}
+	
+	// byte[] and ByteBuffer decoding
+	
+	/**
+	 * Decodes UTF-8 JSON from 'jsonData'.
+	 * 
+	 * @param jsonData The encoded bytes.
+	 * @return ActuatorData The decoded instance, or null if 'jsonData' is null or malformed.
+	 */
+	public ActuatorData jsonToActuatorData(byte[] jsonData)
+	{
+		return (jsonData != null ? jsonToActuatorData(ByteBuffer.wrap(jsonData)) : null);
+	}
+	
+	/**
+	 * Decodes UTF-8 JSON from the bytes between the position and limit of
+	 * 'jsonData'. The position of 'jsonData' is not modified.
+	 * 
+	 * @param jsonData The encoded bytes.
+	 * @return ActuatorData The decoded instance, or null if 'jsonData' is null or malformed.
+	 */
+	public ActuatorData jsonToActuatorData(ByteBuffer jsonData)
+	{
+		return fromJson(this.actuatorDataAdapter, jsonData);
+	}
+	
+	public SensorData jsonToSensorData(byte[] jsonData)
+	{
+		return (jsonData != null ? jsonToSensorData(ByteBuffer.wrap(jsonData)) : null);
+	}
+	
+	public SensorData jsonToSensorData(ByteBuffer jsonData)
+	{
+		return fromJson(this.sensorDataAdapter, jsonData);
+	}
+	
+	public SystemPerformanceData jsonToSystemPerformanceData(byte[] jsonData)
+	{
+		return (jsonData != null ? jsonToSystemPerformanceData(ByteBuffer.wrap(jsonData)) : null);
+	}
+	
+	public SystemPerformanceData jsonToSystemPerformanceData(ByteBuffer jsonData)
+	{
+		return fromJson(this.sysPerfDataAdapter, jsonData);
+	}
+	
+	public SystemStateData jsonToSystemStateData(byte[] jsonData)
+	{
+		return (jsonData != null ? jsonToSystemStateData(ByteBuffer.wrap(jsonData)) : null);
+	}
+	
+	public SystemStateData jsonToSystemStateData(ByteBuffer jsonData)
+	{
+		return fromJson(this.sysStateDataAdapter, jsonData);
+	}
+	
+	// CBOR encoding
+	
+	/**
+	 * Encodes 'actuatorData' as CBOR.
+	 * 
+	 * @param actuatorData The data to encode.
+	 * @return byte[] The encoded bytes, or null if 'actuatorData' is null.
+	 */
+	public byte[] actuatorDataToCbor(ActuatorData actuatorData)
+	{
+		return toCbor(actuatorData);
+	}
+	
+	/**
+	 * Encodes 'actuatorData' as CBOR into 'dest', starting at its current position.
+	 * 
+	 * @param actuatorData The data to encode.
+	 * @param dest The destination buffer.
+	 * @return int The number of bytes written, or -1 if the data is null or the
+	 * result doesn't fit in 'dest' (in which case 'dest' is untouched).
+	 */
+	public int actuatorDataToCbor(ActuatorData actuatorData, ByteBuffer dest)
+	{
+		return toCbor(actuatorData, dest);
+	}
+	
+	public byte[] sensorDataToCbor(SensorData sensorData)
+	{
+		return toCbor(sensorData);
+	}
+	
+	public int sensorDataToCbor(SensorData sensorData, ByteBuffer dest)
+	{
+		return toCbor(sensorData, dest);
+	}
+	
+	public byte[] systemPerformanceDataToCbor(SystemPerformanceData sysPerfData)
+	{
+		return toCbor(sysPerfData);
+	}
+	
+	public int systemPerformanceDataToCbor(SystemPerformanceData sysPerfData, ByteBuffer dest)
+	{
+		return toCbor(sysPerfData, dest);
+	}
+	
+	public byte[] systemStateDataToCbor(SystemStateData sysStateData)
+	{
+		return toCbor(sysStateData);
+	}
+	
+	public int systemStateDataToCbor(SystemStateData sysStateData, ByteBuffer dest)
+	{
+		return toCbor(sysStateData, dest);
+	}
+	
+	// CBOR decoding
+	
+	/**
+	 * Decodes CBOR from the bytes between the position and limit of
+	 * 'cborData'. The position of 'cborData' is not modified.
+	 * 
+	 * @param cborData The encoded bytes.
+	 * @return ActuatorData The decoded instance, or null if 'cborData' is null or malformed.
+	 */
+	public ActuatorData cborToActuatorData(ByteBuffer cborData)
+	{
+		return fromCbor(cborData, ActuatorData.class);
+	}
+	
+	public ActuatorData cborToActuatorData(byte[] cborData)
+	{
+		return (cborData != null ? cborToActuatorData(ByteBuffer.wrap(cborData)) : null);
+	}
+	
+	public SensorData cborToSensorData(ByteBuffer cborData)
+	{
+		return fromCbor(cborData, SensorData.class);
+	}
+	
+	public SensorData cborToSensorData(byte[] cborData)
+	{
+		return (cborData != null ? cborToSensorData(ByteBuffer.wrap(cborData)) : null);
+	}
+	
+	public SystemPerformanceData cborToSystemPerformanceData(ByteBuffer cborData)
+	{
+		return fromCbor(cborData, SystemPerformanceData.class);
+	}
+	
+	public SystemPerformanceData cborToSystemPerformanceData(byte[] cborData)
+	{
+		return (cborData != null ? cborToSystemPerformanceData(ByteBuffer.wrap(cborData)) : null);
+	}
+	
+	public SystemStateData cborToSystemStateData(ByteBuffer cborData)
+	{
+		return fromCbor(cborData, SystemStateData.class);
+	}
+	
+	public SystemStateData cborToSystemStateData(byte[] cborData)
+	{
+		return (cborData != null ? cborToSystemStateData(ByteBuffer.wrap(cborData)) : null);
+	}
+	
+	// format selection
+	
+	/**
+	 * Encodes 'data' using the given format. This is intended for connectors
+	 * whose payload encoding is selected via configuration.
+	 * 
+	 * @param data The data to encode. Must be one of the {@link BaseIotData} sub-classes
+	 * in this package.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @return byte[] The encoded bytes, or null if 'data' is null or not supported.
+	 */
+	public byte[] dataToBytes(BaseIotData data, DataFormatEnum format)
+	{
+		if (format == DataFormatEnum.CBOR) {
+			return toCbor(data);
+		}
+	
+		if (data instanceof SystemStateData) {
+			return toJsonBytes(this.sysStateDataAdapter, (SystemStateData) data);
+		} else if (data instanceof ActuatorData) {
+			return toJsonBytes(this.actuatorDataAdapter, (ActuatorData) data);
+		} else if (data instanceof SystemPerformanceData) {
+			return toJsonBytes(this.sysPerfDataAdapter, (SystemPerformanceData) data);
+		} else if (data instanceof SensorData) {
+			return toJsonBytes(this.sensorDataAdapter, (SensorData) data);
+		}
+	
+		return null;
+	}
+	
+	/**
+	 * Decodes an instance of 'type' from the bytes between the position and
+	 * limit of 'data' using the given format. The position of 'data' is not
+	 * modified.
+	 * 
+	 * @param data The encoded bytes.
+	 * @param type The expected type.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @return T The decoded instance, or null if 'data' is null, malformed or the type
+	 * is not supported.
+	 */
+	public <T extends BaseIotData> T bytesToData(ByteBuffer data, Class<T> type, DataFormatEnum format)
+	{
+		if (format == DataFormatEnum.CBOR) {
+			return fromCbor(data, type);
+		}
+	
+		BaseIotDataTypeAdapter<?> adapter = getJsonAdapter(type);
+	
+		return (adapter != null ? type.cast(fromJson(adapter, data)) : null);
+	}
+	
+	public <T extends BaseIotData> T bytesToData(byte[] data, Class<T> type, DataFormatEnum format)
+	{
+		return (data != null ? bytesToData(ByteBuffer.wrap(data), type, format) : null);
+	}
+	
+	
+	// decode into existing instances
+	
+	/**
+	 * Returns the per-thread pool of SensorData instances for use with
+	 * {@link #bytesToSensorData(ByteBuffer, DataFormatEnum, SensorData)}.
+	 * 
+	 * @return IotDataObjectPool<SensorData>
+	 */
+	public IotDataObjectPool<SensorData> getSensorDataPool()
+	{
+		return this.sensorDataPool;
+	}
+	
+	/**
+	 * Returns the per-thread pool of ActuatorData instances for use with
+	 * {@link #bytesToActuatorData(ByteBuffer, DataFormatEnum, ActuatorData)}.
+	 * 
+	 * @return IotDataObjectPool<ActuatorData>
+	 */
+	public IotDataObjectPool<ActuatorData> getActuatorDataPool()
+	{
+		return this.actuatorDataPool;
+	}
+	
+	/**
+	 * Decodes the bytes between the position and limit of 'data' into
+	 * 'target', which is first reset to its default values. The position
+	 * of 'data' is not modified.
+	 * 
+	 * @param data The encoded bytes.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @param target The instance to decode into.
+	 * @return SensorData 'target' on success, or null if 'data' or 'target' is null,
+	 * or 'data' is malformed (in which case the content of 'target' is undefined).
+	 */
+	public SensorData bytesToSensorData(ByteBuffer data, DataFormatEnum format, SensorData target)
+	{
+		return decodeInto(data, format, this.sensorDataAdapter, target);
+	}
+	
+	/**
+	 * Decodes the bytes between the position and limit of 'data' into
+	 * 'target', which is first reset to its default values. The position
+	 * of 'data' is not modified.
+	 * 
+	 * @param data The encoded bytes.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @param target The instance to decode into.
+	 * @return ActuatorData 'target' on success, or null if 'data' or 'target' is null,
+	 * or 'data' is malformed (in which case the content of 'target' is undefined).
+	 */
+	public ActuatorData bytesToActuatorData(ByteBuffer data, DataFormatEnum format, ActuatorData target)
+	{
+		return decodeInto(data, format, this.actuatorDataAdapter, target);
+	}
+	
+	
+	// batch encoding / decoding
+	
+	/**
+	 * Encodes 'dataList' as a single batch payload. The location ID,
+	 * latitude, longitude, elevation, type ID and timestamp are written
+	 * once in the batch header; each entry only carries its name, its
+	 * timestamp offset from the previous entry, its value and any
+	 * property that differs from the header.
+	 * 
+	 * @param dataList The readings to encode. Null entries are skipped.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @return byte[] The encoded bytes, or null if 'dataList' is null or encoding fails.
+	 */
+	public byte[] sensorDataBatchToBytes(List<SensorData> dataList, DataFormatEnum format)
+	{
+		return batchToBytes(dataList, this.sensorDataAdapter, format);
+	}
+	
+	public byte[] sensorDataBatchToBytes(SensorData[] dataArray, DataFormatEnum format)
+	{
+		return (dataArray != null ? sensorDataBatchToBytes(Arrays.asList(dataArray), format) : null);
+	}
+	
+	public byte[] systemPerformanceDataBatchToBytes(List<SystemPerformanceData> dataList, DataFormatEnum format)
+	{
+		return batchToBytes(dataList, this.sysPerfDataAdapter, format);
+	}
+	
+	/**
+	 * Decodes a batch payload created by {@link #sensorDataBatchToBytes(List, DataFormatEnum)}
+	 * from the bytes between the position and limit of 'data'. The position
+	 * of 'data' is not modified.
+	 * 
+	 * @param data The encoded bytes.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @return List<SensorData> The decoded readings, or null if 'data' is null or malformed.
+	 */
+	public List<SensorData> bytesToSensorDataBatch(ByteBuffer data, DataFormatEnum format)
+	{
+		return bytesToBatch(data, this.sensorDataAdapter, SensorData::new, format);
+	}
+	
+	public List<SensorData> bytesToSensorDataBatch(byte[] data, DataFormatEnum format)
+	{
+		return (data != null ? bytesToSensorDataBatch(ByteBuffer.wrap(data), format) : null);
+	}
+	
+	public List<SystemPerformanceData> bytesToSystemPerformanceDataBatch(ByteBuffer data, DataFormatEnum format)
+	{
+		return bytesToBatch(data, this.sysPerfDataAdapter, SystemPerformanceData::new, format);
+	}
+	
+	public List<SystemPerformanceData> bytesToSystemPerformanceDataBatch(byte[] data, DataFormatEnum format)
+	{
+		return (data != null ? bytesToSystemPerformanceDataBatch(ByteBuffer.wrap(data), format) : null);
+	}
+	
+	/**
+	 * Decodes a sensor data batch payload and passes each reading, in order,
+	 * to {@link IDataMessageListener#handleSensorMessage(ResourceNameEnum, SensorData)}.
+	 * 
+	 * @param resource The resource the batch was received on.
+	 * @param data The encoded bytes.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @param listener The listener to notify.
+	 * @return int The number of readings the listener accepted, or -1 if the
+	 * payload could not be decoded.
+	 */
+	public int handleSensorDataBatch(
+		ResourceNameEnum resource, ByteBuffer data, DataFormatEnum format, IDataMessageListener listener)
+	{
+		List<SensorData> dataList = bytesToSensorDataBatch(data, format);
+		
+		if (dataList == null || listener == null) {
+			return -1;
+		}
+		
+		int handled = 0;
+		
+		for (SensorData sensorData : dataList) {
+			if (listener.handleSensorMessage(resource, sensorData)) {
+				++handled;
+			}
+		}
+		
+		return handled;
+	}
+	
+	/**
+	 * Decodes a system performance data batch payload and passes each entry,
+	 * in order, to {@link IDataMessageListener#handleSystemPerformanceMessage(ResourceNameEnum, SystemPerformanceData)}.
+	 * 
+	 * @param resource The resource the batch was received on.
+	 * @param data The encoded bytes.
+	 * @param format The payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @param listener The listener to notify.
+	 * @return int The number of entries the listener accepted, or -1 if the
+	 * payload could not be decoded.
+	 */
+	public int handleSystemPerformanceDataBatch(
+		ResourceNameEnum resource, ByteBuffer data, DataFormatEnum format, IDataMessageListener listener)
+	{
+		List<SystemPerformanceData> dataList = bytesToSystemPerformanceDataBatch(data, format);
+		
+		if (dataList == null || listener == null) {
+			return -1;
+		}
+		
+		int handled = 0;
+		
+		for (SystemPerformanceData sysPerfData : dataList) {
+			if (listener.handleSystemPerformanceMessage(resource, sysPerfData)) {
+				++handled;
+			}
+		}
+		
+		return handled;
+	}
+	
+	
+	// private methods
+	
+	private <T extends BaseIotData> T decodeInto(
+		ByteBuffer data, DataFormatEnum format, BaseIotDataTypeAdapter<T> adapter, T target)
+	{
+		if (data == null || target == null) {
+			return null;
+		}
+		
+		target.resetData();
+		
+		try {
+			if (format == DataFormatEnum.CBOR) {
+				return this.cborCodec.read(_CborReader.get().reset(data.duplicate()), target);
+			}
+			
+			JsonReader reader = new JsonReader(_ByteReader.get().reset(data.duplicate()));
+			reader.setLenient(true);
+			
+			adapter.readInto(reader, target);
+			
+			return target;
+		} catch (IOException | RuntimeException e) {
+			_Logger.log(Level.WARNING, "Failed to decode data.", e);
+		}
+		
+		return null;
+	}
+	
+	private <T extends BaseIotData> byte[] batchToBytes(
+		List<T> dataList, BaseIotDataTypeAdapter<T> adapter, DataFormatEnum format)
+	{
+		if (dataList == null) {
+			return null;
+		}
+		
+		if (format == DataFormatEnum.CBOR) {
+			CborWriter writer = _CborWriter.get();
+			writer.reset();
+			
+			this.batchCodec.writeCbor(writer, dataList);
+			
+			return writer.toByteArray();
+		}
+		
+		Utf8ByteArrayWriter out = _ByteWriter.get();
+		out.reset();
+		
+		try {
+			JsonWriter writer = new JsonWriter(out);
+			this.batchCodec.writeJson(writer, dataList, adapter);
+			writer.flush();
+			
+			return out.toByteArray();
+		} catch (IOException | IllegalArgumentException e) {
+			_Logger.log(Level.WARNING, "Failed to encode data batch as JSON.", e);
+		}
+		
+		return null;
+	}
+	
+	private <T extends BaseIotData> List<T> bytesToBatch(
+		ByteBuffer data, BaseIotDataTypeAdapter<T> adapter, Supplier<T> factory, DataFormatEnum format)
+	{
+		if (data == null) {
+			return null;
+		}
+		
+		try {
+			if (format == DataFormatEnum.CBOR) {
+				return this.batchCodec.readCbor(_CborReader.get().reset(data.duplicate()), factory);
+			}
+			
+			JsonReader reader = new JsonReader(_ByteReader.get().reset(data.duplicate()));
+			reader.setLenient(true);
+			
+			return this.batchCodec.readJson(reader, adapter, factory);
+		} catch (IOException | RuntimeException e) {
+			_Logger.log(Level.WARNING, "Failed to decode data batch.", e);
+		}
+		
+		return null;
+	}
+	
+	private BaseIotDataTypeAdapter<?> getJsonAdapter(Class<?> type)
+	{
+		if (type == SensorData.class) {
+			return this.sensorDataAdapter;
+		} else if (type == ActuatorData.class) {
+			return this.actuatorDataAdapter;
+		} else if (type == SystemPerformanceData.class) {
+			return this.sysPerfDataAdapter;
+		} else if (type == SystemStateData.class) {
+			return this.sysStateDataAdapter;
+		}
+	
+		return null;
+	}
+	
+	private byte[] toCbor(BaseIotData data)
+	{
+		CborWriter writer = _CborWriter.get();
+		writer.reset();
+	
+		return (data != null && this.cborCodec.write(writer, data) ? writer.toByteArray() : null);
+	}
+	
+	private int toCbor(BaseIotData data, ByteBuffer dest)
+	{
+		if (dest == null) {
+			return -1;
+		}
+	
+		CborWriter writer = _CborWriter.get();
+		writer.reset();
+	
+		if (data != null && this.cborCodec.write(writer, data) && writer.writeTo(dest)) {
+			return writer.size();
+		}
+	
+		return -1;
+	}
+	
+	private <T extends BaseIotData> T fromCbor(ByteBuffer cborData, Class<T> type)
+	{
+		if (cborData == null) {
+			return null;
+		}
+	
+		CborReader reader = _CborReader.get().reset(cborData.duplicate());
+	
+		try {
+			if (type == SensorData.class) {
+				return type.cast(this.cborCodec.read(reader, new SensorData()));
+			} else if (type == ActuatorData.class) {
+				return type.cast(this.cborCodec.read(reader, new ActuatorData()));
+			} else if (type == SystemPerformanceData.class) {
+				return type.cast(this.cborCodec.read(reader, new SystemPerformanceData()));
+			} else if (type == SystemStateData.class) {
+				return type.cast(this.cborCodec.read(reader, new SystemStateData()));
+			}
+		} catch (IOException | RuntimeException e) {
+			// malformed input from a peer must never escape to the transport
+			_Logger.log(Level.WARNING, "Failed to decode CBOR data.", e);
+		}
+	
+		return null;
+	}
+	
+	private <T extends BaseIotData> String toJson(BaseIotDataTypeAdapter<T> adapter, T data)
+	{
+		if (data == null) {
+			return null;
+		}
+	
+		StringWriter writer = new StringWriter(256);
+	
+		return (write(adapter, data, writer) ? writer.toString() : null);
+	}
+	
+	private <T extends BaseIotData> byte[] toJsonBytes(BaseIotDataTypeAdapter<T> adapter, T data)
+	{
+		if (data == null) {
+			return null;
+		}
+	
+		Utf8ByteArrayWriter writer = _ByteWriter.get();
+		writer.reset();
+	
+		return (write(adapter, data, writer) ? writer.toByteArray() : null);
+	}
+	
+	private <T extends BaseIotData> int toJson(BaseIotDataTypeAdapter<T> adapter, T data, ByteBuffer dest)
+	{
+		if (data == null || dest == null) {
+			return -1;
+		}
+	
+		Utf8ByteArrayWriter writer = _ByteWriter.get();
+		writer.reset();
+	
+		if (write(adapter, data, writer) && writer.writeTo(dest)) {
+			return writer.size();
+		}
+	
+		return -1;
+	}
+	
+	private <T extends BaseIotData> boolean write(BaseIotDataTypeAdapter<T> adapter, T data, Writer out)
+	{
+		try {
+			JsonWriter writer = new JsonWriter(out);
+			adapter.write(writer, data);
+			writer.flush();
+	
+			return true;
+		} catch (IOException | IllegalArgumentException e) {
+			_Logger.log(Level.WARNING, "Failed to encode data as JSON: " + data, e);
+		}
+	
+		return false;
+	}
+	
+	private <T extends BaseIotData> T fromJson(BaseIotDataTypeAdapter<T> adapter, ByteBuffer jsonData)
+	{
+		if (jsonData == null) {
+			return null;
+		}
+	
+		return fromJson(adapter, _ByteReader.get().reset(jsonData.duplicate()));
+	}
+	
+	private <T extends BaseIotData> T fromJson(BaseIotDataTypeAdapter<T> adapter, Reader in)
+	{
+		try {
+			JsonReader reader = new JsonReader(in);
+			reader.setLenient(true);
+	
+			return adapter.read(reader);
+		} catch (IOException | IllegalStateException | NumberFormatException | JsonParseException e) {
+			_Logger.log(Level.WARNING, "Failed to decode JSON data.", e);
+		}
+	
 		return null;
 	}
 	
@@ -0,0 +1,376 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import programmingtheiot.common.ConfigConst;
+
+/**
+ * Encodes / decodes a batch of {@link BaseIotData} instances of the
+ * same type as a single payload, in either JSON or CBOR.
+ * <p>
+ * The batch carries a header with the location ID, latitude, longitude,
+ * elevation, type ID and timestamp of the first entry. Each entry then
+ * only carries its name, the millis elapsed since the previous entry's
+ * timestamp, its sub-class specific properties, and any base property
+ * that differs from the header (a non-default status code included).
+ * <p>
+ * JSON layout (the header must precede the list):
+ * <pre>
+ * {"locationID":"...","latitude":0.0,"longitude":0.0,"elevation":0.0,
+ *  "typeID":3,"timeStampMillis":1608999210000,
+ *  "dataList":[{"name":"TempSensor","timeOffset":0,"value":21.5}, ...]}
+ * </pre>
+ * The CBOR layout is the same, using the integer keys from
+ * {@link IotDataCborCodec}.
+ *
+ */
+final class IotDataBatchCodec
+{
+	// private var's
+	
+	private IotDataCborCodec cborCodec = null;
+	
+	
+	// constructors
+	
+	IotDataBatchCodec(IotDataCborCodec cborCodec)
+	{
+		super();
+		
+		this.cborCodec = cborCodec;
+	}
+	
+	
+	// public methods
+	
+	public <T extends BaseIotData> void writeJson(
+		JsonWriter writer, List<T> dataList, BaseIotDataTypeAdapter<T> adapter) throws IOException
+	{
+		T header = getHeader(dataList);
+		
+		writer.beginObject();
+		
+		if (header != null) {
+			writer.name(ConfigConst.LOCATION_ID_PROP).value(header.getLocationID());
+			BaseIotDataTypeAdapter.writeFloat(writer, ConfigConst.LATITUDE_PROP, header.getLatitude());
+			BaseIotDataTypeAdapter.writeFloat(writer, ConfigConst.LONGITUDE_PROP, header.getLongitude());
+			BaseIotDataTypeAdapter.writeFloat(writer, ConfigConst.ELEVATION_PROP, header.getElevation());
+			writer.name(ConfigConst.TYPE_ID_PROP).value(header.getTypeID());
+			writer.name(ConfigConst.TIMESTAMP_MILLIS_PROP).value(header.getTimeStampMillis());
+		}
+		
+		writer.name(ConfigConst.BATCH_DATA_LIST_PROP).beginArray();
+		
+		long prevMillis = (header != null ? header.getTimeStampMillis() : 0L);
+		
+		for (T data : dataList) {
+			if (data == null) {
+				continue;
+			}
+			
+			writer.beginObject();
+			writer.name(ConfigConst.NAME_PROP).value(data.getName());
+			writer.name(ConfigConst.TIMESTAMP_OFFSET_PROP).value(data.getTimeStampMillis() - prevMillis);
+			
+			if (data.getTypeID() != header.getTypeID()) {
+				writer.name(ConfigConst.TYPE_ID_PROP).value(data.getTypeID());
+			}
+			
+			if (data.getStatusCode() != ConfigConst.DEFAULT_STATUS) {
+				writer.name(ConfigConst.STATUS_CODE_PROP).value(data.getStatusCode());
+			}
+			
+			if (! data.getLocationID().equals(header.getLocationID())) {
+				writer.name(ConfigConst.LOCATION_ID_PROP).value(data.getLocationID());
+			}
+			
+			if (Float.compare(data.getLatitude(), header.getLatitude()) != 0) {
+				BaseIotDataTypeAdapter.writeFloat(writer, ConfigConst.LATITUDE_PROP, data.getLatitude());
+			}
+			
+			if (Float.compare(data.getLongitude(), header.getLongitude()) != 0) {
+				BaseIotDataTypeAdapter.writeFloat(writer, ConfigConst.LONGITUDE_PROP, data.getLongitude());
+			}
+			
+			if (Float.compare(data.getElevation(), header.getElevation()) != 0) {
+				BaseIotDataTypeAdapter.writeFloat(writer, ConfigConst.ELEVATION_PROP, data.getElevation());
+			}
+			
+			adapter.writeFields(writer, data);
+			
+			writer.endObject();
+			
+			prevMillis = data.getTimeStampMillis();
+		}
+		
+		writer.endArray();
+		writer.endObject();
+	}
+	
+	public <T extends BaseIotData> List<T> readJson(
+		JsonReader reader, BaseIotDataTypeAdapter<T> adapter, Supplier<T> factory) throws IOException
+	{
+		BatchHeader header = new BatchHeader();
+		List<T> dataList = new ArrayList<>();
+		
+		reader.beginObject();
+		
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			
+			switch (name) {
+				case ConfigConst.LOCATION_ID_PROP:      header.locationID = reader.nextString(); break;
+				case ConfigConst.LATITUDE_PROP:         header.latitude = (float) reader.nextDouble(); break;
+				case ConfigConst.LONGITUDE_PROP:        header.longitude = (float) reader.nextDouble(); break;
+				case ConfigConst.ELEVATION_PROP:        header.elevation = (float) reader.nextDouble(); break;
+				case ConfigConst.TYPE_ID_PROP:          header.typeID = reader.nextInt(); break;
+				case ConfigConst.TIMESTAMP_MILLIS_PROP: header.timeStampMillis = reader.nextLong(); break;
+				
+				case ConfigConst.BATCH_DATA_LIST_PROP:
+					reader.beginArray();
+					
+					while (reader.hasNext()) {
+						dataList.add(readJsonEntry(reader, adapter, header, factory.get()));
+					}
+					
+					reader.endArray();
+					break;
+					
+				default:
+					reader.skipValue();
+			}
+		}
+		
+		reader.endObject();
+		
+		return dataList;
+	}
+	
+	public <T extends BaseIotData> void writeCbor(CborWriter writer, List<T> dataList)
+	{
+		T header = getHeader(dataList);
+		
+		if (header == null) {
+			writer.writeMapHeader(1);
+			writer.writeInt(IotDataCborCodec.BATCH_DATA_LIST_KEY).writeArrayHeader(0);
+			return;
+		}
+		
+		writer.writeMapHeader(7);
+		writer.writeInt(IotDataCborCodec.LOCATION_ID_KEY).writeString(header.getLocationID());
+		writer.writeInt(IotDataCborCodec.LATITUDE_KEY).writeFloat(header.getLatitude());
+		writer.writeInt(IotDataCborCodec.LONGITUDE_KEY).writeFloat(header.getLongitude());
+		writer.writeInt(IotDataCborCodec.ELEVATION_KEY).writeFloat(header.getElevation());
+		writer.writeInt(IotDataCborCodec.TYPE_ID_KEY).writeInt(header.getTypeID());
+		writer.writeInt(IotDataCborCodec.TIMESTAMP_KEY).writeInt(header.getTimeStampMillis());
+		
+		int count = 0;
+		
+		for (T data : dataList) {
+			if (data != null) ++count;
+		}
+		
+		writer.writeInt(IotDataCborCodec.BATCH_DATA_LIST_KEY).writeArrayHeader(count);
+		
+		long prevMillis = header.getTimeStampMillis();
+		
+		for (T data : dataList) {
+			if (data == null) {
+				continue;
+			}
+			
+			boolean hasTypeID    = data.getTypeID() != header.getTypeID();
+			boolean hasStatus    = data.getStatusCode() != ConfigConst.DEFAULT_STATUS;
+			boolean hasLocation  = ! data.getLocationID().equals(header.getLocationID());
+			boolean hasLatitude  = Float.compare(data.getLatitude(), header.getLatitude()) != 0;
+			boolean hasLongitude = Float.compare(data.getLongitude(), header.getLongitude()) != 0;
+			boolean hasElevation = Float.compare(data.getElevation(), header.getElevation()) != 0;
+			
+			int keyCount = 2 + this.cborCodec.getFieldCount(data) +
+				(hasTypeID ? 1 : 0) + (hasStatus ? 1 : 0) + (hasLocation ? 1 : 0) +
+				(hasLatitude ? 1 : 0) + (hasLongitude ? 1 : 0) + (hasElevation ? 1 : 0);
+			
+			writer.writeMapHeader(keyCount);
+			writer.writeInt(IotDataCborCodec.NAME_KEY).writeString(data.getName());
+			writer.writeInt(IotDataCborCodec.TIMESTAMP_OFFSET_KEY).writeInt(data.getTimeStampMillis() - prevMillis);
+			
+			if (hasTypeID)    writer.writeInt(IotDataCborCodec.TYPE_ID_KEY).writeInt(data.getTypeID());
+			if (hasStatus)    writer.writeInt(IotDataCborCodec.STATUS_CODE_KEY).writeInt(data.getStatusCode());
+			if (hasLocation)  writer.writeInt(IotDataCborCodec.LOCATION_ID_KEY).writeString(data.getLocationID());
+			if (hasLatitude)  writer.writeInt(IotDataCborCodec.LATITUDE_KEY).writeFloat(data.getLatitude());
+			if (hasLongitude) writer.writeInt(IotDataCborCodec.LONGITUDE_KEY).writeFloat(data.getLongitude());
+			if (hasElevation) writer.writeInt(IotDataCborCodec.ELEVATION_KEY).writeFloat(data.getElevation());
+			
+			this.cborCodec.writeFields(writer, data);
+			
+			prevMillis = data.getTimeStampMillis();
+		}
+	}
+	
+	public <T extends BaseIotData> List<T> readCbor(CborReader reader, Supplier<T> factory) throws IOException
+	{
+		BatchHeader header = new BatchHeader();
+		List<T> dataList = new ArrayList<>();
+		
+		int size = reader.readMapHeader();
+		
+		for (int i = 0; i < size; i++) {
+			int key = reader.readInt();
+			
+			if (reader.nextIsNull()) {
+				continue;
+			}
+			
+			switch (key) {
+				case IotDataCborCodec.LOCATION_ID_KEY: header.locationID = reader.readString(); break;
+				case IotDataCborCodec.LATITUDE_KEY:    header.latitude = reader.readFloat(); break;
+				case IotDataCborCodec.LONGITUDE_KEY:   header.longitude = reader.readFloat(); break;
+				case IotDataCborCodec.ELEVATION_KEY:   header.elevation = reader.readFloat(); break;
+				case IotDataCborCodec.TYPE_ID_KEY:     header.typeID = reader.readInt(); break;
+				case IotDataCborCodec.TIMESTAMP_KEY:   header.timeStampMillis = reader.readLong(); break;
+				
+				case IotDataCborCodec.BATCH_DATA_LIST_KEY:
+					for (int j = reader.readArrayHeader(); j > 0; j--) {
+						dataList.add(readCborEntry(reader, header, factory.get()));
+					}
+					
+					break;
+					
+				default:
+					reader.skipValue();
+			}
+		}
+		
+		return dataList;
+	}
+	
+	
+	// private methods
+	
+	private <T extends BaseIotData> T getHeader(List<T> dataList)
+	{
+		for (T data : dataList) {
+			if (data != null) {
+				return data;
+			}
+		}
+		
+		return null;
+	}
+	
+	private <T extends BaseIotData> T readJsonEntry(
+		JsonReader reader, BaseIotDataTypeAdapter<T> adapter, BatchHeader header, T data) throws IOException
+	{
+		long timeOffset = 0L;
+		
+		header.applyTo(data);
+		
+		reader.beginObject();
+		
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			
+			switch (name) {
+				case ConfigConst.NAME_PROP:             data.setName(reader.nextString()); break;
+				case ConfigConst.TIMESTAMP_OFFSET_PROP: timeOffset = reader.nextLong(); break;
+				case ConfigConst.TYPE_ID_PROP:          data.setTypeID(reader.nextInt()); break;
+				case ConfigConst.STATUS_CODE_PROP:      data.setStatusCode(reader.nextInt()); break;
+				case ConfigConst.LOCATION_ID_PROP:      data.setLocationID(reader.nextString()); break;
+				case ConfigConst.LATITUDE_PROP:         data.setLatitude((float) reader.nextDouble()); break;
+				case ConfigConst.LONGITUDE_PROP:        data.setLongitude((float) reader.nextDouble()); break;
+				case ConfigConst.ELEVATION_PROP:        data.setElevation((float) reader.nextDouble()); break;
+				
+				default:
+					if (! adapter.readField(name, reader, data)) reader.skipValue();
+			}
+		}
+		
+		reader.endObject();
+		
+		header.timeStampMillis += timeOffset;
+		data.setTimeStampMillis(header.timeStampMillis);
+		
+		return data;
+	}
+	
+	private <T extends BaseIotData> T readCborEntry(CborReader reader, BatchHeader header, T data) throws IOException
+	{
+		long timeOffset = 0L;
+		
+		header.applyTo(data);
+		
+		int size = reader.readMapHeader();
+		
+		for (int i = 0; i < size; i++) {
+			int key = reader.readInt();
+			
+			if (reader.nextIsNull()) {
+				continue;
+			}
+			
+			if (key == IotDataCborCodec.TIMESTAMP_OFFSET_KEY) {
+				timeOffset = reader.readLong();
+			} else if (! this.cborCodec.readBaseField(key, reader, data) && ! this.cborCodec.readField(key, reader, data)) {
+				reader.skipValue();
+			}
+		}
+		
+		header.timeStampMillis += timeOffset;
+		data.setTimeStampMillis(header.timeStampMillis);
+		
+		return data;
+	}
+	
+	
+	// inner classes
+	
+	/**
+	 * The shared header values of a batch while it's being decoded.
+	 * {@link #timeStampMillis} tracks the timestamp of the most recently
+	 * decoded entry, since entry offsets are relative to their predecessor.
+	 */
+	private static final class BatchHeader
+	{
+		String locationID      = null;
+		float  latitude        = ConfigConst.DEFAULT_LAT;
+		float  longitude       = ConfigConst.DEFAULT_LON;
+		float  elevation       = ConfigConst.DEFAULT_ELEVATION;
+		int    typeID          = ConfigConst.DEFAULT_TYPE_ID;
+		long   timeStampMillis = 0L;
+		
+		void applyTo(BaseIotData data)
+		{
+			data.setLocationID(this.locationID);
+			data.setLatitude(this.latitude);
+			data.setLongitude(this.longitude);
+			data.setElevation(this.elevation);
+			data.setTypeID(this.typeID);
+		}
+	}
+	
+}
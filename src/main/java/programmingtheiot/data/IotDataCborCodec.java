@@ -0,0 +1,280 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * CBOR encode / decode for all {@link BaseIotData} sub-classes.
+ * <p>
+ * Each instance is encoded as a CBOR map keyed by small unsigned
+ * integers instead of property names, so a key costs one byte on
+ * the wire. The key assignments below are part of the wire format
+ * and must not be renumbered; new properties get new keys. Unknown
+ * keys are skipped on decode.
+ * <p>
+ * The timestamp is sent as millis since the Epoch only; the ISO 8601
+ * string is re-created on decode.
+ *
+ */
+final class IotDataCborCodec
+{
+	// static
+	
+	static final int NAME_KEY        = 0;
+	static final int TYPE_ID_KEY     = 1;
+	static final int TIMESTAMP_KEY   = 2;
+	static final int STATUS_CODE_KEY = 3;
+	static final int LOCATION_ID_KEY = 4;
+	static final int LATITUDE_KEY    = 5;
+	static final int LONGITUDE_KEY   = 6;
+	static final int ELEVATION_KEY   = 7;
+	
+	static final int VALUE_KEY       = 10;
+	static final int COMMAND_KEY     = 11;
+	static final int IS_RESPONSE_KEY = 12;
+	static final int STATE_DATA_KEY  = 13;
+	static final int CPU_UTIL_KEY    = 14;
+	static final int DISK_UTIL_KEY   = 15;
+	static final int MEM_UTIL_KEY    = 16;
+	static final int SENSOR_DATA_LIST_KEY      = 17;
+	static final int SYSTEM_PERF_DATA_LIST_KEY = 18;
+	
+	static final int BATCH_DATA_LIST_KEY       = 19;
+	static final int TIMESTAMP_OFFSET_KEY      = 20;
+	
+	private static final int BASE_KEY_COUNT = 8;
+	
+	
+	// public methods
+	
+	/**
+	 * Writes 'data' as a CBOR map.
+	 * 
+	 * @param writer The CBOR writer.
+	 * @param data The instance to write. Must be one of the sub-classes in this package.
+	 * @return boolean True if written; false if the type isn't supported.
+	 */
+	public boolean write(CborWriter writer, BaseIotData data)
+	{
+		int fieldCount = getFieldCount(data);
+		
+		if (fieldCount < 0) {
+			return false;
+		}
+		
+		writer.writeMapHeader(BASE_KEY_COUNT + fieldCount);
+		
+		writer.writeInt(NAME_KEY).writeString(data.getName());
+		writer.writeInt(TYPE_ID_KEY).writeInt(data.getTypeID());
+		writer.writeInt(TIMESTAMP_KEY).writeInt(data.getTimeStampMillis());
+		writer.writeInt(STATUS_CODE_KEY).writeInt(data.getStatusCode());
+		writer.writeInt(LOCATION_ID_KEY).writeString(data.getLocationID());
+		writer.writeInt(LATITUDE_KEY).writeFloat(data.getLatitude());
+		writer.writeInt(LONGITUDE_KEY).writeFloat(data.getLongitude());
+		writer.writeInt(ELEVATION_KEY).writeFloat(data.getElevation());
+		
+		writeFields(writer, data);
+		
+		return true;
+	}
+	
+	/**
+	 * Reads the next CBOR map into 'data'. Unknown keys are skipped. The
+	 * timestamp is applied last so the sub-class setters (which refresh
+	 * the timestamp) don't overwrite the decoded value.
+	 * 
+	 * @param reader The CBOR reader.
+	 * @param data The instance to populate.
+	 * @return T 'data', for convenience.
+	 * @throws IOException If the data is malformed.
+	 */
+	public <T extends BaseIotData> T read(CborReader reader, T data) throws IOException
+	{
+		int size = reader.readMapHeader();
+		long timeStampMillis = -1L;
+		
+		for (int i = 0; i < size; i++) {
+			int key = reader.readInt();
+			
+			if (reader.nextIsNull()) {
+				continue;
+			}
+			
+			if (key == TIMESTAMP_KEY) {
+				timeStampMillis = reader.readLong();
+			} else if (! readBaseField(key, reader, data) && ! readField(key, reader, data)) {
+				reader.skipValue();
+			}
+		}
+		
+		if (timeStampMillis >= 0L) {
+			data.setTimeStampMillis(timeStampMillis);
+		}
+		
+		return data;
+	}
+	
+	
+	// package methods
+	
+	/**
+	 * Returns the number of sub-class specific keys written by
+	 * {@link #writeFields(CborWriter, BaseIotData)}.
+	 * 
+	 * @param data The instance.
+	 * @return int The key count, or -1 if the type isn't supported.
+	 */
+	int getFieldCount(BaseIotData data)
+	{
+		if (data instanceof SystemStateData) {
+			return 3;
+		} else if (data instanceof ActuatorData) {
+			return 4;
+		} else if (data instanceof SystemPerformanceData) {
+			return 3;
+		} else if (data instanceof SensorData) {
+			return 1;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Writes the sub-class specific key / value pairs of 'data'. The
+	 * enclosing map header has already been written by the caller.
+	 * 
+	 * @param writer The CBOR writer.
+	 * @param data The instance to write.
+	 */
+	void writeFields(CborWriter writer, BaseIotData data)
+	{
+		if (data instanceof SystemStateData) {
+			SystemStateData sData = (SystemStateData) data;
+			
+			writer.writeInt(COMMAND_KEY).writeInt(sData.getCommand());
+			
+			List<SensorData> sensorDataList = sData.getSensorDataList();
+			writer.writeInt(SENSOR_DATA_LIST_KEY).writeArrayHeader(sensorDataList.size());
+			
+			for (SensorData sensorData : sensorDataList) {
+				write(writer, sensorData);
+			}
+			
+			List<SystemPerformanceData> sysPerfDataList = sData.getSystemPerformanceDataList();
+			writer.writeInt(SYSTEM_PERF_DATA_LIST_KEY).writeArrayHeader(sysPerfDataList.size());
+			
+			for (SystemPerformanceData sysPerfData : sysPerfDataList) {
+				write(writer, sysPerfData);
+			}
+		} else if (data instanceof ActuatorData) {
+			ActuatorData aData = (ActuatorData) data;
+			
+			writer.writeInt(COMMAND_KEY).writeInt(aData.getCommand());
+			writer.writeInt(VALUE_KEY).writeFloat(aData.getValue());
+			writer.writeInt(IS_RESPONSE_KEY).writeBoolean(aData.isResponseFlagEnabled());
+			writer.writeInt(STATE_DATA_KEY).writeString(aData.getStateData());
+		} else if (data instanceof SystemPerformanceData) {
+			SystemPerformanceData sData = (SystemPerformanceData) data;
+			
+			writer.writeInt(CPU_UTIL_KEY).writeFloat(sData.getCpuUtilization());
+			writer.writeInt(DISK_UTIL_KEY).writeFloat(sData.getDiskUtilization());
+			writer.writeInt(MEM_UTIL_KEY).writeFloat(sData.getMemoryUtilization());
+		} else if (data instanceof SensorData) {
+			writer.writeInt(VALUE_KEY).writeFloat(((SensorData) data).getValue());
+		}
+	}
+	
+	/**
+	 * Reads a sub-class specific value.
+	 * 
+	 * @param key The key just read from 'reader'.
+	 * @param reader The CBOR reader, positioned at the value.
+	 * @param data The instance to populate.
+	 * @return boolean True if the key was consumed; false if it's unknown.
+	 * @throws IOException If the data is malformed.
+	 */
+	boolean readField(int key, CborReader reader, BaseIotData data) throws IOException
+	{
+		if (data instanceof SystemStateData) {
+			SystemStateData sData = (SystemStateData) data;
+			
+			switch (key) {
+				case COMMAND_KEY:
+					sData.setCommand(reader.readInt());
+					return true;
+					
+				case SENSOR_DATA_LIST_KEY:
+					for (int i = reader.readArrayHeader(); i > 0; i--) {
+						sData.addSensorData(read(reader, new SensorData()));
+					}
+					
+					return true;
+					
+				case SYSTEM_PERF_DATA_LIST_KEY:
+					for (int i = reader.readArrayHeader(); i > 0; i--) {
+						sData.addSystemPerformanceData(read(reader, new SystemPerformanceData()));
+					}
+					
+					return true;
+			}
+		} else if (data instanceof ActuatorData) {
+			ActuatorData aData = (ActuatorData) data;
+			
+			switch (key) {
+				case COMMAND_KEY:     aData.setCommand(reader.readInt()); return true;
+				case VALUE_KEY:       aData.setValue(reader.readFloat()); return true;
+				case STATE_DATA_KEY:  aData.setStateData(reader.readString(aData.getStateData())); return true;
+				case IS_RESPONSE_KEY: if (reader.readBoolean()) aData.setAsResponse(); return true;
+			}
+		} else if (data instanceof SystemPerformanceData) {
+			SystemPerformanceData sData = (SystemPerformanceData) data;
+			
+			switch (key) {
+				case CPU_UTIL_KEY:  sData.setCpuUtilization(reader.readFloat()); return true;
+				case DISK_UTIL_KEY: sData.setDiskUtilization(reader.readFloat()); return true;
+				case MEM_UTIL_KEY:  sData.setMemoryUtilization(reader.readFloat()); return true;
+			}
+		} else if (data instanceof SensorData) {
+			if (key == VALUE_KEY) {
+				((SensorData) data).setValue(reader.readFloat());
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Reads a {@link BaseIotData} value, excluding the timestamp.
+	 * 
+	 * @param key The key just read from 'reader'.
+	 * @param reader The CBOR reader, positioned at the value.
+	 * @param data The instance to populate.
+	 * @return boolean True if the key was consumed; false otherwise.
+	 * @throws IOException If the data is malformed.
+	 */
+	boolean readBaseField(int key, CborReader reader, BaseIotData data) throws IOException
+	{
+		switch (key) {
+			case NAME_KEY:        data.setName(reader.readString(data.getName())); return true;
+			case TYPE_ID_KEY:     data.setTypeID(reader.readInt()); return true;
+			case STATUS_CODE_KEY: data.setStatusCode(reader.readInt()); return true;
+			case LOCATION_ID_KEY: data.setLocationID(reader.readString(data.getLocationID())); return true;
+			case LATITUDE_KEY:    data.setLatitude(reader.readFloat()); return true;
+			case LONGITUDE_KEY:   data.setLongitude(reader.readFloat()); return true;
+			case ELEVATION_KEY:   data.setElevation(reader.readFloat()); return true;
+			
+			default:
+				return false;
+		}
+	}
+	
+}
@@ -0,0 +1,120 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * A simple per-thread object pool for {@link BaseIotData} instances,
+ * intended for the message ingest path: acquire an instance, decode
+ * into it via one of the {@link DataUtil} decode-into methods, process
+ * it, then release it.
+ * <p>
+ * Each thread has its own pool, so {@link #acquire()} and
+ * {@link #release(BaseIotData)} are lock-free. An instance released on
+ * a different thread than it was acquired on is added to the releasing
+ * thread's pool. Released instances are reset to their default values;
+ * callers must not keep a reference to an instance after releasing it.
+ *
+ * @param <T> The pooled type.
+ */
+public final class IotDataObjectPool<T extends BaseIotData>
+{
+	// static
+	
+	public static final int DEFAULT_MAX_POOL_SIZE = 64;
+	
+	
+	// private var's
+	
+	private final Supplier<T> factory;
+	private final int         maxPoolSize;
+	
+	private final ThreadLocal<ArrayDeque<T>> pool =
+		ThreadLocal.withInitial(ArrayDeque::new);
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param factory Creates a new instance when the pool is empty.
+	 */
+	public IotDataObjectPool(Supplier<T> factory)
+	{
+		this(factory, DEFAULT_MAX_POOL_SIZE);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param factory Creates a new instance when the pool is empty.
+	 * @param maxPoolSize The maximum number of idle instances kept per thread.
+	 */
+	public IotDataObjectPool(Supplier<T> factory, int maxPoolSize)
+	{
+		super();
+		
+		if (factory == null) {
+			throw new IllegalArgumentException("Factory must not be null.");
+		}
+		
+		this.factory     = factory;
+		this.maxPoolSize = (maxPoolSize > 0 ? maxPoolSize : DEFAULT_MAX_POOL_SIZE);
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Returns an idle instance from the calling thread's pool, or a new
+	 * one if the pool is empty.
+	 * 
+	 * @return T An instance with default property values.
+	 */
+	public T acquire()
+	{
+		T data = this.pool.get().pollLast();
+		
+		return (data != null ? data : this.factory.get());
+	}
+	
+	/**
+	 * Resets 'data' and returns it to the calling thread's pool. If the
+	 * pool is full, the instance is dropped.
+	 * 
+	 * @param data The instance to release. Ignored if null.
+	 */
+	public void release(T data)
+	{
+		if (data == null) {
+			return;
+		}
+		
+		ArrayDeque<T> idle = this.pool.get();
+		
+		if (idle.size() < this.maxPoolSize) {
+			data.resetData();
+			idle.addLast(data);
+		}
+	}
+	
+	/**
+	 * Returns the number of idle instances in the calling thread's pool.
+	 * 
+	 * @return int
+	 */
+	public int getIdleCount()
+	{
+		return this.pool.get().size();
+	}
+	
+}
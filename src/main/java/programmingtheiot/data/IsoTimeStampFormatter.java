@@ -0,0 +1,120 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats an Epoch-based timestamp as an ISO 8601 UTC string, producing
+ * the same output as {@link DateTimeFormatter#ISO_INSTANT} (e.g.
+ * 2020-12-27T10:13:30.123Z) without creating an Instant or going through
+ * the general-purpose DateTimeFormatter machinery.
+ * <p>
+ * Years outside 0000 - 9999 are delegated to DateTimeFormatter.
+ *
+ */
+final class IsoTimeStampFormatter
+{
+	// static
+	
+	private static final long SECONDS_PER_DAY = 86400L;
+	
+	// 0000-01-01T00:00:00Z and 10000-01-01T00:00:00Z
+	private static final long MIN_EPOCH_SECOND = -62167219200L;
+	private static final long MAX_EPOCH_SECOND = 253402300800L;
+	
+	
+	// constructors
+	
+	private IsoTimeStampFormatter()
+	{
+		super();
+	}
+	
+	
+	// package methods
+	
+	/**
+	 * Formats the given timestamp.
+	 * 
+	 * @param millis The milliseconds since the Epoch.
+	 * @param nanoAdjust The additional nanoseconds (0 - 999,999) beyond 'millis'.
+	 * @return String The ISO 8601 representation.
+	 */
+	static String format(long millis, int nanoAdjust)
+	{
+		long epochSecond = Math.floorDiv(millis, 1000L);
+		int  nanoOfSecond = (int) Math.floorMod(millis, 1000L) * 1000000 + nanoAdjust;
+		
+		if (epochSecond < MIN_EPOCH_SECOND || epochSecond >= MAX_EPOCH_SECOND) {
+			return DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(epochSecond, nanoOfSecond));
+		}
+		
+		long epochDay  = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+		int  secOfDay  = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+		
+		// civil-from-days (proleptic Gregorian calendar), based on 400-year eras
+		long z     = epochDay + 719468L;
+		long era   = Math.floorDiv(z, 146097L);
+		int  doe   = (int) (z - era * 146097L);
+		int  yoe   = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int  doy   = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int  mp    = (5 * doy + 2) / 153;
+		int  day   = doy - (153 * mp + 2) / 5 + 1;
+		int  month = (mp < 10 ? mp + 3 : mp - 9);
+		int  year  = (int) (yoe + era * 400L) + (month <= 2 ? 1 : 0);
+		
+		char[] buf = new char[30];
+		int pos = 0;
+		
+		pos = appendDigits(buf, pos, year, 4);
+		buf[pos++] = '-';
+		pos = appendDigits(buf, pos, month, 2);
+		buf[pos++] = '-';
+		pos = appendDigits(buf, pos, day, 2);
+		buf[pos++] = 'T';
+		pos = appendDigits(buf, pos, secOfDay / 3600, 2);
+		buf[pos++] = ':';
+		pos = appendDigits(buf, pos, (secOfDay / 60) % 60, 2);
+		buf[pos++] = ':';
+		pos = appendDigits(buf, pos, secOfDay % 60, 2);
+		
+		// same fraction grouping as ISO_INSTANT: none, 3, 6 or 9 digits
+		if (nanoOfSecond > 0) {
+			buf[pos++] = '.';
+			
+			if (nanoOfSecond % 1000000 == 0) {
+				pos = appendDigits(buf, pos, nanoOfSecond / 1000000, 3);
+			} else if (nanoOfSecond % 1000 == 0) {
+				pos = appendDigits(buf, pos, nanoOfSecond / 1000, 6);
+			} else {
+				pos = appendDigits(buf, pos, nanoOfSecond, 9);
+			}
+		}
+		
+		buf[pos++] = 'Z';
+		
+		return new String(buf, 0, pos);
+	}
+	
+	
+	// private methods
+	
+	private static int appendDigits(char[] buf, int pos, int val, int width)
+	{
+		for (int i = pos + width - 1; i >= pos; i--) {
+			buf[i] = (char) ('0' + (val % 10));
+			val /= 10;
+		}
+		
+		return pos + width;
+	}
+	
+}
@@ -20,9 +20,13 @@ public class SensorData extends BaseIotData implements Serializable
 {
 	// static
 	
+	private static final long serialVersionUID = 8372943015830218541L;
+	
 	
 	// private var's
 	
+	private float value = ConfigConst.DEFAULT_VAL;
+    
     
 	// constructors
 	
@@ -34,6 +38,8 @@ public class SensorData extends BaseIotData implements Serializable
 	public SensorData(int sensorType)
 	{
 		super();
+		
+		super.setTypeID(sensorType);
 	}
 	
 	
@@ -41,11 +47,14 @@ public class SensorData extends BaseIotData implements Serializable
 	
 	public float getValue()
 	{
-		return 0.0f;
+		return this.value;
 	}
 	
 	public void setValue(float val)
 	{
+		super.updateTimeStamp();
+		
+		this.value = val;
 	}
 	
 	/**
@@ -72,6 +81,25 @@ public class SensorData extends BaseIotData implements Serializable
 	 */
 	protected void handleUpdateData(BaseIotData data)
 	{
+		if (data instanceof SensorData) {
+			SensorData sData = (SensorData) data;
+			
+			this.setValue(sData.getValue());
+		}
+	}
+	
+	
+	// package methods
+	
+	/* (non-Javadoc)
+	 * @see programmingtheiot.data.BaseIotData#resetData()
+	 */
+	@Override
+	void resetData()
+	{
+		super.resetData();
+		
+		this.value = ConfigConst.DEFAULT_VAL;
 	}
 	
 }
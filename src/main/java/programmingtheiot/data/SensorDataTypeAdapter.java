@@ -0,0 +1,49 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import programmingtheiot.common.ConfigConst;
+
+/**
+ * Streaming Gson type adapter for {@link SensorData}.
+ *
+ */
+class SensorDataTypeAdapter extends BaseIotDataTypeAdapter<SensorData>
+{
+	// protected methods
+	
+	@Override
+	protected SensorData createInstance()
+	{
+		return new SensorData();
+	}
+	
+	@Override
+	protected void writeFields(JsonWriter writer, SensorData data) throws IOException
+	{
+		writeFloat(writer, ConfigConst.VALUE_PROP, data.getValue());
+	}
+	
+	@Override
+	protected boolean readField(String name, JsonReader reader, SensorData data) throws IOException
+	{
+		if (ConfigConst.VALUE_PROP.equals(name)) {
+			data.setValue((float) reader.nextDouble());
+			return true;
+		}
+		
+		return false;
+	}
+	
+}
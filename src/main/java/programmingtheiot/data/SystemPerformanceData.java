@@ -20,15 +20,24 @@ public class SystemPerformanceData extends BaseIotData implements Serializable
 {
 	// static
 	
+	private static final long serialVersionUID = -4829513478520394785L;
+	
 	
 	// private var's
 	
+	private float cpuUtil  = ConfigConst.DEFAULT_VAL;
+	private float diskUtil = ConfigConst.DEFAULT_VAL;
+	private float memUtil  = ConfigConst.DEFAULT_VAL;
+    
     
 	// constructors
 	
 	public SystemPerformanceData()
 	{
 		super();
+		
+		super.setName(ConfigConst.SYS_PERF_DATA);
+		super.setTypeID(ConfigConst.SYSTEM_PERF_TYPE);
 	}
 	
 	
@@ -36,29 +45,38 @@ public class SystemPerformanceData extends BaseIotData implements Serializable
 	
 	public float getCpuUtilization()
 	{
-		return 0.0f;
+		return this.cpuUtil;
 	}
 	
 	public float getDiskUtilization()
 	{
-		return 0.0f;
+		return this.diskUtil;
 	}
 	
 	public float getMemoryUtilization()
 	{
-		return 0.0f;
+		return this.memUtil;
 	}
 	
 	public void setCpuUtilization(float val)
 	{
+		super.updateTimeStamp();
+		
+		this.cpuUtil = val;
 	}
 	
 	public void setDiskUtilization(float val)
 	{
+		super.updateTimeStamp();
+		
+		this.diskUtil = val;
 	}
 	
 	public void setMemoryUtilization(float val)
 	{
+		super.updateTimeStamp();
+		
+		this.memUtil = val;
 	}
 	
 	/**
@@ -87,6 +105,32 @@ public class SystemPerformanceData extends BaseIotData implements Serializable
 	 */
 	protected void handleUpdateData(BaseIotData data)
 	{
+		if (data instanceof SystemPerformanceData) {
+			SystemPerformanceData sData = (SystemPerformanceData) data;
+			
+			this.setCpuUtilization(sData.getCpuUtilization());
+			this.setDiskUtilization(sData.getDiskUtilization());
+			this.setMemoryUtilization(sData.getMemoryUtilization());
+		}
+	}
+	
+	
+	// package methods
+	
+	/* (non-Javadoc)
+	 * @see programmingtheiot.data.BaseIotData#resetData()
+	 */
+	@Override
+	void resetData()
+	{
+		super.resetData();
+		
+		super.setName(ConfigConst.SYS_PERF_DATA);
+		super.setTypeID(ConfigConst.SYSTEM_PERF_TYPE);
+		
+		this.cpuUtil  = ConfigConst.DEFAULT_VAL;
+		this.diskUtil = ConfigConst.DEFAULT_VAL;
+		this.memUtil  = ConfigConst.DEFAULT_VAL;
 	}
 	
 }
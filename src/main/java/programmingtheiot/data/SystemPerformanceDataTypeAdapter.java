@@ -0,0 +1,58 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import programmingtheiot.common.ConfigConst;
+
+/**
+ * Streaming Gson type adapter for {@link SystemPerformanceData}.
+ *
+ */
+class SystemPerformanceDataTypeAdapter extends BaseIotDataTypeAdapter<SystemPerformanceData>
+{
+	// protected methods
+	
+	@Override
+	protected SystemPerformanceData createInstance()
+	{
+		return new SystemPerformanceData();
+	}
+	
+	@Override
+	protected void writeFields(JsonWriter writer, SystemPerformanceData data) throws IOException
+	{
+		writeFloat(writer, ConfigConst.CPU_UTIL_PROP, data.getCpuUtilization());
+		writeFloat(writer, ConfigConst.DISK_UTIL_PROP, data.getDiskUtilization());
+		writeFloat(writer, ConfigConst.MEM_UTIL_PROP, data.getMemoryUtilization());
+	}
+	
+	@Override
+	protected boolean readField(String name, JsonReader reader, SystemPerformanceData data) throws IOException
+	{
+		switch (name) {
+			case ConfigConst.CPU_UTIL_PROP:
+				data.setCpuUtilization((float) reader.nextDouble()); return true;
+				
+			case ConfigConst.DISK_UTIL_PROP:
+				data.setDiskUtilization((float) reader.nextDouble()); return true;
+				
+			case ConfigConst.MEM_UTIL_PROP:
+				data.setMemoryUtilization((float) reader.nextDouble()); return true;
+				
+			default:
+				return false;
+		}
+	}
+	
+}
@@ -26,9 +26,15 @@ public class SystemStateData extends BaseIotData implements Serializable
 {
 	// static
 	
+	private static final long serialVersionUID = 2093650836227561408L;
+	
 	
 	// private var's
 	
+	private int command = ConfigConst.DEFAULT_COMMAND;
+	
+	private List<SensorData>            sensorDataList     = new ArrayList<>();
+	private List<SystemPerformanceData> sysPerfDataList    = new ArrayList<>();
     
     
 	// constructors
@@ -36,6 +42,8 @@ public class SystemStateData extends BaseIotData implements Serializable
 	public SystemStateData()
 	{
 		super();
+		
+		super.setName(ConfigConst.SYS_STATE_DATA);
 	}
 	
 	
@@ -43,31 +51,46 @@ public class SystemStateData extends BaseIotData implements Serializable
 	
 	public boolean addSensorData(SensorData data)
 	{
+		if (data != null) {
+			super.updateTimeStamp();
+			
+			return this.sensorDataList.add(data);
+		}
+		
 		return false;
 	}
 	
 	public boolean addSystemPerformanceData(SystemPerformanceData data)
 	{
+		if (data != null) {
+			super.updateTimeStamp();
+			
+			return this.sysPerfDataList.add(data);
+		}
+		
 		return false;
 	}
 	
 	public int getCommand()
 	{
-		return 0;
+		return this.command;
 	}
 	
 	public List<SensorData> getSensorDataList()
 	{
-		return null;
+		return this.sensorDataList;
 	}
 	
 	public List<SystemPerformanceData> getSystemPerformanceDataList()
 	{
-		return null;
+		return this.sysPerfDataList;
 	}
 	
 	public void setCommand(int actionCmd)
 	{
+		super.updateTimeStamp();
+		
+		this.command = actionCmd;
 	}
 	
 	/**
@@ -96,6 +119,35 @@ public class SystemStateData extends BaseIotData implements Serializable
 	 */
 	protected void handleUpdateData(BaseIotData data)
 	{
+		if (data instanceof SystemStateData) {
+			SystemStateData sData = (SystemStateData) data;
+			
+			this.setCommand(sData.getCommand());
+			
+			this.sensorDataList.clear();
+			this.sensorDataList.addAll(sData.getSensorDataList());
+			
+			this.sysPerfDataList.clear();
+			this.sysPerfDataList.addAll(sData.getSystemPerformanceDataList());
+		}
+	}
+	
+	
+	// package methods
+	
+	/* (non-Javadoc)
+	 * @see programmingtheiot.data.BaseIotData#resetData()
+	 */
+	@Override
+	void resetData()
+	{
+		super.resetData();
+		
+		super.setName(ConfigConst.SYS_STATE_DATA);
+		
+		this.command = ConfigConst.DEFAULT_COMMAND;
+		this.sensorDataList.clear();
+		this.sysPerfDataList.clear();
 	}
 	
 }
@@ -0,0 +1,112 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import programmingtheiot.common.ConfigConst;
+
+/**
+ * Streaming Gson type adapter for {@link SystemStateData}. The nested
+ * sensor and system performance lists are delegated to their
+ * respective adapters.
+ *
+ */
+class SystemStateDataTypeAdapter extends BaseIotDataTypeAdapter<SystemStateData>
+{
+	// private var's
+	
+	private SensorDataTypeAdapter            sensorDataAdapter  = null;
+	private SystemPerformanceDataTypeAdapter sysPerfDataAdapter = null;
+	
+	
+	// constructors
+	
+	SystemStateDataTypeAdapter(
+		SensorDataTypeAdapter sensorDataAdapter, SystemPerformanceDataTypeAdapter sysPerfDataAdapter)
+	{
+		super();
+		
+		this.sensorDataAdapter  = sensorDataAdapter;
+		this.sysPerfDataAdapter = sysPerfDataAdapter;
+	}
+	
+	
+	// protected methods
+	
+	@Override
+	protected SystemStateData createInstance()
+	{
+		return new SystemStateData();
+	}
+	
+	@Override
+	protected void writeFields(JsonWriter writer, SystemStateData data) throws IOException
+	{
+		writer.name(ConfigConst.COMMAND_PROP).value(data.getCommand());
+		
+		writer.name(ConfigConst.SENSOR_DATA_LIST_PROP).beginArray();
+		
+		for (SensorData sensorData : data.getSensorDataList()) {
+			this.sensorDataAdapter.write(writer, sensorData);
+		}
+		
+		writer.endArray();
+		
+		writer.name(ConfigConst.SYSTEM_PERF_DATA_LIST_PROP).beginArray();
+		
+		for (SystemPerformanceData sysPerfData : data.getSystemPerformanceDataList()) {
+			this.sysPerfDataAdapter.write(writer, sysPerfData);
+		}
+		
+		writer.endArray();
+	}
+	
+	@Override
+	protected boolean readField(String name, JsonReader reader, SystemStateData data) throws IOException
+	{
+		switch (name) {
+			case ConfigConst.COMMAND_PROP:
+				data.setCommand(reader.nextInt()); return true;
+				
+			case ConfigConst.SENSOR_DATA_LIST_PROP:
+				readList(reader, this.sensorDataAdapter, data.getSensorDataList()); return true;
+				
+			case ConfigConst.SYSTEM_PERF_DATA_LIST_PROP:
+				readList(reader, this.sysPerfDataAdapter, data.getSystemPerformanceDataList()); return true;
+				
+			default:
+				return false;
+		}
+	}
+	
+	
+	// private methods
+	
+	private <E extends BaseIotData> void readList(
+		JsonReader reader, BaseIotDataTypeAdapter<E> adapter, List<E> dataList) throws IOException
+	{
+		reader.beginArray();
+		
+		while (reader.hasNext()) {
+			E entry = adapter.read(reader);
+			
+			if (entry != null) {
+				dataList.add(entry);
+			}
+		}
+		
+		reader.endArray();
+	}
+	
+}
@@ -0,0 +1,196 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A reusable {@link Writer} that encodes characters straight into a
+ * growable UTF-8 byte array. Unlike {@link java.io.OutputStreamWriter}
+ * there's no intermediate char or byte buffer, and the backing array
+ * is kept across {@link #reset()} calls so a per-thread instance
+ * doesn't allocate in steady state.
+ * <p>
+ * Not thread-safe.
+ *
+ */
+final class Utf8ByteArrayWriter extends Writer
+{
+	// static
+	
+	private static final int DEFAULT_CAPACITY = 512;
+	
+	/**
+	 * Arrays larger than this are dropped on {@link #reset()} so a single
+	 * oversized message doesn't pin memory to the thread forever.
+	 */
+	private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+	
+	
+	// private var's
+	
+	private byte[] buf   = new byte[DEFAULT_CAPACITY];
+	private int    count = 0;
+	private char   highSurrogate = 0;
+	
+	
+	// public methods
+	
+	@Override
+	public void write(int c)
+	{
+		writeChar((char) c);
+	}
+	
+	@Override
+	public void write(char[] cbuf, int off, int len)
+	{
+		ensureCapacity(len);
+		
+		for (int i = off; i < off + len; i++) {
+			writeChar(cbuf[i]);
+		}
+	}
+	
+	@Override
+	public void write(String str, int off, int len)
+	{
+		ensureCapacity(len);
+		
+		for (int i = off; i < off + len; i++) {
+			writeChar(str.charAt(i));
+		}
+	}
+	
+	@Override
+	public void flush()
+	{
+		// nothing to do
+	}
+	
+	@Override
+	public void close()
+	{
+		// nothing to do
+	}
+	
+	/**
+	 * Clears the content so the instance can be reused.
+	 * 
+	 */
+	public void reset()
+	{
+		this.count = 0;
+		this.highSurrogate = 0;
+		
+		if (this.buf.length > MAX_RETAINED_CAPACITY) {
+			this.buf = new byte[DEFAULT_CAPACITY];
+		}
+	}
+	
+	/**
+	 * Returns the number of encoded bytes.
+	 * 
+	 * @return int
+	 */
+	public int size()
+	{
+		return this.count;
+	}
+	
+	/**
+	 * Returns a copy of the encoded bytes.
+	 * 
+	 * @return byte[]
+	 */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(this.buf, this.count);
+	}
+	
+	/**
+	 * Copies the encoded bytes into 'dest' at its current position.
+	 * 
+	 * @param dest The destination buffer.
+	 * @return boolean True if the bytes fit and were copied; false otherwise
+	 * (in which case 'dest' is left untouched).
+	 */
+	public boolean writeTo(ByteBuffer dest)
+	{
+		if (dest.remaining() < this.count) {
+			return false;
+		}
+		
+		dest.put(this.buf, 0, this.count);
+		
+		return true;
+	}
+	
+	
+	// private methods
+	
+	private void writeChar(char c)
+	{
+		if (this.highSurrogate != 0) {
+			char high = this.highSurrogate;
+			this.highSurrogate = 0;
+			
+			if (Character.isLowSurrogate(c)) {
+				writeCodePoint(Character.toCodePoint(high, c));
+				return;
+			}
+			
+			// unpaired high surrogate
+			writeCodePoint('?');
+		}
+		
+		if (c < 0x80) {
+			ensureCapacity(1);
+			this.buf[this.count++] = (byte) c;
+		} else if (Character.isHighSurrogate(c)) {
+			this.highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			// unpaired low surrogate
+			writeCodePoint('?');
+		} else {
+			writeCodePoint(c);
+		}
+	}
+	
+	private void writeCodePoint(int cp)
+	{
+		ensureCapacity(4);
+		
+		if (cp < 0x80) {
+			this.buf[this.count++] = (byte) cp;
+		} else if (cp < 0x800) {
+			this.buf[this.count++] = (byte) (0xC0 | (cp >> 6));
+			this.buf[this.count++] = (byte) (0x80 | (cp & 0x3F));
+		} else if (cp < 0x10000) {
+			this.buf[this.count++] = (byte) (0xE0 | (cp >> 12));
+			this.buf[this.count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			this.buf[this.count++] = (byte) (0x80 | (cp & 0x3F));
+		} else {
+			this.buf[this.count++] = (byte) (0xF0 | (cp >> 18));
+			this.buf[this.count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			this.buf[this.count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			this.buf[this.count++] = (byte) (0x80 | (cp & 0x3F));
+		}
+	}
+	
+	private void ensureCapacity(int extra)
+	{
+		if (this.count + extra > this.buf.length) {
+			this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length * 2, this.count + extra));
+		}
+	}
+	
+}
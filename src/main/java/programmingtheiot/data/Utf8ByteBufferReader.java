@@ -0,0 +1,107 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.data;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable {@link Reader} that decodes UTF-8 directly from a
+ * {@link ByteBuffer}, so a payload received as bytes (MQTT, CoAP)
+ * can be parsed without first materializing it as a String.
+ * <p>
+ * Not thread-safe.
+ *
+ */
+final class Utf8ByteBufferReader extends Reader
+{
+	// private var's
+	
+	private ByteBuffer source = null;
+	private char       pendingLowSurrogate = 0;
+	
+	
+	// public methods
+	
+	/**
+	 * Sets the source to decode from. Bytes between the source's position
+	 * and limit are consumed as they're read.
+	 * 
+	 * @param source The source buffer.
+	 * @return Utf8ByteBufferReader This instance, for convenience.
+	 */
+	public Utf8ByteBufferReader reset(ByteBuffer source)
+	{
+		this.source = source;
+		this.pendingLowSurrogate = 0;
+		
+		return this;
+	}
+	
+	@Override
+	public int read(char[] cbuf, int off, int len)
+	{
+		if (len == 0) {
+			return 0;
+		}
+		
+		int n = 0;
+		
+		if (this.pendingLowSurrogate != 0) {
+			cbuf[off + n++] = this.pendingLowSurrogate;
+			this.pendingLowSurrogate = 0;
+		}
+		
+		while (n < len && this.source.hasRemaining()) {
+			int b = this.source.get() & 0xFF;
+			int cp;
+			
+			if (b < 0x80) {
+				cp = b;
+			} else if (b < 0xE0) {
+				cp = ((b & 0x1F) << 6) | nextContinuation();
+			} else if (b < 0xF0) {
+				cp = ((b & 0x0F) << 12) | (nextContinuation() << 6) | nextContinuation();
+			} else {
+				cp = ((b & 0x07) << 18) | (nextContinuation() << 12) | (nextContinuation() << 6) | nextContinuation();
+			}
+			
+			if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT && cp <= Character.MAX_CODE_POINT) {
+				cbuf[off + n++] = Character.highSurrogate(cp);
+				
+				if (n < len) {
+					cbuf[off + n++] = Character.lowSurrogate(cp);
+				} else {
+					this.pendingLowSurrogate = Character.lowSurrogate(cp);
+				}
+			} else if (cp > Character.MAX_CODE_POINT) {
+				cbuf[off + n++] = '\uFFFD';
+			} else {
+				cbuf[off + n++] = (char) cp;
+			}
+		}
+		
+		return (n == 0 ? -1 : n);
+	}
+	
+	@Override
+	public void close()
+	{
+		this.source = null;
+	}
+	
+	
+	// private methods
+	
+	private int nextContinuation()
+	{
+		return (this.source.hasRemaining() ? this.source.get() & 0x3F : 0);
+	}
+	
+}
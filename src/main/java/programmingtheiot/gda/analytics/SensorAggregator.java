@@ -0,0 +1,177 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.analytics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.data.SensorData;
+
+/**
+ * Maintains a {@link SensorWindow} per sensor stream (see
+ * {@link SensorStreamKey}), updated incrementally as readings arrive, and
+ * provides the query API for the rolling aggregates.
+ * <p>
+ * The window size (readings) and maximum age (milliseconds, 0 for none)
+ * are read from the {@link ConfigConst#ANALYTICS_GATEWAY_SERVICE} section.
+ * 
+ */
+public class SensorAggregator
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(SensorAggregator.class.getName());
+	
+	public static final int  DEFAULT_WINDOW_SIZE   = 60;
+	public static final long DEFAULT_WINDOW_MILLIS = 0L;
+	
+	
+	// private var's
+	
+	private final Map<SensorStreamKey, SensorWindow> windows = new ConcurrentHashMap<>();
+	
+	private final int  windowSize;
+	private final long windowMillis;
+	
+	
+	// constructors
+	
+	/**
+	 * Default. Reads the window bounds from the configuration.
+	 * 
+	 */
+	public SensorAggregator()
+	{
+		this(
+			ConfigUtil.getInstance().getInteger(
+				ConfigConst.ANALYTICS_GATEWAY_SERVICE, ConfigConst.WINDOW_SIZE_KEY, DEFAULT_WINDOW_SIZE),
+			ConfigUtil.getInstance().getInteger(
+				ConfigConst.ANALYTICS_GATEWAY_SERVICE, ConfigConst.WINDOW_MILLIS_KEY, (int) DEFAULT_WINDOW_MILLIS));
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param windowSize The maximum number of readings per window.
+	 * @param windowMillis The maximum age of a reading relative to the
+	 * newest one in the window, or 0 for no age bound.
+	 */
+	public SensorAggregator(int windowSize, long windowMillis)
+	{
+		super();
+		
+		this.windowSize   = Math.max(1, windowSize);
+		this.windowMillis = Math.max(0L, windowMillis);
+		
+		_Logger.info("Sensor aggregation window: " + this.windowSize + " readings, " + this.windowMillis + " ms.");
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Adds the reading to the window of its stream.
+	 * 
+	 * @param data The sensor reading.
+	 * @return boolean True on success; false if 'data' is null.
+	 */
+	public boolean addSensorData(SensorData data)
+	{
+		if (data == null) {
+			return false;
+		}
+		
+		SensorStreamKey key    = new SensorStreamKey(data.getLocationID(), data.getTypeID(), data.getName());
+		SensorWindow    window = this.windows.get(key);
+		
+		if (window == null) {
+			window = this.windows.computeIfAbsent(key, k -> new SensorWindow(this.windowSize, this.windowMillis));
+		}
+		
+		window.addValue(data.getValue(), data.getTimeStampMillis());
+		
+		return true;
+	}
+	
+	/**
+	 * Returns all current aggregates, keyed by stream.
+	 * 
+	 * @return Map<SensorStreamKey, WindowStats>
+	 */
+	public Map<SensorStreamKey, WindowStats> getAllStats()
+	{
+		Map<SensorStreamKey, WindowStats> statsMap = new HashMap<>();
+		
+		for (Map.Entry<SensorStreamKey, SensorWindow> e : this.windows.entrySet()) {
+			WindowStats stats = e.getValue().getStats();
+			
+			if (stats != null) {
+				statsMap.put(e.getKey(), stats);
+			}
+		}
+		
+		return statsMap;
+	}
+	
+	/**
+	 * Returns the current aggregates of the given stream.
+	 * 
+	 * @param locationID The device location ID.
+	 * @param typeID The sensor type ID.
+	 * @param name The sensor name.
+	 * @return WindowStats The aggregates, or null if no readings were received.
+	 */
+	public WindowStats getStats(String locationID, int typeID, String name)
+	{
+		SensorWindow window = getWindow(locationID, typeID, name);
+		
+		return (window != null ? window.getStats() : null);
+	}
+	
+	/**
+	 * Returns the keys of all streams seen so far.
+	 * 
+	 * @return Set<SensorStreamKey>
+	 */
+	public Set<SensorStreamKey> getStreamKeys()
+	{
+		return Collections.unmodifiableSet(this.windows.keySet());
+	}
+	
+	/**
+	 * Returns the live window of the given stream, e.g. for cheap
+	 * min / max / mean lookups without building a {@link WindowStats}.
+	 * 
+	 * @param locationID The device location ID.
+	 * @param typeID The sensor type ID.
+	 * @param name The sensor name.
+	 * @return SensorWindow The window, or null if no readings were received.
+	 */
+	public SensorWindow getWindow(String locationID, int typeID, String name)
+	{
+		return this.windows.get(new SensorStreamKey(locationID, typeID, name));
+	}
+	
+	/**
+	 * Removes all streams and their windows.
+	 * 
+	 */
+	public void clearStreams()
+	{
+		this.windows.clear();
+	}
+	
+}
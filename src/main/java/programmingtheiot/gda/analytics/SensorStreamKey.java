@@ -0,0 +1,93 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.analytics;
+
+import java.util.Objects;
+
+/**
+ * Identifies a sensor stream by device location ID, sensor type ID and
+ * sensor name.
+ * 
+ */
+public final class SensorStreamKey
+{
+	// private var's
+	
+	private final String locationID;
+	private final int    typeID;
+	private final String name;
+	private final int    hash;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor. Null ID's and names are treated as empty.
+	 * 
+	 * @param locationID The device location ID.
+	 * @param typeID The sensor type ID.
+	 * @param name The sensor name.
+	 */
+	public SensorStreamKey(String locationID, int typeID, String name)
+	{
+		super();
+		
+		this.locationID = (locationID != null ? locationID : "");
+		this.typeID     = typeID;
+		this.name       = (name != null ? name : "");
+		this.hash       = Objects.hash(this.locationID, this.typeID, this.name);
+	}
+	
+	
+	// public methods
+	
+	public String getLocationID()
+	{
+		return this.locationID;
+	}
+	
+	public int getTypeID()
+	{
+		return this.typeID;
+	}
+	
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj) {
+			return true;
+		}
+		
+		if (! (obj instanceof SensorStreamKey)) {
+			return false;
+		}
+		
+		SensorStreamKey key = (SensorStreamKey) obj;
+		
+		return (this.typeID == key.typeID && this.locationID.equals(key.locationID) && this.name.equals(key.name));
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return this.hash;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return this.locationID + "/" + this.typeID + "/" + this.name;
+	}
+	
+}
@@ -0,0 +1,278 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window over the readings of one sensor stream, bounded by a
+ * maximum number of readings and, optionally, a maximum age relative to
+ * the newest reading.
+ * <p>
+ * Values and time stamps are kept in primitive ring buffers. Count, sum and
+ * sum of squares are maintained incrementally, and min / max via monotonic
+ * queues of reading sequence numbers, so adding a reading and reading
+ * min / max / mean / standard deviation are all O(1) (amortized) and
+ * allocation free. Percentiles are computed on demand by sorting a copy of
+ * the window into a reused scratch buffer.
+ * <p>
+ * All methods are thread-safe.
+ * 
+ */
+public final class SensorWindow
+{
+	// private var's
+	
+	private final int   capacity;
+	private final long  maxAgeMillis;
+	
+	private final float[] values;
+	private final long[]  times;
+	private final float[] scratch;
+	
+	// sequence numbers of the oldest reading and the next reading; the
+	// reading with sequence number 's' is stored at index 's % capacity'
+	private long firstSeq = 0L;
+	private long nextSeq  = 0L;
+	
+	private double sum   = 0.0d;
+	private double sumSq = 0.0d;
+	
+	// monotonic queues of sequence numbers (ring buffers), whose front
+	// is the sequence number of the current min / max
+	private final long[] minQueue;
+	private final long[] maxQueue;
+	private int minHead = 0, minSize = 0;
+	private int maxHead = 0, maxSize = 0;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity The maximum number of readings in the window.
+	 * @param maxAgeMillis The maximum age of a reading relative to the
+	 * newest one, or 0 to bound the window by count only.
+	 */
+	public SensorWindow(int capacity, long maxAgeMillis)
+	{
+		super();
+		
+		this.capacity     = Math.max(1, capacity);
+		this.maxAgeMillis = Math.max(0L, maxAgeMillis);
+		
+		this.values   = new float[this.capacity];
+		this.times    = new long[this.capacity];
+		this.scratch  = new float[this.capacity];
+		this.minQueue = new long[this.capacity];
+		this.maxQueue = new long[this.capacity];
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Adds a reading, evicting the oldest readings as needed.
+	 * 
+	 * @param value The reading's value.
+	 * @param timeMillis The reading's time stamp.
+	 */
+	public synchronized void addValue(float value, long timeMillis)
+	{
+		if (getCount() == this.capacity) {
+			evictOldest();
+		}
+		
+		if (this.maxAgeMillis > 0L) {
+			long cutoff = timeMillis - this.maxAgeMillis;
+			
+			while (getCount() > 0 && this.times[index(this.firstSeq)] < cutoff) {
+				evictOldest();
+			}
+		}
+		
+		long seq = this.nextSeq++;
+		int  idx = index(seq);
+		
+		this.values[idx] = value;
+		this.times[idx]  = timeMillis;
+		this.sum   += value;
+		this.sumSq += (double) value * value;
+		
+		while (this.minSize > 0 && this.values[index(this.minQueue[(this.minHead + this.minSize - 1) % this.capacity])] >= value) {
+			this.minSize--;
+		}
+		
+		this.minQueue[(this.minHead + this.minSize++) % this.capacity] = seq;
+		
+		while (this.maxSize > 0 && this.values[index(this.maxQueue[(this.maxHead + this.maxSize - 1) % this.capacity])] <= value) {
+			this.maxSize--;
+		}
+		
+		this.maxQueue[(this.maxHead + this.maxSize++) % this.capacity] = seq;
+	}
+	
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+	
+	public synchronized int getCount()
+	{
+		return (int) (this.nextSeq - this.firstSeq);
+	}
+	
+	/**
+	 * 
+	 * @return float The minimum value, or NaN if the window is empty.
+	 */
+	public synchronized float getMin()
+	{
+		return (this.minSize > 0 ? this.values[index(this.minQueue[this.minHead])] : Float.NaN);
+	}
+	
+	/**
+	 * 
+	 * @return float The maximum value, or NaN if the window is empty.
+	 */
+	public synchronized float getMax()
+	{
+		return (this.maxSize > 0 ? this.values[index(this.maxQueue[this.maxHead])] : Float.NaN);
+	}
+	
+	/**
+	 * 
+	 * @return float The mean value, or NaN if the window is empty.
+	 */
+	public synchronized float getMean()
+	{
+		int count = getCount();
+		
+		return (count > 0 ? (float) (this.sum / count) : Float.NaN);
+	}
+	
+	/**
+	 * 
+	 * @return float The population standard deviation, or NaN if the window is empty.
+	 */
+	public synchronized float getStdDev()
+	{
+		int count = getCount();
+		
+		if (count == 0) {
+			return Float.NaN;
+		}
+		
+		double mean = this.sum / count;
+		
+		return (float) Math.sqrt(Math.max(0.0d, this.sumSq / count - mean * mean));
+	}
+	
+	/**
+	 * Returns the given percentile (nearest-rank) of the values in the window.
+	 * 
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return float The value, or NaN if the window is empty.
+	 */
+	public synchronized float getPercentile(float percentile)
+	{
+		return (sortScratch() > 0 ? percentileOfScratch(percentile) : Float.NaN);
+	}
+	
+	/**
+	 * Returns a snapshot of all aggregates.
+	 * 
+	 * @return WindowStats The aggregates, or null if the window is empty.
+	 */
+	public synchronized WindowStats getStats()
+	{
+		int count = sortScratch();
+		
+		if (count == 0) {
+			return null;
+		}
+		
+		long lastSeq = this.nextSeq - 1;
+		
+		return new WindowStats(
+			count, getMin(), getMax(), getMean(), getStdDev(),
+			percentileOfScratch(50.0f), percentileOfScratch(95.0f), percentileOfScratch(99.0f),
+			this.values[index(lastSeq)], this.times[index(this.firstSeq)], this.times[index(lastSeq)]);
+	}
+	
+	
+	// private methods
+	
+	private int index(long seq)
+	{
+		return (int) (seq % this.capacity);
+	}
+	
+	private void evictOldest()
+	{
+		float value = this.values[index(this.firstSeq)];
+		
+		this.sum   -= value;
+		this.sumSq -= (double) value * value;
+		
+		if (this.minSize > 0 && this.minQueue[this.minHead] == this.firstSeq) {
+			this.minHead = (this.minHead + 1) % this.capacity;
+			this.minSize--;
+		}
+		
+		if (this.maxSize > 0 && this.maxQueue[this.maxHead] == this.firstSeq) {
+			this.maxHead = (this.maxHead + 1) % this.capacity;
+			this.maxSize--;
+		}
+		
+		this.firstSeq++;
+		
+		// recompute once per pass to discard accumulated rounding error
+		if (this.firstSeq % this.capacity == 0L) {
+			this.sum   = 0.0d;
+			this.sumSq = 0.0d;
+			
+			for (long seq = this.firstSeq; seq < this.nextSeq; seq++) {
+				float v = this.values[index(seq)];
+				
+				this.sum   += v;
+				this.sumSq += (double) v * v;
+			}
+		}
+	}
+	
+	private float percentileOfScratch(float percentile)
+	{
+		int   count = getCount();
+		float p     = Math.max(0.0f, Math.min(100.0f, percentile));
+		int   rank  = (int) Math.ceil(p / 100.0f * count);
+		
+		return this.scratch[Math.max(0, rank - 1)];
+	}
+	
+	/**
+	 * Copies the window into the scratch buffer and sorts it.
+	 * 
+	 * @return int The number of values copied.
+	 */
+	private int sortScratch()
+	{
+		int count = getCount();
+		
+		for (int i = 0; i < count; i++) {
+			this.scratch[i] = this.values[index(this.firstSeq + i)];
+		}
+		
+		Arrays.sort(this.scratch, 0, count);
+		
+		return count;
+	}
+	
+}
@@ -0,0 +1,142 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.analytics;
+
+/**
+ * Immutable aggregates of the readings in a {@link SensorWindow} at the
+ * time it was queried.
+ * 
+ */
+public final class WindowStats
+{
+	// private var's
+	
+	private final int   count;
+	private final float min;
+	private final float max;
+	private final float mean;
+	private final float stdDev;
+	private final float median;
+	private final float p95;
+	private final float p99;
+	private final float lastValue;
+	private final long  firstTimeMillis;
+	private final long  lastTimeMillis;
+	
+	
+	// constructors
+	
+	WindowStats(
+		int count, float min, float max, float mean, float stdDev, float median, float p95, float p99,
+		float lastValue, long firstTimeMillis, long lastTimeMillis)
+	{
+		super();
+		
+		this.count  = count;
+		this.min    = min;
+		this.max    = max;
+		this.mean   = mean;
+		this.stdDev = stdDev;
+		this.median = median;
+		this.p95    = p95;
+		this.p99    = p99;
+		this.lastValue       = lastValue;
+		this.firstTimeMillis = firstTimeMillis;
+		this.lastTimeMillis  = lastTimeMillis;
+	}
+	
+	
+	// public methods
+	
+	public int getCount()
+	{
+		return this.count;
+	}
+	
+	public float getMin()
+	{
+		return this.min;
+	}
+	
+	public float getMax()
+	{
+		return this.max;
+	}
+	
+	public float getMean()
+	{
+		return this.mean;
+	}
+	
+	/**
+	 * 
+	 * @return float The population standard deviation.
+	 */
+	public float getStdDev()
+	{
+		return this.stdDev;
+	}
+	
+	public float getMedian()
+	{
+		return this.median;
+	}
+	
+	public float getP95()
+	{
+		return this.p95;
+	}
+	
+	public float getP99()
+	{
+		return this.p99;
+	}
+	
+	public float getLastValue()
+	{
+		return this.lastValue;
+	}
+	
+	/**
+	 * 
+	 * @return long The time stamp of the oldest reading in the window.
+	 */
+	public long getFirstTimeMillis()
+	{
+		return this.firstTimeMillis;
+	}
+	
+	/**
+	 * 
+	 * @return long The time stamp of the newest reading in the window.
+	 */
+	public long getLastTimeMillis()
+	{
+		return this.lastTimeMillis;
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("count=").append(this.count).append(',');
+		sb.append("min=").append(this.min).append(',');
+		sb.append("max=").append(this.max).append(',');
+		sb.append("mean=").append(this.mean).append(',');
+		sb.append("stdDev=").append(this.stdDev).append(',');
+		sb.append("median=").append(this.median).append(',');
+		sb.append("p95=").append(this.p95).append(',');
+		sb.append("p99=").append(this.p99).append(',');
+		sb.append("last=").append(this.lastValue);
+		
+		return sb.toString();
+	}
+	
+}
@@ -13,26 +13,42 @@ import java.util.logging.Logger;
 
 import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.DataFormatEnum;
 import programmingtheiot.common.IActuatorDataListener;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
 
 import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.BaseIotData;
 import programmingtheiot.data.DataUtil;
 import programmingtheiot.data.SensorData;
 import programmingtheiot.data.SystemPerformanceData;
 
+import programmingtheiot.gda.analytics.SensorAggregator;
+import programmingtheiot.gda.analytics.SensorWindow;
+import programmingtheiot.gda.analytics.WindowStats;
 import programmingtheiot.gda.connection.CloudClientConnector;
 import programmingtheiot.gda.connection.CoapServerGateway;
+import programmingtheiot.gda.connection.ICloudClient;
 import programmingtheiot.gda.connection.IPersistenceClient;
 import programmingtheiot.gda.connection.IPubSubClient;
-import programmingtheiot.gda.connection.IRequestResponseClient;
 import programmingtheiot.gda.connection.MqttClientConnector;
+import programmingtheiot.gda.connection.MqttConnectionPool;
+import programmingtheiot.gda.connection.MultiCloudClientConnector;
 import programmingtheiot.gda.connection.RedisPersistenceAdapter;
 import programmingtheiot.gda.connection.SmtpClientConnector;
+import programmingtheiot.gda.pipeline.DataMessage;
+import programmingtheiot.gda.pipeline.DataMessagePipeline;
+import programmingtheiot.gda.rules.ActuationRuleEngine;
+import programmingtheiot.gda.system.SystemPerformanceManager;
 
 /**
- * Shell representation of class for student implementation.
+ * Central hub for all data flowing through the gateway.
+ * <p>
+ * The {@link IDataMessageListener} callbacks are invoked on the transport
+ * (MQTT, CoAP) threads, so they only enqueue the message into a
+ * {@link DataMessagePipeline}. Analysis and fan-out to persistence, cloud
+ * and actuation run on the pipeline's worker threads.
  *
  */
 public class DeviceDataManager implements IDataMessageListener
@@ -42,6 +58,14 @@ public class DeviceDataManager implements IDataMessageListener
 	private static final Logger _Logger =
 		Logger.getLogger(DeviceDataManager.class.getName());
 	
+	private static final int ACTUATION_LATENCY_WINDOW_SIZE = 1024;
+	
+	// cloud events forwarded to the CDA (actuator commands) or handled here (management commands)
+	private static final ResourceNameEnum[] CLOUD_EVENT_RESOURCES = {
+		ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE,
+		ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE
+	};
+	
 	// private var's
 	
 	private boolean enableMqttClient = true;
@@ -49,13 +73,21 @@ public class DeviceDataManager implements IDataMessageListener
 	private boolean enableCloudClient = false;
 	private boolean enableSmtpClient = false;
 	private boolean enablePersistenceClient = false;
+	private boolean enableSystemPerf = false;
 	
-	private IActuatorDataListener actuatorDataListener = null;
+	private volatile IActuatorDataListener actuatorDataListener = null;
 	private IPubSubClient mqttClient = null;
-	private IPubSubClient cloudClient = null;
+	private ICloudClient cloudClient = null;
 	private IPersistenceClient persistenceClient = null;
-	private IRequestResponseClient smtpClient = null;
+	private SmtpClientConnector smtpClient = null;
 	private CoapServerGateway coapServer = null;
+	private SystemPerformanceManager sysPerfMgr = null;
+	
+	private DataMessagePipeline pipeline = null;
+	private ActuationRuleEngine ruleEngine = null;
+	private SensorAggregator sensorAggregator = null;
+	
+	private final SensorWindow actuationLatencyWindow = new SensorWindow(ACTUATION_LATENCY_WINDOW_SIZE, 0L);
 	
 	// constructors
 	
@@ -63,6 +95,21 @@ public class DeviceDataManager implements IDataMessageListener
 	{
 		super();
 		
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+		
+		this.enableMqttClient =
+			configUtil.getBoolean(ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_MQTT_CLIENT_KEY);
+		this.enableCoapServer =
+			configUtil.getBoolean(ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_COAP_SERVER_KEY);
+		this.enableCloudClient =
+			configUtil.getBoolean(ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_CLOUD_CLIENT_KEY);
+		this.enableSmtpClient =
+			configUtil.getBoolean(ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_SMTP_CLIENT_KEY);
+		this.enablePersistenceClient =
+			configUtil.getBoolean(ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_PERSISTENCE_CLIENT_KEY);
+		this.enableSystemPerf =
+			configUtil.getBoolean(ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_SYSTEM_PERF_KEY);
+		
 		initConnections();
 	}
 	
@@ -75,6 +122,12 @@ public class DeviceDataManager implements IDataMessageListener
 	{
 		super();
 		
+		this.enableMqttClient = enableMqttClient;
+		this.enableCoapServer = enableCoapClient;
+		this.enableCloudClient = enableCloudClient;
+		this.enableSmtpClient = enableSmtpClient;
+		this.enablePersistenceClient = enablePersistenceClient;
+		
 		initConnections();
 	}
 	
@@ -84,37 +137,139 @@ public class DeviceDataManager implements IDataMessageListener
 	@Override
 	public boolean handleActuatorCommandResponse(ResourceNameEnum resourceName, ActuatorData data)
 	{
-		return false;
+		return ingestData(resourceName, data);
 	}
 
 	@Override
 	public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg)
 	{
+		if (msg != null) {
+			return this.pipeline.ingestMessage(new DataMessage(resourceName, msg));
+		}
+		
 		return false;
 	}
 
 	@Override
 	public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
 	{
-		return false;
+		return ingestData(resourceName, data);
 	}
 
 	@Override
 	public boolean handleSystemPerformanceMessage(ResourceNameEnum resourceName, SystemPerformanceData data)
 	{
-		return false;
+		return ingestData(resourceName, data);
+	}
+	
+	/**
+	 * Returns the engine that turns sensor readings into actuator commands.
+	 * 
+	 * @return ActuationRuleEngine
+	 */
+	public ActuationRuleEngine getActuationRuleEngine()
+	{
+		return this.ruleEngine;
+	}
+	
+	/**
+	 * Returns the rolling aggregates of all sensor streams received so far.
+	 * 
+	 * @return SensorAggregator
+	 */
+	public SensorAggregator getSensorAggregator()
+	{
+		return this.sensorAggregator;
+	}
+	
+	/**
+	 * Returns the pipeline used to process incoming messages, e.g. to
+	 * retrieve per-stage metrics.
+	 * 
+	 * @return DataMessagePipeline
+	 */
+	public DataMessagePipeline getDataMessagePipeline()
+	{
+		return this.pipeline;
+	}
+	
+	/**
+	 * Returns the end-to-end latency (in milliseconds) of the last actuator
+	 * commands: from the command's time stamp (set by the cloud for cloud
+	 * commands, or by the rule engine) until it's forwarded to the CDA.
+	 * 
+	 * @return WindowStats The stats, or null if no command was sent.
+	 */
+	public WindowStats getActuationLatencyStats()
+	{
+		return this.actuationLatencyWindow.getStats();
 	}
 	
 	public void setActuatorDataListener(String name, IActuatorDataListener listener)
 	{
+		this.actuatorDataListener = listener;
 	}
 	
 	public void startManager()
 	{
+		this.pipeline.startPipeline();
+		this.ruleEngine.startEngine();
+		
+		if (this.sysPerfMgr != null) {
+			this.sysPerfMgr.startManager();
+		}
+		
+		if (this.mqttClient != null && ! this.mqttClient.connectClient()) {
+			_Logger.warning("Failed to connect MQTT client.");
+		}
+		
+		if (this.cloudClient != null) {
+			if (! this.cloudClient.connectClient()) {
+				_Logger.warning("Failed to connect cloud client.");
+			}
+			
+			for (ResourceNameEnum resource : CLOUD_EVENT_RESOURCES) {
+				if (! this.cloudClient.subscribeToCloudEvents(resource)) {
+					_Logger.warning("Failed to subscribe to cloud events: " + resource);
+				}
+			}
+		}
+		
+		if (this.persistenceClient != null && ! this.persistenceClient.connectClient()) {
+			_Logger.warning("Failed to connect persistence client.");
+		}
+		
+		if (this.coapServer != null && ! this.coapServer.startServer()) {
+			_Logger.warning("Failed to start CoAP server.");
+		}
 	}
 	
 	public void stopManager()
 	{
+		if (this.coapServer != null) {
+			this.coapServer.stopServer();
+		}
+		
+		if (this.mqttClient != null) {
+			this.mqttClient.disconnectClient();
+		}
+		
+		if (this.sysPerfMgr != null) {
+			this.sysPerfMgr.stopManager();
+		}
+		
+		this.ruleEngine.stopEngine();
+		
+		// drain in-flight messages while the outbound connections are still up
+		this.pipeline.stopPipeline();
+		
+		if (this.cloudClient != null) {
+			this.cloudClient.disconnectClient();
+		}
+		
+		if (this.persistenceClient != null) {
+			this.persistenceClient.disconnectClient();
+		}
 	}
 
 	
@@ -127,6 +282,163 @@ public class DeviceDataManager implements IDataMessageListener
 	 */
 	private void initConnections()
 	{
+		this.pipeline = new DataMessagePipeline(this::analyzeMessage, this::fanOutMessage);
+		
+		this.sensorAggregator = new SensorAggregator();
+		
+		this.ruleEngine = new ActuationRuleEngine();
+		this.ruleEngine.setActuatorDataListener(data -> ingestData(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, data));
+		
+		if (this.enableMqttClient) {
+			int poolSize =
+				ConfigUtil.getInstance().getInteger(
+					ConfigConst.MQTT_GATEWAY_SERVICE, ConfigConst.CONNECTION_POOL_SIZE_KEY, MqttConnectionPool.DEFAULT_POOL_SIZE);
+			
+			// spread publishes over several connections if configured
+			this.mqttClient = (poolSize > 1 ? new MqttConnectionPool() : new MqttClientConnector());
+			this.mqttClient.setDataMessageListener(this);
+		}
+		
+		if (this.enableCoapServer) {
+			this.coapServer = new CoapServerGateway(this);
+		}
+		
+		if (this.enableCloudClient) {
+			// fan out to several cloud services if configured
+			if (MultiCloudClientConnector.getTargetNames().isEmpty()) {
+				this.cloudClient = new CloudClientConnector();
+			} else {
+				this.cloudClient = new MultiCloudClientConnector();
+			}
+			
+			this.cloudClient.setDataMessageListener(this);
+		}
+		
+		if (this.enableSmtpClient) {
+			this.smtpClient = new SmtpClientConnector();
+		}
+		
+		if (this.enablePersistenceClient) {
+			this.persistenceClient = new RedisPersistenceAdapter();
+		}
+		
+		if (this.enableSystemPerf) {
+			this.sysPerfMgr = new SystemPerformanceManager();
+			this.sysPerfMgr.setDataMessageListener(this);
+		}
+	}
+	
+	private boolean ingestData(ResourceNameEnum resourceName, BaseIotData data)
+	{
+		if (data != null) {
+			return this.pipeline.ingestMessage(new DataMessage(resourceName, data));
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Analyze stage handler. Runs on a pipeline worker thread. Sensor
+	 * readings are added to their stream's rolling aggregates, and evaluated
+	 * by the rule engine; the resulting actuator commands are fed back into
+	 * the pipeline's control lane.
+	 * 
+	 * @param msg The decoded message.
+	 * @return boolean True to pass the message on to fan-out.
+	 */
+	private boolean analyzeMessage(DataMessage msg)
+	{
+		BaseIotData data = msg.getData();
+		
+		if (data != null && data.hasError()) {
+			_Logger.warning("Received data with error status from " + msg.getResource() + ": " + data);
+		}
+		
+		if (data instanceof SensorData) {
+			this.sensorAggregator.addSensorData((SensorData) data);
+			this.ruleEngine.evaluateSensorData((SensorData) data);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Fan-out stage handler. Runs on a pipeline worker thread, and passes
+	 * the message to persistence, the cloud and / or the actuator listener.
+	 * 
+	 * @param msg The decoded and analyzed message.
+	 * @return boolean Always false, as this is the last stage.
+	 */
+	private boolean fanOutMessage(DataMessage msg)
+	{
+		BaseIotData data  = msg.getData();
+		String      topic = (msg.getResource() != null ? msg.getResource().getResourceName() : null);
+		int         qos   = ConfigConst.DEFAULT_QOS;
+		
+		if (data instanceof SensorData) {
+			SensorData sd = (SensorData) data;
+			
+			if (this.persistenceClient != null) this.persistenceClient.storeData(topic, qos, sd);
+			if (this.cloudClient != null) this.cloudClient.sendEdgeDataToCloud(msg.getResource(), sd);
+		} else if (data instanceof SystemPerformanceData) {
+			SystemPerformanceData spd = (SystemPerformanceData) data;
+			
+			if (this.persistenceClient != null) this.persistenceClient.storeData(topic, qos, spd);
+			if (this.cloudClient != null) this.cloudClient.sendEdgeDataToCloud(msg.getResource(), spd);
+		} else if (data instanceof ActuatorData) {
+			ActuatorData ad = (ActuatorData) data;
+			
+			if (this.persistenceClient != null) this.persistenceClient.storeData(topic, qos, ad);
+			
+			if (msg.getResource() == ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE) {
+				sendActuatorCommand(ad);
+			}
+		} else {
+			_Logger.fine("Received message with no data type: " + msg);
+		}
+		
+		return false;
+	}
+	
+	private DataFormatEnum getMqttDataFormat()
+	{
+		// the connector's format follows config reloads, so ask it first
+		if (this.mqttClient instanceof MqttClientConnector) {
+			return ((MqttClientConnector) this.mqttClient).getDataFormat();
+		} else if (this.mqttClient instanceof MqttConnectionPool) {
+			return ((MqttConnectionPool) this.mqttClient).getDataFormat();
+		}
+		
+		return DataFormatEnum.getEnumFromName(
+			ConfigUtil.getInstance().getProperty(
+				ConfigConst.MQTT_GATEWAY_SERVICE, ConfigConst.DATA_FORMAT_KEY, DataFormatEnum.JSON.getName()));
+	}
+	
+	private void sendActuatorCommand(ActuatorData data)
+	{
+		IActuatorDataListener listener = this.actuatorDataListener;
+		
+		if (listener != null) {
+			listener.onActuatorDataUpdate(data);
+		} else if (this.mqttClient != null) {
+			byte[] payload = DataUtil.getInstance().dataToBytes(data, getMqttDataFormat());
+			
+			if (payload == null) {
+				_Logger.log(Level.WARNING, "Failed to encode actuator command. Dropping: {0}", data);
+				
+				return;
+			}
+			
+			this.mqttClient.publishMessage(
+				ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, payload, ConfigConst.DEFAULT_QOS);
+		} else {
+			_Logger.log(Level.WARNING, "No actuation path available. Dropping command: {0}", data);
+			
+			return;
+		}
+		
+		long now = System.currentTimeMillis();
+		this.actuationLatencyWindow.addValue(Math.max(0L, now - data.getTimeStampMillis()), now);
 	}
 	
 }
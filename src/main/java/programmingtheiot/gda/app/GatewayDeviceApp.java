@@ -14,6 +14,9 @@ package programmingtheiot.gda.app;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+
 /**
  * Main GDA application.
  * 
@@ -81,6 +84,10 @@ public class GatewayDeviceApp
 		_Logger.info("Starting GDA...");
 		
 		try {
+			if (ConfigUtil.getInstance().getBoolean(ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_CONFIG_RELOAD_KEY)) {
+				ConfigUtil.getInstance().startConfigWatcher();
+			}
+			
 			// TODO: Your code here
 			
 			_Logger.info("GDA started successfully.");
@@ -101,6 +108,8 @@ public class GatewayDeviceApp
 		_Logger.info("Stopping GDA...");
 		
 		try {
+			ConfigUtil.getInstance().stopConfigWatcher();
+			
 			// TODO: Your code here
 			
 			_Logger.log(Level.INFO, "GDA stopped successfully with exit code {0}.", code);
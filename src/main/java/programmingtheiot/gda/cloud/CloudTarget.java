@@ -0,0 +1,398 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.cloud;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.connection.ICloudClient;
+
+/**
+ * One destination of a multi-cloud fan-out: an {@link ICloudClient} with
+ * its own bounded queue and sender thread, so a slow or unreachable target
+ * never blocks the caller or the other targets.
+ * <p>
+ * The sender thread connects the client (retrying with exponential backoff
+ * until the first connect succeeds; the client reconnects by itself after
+ * that) and sends the queued messages in order, retrying a failed send up
+ * to 'maxRetries' times. If the queue is full, the oldest message is
+ * dropped. A client with a spool absorbs messages while disconnected, so
+ * messages are sent even before the first connect succeeds.
+ * 
+ */
+public class CloudTarget
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(CloudTarget.class.getName());
+	
+	public static final int  DEFAULT_QUEUE_SIZE        = 1024;
+	public static final int  DEFAULT_MAX_RETRIES       = 2;
+	public static final long DEFAULT_RETRY_BASE_MILLIS = 500L;
+	public static final long DEFAULT_RETRY_MAX_MILLIS  = 60000L;
+	
+	private static final long   RATE_INTERVAL_NANOS = 1000000000L;
+	private static final double EWMA_WEIGHT         = 0.3d;
+	
+	
+	// private var's
+	
+	private final String       name;
+	private final ICloudClient cloudClient;
+	
+	private final BlockingQueue<Entry> queue;
+	
+	private final int  maxRetries;
+	private final long retryBaseMillis;
+	private final long retryMaxMillis;
+	
+	private volatile Thread  senderThread = null;
+	private volatile boolean isRunning    = false;
+	private volatile boolean isConnected  = false;
+	
+	private final AtomicLong sentCount    = new AtomicLong();
+	private final AtomicLong failedCount  = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong retryCount   = new AtomicLong();
+	
+	private volatile double throughput    = 0.0d;
+	private volatile long   lastLagMillis = 0L;
+	
+	private long rateStartNanos = 0L;
+	private long rateStartCount = 0L;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name The target name (e.g. the cloud service name).
+	 * @param cloudClient The client for the target.
+	 * @param queueSize The maximum number of queued messages.
+	 * @param maxRetries The number of retries of a failed send.
+	 * @param retryBaseMillis The first retry (and reconnect) delay, doubled on each retry.
+	 * @param retryMaxMillis The maximum retry (and reconnect) delay.
+	 */
+	public CloudTarget(
+		String name, ICloudClient cloudClient, int queueSize, int maxRetries, long retryBaseMillis, long retryMaxMillis)
+	{
+		super();
+		
+		this.name            = name;
+		this.cloudClient     = cloudClient;
+		this.queue           = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+		this.maxRetries      = Math.max(0, maxRetries);
+		this.retryBaseMillis = Math.max(1L, retryBaseMillis);
+		this.retryMaxMillis  = Math.max(this.retryBaseMillis, retryMaxMillis);
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Queues a message for the target, dropping the oldest queued message
+	 * if the queue is full.
+	 * 
+	 * @param resource The resource.
+	 * @param data The data (a {@link SensorData} or {@link SystemPerformanceData}).
+	 * @return boolean True if queued; false if the target isn't started.
+	 */
+	public boolean sendData(ResourceNameEnum resource, BaseIotData data)
+	{
+		if (! this.isRunning || resource == null || data == null) {
+			return false;
+		}
+		
+		Entry entry = new Entry(resource, data);
+		
+		while (! this.queue.offer(entry)) {
+			if (this.queue.poll() != null) {
+				this.droppedCount.incrementAndGet();
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Starts the sender thread, which connects the client.
+	 * 
+	 */
+	public synchronized void startTarget()
+	{
+		if (this.senderThread == null) {
+			this.isRunning      = true;
+			this.rateStartNanos = System.nanoTime();
+			this.rateStartCount = this.sentCount.get();
+			
+			this.senderThread = new Thread(this::runSender, "CloudTarget-" + this.name);
+			this.senderThread.setDaemon(true);
+			this.senderThread.start();
+			
+			_Logger.info("Started cloud target: " + this.name);
+		}
+	}
+	
+	/**
+	 * Stops the sender thread, waiting up to 'timeoutMillis' for the queued
+	 * messages to be sent, then disconnects the client.
+	 * 
+	 * @param timeoutMillis The maximum time to wait.
+	 */
+	public void stopTarget(long timeoutMillis)
+	{
+		Thread thread;
+		
+		synchronized (this) {
+			thread = this.senderThread;
+			
+			this.senderThread = null;
+			this.isRunning    = false;
+		}
+		
+		if (thread == null) {
+			return;
+		}
+		
+		try {
+			thread.join(timeoutMillis);
+			
+			if (thread.isAlive()) {
+				thread.interrupt();
+				thread.join(timeoutMillis);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (! this.queue.isEmpty()) {
+			_Logger.warning("Dropping " + this.queue.size() + " unsent messages for cloud target: " + this.name);
+			
+			this.droppedCount.addAndGet(this.queue.size());
+			this.queue.clear();
+		}
+		
+		this.cloudClient.disconnectClient();
+		this.isConnected = false;
+		
+		_Logger.info("Stopped cloud target: " + this);
+	}
+	
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	public ICloudClient getCloudClient()
+	{
+		return this.cloudClient;
+	}
+	
+	public boolean isConnected()
+	{
+		return this.isConnected;
+	}
+	
+	public int getQueueSize()
+	{
+		return this.queue.size();
+	}
+	
+	public long getSentCount()
+	{
+		return this.sentCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages not sent after all retries.
+	 */
+	public long getFailedCount()
+	{
+		return this.failedCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages dropped from a full queue or on stop.
+	 */
+	public long getDroppedCount()
+	{
+		return this.droppedCount.get();
+	}
+	
+	public long getRetryCount()
+	{
+		return this.retryCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return double The send rate EWMA in messages per second.
+	 */
+	public double getThroughput()
+	{
+		return this.throughput;
+	}
+	
+	/**
+	 * Returns the lag: the time the oldest queued message has waited, or if
+	 * the queue is empty, the time the last sent message waited.
+	 * 
+	 * @return long The lag in milliseconds.
+	 */
+	public long getLagMillis()
+	{
+		Entry oldest = this.queue.peek();
+		
+		if (oldest != null) {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedNanos);
+		}
+		
+		return this.lastLagMillis;
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(this.name);
+		
+		sb.append(":connected=").append(this.isConnected).append(',');
+		sb.append("queued=").append(getQueueSize()).append(',');
+		sb.append("sent=").append(getSentCount()).append(',');
+		sb.append("failed=").append(getFailedCount()).append(',');
+		sb.append("dropped=").append(getDroppedCount()).append(',');
+		sb.append("retries=").append(getRetryCount()).append(',');
+		sb.append("throughput=").append(String.format("%.1f", this.throughput)).append(',');
+		sb.append("lagMillis=").append(getLagMillis());
+		
+		return sb.toString();
+	}
+	
+	
+	// private methods
+	
+	private void runSender()
+	{
+		long nextConnectMillis = 0L;
+		int  connectAttempts   = 0;
+		
+		while (this.isRunning || ! this.queue.isEmpty()) {
+			try {
+				if (! this.isConnected && this.isRunning && System.currentTimeMillis() >= nextConnectMillis) {
+					if (this.cloudClient.connectClient()) {
+						this.isConnected = true;
+						
+						_Logger.info("Connected cloud target: " + this.name);
+					} else {
+						long delay = getRetryDelay(connectAttempts++);
+						nextConnectMillis = System.currentTimeMillis() + delay;
+						
+						_Logger.warning("Failed to connect cloud target " + this.name + ". Retrying in " + delay + " ms.");
+					}
+				}
+				
+				Entry entry = this.queue.poll(100L, TimeUnit.MILLISECONDS);
+				
+				if (entry != null) {
+					sendEntry(entry);
+				}
+				
+				updateThroughput();
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				// keep the sender alive
+				_Logger.log(Level.WARNING, "Failed to process message for cloud target: " + this.name, e);
+			}
+		}
+	}
+	
+	private void sendEntry(Entry entry) throws InterruptedException
+	{
+		for (int attempt = 0; ; attempt++) {
+			if (send(entry)) {
+				this.sentCount.incrementAndGet();
+				this.lastLagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.queuedNanos);
+				
+				return;
+			}
+			
+			if (attempt >= this.maxRetries || ! this.isRunning) {
+				this.failedCount.incrementAndGet();
+				
+				return;
+			}
+			
+			this.retryCount.incrementAndGet();
+			
+			Thread.sleep(getRetryDelay(attempt));
+		}
+	}
+	
+	private boolean send(Entry entry)
+	{
+		if (entry.data instanceof SensorData) {
+			return this.cloudClient.sendEdgeDataToCloud(entry.resource, (SensorData) entry.data);
+		} else if (entry.data instanceof SystemPerformanceData) {
+			return this.cloudClient.sendEdgeDataToCloud(entry.resource, (SystemPerformanceData) entry.data);
+		}
+		
+		_Logger.warning("Unsupported data type for cloud target " + this.name + ": " + entry.data.getClass().getName());
+		
+		return true;
+	}
+	
+	private long getRetryDelay(int attempt)
+	{
+		return Math.min(this.retryMaxMillis, this.retryBaseMillis << Math.min(attempt, 20));
+	}
+	
+	private void updateThroughput()
+	{
+		long now     = System.nanoTime();
+		long elapsed = now - this.rateStartNanos;
+		
+		if (elapsed >= RATE_INTERVAL_NANOS) {
+			long   count = this.sentCount.get();
+			double rate  = (count - this.rateStartCount) * 1.0e9d / elapsed;
+			
+			this.throughput     = EWMA_WEIGHT * rate + (1.0d - EWMA_WEIGHT) * this.throughput;
+			this.rateStartNanos = now;
+			this.rateStartCount = count;
+		}
+	}
+	
+	
+	// private classes
+	
+	private static final class Entry
+	{
+		final ResourceNameEnum resource;
+		final BaseIotData      data;
+		final long             queuedNanos = System.nanoTime();
+		
+		Entry(ResourceNameEnum resource, BaseIotData data)
+		{
+			this.resource = resource;
+			this.data     = data;
+		}
+	}
+	
+}
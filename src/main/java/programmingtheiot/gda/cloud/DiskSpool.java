@@ -0,0 +1,808 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.cloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only store-and-forward queue of outbound messages
+ * (topic and payload), kept in a directory of segment files so it can hold
+ * far more than fits on the heap.
+ * <p>
+ * Messages are appended to the newest segment via a {@link FileChannel}, and
+ * read back in order from the read cursor, which is persisted in a cursor
+ * file on {@link #sync()} and {@link #close()}. Segments are deleted once
+ * fully read. On open, the segments are scanned from the cursor on, and a
+ * segment is truncated at its first corrupt record (e.g. torn by a crash).
+ * Delivery is at least once: messages read since the last sync are read
+ * again after a restart.
+ * <p>
+ * Retention is bounded by total bytes and by age; messages removed by
+ * either bound before being read are counted as dropped.
+ * <p>
+ * Each record is stored as:
+ * <pre>
+ * int    length of the record body
+ * int    CRC32 of the record body
+ * long   time of appending (millis since the Epoch)
+ * short  length of the topic
+ * byte[] topic (UTF-8)
+ * byte[] payload
+ * </pre>
+ * All methods are thread-safe. The consumer passed to
+ * {@link #drain(int, BiPredicate)} is called without holding the spool's
+ * lock, so appending isn't blocked while a message is sent; only one
+ * thread may drain at a time.
+ * 
+ */
+public class DiskSpool
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(DiskSpool.class.getName());
+	
+	public static final String SEGMENT_FILE_EXT = ".seg";
+	public static final String CURSOR_FILE_NAME = "spool.cursor";
+	
+	public static final int  DEFAULT_SEGMENT_BYTES  = 4 * 1024 * 1024;
+	public static final long DEFAULT_MAX_BYTES      = 256L * 1024 * 1024;
+	public static final long DEFAULT_MAX_AGE_MILLIS = 24L * 60 * 60 * 1000;
+	
+	private static final int HEADER_LENGTH     = 8;
+	private static final int BODY_FIXED_LENGTH = 10;
+	
+	
+	// private var's
+	
+	private final File dir;
+	private final int  segmentBytes;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	
+	private final Deque<Segment> segments = new ArrayDeque<>();
+	
+	private FileChannel writeChannel = null;
+	private FileChannel readChannel  = null;
+	private Segment     readSegment  = null;
+	
+	// read position within the head segment
+	private long readOffset = 0L;
+	private int  readCount  = 0;
+	
+	private long totalBytes   = 0L;
+	private long pendingCount = 0L;
+	
+	private long appendedCount = 0L;
+	private long replayedCount = 0L;
+	private long replayedBytes = 0L;
+	private long replayNanos   = 0L;
+	private long droppedCount  = 0L;
+	
+	private boolean isOpen  = false;
+	private boolean isDirty = false;
+	
+	private final CRC32 crc = new CRC32();
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor. Opens (or creates) the spool in 'dir', recovering any
+	 * messages left by a previous run.
+	 * 
+	 * @param dir The spool directory.
+	 * @param segmentBytes The size at which a new segment is started.
+	 * @param maxBytes The maximum total size of all segments, or 0 for no limit.
+	 * @param maxAgeMillis The maximum age of a message, or 0 for no limit.
+	 */
+	public DiskSpool(File dir, int segmentBytes, long maxBytes, long maxAgeMillis)
+	{
+		super();
+		
+		this.dir          = dir;
+		this.segmentBytes = Math.max(1024, segmentBytes);
+		this.maxBytes     = Math.max(0L, maxBytes);
+		this.maxAgeMillis = Math.max(0L, maxAgeMillis);
+		
+		openSpool();
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Appends a message to the spool, applying the retention limits.
+	 * 
+	 * @param topic The topic.
+	 * @param payload The payload.
+	 * @return boolean True on success; false if the spool isn't open or
+	 * the message can't be written.
+	 */
+	public synchronized boolean append(String topic, byte[] payload)
+	{
+		if (! this.isOpen || topic == null || payload == null) {
+			return false;
+		}
+		
+		byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+		
+		if (topicBytes.length > Short.MAX_VALUE) {
+			_Logger.warning("Topic too long to spool: " + topic);
+			
+			return false;
+		}
+		
+		long now        = System.currentTimeMillis();
+		int  bodyLength = BODY_FIXED_LENGTH + topicBytes.length + payload.length;
+		int  recLength  = HEADER_LENGTH + bodyLength;
+		
+		ByteBuffer buf = ByteBuffer.allocate(recLength);
+		buf.position(HEADER_LENGTH);
+		buf.putLong(now).putShort((short) topicBytes.length).put(topicBytes).put(payload);
+		
+		this.crc.reset();
+		this.crc.update(buf.array(), HEADER_LENGTH, bodyLength);
+		
+		buf.putInt(0, bodyLength).putInt(4, (int) this.crc.getValue());
+		buf.rewind();
+		
+		try {
+			Segment tail = this.segments.peekLast();
+			
+			if (tail == null || (tail.size > 0 && tail.size + recLength > this.segmentBytes)) {
+				tail = rollSegment(tail == null ? 0L : tail.id + 1);
+			}
+			
+			while (buf.hasRemaining()) {
+				this.writeChannel.write(buf);
+			}
+			
+			tail.size += recLength;
+			tail.recordCount++;
+			tail.lastAppendMillis = now;
+			
+			this.totalBytes += recLength;
+			this.pendingCount++;
+			this.appendedCount++;
+			this.isDirty = true;
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to append message to spool: " + this.dir, e);
+			
+			return false;
+		}
+		
+		applyRetention(now);
+		
+		return true;
+	}
+	
+	/**
+	 * Reads up to 'maxRecords' messages in order and passes each to
+	 * 'consumer', stopping at the first one it doesn't accept. That message
+	 * stays at the head of the spool, to be passed again on the next call.
+	 * Messages older than the maximum age are skipped and counted as dropped.
+	 * 
+	 * @param maxRecords The maximum number of messages to pass.
+	 * @param consumer Called with each message's topic and payload; returns
+	 * true if the message was sent.
+	 * @return int The number of messages accepted by 'consumer'.
+	 */
+	public int drain(int maxRecords, BiPredicate<String, byte[]> consumer)
+	{
+		int  count     = 0;
+		long startTime = System.nanoTime();
+		
+		while (count < maxRecords) {
+			Record rec;
+			
+			synchronized (this) {
+				rec = readRecord();
+			}
+			
+			if (rec == null) {
+				break;
+			}
+			
+			if (this.maxAgeMillis > 0L && rec.timeMillis < System.currentTimeMillis() - this.maxAgeMillis) {
+				synchronized (this) {
+					if (advance(rec)) {
+						this.droppedCount++;
+					}
+				}
+				
+				continue;
+			}
+			
+			if (! consumer.test(rec.topic, rec.payload)) {
+				break;
+			}
+			
+			synchronized (this) {
+				if (advance(rec)) {
+					this.replayedCount++;
+					this.replayedBytes += rec.length;
+				}
+			}
+			
+			count++;
+		}
+		
+		if (count > 0) {
+			synchronized (this) {
+				this.replayNanos += System.nanoTime() - startTime;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Forces appended messages to disk and persists the read cursor, if
+	 * either changed since the last sync.
+	 * 
+	 */
+	public synchronized void sync()
+	{
+		if (! this.isOpen || ! this.isDirty) {
+			return;
+		}
+		
+		try {
+			if (this.writeChannel != null) {
+				this.writeChannel.force(false);
+			}
+			
+			writeCursor();
+			
+			this.isDirty = false;
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to sync spool: " + this.dir, e);
+		}
+	}
+	
+	/**
+	 * Syncs and closes the spool. Further appends are rejected.
+	 * 
+	 */
+	public synchronized void close()
+	{
+		if (! this.isOpen) {
+			return;
+		}
+		
+		sync();
+		
+		this.isOpen = false;
+		
+		closeQuietly(this.writeChannel);
+		closeQuietly(this.readChannel);
+		
+		this.writeChannel = null;
+		this.readChannel  = null;
+		this.readSegment  = null;
+	}
+	
+	public File getDirectory()
+	{
+		return this.dir;
+	}
+	
+	public synchronized boolean isEmpty()
+	{
+		return (this.pendingCount == 0L);
+	}
+	
+	public synchronized boolean isOpen()
+	{
+		return this.isOpen;
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages not yet read.
+	 */
+	public synchronized long getPendingCount()
+	{
+		return this.pendingCount;
+	}
+	
+	/**
+	 * 
+	 * @return long The total size of all segments on disk, including
+	 * messages already read from the head segment.
+	 */
+	public synchronized long getTotalBytes()
+	{
+		return this.totalBytes;
+	}
+	
+	public synchronized long getAppendedCount()
+	{
+		return this.appendedCount;
+	}
+	
+	public synchronized long getReplayedCount()
+	{
+		return this.replayedCount;
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages removed by the retention limits
+	 * before being read.
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return this.droppedCount;
+	}
+	
+	/**
+	 * 
+	 * @return double The average replay throughput in messages per second
+	 * while draining, or 0 if nothing was replayed.
+	 */
+	public synchronized double getReplayRate()
+	{
+		return (this.replayNanos > 0L ? this.replayedCount * 1.0e9d / this.replayNanos : 0.0d);
+	}
+	
+	/**
+	 * 
+	 * @return double The average replay throughput in bytes per second
+	 * while draining, or 0 if nothing was replayed.
+	 */
+	public synchronized double getReplayByteRate()
+	{
+		return (this.replayNanos > 0L ? this.replayedBytes * 1.0e9d / this.replayNanos : 0.0d);
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("dir=").append(this.dir).append(',');
+		sb.append("segments=").append(this.segments.size()).append(',');
+		sb.append("bytes=").append(this.totalBytes).append(',');
+		sb.append("pending=").append(this.pendingCount).append(',');
+		sb.append("appended=").append(this.appendedCount).append(',');
+		sb.append("replayed=").append(this.replayedCount).append(',');
+		sb.append("dropped=").append(this.droppedCount).append(',');
+		sb.append("replayRate=").append(String.format("%.1f", getReplayRate()));
+		
+		return sb.toString();
+	}
+	
+	
+	// private methods
+	
+	private void openSpool()
+	{
+		if (! this.dir.isDirectory() && ! this.dir.mkdirs()) {
+			_Logger.warning("Failed to create spool directory: " + this.dir);
+			
+			return;
+		}
+		
+		long[] cursor = readCursor();
+		
+		File[] files = this.dir.listFiles((d, name) -> name.endsWith(SEGMENT_FILE_EXT));
+		List<Long> ids = new ArrayList<>();
+		
+		if (files == null) {
+			_Logger.warning("Failed to list spool directory: " + this.dir);
+			
+			return;
+		}
+		
+		for (File file : files) {
+			String name = file.getName();
+			
+			try {
+				ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_FILE_EXT.length())));
+			} catch (NumberFormatException e) {
+				_Logger.warning("Ignoring unknown file in spool directory: " + file);
+			}
+		}
+		
+		ids.sort(null);
+		
+		for (Long id : ids) {
+			File file = getSegmentFile(id);
+			
+			if (id < cursor[0]) {
+				// fully read before the last sync
+				deleteQuietly(file);
+				
+				continue;
+			}
+			
+			Segment seg = recoverSegment(id, file);
+			
+			if (id == cursor[0] && this.segments.isEmpty()) {
+				countReadRecords(seg, cursor[1]);
+			}
+			
+			this.segments.addLast(seg);
+			this.totalBytes += seg.size;
+			this.pendingCount += seg.recordCount;
+		}
+		
+		this.pendingCount -= this.readCount;
+		
+		try {
+			Segment tail = this.segments.peekLast();
+			
+			if (tail != null) {
+				this.writeChannel = openWriteChannel(tail.file);
+			}
+			
+			this.isOpen = true;
+			
+			_Logger.info("Opened spool: " + this);
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to open spool: " + this.dir, e);
+		}
+	}
+	
+	/**
+	 * Scans a segment, truncating it at the first corrupt record.
+	 * 
+	 */
+	private Segment recoverSegment(long id, File file)
+	{
+		Segment seg = new Segment(id, file);
+		seg.lastAppendMillis = file.lastModified();
+		
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long fileSize = ch.size();
+			long offset   = 0L;
+			
+			while (offset < fileSize) {
+				Record rec = readRecord(ch, offset);
+				
+				if (rec == null) {
+					break;
+				}
+				
+				offset += rec.length;
+				seg.recordCount++;
+				seg.lastAppendMillis = rec.timeMillis;
+			}
+			
+			if (offset < fileSize) {
+				_Logger.warning("Truncating corrupt spool segment " + file + " at offset " + offset + " of " + fileSize);
+				
+				ch.truncate(offset);
+			}
+			
+			seg.size = offset;
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to recover spool segment: " + file, e);
+		}
+		
+		return seg;
+	}
+	
+	/**
+	 * Restores the read position within the head segment from the cursor offset.
+	 * 
+	 */
+	private void countReadRecords(Segment seg, long cursorOffset)
+	{
+		try (FileChannel ch = FileChannel.open(seg.file.toPath(), StandardOpenOption.READ)) {
+			long offset = 0L;
+			
+			while (offset < cursorOffset && offset < seg.size) {
+				Record rec = readRecord(ch, offset);
+				
+				if (rec == null) {
+					break;
+				}
+				
+				offset += rec.length;
+				this.readCount++;
+			}
+			
+			this.readOffset = offset;
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to restore spool cursor in segment: " + seg.file, e);
+		}
+	}
+	
+	/**
+	 * Returns the record at the read cursor without advancing it.
+	 * 
+	 */
+	private Record readRecord()
+	{
+		Segment head = this.segments.peekFirst();
+		
+		while (head != null && this.readOffset >= head.size && head != this.segments.peekLast()) {
+			removeHead(false);
+			head = this.segments.peekFirst();
+		}
+		
+		if (head == null || this.readOffset >= head.size) {
+			return null;
+		}
+		
+		try {
+			if (this.readSegment != head) {
+				closeQuietly(this.readChannel);
+				
+				this.readChannel = FileChannel.open(head.file.toPath(), StandardOpenOption.READ);
+				this.readSegment = head;
+			}
+			
+			Record rec = readRecord(this.readChannel, this.readOffset);
+			
+			if (rec != null) {
+				rec.segment = head;
+				rec.offset  = this.readOffset;
+			} else {
+				_Logger.warning("Skipping unreadable spool segment: " + head.file);
+				
+				this.droppedCount += head.recordCount - this.readCount;
+				this.pendingCount -= head.recordCount - this.readCount;
+				this.readOffset    = head.size;
+				this.readCount     = head.recordCount;
+			}
+			
+			return rec;
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to read spool segment: " + head.file, e);
+		}
+		
+		return null;
+	}
+	
+	private Record readRecord(FileChannel ch, long offset) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		
+		if (! readFully(ch, header, offset)) {
+			return null;
+		}
+		
+		int bodyLength = header.getInt(0);
+		int checksum   = header.getInt(4);
+		
+		if (bodyLength < BODY_FIXED_LENGTH || offset + HEADER_LENGTH + bodyLength > ch.size()) {
+			return null;
+		}
+		
+		ByteBuffer body = ByteBuffer.allocate(bodyLength);
+		
+		if (! readFully(ch, body, offset + HEADER_LENGTH)) {
+			return null;
+		}
+		
+		this.crc.reset();
+		this.crc.update(body.array(), 0, bodyLength);
+		
+		if ((int) this.crc.getValue() != checksum) {
+			return null;
+		}
+		
+		body.rewind();
+		
+		Record rec = new Record();
+		rec.length     = HEADER_LENGTH + bodyLength;
+		rec.timeMillis = body.getLong();
+		
+		int topicLength = body.getShort();
+		
+		if (topicLength < 0 || topicLength > bodyLength - BODY_FIXED_LENGTH) {
+			return null;
+		}
+		
+		rec.topic   = new String(body.array(), BODY_FIXED_LENGTH, topicLength, StandardCharsets.UTF_8);
+		rec.payload = new byte[bodyLength - BODY_FIXED_LENGTH - topicLength];
+		
+		System.arraycopy(body.array(), BODY_FIXED_LENGTH + topicLength, rec.payload, 0, rec.payload.length);
+		
+		return rec;
+	}
+	
+	private boolean readFully(FileChannel ch, ByteBuffer buf, long offset) throws IOException
+	{
+		while (buf.hasRemaining()) {
+			int count = ch.read(buf, offset + buf.position());
+			
+			if (count < 0) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Moves the read cursor past 'rec', unless it was removed by the
+	 * retention limits in the meantime.
+	 * 
+	 * @return boolean True if the cursor was moved.
+	 */
+	private boolean advance(Record rec)
+	{
+		if (rec.segment != this.segments.peekFirst() || rec.offset != this.readOffset) {
+			return false;
+		}
+		
+		this.readOffset += rec.length;
+		this.readCount++;
+		this.pendingCount--;
+		this.isDirty = true;
+		
+		return true;
+	}
+	
+	private Segment rollSegment(long id) throws IOException
+	{
+		closeQuietly(this.writeChannel);
+		
+		Segment seg = new Segment(id, getSegmentFile(id));
+		
+		this.writeChannel = openWriteChannel(seg.file);
+		this.segments.addLast(seg);
+		
+		return seg;
+	}
+	
+	private void applyRetention(long now)
+	{
+		while (this.segments.size() > 1) {
+			Segment head = this.segments.peekFirst();
+			
+			boolean overSize = (this.maxBytes > 0L && this.totalBytes > this.maxBytes);
+			boolean tooOld   = (this.maxAgeMillis > 0L && head.lastAppendMillis < now - this.maxAgeMillis);
+			
+			if (! overSize && ! tooOld) {
+				break;
+			}
+			
+			removeHead(true);
+		}
+	}
+	
+	/**
+	 * Deletes the head segment, counting its unread messages as dropped if
+	 * 'isDrop' is true.
+	 * 
+	 */
+	private void removeHead(boolean isDrop)
+	{
+		Segment head = this.segments.pollFirst();
+		long unread  = head.recordCount - this.readCount;
+		
+		if (isDrop && unread > 0) {
+			_Logger.warning("Spool retention limit reached. Dropping " + unread + " messages in " + head.file);
+			
+			this.droppedCount += unread;
+		}
+		
+		this.pendingCount -= unread;
+		this.totalBytes   -= head.size;
+		this.readOffset    = 0L;
+		this.readCount     = 0;
+		
+		if (this.readSegment == head) {
+			closeQuietly(this.readChannel);
+			
+			this.readChannel = null;
+			this.readSegment = null;
+		}
+		
+		deleteQuietly(head.file);
+	}
+	
+	private long[] readCursor()
+	{
+		File file = new File(this.dir, CURSOR_FILE_NAME);
+		
+		if (file.exists()) {
+			try {
+				String[] parts = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+				
+				return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+			} catch (IOException | RuntimeException e) {
+				_Logger.log(Level.WARNING, "Ignoring unreadable spool cursor: " + file, e);
+			}
+		}
+		
+		return new long[] { 0L, 0L };
+	}
+	
+	private void writeCursor() throws IOException
+	{
+		Segment head    = this.segments.peekFirst();
+		long    segID   = (head != null ? head.id : 0L);
+		File    file    = new File(this.dir, CURSOR_FILE_NAME);
+		File    tmpFile = new File(this.dir, CURSOR_FILE_NAME + ".tmp");
+		
+		Files.write(tmpFile.toPath(), (segID + " " + this.readOffset).getBytes(StandardCharsets.UTF_8));
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private File getSegmentFile(long id)
+	{
+		return new File(this.dir, String.format("%020d", id) + SEGMENT_FILE_EXT);
+	}
+	
+	private FileChannel openWriteChannel(File file) throws IOException
+	{
+		return FileChannel.open(
+			file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+	
+	private void closeQuietly(FileChannel ch)
+	{
+		if (ch != null) {
+			try {
+				ch.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	private void deleteQuietly(File file)
+	{
+		if (! file.delete() && file.exists()) {
+			_Logger.warning("Failed to delete spool segment: " + file);
+		}
+	}
+	
+	
+	// private classes
+	
+	private static final class Segment
+	{
+		final long id;
+		final File file;
+		
+		long size = 0L;
+		int  recordCount = 0;
+		long lastAppendMillis = 0L;
+		
+		Segment(long id, File file)
+		{
+			this.id   = id;
+			this.file = file;
+		}
+	}
+	
+	private static final class Record
+	{
+		Segment segment;
+		long    offset;
+		int     length;
+		long    timeMillis;
+		String  topic;
+		byte[]  payload;
+	}
+	
+}
@@ -0,0 +1,294 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.cloud;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.gda.analytics.SensorWindow;
+import programmingtheiot.gda.analytics.WindowStats;
+
+/**
+ * Dispatches cloud-originated messages (actuator commands, management and
+ * configuration pushes) to an {@link IDataMessageListener}, which forwards
+ * them to the CDA via MQTT or CoAP.
+ * <p>
+ * The full topic of every resource and payload encoding (topic prefix,
+ * resource name and format suffix, see
+ * {@link DataFormatEnum#getTopicName(ResourceNameEnum)}) is mapped to its
+ * route once, on construction, so routing a message is a single hash lookup
+ * with no string parsing.
+ * <p>
+ * Actuator commands are decoded via {@link DataUtil} (JSON or CBOR) and
+ * passed to {@link IDataMessageListener#handleActuatorCommandResponse(ResourceNameEnum, ActuatorData)}
+ * as {@link ResourceNameEnum#CDA_ACTUATOR_CMD_RESOURCE}. All other JSON
+ * messages are passed as-is to
+ * {@link IDataMessageListener#handleIncomingMessage(ResourceNameEnum, String)}.
+ * <p>
+ * Two latencies are kept over the last messages routed: the transit
+ * latency of actuator commands (from the command's time stamp, set by the
+ * cloud, to receipt), and the dispatch latency (from receipt to the
+ * listener accepting the message).
+ * 
+ */
+public class DownlinkRouter
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(DownlinkRouter.class.getName());
+	
+	public static final int DEFAULT_LATENCY_WINDOW_SIZE = 1024;
+	
+	
+	// private var's
+	
+	// populated on construction only, so reads need no synchronization
+	private final Map<String, Route> routes = new HashMap<>();
+	
+	private volatile IDataMessageListener dataMsgListener = null;
+	
+	private final SensorWindow transitLatencyWindow;
+	private final SensorWindow dispatchLatencyWindow;
+	
+	private final AtomicLong routedCount  = new AtomicLong();
+	private final AtomicLong unknownCount = new AtomicLong();
+	private final AtomicLong failedCount  = new AtomicLong();
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param topicPrefix The prefix of all cloud topics (e.g. 'edge/gateway01/'), or null.
+	 */
+	public DownlinkRouter(String topicPrefix)
+	{
+		this(topicPrefix, DEFAULT_LATENCY_WINDOW_SIZE);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param topicPrefix The prefix of all cloud topics (e.g. 'edge/gateway01/'), or null.
+	 * @param latencyWindowSize The number of latency samples to keep.
+	 */
+	public DownlinkRouter(String topicPrefix, int latencyWindowSize)
+	{
+		super();
+		
+		String prefix = (topicPrefix != null ? topicPrefix : "");
+		
+		for (ResourceNameEnum resource : ResourceNameEnum.values()) {
+			for (DataFormatEnum format : DataFormatEnum.values()) {
+				this.routes.put(prefix + format.getTopicName(resource), new Route(resource, format));
+			}
+		}
+		
+		this.transitLatencyWindow  = new SensorWindow(latencyWindowSize, 0L);
+		this.dispatchLatencyWindow = new SensorWindow(latencyWindowSize, 0L);
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Routes an incoming cloud message.
+	 * 
+	 * @param topic The full topic name.
+	 * @param payload The message payload.
+	 * @return boolean True if the topic maps to a resource (whether or not
+	 * it was dispatched successfully); false if it's not a downlink topic.
+	 */
+	public boolean routeMessage(String topic, byte[] payload)
+	{
+		Route route = (topic != null ? this.routes.get(topic) : null);
+		
+		if (route == null) {
+			this.unknownCount.incrementAndGet();
+			
+			_Logger.fine("Ignoring cloud message for unknown topic: " + topic);
+			
+			return false;
+		}
+		
+		long receivedNanos = System.nanoTime();
+		
+		if (dispatch(route, payload)) {
+			this.routedCount.incrementAndGet();
+			this.dispatchLatencyWindow.addValue(
+				(System.nanoTime() - receivedNanos) / 1.0e6f, System.currentTimeMillis());
+		} else {
+			this.failedCount.incrementAndGet();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Checks if 'topic' maps to a resource.
+	 * 
+	 * @param topic The full topic name.
+	 * @return boolean
+	 */
+	public boolean isRoutable(String topic)
+	{
+		return (topic != null && this.routes.containsKey(topic));
+	}
+	
+	public void setDataMessageListener(IDataMessageListener listener)
+	{
+		this.dataMsgListener = listener;
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages accepted by the listener.
+	 */
+	public long getRoutedCount()
+	{
+		return this.routedCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages ignored because their topic doesn't map to a resource.
+	 */
+	public long getUnknownCount()
+	{
+		return this.unknownCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages that couldn't be decoded or dispatched.
+	 */
+	public long getFailedCount()
+	{
+		return this.failedCount.get();
+	}
+	
+	/**
+	 * Returns the transit latency (cloud time stamp to receipt, in
+	 * milliseconds) of the last actuator commands. This includes any clock
+	 * offset between the cloud and the gateway; negative values are
+	 * recorded as 0.
+	 * 
+	 * @return WindowStats The stats, or null if no command was received.
+	 */
+	public WindowStats getTransitLatencyStats()
+	{
+		return this.transitLatencyWindow.getStats();
+	}
+	
+	/**
+	 * Returns the dispatch latency (receipt to listener, in milliseconds)
+	 * of the last messages routed.
+	 * 
+	 * @return WindowStats The stats, or null if no message was routed.
+	 */
+	public WindowStats getDispatchLatencyStats()
+	{
+		return this.dispatchLatencyWindow.getStats();
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(this.getClass().getSimpleName());
+		
+		sb.append(":routed=").append(getRoutedCount()).append(',');
+		sb.append("unknown=").append(getUnknownCount()).append(',');
+		sb.append("failed=").append(getFailedCount());
+		
+		return sb.toString();
+	}
+	
+	
+	// private methods
+	
+	private boolean dispatch(Route route, byte[] payload)
+	{
+		IDataMessageListener listener = this.dataMsgListener;
+		
+		if (listener == null || payload == null) {
+			_Logger.warning("No listener or payload for cloud message. Dropping: " + route.resource);
+			
+			return false;
+		}
+		
+		try {
+			if (route.resource == ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE) {
+				ActuatorData data = decodeActuatorData(route.format, payload);
+				
+				if (data == null) {
+					_Logger.warning("Failed to decode cloud actuator command.");
+					
+					return false;
+				}
+				
+				long now = System.currentTimeMillis();
+				this.transitLatencyWindow.addValue(Math.max(0L, now - data.getTimeStampMillis()), now);
+				
+				return listener.handleActuatorCommandResponse(route.resource, data);
+			}
+			
+			if (route.format != DataFormatEnum.JSON) {
+				_Logger.warning("Unsupported encoding for cloud message: " + route.resource + ", " + route.format);
+				
+				return false;
+			}
+			
+			return listener.handleIncomingMessage(route.resource, new String(payload, StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			_Logger.log(Level.WARNING, "Failed to dispatch cloud message: " + route.resource, e);
+		}
+		
+		return false;
+	}
+	
+	private ActuatorData decodeActuatorData(DataFormatEnum format, byte[] payload)
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		switch (format) {
+			case CBOR:
+				return dataUtil.cborToActuatorData(payload);
+			
+			default:
+				return dataUtil.jsonToActuatorData(payload);
+		}
+	}
+	
+	
+	// private classes
+	
+	private static final class Route
+	{
+		final ResourceNameEnum resource;
+		final DataFormatEnum   format;
+		
+		Route(ResourceNameEnum resource, DataFormatEnum format)
+		{
+			this.resource = resource;
+			this.format   = format;
+		}
+	}
+	
+}
@@ -0,0 +1,489 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.cloud;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+
+/**
+ * Accumulates sensor readings per topic and sends each batch as one
+ * payload, once it holds the current batch size or its oldest item is
+ * older than the maximum delay. Batches are encoded by
+ * {@link DataUtil#sensorDataBatchToBytes(List, DataFormatEnum)} and sent
+ * on the item topic plus {@link ConfigConst#BATCH_TOPIC_SUFFIX}, so a
+ * receiver can tell them apart from single readings.
+ * <p>
+ * Up to 'maxInflight' batches are sent concurrently, each by its own
+ * sender thread, so the uplink isn't capped at one broker round trip per
+ * batch. If all senders are busy and their queue is full, the thread
+ * adding the item sends the batch itself, which throttles producers to the
+ * uplink rate. Batches of one topic may therefore complete out of order;
+ * each item carries its own time stamp.
+ * <p>
+ * The batch size is tuned from the observed send (ack) latency and item
+ * arrival rate, so that the batches in flight cover one round trip's
+ * worth of items (the bandwidth-delay product):
+ * <pre>
+ * batchSize = 1.5 * arrivalRate * ackLatency / maxInflight
+ * </pre>
+ * clamped to [minBatchItems, maxBatchItems].
+ * 
+ */
+public class UplinkBatcher
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkBatcher.class.getName());
+	
+	public static final int  DEFAULT_MIN_BATCH_ITEMS  = 1;
+	public static final int  DEFAULT_MAX_BATCH_ITEMS  = 100;
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 1000L;
+	public static final int  DEFAULT_MAX_INFLIGHT     = 4;
+	
+	private static final double HEADROOM        = 1.5d;
+	private static final double EWMA_WEIGHT     = 0.2d;
+	private static final long   MIN_TICK_MILLIS = 5L;
+	
+	
+	// private var's
+	
+	private final BiPredicate<String, byte[]> sender;
+	private final DataFormatEnum dataFormat;
+	
+	private final int  maxInflight;
+	private final long maxDelayMillis;
+	
+	private volatile int minBatchItems;
+	private volatile int maxBatchItems;
+	private volatile int batchSize;
+	
+	private final Map<String, Batch> batches = new HashMap<>();
+	
+	private ThreadPoolExecutor       sendExecSvc = null;
+	private ScheduledExecutorService tickExecSvc = null;
+	
+	// ack latency (seconds) and arrival rate (items per second), as EWMA's
+	private volatile double ackLatency  = 0.0d;
+	private volatile double arrivalRate = 0.0d;
+	
+	private final AtomicLong addedCount       = new AtomicLong();
+	private final AtomicLong sentItemCount    = new AtomicLong();
+	private final AtomicLong sentBatchCount   = new AtomicLong();
+	private final AtomicLong failedBatchCount = new AtomicLong();
+	
+	private long lastTickNanos  = 0L;
+	private long lastAddedCount = 0L;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param sender Sends one batch (topic and payload); returns true on success.
+	 * @param dataFormat The batch payload encoding. If null, {@link DataFormatEnum#JSON} is used.
+	 * @param minBatchItems The lower bound of the tuned batch size.
+	 * @param maxBatchItems The upper bound of the tuned batch size.
+	 * @param maxDelayMillis The maximum time an item waits in a batch.
+	 * @param maxInflight The maximum number of batches sent concurrently.
+	 */
+	public UplinkBatcher(
+		BiPredicate<String, byte[]> sender, DataFormatEnum dataFormat,
+		int minBatchItems, int maxBatchItems, long maxDelayMillis, int maxInflight)
+	{
+		super();
+		
+		this.sender         = sender;
+		this.dataFormat     = (dataFormat != null ? dataFormat : DataFormatEnum.JSON);
+		this.maxInflight    = Math.max(1, maxInflight);
+		this.maxDelayMillis = Math.max(1L, maxDelayMillis);
+		
+		setBatchItemLimits(minBatchItems, maxBatchItems);
+		
+		this.batchSize = this.minBatchItems;
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Adds a reading to the batch of 'topic', sending the batch if it's
+	 * full. The reading is encoded when the batch is sent, so it must not
+	 * be modified after it's added.
+	 * 
+	 * @param topic The topic of a single reading; the batch is sent on this
+	 * topic plus {@link ConfigConst#BATCH_TOPIC_SUFFIX}.
+	 * @param item The reading.
+	 * @return boolean True if the item was added; false if the batcher isn't started.
+	 */
+	public boolean addItem(String topic, SensorData item)
+	{
+		if (topic == null || item == null) {
+			return false;
+		}
+		
+		Batch fullBatch = null;
+		
+		synchronized (this) {
+			if (this.sendExecSvc == null) {
+				return false;
+			}
+			
+			Batch batch = this.batches.get(topic);
+			
+			if (batch == null) {
+				batch = new Batch(topic);
+				this.batches.put(topic, batch);
+			}
+			
+			batch.addItem(item);
+			
+			if (batch.items.size() >= this.batchSize) {
+				fullBatch = this.batches.remove(topic);
+			}
+		}
+		
+		this.addedCount.incrementAndGet();
+		
+		if (fullBatch != null) {
+			dispatchBatch(fullBatch);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Starts the sender threads and the flush timer.
+	 * 
+	 */
+	public synchronized void startBatcher()
+	{
+		if (this.sendExecSvc == null) {
+			this.sendExecSvc =
+				new ThreadPoolExecutor(
+					this.maxInflight, this.maxInflight, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(this.maxInflight), new ThreadPoolExecutor.CallerRunsPolicy());
+			
+			long tickMillis = Math.max(MIN_TICK_MILLIS, this.maxDelayMillis / 4);
+			
+			this.lastTickNanos  = System.nanoTime();
+			this.lastAddedCount = this.addedCount.get();
+			
+			this.tickExecSvc = Executors.newScheduledThreadPool(1);
+			this.tickExecSvc.scheduleWithFixedDelay(this::handleTick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+			
+			_Logger.info(
+				"Uplink batcher started: batchItems=[" + this.minBatchItems + ", " + this.maxBatchItems +
+				"], maxDelayMillis=" + this.maxDelayMillis + ", maxInflight=" + this.maxInflight);
+		}
+	}
+	
+	/**
+	 * Sends all open batches, then stops, waiting up to 'timeoutMillis' for
+	 * the batches in flight to complete.
+	 * 
+	 * @param timeoutMillis The maximum time to wait.
+	 */
+	public void stopBatcher(long timeoutMillis)
+	{
+		ThreadPoolExecutor       sendSvc;
+		ScheduledExecutorService tickSvc;
+		
+		synchronized (this) {
+			if (this.sendExecSvc == null) {
+				return;
+			}
+			
+			sendSvc = this.sendExecSvc;
+			tickSvc = this.tickExecSvc;
+			
+			this.sendExecSvc = null;
+			this.tickExecSvc = null;
+		}
+		
+		tickSvc.shutdown();
+		
+		for (Batch batch : removeBatches(false)) {
+			sendSvc.execute(() -> sendBatch(batch));
+		}
+		
+		sendSvc.shutdown();
+		
+		try {
+			if (! sendSvc.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				_Logger.warning("Batches still in flight after " + timeoutMillis + " ms.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		_Logger.info("Uplink batcher stopped: " + this);
+	}
+	
+	/**
+	 * Sends all open batches now.
+	 * 
+	 */
+	public void flushBatches()
+	{
+		for (Batch batch : removeBatches(false)) {
+			dispatchBatch(batch);
+		}
+	}
+	
+	public DataFormatEnum getDataFormat()
+	{
+		return this.dataFormat;
+	}
+	
+	public int getBatchSize()
+	{
+		return this.batchSize;
+	}
+	
+	public int getMinBatchItems()
+	{
+		return this.minBatchItems;
+	}
+	
+	public int getMaxBatchItems()
+	{
+		return this.maxBatchItems;
+	}
+	
+	public int getMaxInflight()
+	{
+		return this.maxInflight;
+	}
+	
+	/**
+	 * 
+	 * @return double The send (ack) latency EWMA in milliseconds.
+	 */
+	public double getAckLatencyMillis()
+	{
+		return this.ackLatency * 1000.0d;
+	}
+	
+	/**
+	 * 
+	 * @return double The item arrival rate EWMA in items per second.
+	 */
+	public double getArrivalRate()
+	{
+		return this.arrivalRate;
+	}
+	
+	public long getSentItemCount()
+	{
+		return this.sentItemCount.get();
+	}
+	
+	public long getSentBatchCount()
+	{
+		return this.sentBatchCount.get();
+	}
+	
+	public long getFailedBatchCount()
+	{
+		return this.failedBatchCount.get();
+	}
+	
+	/**
+	 * Sets the bounds of the tuned batch size, e.g. to cap the payload size.
+	 * 
+	 * @param minItems The lower bound.
+	 * @param maxItems The upper bound.
+	 */
+	public void setBatchItemLimits(int minItems, int maxItems)
+	{
+		this.maxBatchItems = Math.max(1, maxItems);
+		this.minBatchItems = Math.max(1, Math.min(minItems, this.maxBatchItems));
+		this.batchSize     = Math.max(this.minBatchItems, Math.min(this.batchSize, this.maxBatchItems));
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("batchSize=").append(this.batchSize).append(',');
+		sb.append("ackLatencyMillis=").append(String.format("%.1f", getAckLatencyMillis())).append(',');
+		sb.append("arrivalRate=").append(String.format("%.1f", this.arrivalRate)).append(',');
+		sb.append("sentBatches=").append(getSentBatchCount()).append(',');
+		sb.append("sentItems=").append(getSentItemCount()).append(',');
+		sb.append("failedBatches=").append(getFailedBatchCount());
+		
+		return sb.toString();
+	}
+	
+	
+	// private methods
+	
+	private void handleTick()
+	{
+		try {
+			for (Batch batch : removeBatches(true)) {
+				dispatchBatch(batch);
+			}
+			
+			updateArrivalRate();
+		} catch (Exception e) {
+			// keep the scheduled task alive
+			_Logger.log(Level.WARNING, "Failed to flush batches.", e);
+		}
+	}
+	
+	/**
+	 * Removes and returns the open batches; if 'expiredOnly' is true, only
+	 * those whose oldest item exceeds the maximum delay.
+	 * 
+	 */
+	private synchronized List<Batch> removeBatches(boolean expiredOnly)
+	{
+		List<Batch> removed = new ArrayList<>();
+		long cutoff = System.currentTimeMillis() - this.maxDelayMillis;
+		
+		for (Iterator<Batch> iter = this.batches.values().iterator(); iter.hasNext(); ) {
+			Batch batch = iter.next();
+			
+			if (! expiredOnly || batch.firstMillis <= cutoff) {
+				removed.add(batch);
+				iter.remove();
+			}
+		}
+		
+		return removed;
+	}
+	
+	private void dispatchBatch(Batch batch)
+	{
+		ThreadPoolExecutor sendSvc;
+		
+		synchronized (this) {
+			sendSvc = this.sendExecSvc;
+		}
+		
+		if (sendSvc != null && ! sendSvc.isShutdown()) {
+			sendSvc.execute(() -> sendBatch(batch));
+		} else {
+			sendBatch(batch);
+		}
+	}
+	
+	private void sendBatch(Batch batch)
+	{
+		byte[] payload = DataUtil.getInstance().sensorDataBatchToBytes(batch.items, this.dataFormat);
+		String topic   = batch.topic + ConfigConst.BATCH_TOPIC_SUFFIX;
+		
+		long    startTime = System.nanoTime();
+		boolean success   = false;
+		
+		try {
+			success = (payload != null && this.sender.test(topic, payload));
+		} catch (Exception e) {
+			_Logger.log(Level.WARNING, "Failed to send batch to topic: " + batch.topic, e);
+		}
+		
+		if (success) {
+			this.sentBatchCount.incrementAndGet();
+			this.sentItemCount.addAndGet(batch.items.size());
+			
+			updateAckLatency((System.nanoTime() - startTime) / 1.0e9d);
+		} else {
+			this.failedBatchCount.incrementAndGet();
+			
+			_Logger.warning("Failed to send batch of " + batch.items.size() + " items to topic: " + topic);
+		}
+	}
+	
+	private synchronized void updateAckLatency(double latency)
+	{
+		this.ackLatency =
+			(this.ackLatency == 0.0d ? latency : EWMA_WEIGHT * latency + (1.0d - EWMA_WEIGHT) * this.ackLatency);
+		
+		retuneBatchSize();
+	}
+	
+	private synchronized void updateArrivalRate()
+	{
+		long now   = System.nanoTime();
+		long added = this.addedCount.get();
+		
+		double elapsed = (now - this.lastTickNanos) / 1.0e9d;
+		
+		if (elapsed <= 0.0d) {
+			return;
+		}
+		
+		double rate = (added - this.lastAddedCount) / elapsed;
+		
+		this.arrivalRate    = EWMA_WEIGHT * rate + (1.0d - EWMA_WEIGHT) * this.arrivalRate;
+		this.lastTickNanos  = now;
+		this.lastAddedCount = added;
+		
+		retuneBatchSize();
+	}
+	
+	private void retuneBatchSize()
+	{
+		double target = HEADROOM * this.arrivalRate * this.ackLatency / this.maxInflight;
+		int    size   = (int) Math.min(this.maxBatchItems, Math.max(this.minBatchItems, Math.ceil(target)));
+		
+		if (size != this.batchSize) {
+			_Logger.fine("Batch size: " + this.batchSize + " -> " + size + " (" + this + ")");
+			
+			this.batchSize = size;
+		}
+	}
+	
+	
+	// private classes
+	
+	private static final class Batch
+	{
+		final String topic;
+		final List<SensorData> items = new ArrayList<>();
+		
+		long firstMillis = 0L;
+		
+		Batch(String topic)
+		{
+			this.topic = topic;
+		}
+		
+		void addItem(SensorData item)
+		{
+			if (this.items.isEmpty()) {
+				this.firstMillis = System.currentTimeMillis();
+			}
+			
+			this.items.add(item);
+		}
+	}
+	
+}
@@ -0,0 +1,402 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.cloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.analytics.SensorStreamKey;
+
+/**
+ * Per-stream filter applied to sensor readings before they're sent to the
+ * cloud, to cut uplink volume for readings that only change within the
+ * sensor's noise.
+ * <p>
+ * Readings pass through up to two stages, each disabled by setting its
+ * parameter to 0:
+ * <ul>
+ * <li>Downsampling: readings are collected into time buckets of
+ * {@link ConfigConst#BUCKET_MILLIS_KEY} milliseconds, and one reading with
+ * the bucket's mean is emitted when the first reading of the next bucket
+ * arrives (or on {@link #flushBuckets(Consumer)}). If
+ * {@link ConfigConst#SEND_BUCKET_MIN_MAX_KEY} is set, the bucket's min and
+ * max are emitted as well, named with the {@link #MIN_NAME_SUFFIX} and
+ * {@link #MAX_NAME_SUFFIX} suffixes.</li>
+ * <li>Deadband: a reading (or bucket) is only emitted if it differs from the
+ * last value sent for its stream by more than {@link ConfigConst#DEADBAND_KEY},
+ * or if no value was sent for {@link ConfigConst#MAX_INTERVAL_MILLIS_KEY}
+ * milliseconds (a heartbeat, so the cloud can tell a steady stream from a
+ * dead one).</li>
+ * </ul>
+ * The parameters are read from {@link ConfigConst#CLOUD_GATEWAY_SERVICE}, and
+ * may be changed at runtime via the setters.
+ * 
+ */
+public class UplinkFilter
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkFilter.class.getName());
+	
+	public static final String MIN_NAME_SUFFIX = "Min";
+	public static final String MAX_NAME_SUFFIX = "Max";
+	
+	public static final float DEFAULT_DEADBAND            = 0.0f;
+	public static final long  DEFAULT_MAX_INTERVAL_MILLIS = 0L;
+	public static final long  DEFAULT_BUCKET_MILLIS       = 0L;
+	
+	
+	// private var's
+	
+	private final Map<SensorStreamKey, StreamState> streams = new ConcurrentHashMap<>();
+	
+	private volatile float   deadband;
+	private volatile long    maxIntervalMillis;
+	private volatile long    bucketMillis;
+	private volatile boolean sendBucketMinMax;
+	
+	private final AtomicLong receivedCount   = new AtomicLong();
+	private final AtomicLong sentCount       = new AtomicLong();
+	private final AtomicLong suppressedCount = new AtomicLong();
+	
+	
+	// constructors
+	
+	/**
+	 * Default. Reads the filter parameters from the configuration.
+	 * 
+	 */
+	public UplinkFilter()
+	{
+		this(
+			ConfigUtil.getInstance().getFloat(
+				ConfigConst.CLOUD_GATEWAY_SERVICE, ConfigConst.DEADBAND_KEY, DEFAULT_DEADBAND),
+			ConfigUtil.getInstance().getInteger(
+				ConfigConst.CLOUD_GATEWAY_SERVICE, ConfigConst.MAX_INTERVAL_MILLIS_KEY, (int) DEFAULT_MAX_INTERVAL_MILLIS),
+			ConfigUtil.getInstance().getInteger(
+				ConfigConst.CLOUD_GATEWAY_SERVICE, ConfigConst.BUCKET_MILLIS_KEY, (int) DEFAULT_BUCKET_MILLIS),
+			ConfigUtil.getInstance().getBoolean(
+				ConfigConst.CLOUD_GATEWAY_SERVICE, ConfigConst.SEND_BUCKET_MIN_MAX_KEY, false));
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param deadband The minimum absolute change to send a reading, or 0 to send all.
+	 * @param maxIntervalMillis The maximum time without sending a reading
+	 * for a stream, or 0 for no heartbeat.
+	 * @param bucketMillis The downsampling bucket length, or 0 to disable downsampling.
+	 * @param sendBucketMinMax If true, also send each bucket's min and max.
+	 */
+	public UplinkFilter(float deadband, long maxIntervalMillis, long bucketMillis, boolean sendBucketMinMax)
+	{
+		super();
+		
+		setDeadband(deadband);
+		setMaxIntervalMillis(maxIntervalMillis);
+		setBucketMillis(bucketMillis);
+		
+		this.sendBucketMinMax = sendBucketMinMax;
+		
+		_Logger.info(
+			"Uplink filter: deadband=" + this.deadband + ", maxIntervalMillis=" + this.maxIntervalMillis +
+			", bucketMillis=" + this.bucketMillis + ", sendBucketMinMax=" + this.sendBucketMinMax);
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Filters 'data', passing every reading to be sent to 'sink'. This may
+	 * be none (the reading was suppressed or added to the current bucket),
+	 * or several (a completed bucket's mean, min and max).
+	 * <p>
+	 * Readings from one stream must be passed in order. 'sink' is called
+	 * after the stream's state is released, so it may block (e.g. publish).
+	 * 
+	 * @param data The sensor reading.
+	 * @param sink The consumer of the readings to send.
+	 * @return int The number of readings passed to 'sink'.
+	 */
+	public int filterSensorData(SensorData data, Consumer<SensorData> sink)
+	{
+		if (data == null || sink == null) {
+			return 0;
+		}
+		
+		this.receivedCount.incrementAndGet();
+		
+		SensorStreamKey key   = new SensorStreamKey(data.getLocationID(), data.getTypeID(), data.getName());
+		StreamState     state = this.streams.get(key);
+		
+		if (state == null) {
+			state = this.streams.computeIfAbsent(key, k -> new StreamState());
+		}
+		
+		long bucketLen = this.bucketMillis;
+		long timeMillis = data.getTimeStampMillis();
+		
+		List<SensorData> output = new ArrayList<>(4);
+		
+		synchronized (state) {
+			if (bucketLen <= 0L) {
+				// bucket length may have been set to 0 while a bucket was open
+				emitBucket(state, output);
+				
+				if (shouldSend(state, data.getValue(), data.getValue(), data.getValue(), timeMillis)) {
+					markSent(state, data.getValue(), timeMillis);
+					output.add(data);
+				} else {
+					this.suppressedCount.incrementAndGet();
+				}
+			} else {
+				long bucket = timeMillis / bucketLen;
+				
+				if (state.bucketCount > 0 && bucket != state.bucket) {
+					emitBucket(state, output);
+				}
+				
+				if (state.bucketCount == 0) {
+					state.bucket    = bucket;
+					state.bucketMin = Float.MAX_VALUE;
+					state.bucketMax = -Float.MAX_VALUE;
+					state.bucketSum = 0.0d;
+					state.template  = data;
+				}
+				
+				state.bucketCount++;
+				state.bucketSum += data.getValue();
+				state.bucketMin  = Math.min(state.bucketMin, data.getValue());
+				state.bucketMax  = Math.max(state.bucketMax, data.getValue());
+				state.bucketLastMillis = timeMillis;
+			}
+		}
+		
+		return sendReadings(output, sink);
+	}
+	
+	/**
+	 * Emits the open bucket of every stream, e.g. before disconnecting.
+	 * 
+	 * @param sink The consumer of the readings to send.
+	 * @return int The number of readings passed to 'sink'.
+	 */
+	public int flushBuckets(Consumer<SensorData> sink)
+	{
+		List<SensorData> output = new ArrayList<>();
+		
+		for (StreamState state : this.streams.values()) {
+			synchronized (state) {
+				emitBucket(state, output);
+			}
+		}
+		
+		return sendReadings(output, sink);
+	}
+	
+	/**
+	 * Removes the state of all streams, so the next reading of each is sent.
+	 * Open buckets are discarded.
+	 * 
+	 */
+	public void clearStreams()
+	{
+		this.streams.clear();
+	}
+	
+	public float getDeadband()
+	{
+		return this.deadband;
+	}
+	
+	public long getMaxIntervalMillis()
+	{
+		return this.maxIntervalMillis;
+	}
+	
+	public long getBucketMillis()
+	{
+		return this.bucketMillis;
+	}
+	
+	public boolean isSendBucketMinMax()
+	{
+		return this.sendBucketMinMax;
+	}
+	
+	/**
+	 * 
+	 * @return long The number of readings passed to {@link #filterSensorData(SensorData, Consumer)}.
+	 */
+	public long getReceivedCount()
+	{
+		return this.receivedCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return long The number of readings passed to a sink, including bucket aggregates.
+	 */
+	public long getSentCount()
+	{
+		return this.sentCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return long The number of readings and buckets dropped by the deadband.
+	 */
+	public long getSuppressedCount()
+	{
+		return this.suppressedCount.get();
+	}
+	
+	public void setDeadband(float deadband)
+	{
+		this.deadband = Math.max(0.0f, deadband);
+	}
+	
+	public void setMaxIntervalMillis(long maxIntervalMillis)
+	{
+		this.maxIntervalMillis = Math.max(0L, maxIntervalMillis);
+	}
+	
+	/**
+	 * Sets the downsampling bucket length. Open buckets are emitted with the
+	 * next reading of their stream.
+	 * 
+	 * @param bucketMillis The bucket length, or 0 to disable downsampling.
+	 */
+	public void setBucketMillis(long bucketMillis)
+	{
+		this.bucketMillis = Math.max(0L, bucketMillis);
+	}
+	
+	public void setSendBucketMinMax(boolean enable)
+	{
+		this.sendBucketMinMax = enable;
+	}
+	
+	
+	// private methods
+	
+	/**
+	 * Passes the collected readings to 'sink', outside of any stream lock.
+	 * 
+	 */
+	private int sendReadings(List<SensorData> output, Consumer<SensorData> sink)
+	{
+		for (SensorData reading : output) {
+			sink.accept(reading);
+		}
+		
+		this.sentCount.addAndGet(output.size());
+		
+		return output.size();
+	}
+	
+	/**
+	 * Resets the open bucket of 'state', if any, and adds the readings to
+	 * send for it to 'output'. The caller must hold the lock of 'state'.
+	 * 
+	 */
+	private void emitBucket(StreamState state, List<SensorData> output)
+	{
+		if (state.bucketCount == 0) {
+			return;
+		}
+		
+		float mean = (float) (state.bucketSum / state.bucketCount);
+		float min  = state.bucketMin;
+		float max  = state.bucketMax;
+		long  timeMillis = state.bucketLastMillis;
+		SensorData template = state.template;
+		
+		state.bucketCount = 0;
+		state.template    = null;
+		
+		if (! shouldSend(state, mean, min, max, timeMillis)) {
+			this.suppressedCount.incrementAndGet();
+			
+			return;
+		}
+		
+		markSent(state, mean, timeMillis);
+		output.add(createReading(template, template.getName(), mean));
+		
+		if (this.sendBucketMinMax) {
+			output.add(createReading(template, template.getName() + MIN_NAME_SUFFIX, min));
+			output.add(createReading(template, template.getName() + MAX_NAME_SUFFIX, max));
+		}
+	}
+	
+	private boolean shouldSend(StreamState state, float value, float min, float max, long timeMillis)
+	{
+		float deadbandVal    = this.deadband;
+		long  maxIntervalVal = this.maxIntervalMillis;
+		
+		if (! state.hasSent || deadbandVal <= 0.0f) {
+			return true;
+		}
+		
+		if (maxIntervalVal > 0L && timeMillis - state.lastSentMillis >= maxIntervalVal) {
+			return true;
+		}
+		
+		// a bucket is sent if its mean, or any excursion within it, leaves the deadband
+		return (Math.abs(value - state.lastSentValue) > deadbandVal ||
+			Math.abs(min - state.lastSentValue) > deadbandVal ||
+			Math.abs(max - state.lastSentValue) > deadbandVal);
+	}
+	
+	private void markSent(StreamState state, float value, long timeMillis)
+	{
+		state.hasSent        = true;
+		state.lastSentValue  = value;
+		state.lastSentMillis = timeMillis;
+	}
+	
+	private SensorData createReading(SensorData template, String name, float value)
+	{
+		SensorData data = new SensorData();
+		data.updateData(template);
+		data.setName(name);
+		data.setValue(value);
+		
+		return data;
+	}
+	
+	
+	// private classes
+	
+	private static final class StreamState
+	{
+		boolean hasSent        = false;
+		float   lastSentValue  = 0.0f;
+		long    lastSentMillis = 0L;
+		
+		long       bucket = 0L;
+		int        bucketCount = 0;
+		double     bucketSum   = 0.0d;
+		float      bucketMin   = 0.0f;
+		float      bucketMax   = 0.0f;
+		long       bucketLastMillis = 0L;
+		SensorData template    = null;
+	}
+	
+}
@@ -0,0 +1,483 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.cloud;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+import programmingtheiot.common.ConfigConst;
+
+/**
+ * Adapts the cloud uplink to the link conditions, so it backs off under
+ * congestion instead of timing out repeatedly, and keeps the uplink within
+ * a bandwidth budget.
+ * <p>
+ * The publisher reports each publish via
+ * {@link #recordPublish(long, int, boolean)}. Every control interval, the
+ * mean ack latency and the failure rate of the interval's publishes set the
+ * congestion level (0 to {@link #MAX_LEVEL}): the level goes up by one if
+ * the latency exceeds {@link ConfigConst#TARGET_ACK_LATENCY_MILLIS_KEY}, the
+ * failure rate exceeds {@link ConfigConst#MAX_FAILURE_RATE_KEY}, or the
+ * budget is used up; it goes down by one after {@link #RECOVERY_INTERVALS}
+ * intervals with the latency below half the target.
+ * <p>
+ * The level scales, between the configured values (at level 0) and the
+ * configured bounds (at {@link #MAX_LEVEL}), by the same factor per level:
+ * <ul>
+ * <li>the minimum batch size of the {@link UplinkBatcher}, up to its maximum
+ * (fewer, larger messages);</li>
+ * <li>the compression level, up to {@link ConfigConst#MAX_COMPRESSION_LEVEL_KEY}
+ * (see {@link #compressPayload(byte[])});</li>
+ * <li>the downsampling of the {@link UplinkFilter}: the bucket length, up to
+ * {@link ConfigConst#MAX_BUCKET_MILLIS_KEY}, and the deadband, up to
+ * (1 + {@link #MAX_LEVEL}) times its configured value.</li>
+ * </ul>
+ * The budget ({@link ConfigConst#UPLINK_BUDGET_BYTES_PER_HOUR_KEY}) is a
+ * token bucket holding up to one minute's worth of bytes; see
+ * {@link #acquireBudget(int)}.
+ * 
+ */
+public class UplinkRateController
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkRateController.class.getName());
+	
+	/** The highest congestion level. */
+	public static final int MAX_LEVEL = 4;
+	
+	/** The number of healthy intervals before the level goes down. */
+	public static final int RECOVERY_INTERVALS = 3;
+	
+	/** The suffix of the topic of compressed (zlib) payloads. */
+	public static final String COMPRESSED_TOPIC_SUFFIX = "/zlib";
+	
+	public static final long  DEFAULT_CONTROL_INTERVAL_MILLIS   = 5000L;
+	public static final long  DEFAULT_TARGET_ACK_LATENCY_MILLIS = 2000L;
+	public static final float DEFAULT_MAX_FAILURE_RATE          = 0.05f;
+	public static final long  DEFAULT_MAX_BUCKET_MILLIS         = 600000L;
+	public static final int   DEFAULT_MAX_COMPRESSION_LEVEL     = Deflater.BEST_COMPRESSION;
+	
+	// smaller payloads don't shrink enough to be worth compressing
+	private static final int MIN_COMPRESS_BYTES = 256;
+	
+	private static final long BUDGET_BURST_SECONDS = 60L;
+	
+	
+	// private var's
+	
+	private final UplinkFilter  uplinkFilter;
+	private final UplinkBatcher uplinkBatcher;
+	
+	private final long  targetAckLatencyMillis;
+	private final float maxFailureRate;
+	private final int   maxCompressionLevel;
+	private final long  budgetBytesPerHour;
+	
+	// the configured (level 0) and the bound (MAX_LEVEL) values
+	private final float baseDeadband;
+	private final long  baseBucketMillis;
+	private final long  maxBucketMillis;
+	private final int   baseMinBatchItems;
+	private final int   baseMaxBatchItems;
+	
+	private volatile int level = 0;
+	private volatile int compressionLevel = 0;
+	private int healthyIntervals = 0;
+	
+	private volatile double lastAckLatencyMillis = 0.0d;
+	private volatile double lastFailureRate      = 0.0d;
+	
+	private final AtomicLong intervalSentCount    = new AtomicLong();
+	private final AtomicLong intervalFailedCount  = new AtomicLong();
+	private final AtomicLong intervalLatencyNanos = new AtomicLong();
+	
+	private final AtomicLong sentBytes         = new AtomicLong();
+	private final AtomicLong budgetDeniedCount = new AtomicLong();
+	
+	private double budgetTokens      = 0.0d;
+	private long   budgetRefillNanos = 0L;
+	
+	private ScheduledExecutorService controlExecSvc = null;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param uplinkFilter The filter whose downsampling is adjusted.
+	 * @param uplinkBatcher The batcher whose batch size is adjusted, or null if batching is disabled.
+	 * @param targetAckLatencyMillis The mean ack latency above which the link is considered congested.
+	 * @param maxFailureRate The failure rate (0 to 1) above which the link is considered congested.
+	 * @param maxBucketMillis The bucket length at {@link #MAX_LEVEL}.
+	 * @param maxCompressionLevel The compression level (0 to 9) at {@link #MAX_LEVEL}, or 0 to never compress.
+	 * @param budgetBytesPerHour The uplink budget, or 0 for no budget.
+	 */
+	public UplinkRateController(
+		UplinkFilter uplinkFilter, UplinkBatcher uplinkBatcher, long targetAckLatencyMillis, float maxFailureRate,
+		long maxBucketMillis, int maxCompressionLevel, long budgetBytesPerHour)
+	{
+		super();
+		
+		this.uplinkFilter  = uplinkFilter;
+		this.uplinkBatcher = uplinkBatcher;
+		
+		this.targetAckLatencyMillis = Math.max(1L, targetAckLatencyMillis);
+		this.maxFailureRate         = Math.max(0.0f, maxFailureRate);
+		this.maxCompressionLevel    = Math.max(0, Math.min(Deflater.BEST_COMPRESSION, maxCompressionLevel));
+		this.budgetBytesPerHour     = Math.max(0L, budgetBytesPerHour);
+		
+		this.baseDeadband      = uplinkFilter.getDeadband();
+		this.baseBucketMillis  = uplinkFilter.getBucketMillis();
+		this.maxBucketMillis   = Math.max(this.baseBucketMillis, maxBucketMillis);
+		this.baseMinBatchItems = (uplinkBatcher != null ? uplinkBatcher.getMinBatchItems() : 1);
+		this.baseMaxBatchItems = (uplinkBatcher != null ? uplinkBatcher.getMaxBatchItems() : 1);
+		
+		this.budgetTokens      = getBudgetCapacity();
+		this.budgetRefillNanos = System.nanoTime();
+		
+		_Logger.info(
+			"Uplink rate controller: targetAckLatencyMillis=" + this.targetAckLatencyMillis +
+			", maxFailureRate=" + this.maxFailureRate + ", maxBucketMillis=" + this.maxBucketMillis +
+			", maxCompressionLevel=" + this.maxCompressionLevel + ", budgetBytesPerHour=" + this.budgetBytesPerHour);
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Starts updating the congestion level every 'intervalMillis'.
+	 * 
+	 * @param intervalMillis The control interval.
+	 */
+	public synchronized void startController(long intervalMillis)
+	{
+		if (this.controlExecSvc == null) {
+			long interval = Math.max(1L, intervalMillis);
+			
+			this.controlExecSvc = Executors.newScheduledThreadPool(1);
+			this.controlExecSvc.scheduleWithFixedDelay(this::handleInterval, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	public synchronized void stopController()
+	{
+		if (this.controlExecSvc != null) {
+			this.controlExecSvc.shutdown();
+			this.controlExecSvc = null;
+			
+			_Logger.info("Uplink rate controller stopped: " + this);
+		}
+	}
+	
+	/**
+	 * Records the outcome of one publish.
+	 * 
+	 * @param latencyNanos The time the publish took (until acked, for QoS 1 and 2).
+	 * @param bytes The number of payload bytes sent.
+	 * @param success True if the publish succeeded.
+	 */
+	public void recordPublish(long latencyNanos, int bytes, boolean success)
+	{
+		if (success) {
+			this.intervalSentCount.incrementAndGet();
+			this.intervalLatencyNanos.addAndGet(latencyNanos);
+			this.sentBytes.addAndGet(bytes);
+		} else {
+			this.intervalFailedCount.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Takes 'bytes' from the budget. A message is allowed as long as the
+	 * budget isn't used up, so it may overdraw the budget by up to one
+	 * message; the overdraft is paid back before the next message is allowed.
+	 * 
+	 * @param bytes The number of bytes to send.
+	 * @return boolean True if the message may be sent now; false if the budget is used up.
+	 */
+	public synchronized boolean acquireBudget(int bytes)
+	{
+		if (this.budgetBytesPerHour <= 0L) {
+			return true;
+		}
+		
+		refillBudget();
+		
+		if (this.budgetTokens <= 0.0d) {
+			this.budgetDeniedCount.incrementAndGet();
+			
+			return false;
+		}
+		
+		this.budgetTokens -= bytes;
+		
+		return true;
+	}
+	
+	/**
+	 * Compresses 'payload' (zlib) at the current compression level. The
+	 * publisher sends a compressed payload to the topic plus
+	 * {@link #COMPRESSED_TOPIC_SUFFIX}.
+	 * 
+	 * @param payload The payload.
+	 * @return byte[] The compressed payload, or null if it shouldn't be
+	 * compressed (compression is off at this level, the payload is small, or
+	 * it doesn't get smaller).
+	 */
+	public byte[] compressPayload(byte[] payload)
+	{
+		int compressLevel = this.compressionLevel;
+		
+		if (compressLevel <= 0 || payload == null || payload.length < MIN_COMPRESS_BYTES) {
+			return null;
+		}
+		
+		Deflater deflater = new Deflater(compressLevel);
+		
+		try {
+			deflater.setInput(payload);
+			deflater.finish();
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2);
+			byte[] buf = new byte[Math.min(8192, payload.length)];
+			
+			while (! deflater.finished()) {
+				out.write(buf, 0, deflater.deflate(buf));
+				
+				if (out.size() >= payload.length) {
+					return null;
+				}
+			}
+			
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	/**
+	 * Updates the congestion level from the publishes recorded since the
+	 * last update, and applies it. Called every control interval once
+	 * started; may be called directly instead.
+	 * 
+	 * @return int The new congestion level.
+	 */
+	public synchronized int updateLevel()
+	{
+		long sent    = this.intervalSentCount.getAndSet(0L);
+		long failed  = this.intervalFailedCount.getAndSet(0L);
+		long latency = this.intervalLatencyNanos.getAndSet(0L);
+		
+		boolean overBudget = false;
+		
+		if (this.budgetBytesPerHour > 0L) {
+			refillBudget();
+			
+			overBudget = (this.budgetTokens <= 0.0d);
+		}
+		
+		if (sent + failed == 0L && ! overBudget) {
+			// nothing sent, so nothing learned about the link
+			return this.level;
+		}
+		
+		this.lastFailureRate      = (sent + failed > 0L ? (double) failed / (sent + failed) : 0.0d);
+		this.lastAckLatencyMillis = (sent > 0L ? latency / 1.0e6d / sent : this.lastAckLatencyMillis);
+		
+		boolean isCongested =
+			(overBudget ||
+			 this.lastFailureRate > this.maxFailureRate ||
+			 this.lastAckLatencyMillis > this.targetAckLatencyMillis);
+		
+		int newLevel = this.level;
+		
+		if (isCongested) {
+			this.healthyIntervals = 0;
+			newLevel = Math.min(MAX_LEVEL, newLevel + 1);
+		} else if (this.lastAckLatencyMillis < this.targetAckLatencyMillis / 2.0d) {
+			if (++this.healthyIntervals >= RECOVERY_INTERVALS) {
+				this.healthyIntervals = 0;
+				newLevel = Math.max(0, newLevel - 1);
+			}
+		} else {
+			this.healthyIntervals = 0;
+		}
+		
+		if (newLevel != this.level) {
+			_Logger.info(
+				"Uplink congestion level: " + this.level + " -> " + newLevel + " (ackLatencyMillis=" +
+				String.format("%.1f", this.lastAckLatencyMillis) + ", failureRate=" +
+				String.format("%.3f", this.lastFailureRate) + ", overBudget=" + overBudget + ")");
+			
+			applyLevel(newLevel);
+		}
+		
+		return newLevel;
+	}
+	
+	public int getLevel()
+	{
+		return this.level;
+	}
+	
+	public int getCompressionLevel()
+	{
+		return this.compressionLevel;
+	}
+	
+	/**
+	 * 
+	 * @return double The mean ack latency of the last interval with publishes, in milliseconds.
+	 */
+	public double getAckLatencyMillis()
+	{
+		return this.lastAckLatencyMillis;
+	}
+	
+	/**
+	 * 
+	 * @return double The failure rate (0 to 1) of the last interval with publishes.
+	 */
+	public double getFailureRate()
+	{
+		return this.lastFailureRate;
+	}
+	
+	public long getBudgetBytesPerHour()
+	{
+		return this.budgetBytesPerHour;
+	}
+	
+	/**
+	 * 
+	 * @return long The bytes that may be sent now, or -1 for no budget.
+	 */
+	public synchronized long getBudgetRemainingBytes()
+	{
+		if (this.budgetBytesPerHour <= 0L) {
+			return -1L;
+		}
+		
+		refillBudget();
+		
+		return (long) Math.max(0.0d, this.budgetTokens);
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages held back because the budget was used up.
+	 */
+	public long getBudgetDeniedCount()
+	{
+		return this.budgetDeniedCount.get();
+	}
+	
+	/**
+	 * 
+	 * @return long The number of payload bytes sent.
+	 */
+	public long getSentBytes()
+	{
+		return this.sentBytes.get();
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("level=").append(this.level).append(',');
+		sb.append("compressionLevel=").append(this.compressionLevel).append(',');
+		sb.append("ackLatencyMillis=").append(String.format("%.1f", this.lastAckLatencyMillis)).append(',');
+		sb.append("failureRate=").append(String.format("%.3f", this.lastFailureRate)).append(',');
+		sb.append("sentBytes=").append(getSentBytes()).append(',');
+		sb.append("budgetDenied=").append(getBudgetDeniedCount());
+		
+		return sb.toString();
+	}
+	
+	
+	// private methods
+	
+	private void handleInterval()
+	{
+		try {
+			updateLevel();
+		} catch (Exception e) {
+			// keep the scheduled task alive
+			_Logger.log(Level.WARNING, "Failed to update uplink congestion level.", e);
+		}
+	}
+	
+	private void applyLevel(int newLevel)
+	{
+		this.level = newLevel;
+		this.compressionLevel = (int) Math.ceil((double) this.maxCompressionLevel * newLevel / MAX_LEVEL);
+		
+		this.uplinkFilter.setDeadband(this.baseDeadband * (1 + newLevel));
+		this.uplinkFilter.setBucketMillis(scale(this.baseBucketMillis, this.maxBucketMillis, newLevel));
+		
+		if (this.uplinkBatcher != null) {
+			this.uplinkBatcher.setBatchItemLimits(
+				(int) scale(this.baseMinBatchItems, this.baseMaxBatchItems, newLevel), this.baseMaxBatchItems);
+		}
+	}
+	
+	/**
+	 * Interpolates geometrically from 'base' (level 0) to 'max'
+	 * ({@link #MAX_LEVEL}), so each level multiplies the value by the same
+	 * factor. A 'base' of 0 (disabled) starts from max / 2^MAX_LEVEL, so
+	 * the value doubles per level instead of jumping straight to a large
+	 * fraction of 'max' at level 1.
+	 * 
+	 */
+	private long scale(long base, long max, int level)
+	{
+		if (level <= 0 || max <= base) {
+			return base;
+		}
+		
+		if (level >= MAX_LEVEL) {
+			return max;
+		}
+		
+		double from = (base > 0L ? base : Math.max(1.0d, (double) max / (1L << MAX_LEVEL)));
+		
+		return Math.max(base, Math.round(from * Math.pow((double) max / from, (double) level / MAX_LEVEL)));
+	}
+	
+	private double getBudgetCapacity()
+	{
+		return (double) this.budgetBytesPerHour * BUDGET_BURST_SECONDS / 3600.0d;
+	}
+	
+	/**
+	 * Adds the bytes earned since the last refill. The caller must hold
+	 * this instance's lock.
+	 * 
+	 */
+	private void refillBudget()
+	{
+		long   now    = System.nanoTime();
+		double earned = (now - this.budgetRefillNanos) / 1.0e9d * this.budgetBytesPerHour / 3600.0d;
+		
+		this.budgetTokens      = Math.min(getBudgetCapacity(), this.budgetTokens + earned);
+		this.budgetRefillNanos = now;
+	}
+	
+}
@@ -8,18 +8,67 @@
 
 package programmingtheiot.gda.connection;
 
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.DataFormatEnum;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
 import programmingtheiot.data.SensorData;
 import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.cloud.DiskSpool;
+import programmingtheiot.gda.cloud.DownlinkRouter;
+import programmingtheiot.gda.cloud.UplinkBatcher;
+import programmingtheiot.gda.cloud.UplinkFilter;
+import programmingtheiot.gda.cloud.UplinkRateController;
 
 /**
- * Shell representation of class for student implementation.
+ * Cloud client that publishes edge data as JSON to the MQTT broker
+ * configured in {@link ConfigConst#CLOUD_GATEWAY_SERVICE} (or a cloud
+ * service section, see {@link ConfigUtil#getCloudSectionName(String)}),
+ * using the resource name (prefixed with {@link ConfigConst#BASE_TOPIC_KEY},
+ * if set) as topic. Spool and batching parameters not set in a cloud
+ * service section are taken from {@link ConfigConst#CLOUD_GATEWAY_SERVICE},
+ * except the spool directory, which defaults to one per section.
+ * <p>
+ * Sensor readings pass through an {@link UplinkFilter} first, so only
+ * readings that leave the deadband, heartbeats and bucket aggregates are
+ * published.
+ * <p>
+ * If {@link ConfigConst#ENABLE_SPOOL_KEY} is set, messages that can't be
+ * published (e.g. while the link is down) are written to a {@link DiskSpool}
+ * instead. While the spool holds messages or is being drained, new messages
+ * are appended to it as well, so ordering is preserved; once connected, the
+ * spool is drained
+ * at up to {@link ConfigConst#SPOOL_DRAIN_RATE_KEY} messages per second
+ * (0 for no limit).
+ * <p>
+ * If {@link ConfigConst#ENABLE_BATCHING_KEY} is set, sensor readings are
+ * collected per topic by an {@link UplinkBatcher} and published as JSON
+ * batch payloads on the topic plus {@link ConfigConst#BATCH_TOPIC_SUFFIX},
+ * with several batches in flight. System performance data is published
+ * individually, as it's sent at the much lower polling rate.
+ * <p>
+ * If {@link ConfigConst#ENABLE_RATE_CONTROL_KEY} is set, an
+ * {@link UplinkRateController} adjusts the batch size, compression and
+ * downsampling to the measured publish latency and failure rate, and
+ * holds messages back in the spool once the bandwidth budget is used up.
+ * The budget is ignored unless spooling is enabled, as the messages held
+ * back would otherwise be lost.
+ * <p>
+ * Cloud events subscribed to via {@link #subscribeToCloudEvents(ResourceNameEnum)}
+ * are dispatched by a {@link DownlinkRouter} to the data message listener.
+ * Subscriptions made while disconnected take effect on connect.
  *
  */
 public class CloudClientConnector implements ICloudClient
@@ -29,68 +78,524 @@ public class CloudClientConnector implements ICloudClient
 	private static final Logger _Logger =
 		Logger.getLogger(CloudClientConnector.class.getName());
 	
+	public static final String DEFAULT_SPOOL_DIR_PREFIX = "./spool/";
+	public static final int    DEFAULT_SPOOL_DRAIN_RATE = 200;
+	
+	private static final long SPOOL_DRAIN_INTERVAL_MILLIS = 100L;
+	private static final long BATCH_STOP_TIMEOUT_MILLIS   = 5000L;
+	
+	
 	// private var's
 	
+	private String configSectionName = ConfigConst.CLOUD_GATEWAY_SERVICE;
+	
+	private MqttClientConnector mqttClient = null;
+	private UplinkFilter uplinkFilter = null;
+	
+	private DiskSpool spool = null;
+	private ScheduledExecutorService spoolExecSvc = null;
+	private int spoolDrainBatchSize = Integer.MAX_VALUE;
+	
+	// guards the live publish / spool decision against a running drain
+	private final Object spoolLock = new Object();
+	private boolean isDraining = false;
+	
+	private UplinkBatcher uplinkBatcher = null;
+	
+	private UplinkRateController rateController = null;
+	private long rateControlIntervalMillis = UplinkRateController.DEFAULT_CONTROL_INTERVAL_MILLIS;
+	
+	private DownlinkRouter downlinkRouter = null;
+	private final Set<ResourceNameEnum> cloudEventResources = ConcurrentHashMap.newKeySet();
+	
+	private String topicPrefix = "";
+	private int    qosLevel    = ConfigConst.DEFAULT_QOS;
+	
 	
 	// constructors
 	
 	/**
-	 * Default.
+	 * Default. Uses the {@link ConfigConst#CLOUD_GATEWAY_SERVICE} section.
 	 * 
 	 */
 	public CloudClientConnector()
+	{
+		this(ConfigConst.CLOUD_GATEWAY_SERVICE);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param configSectionName The name of the cloud service configuration section.
+	 */
+	public CloudClientConnector(String configSectionName)
 	{
 		super();
 		
+		if (configSectionName != null) {
+			this.configSectionName = configSectionName;
+		}
+		
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+		
+		String baseTopic = configUtil.getProperty(this.configSectionName, ConfigConst.BASE_TOPIC_KEY);
+		
+		if (baseTopic != null && baseTopic.trim().length() > 0) {
+			baseTopic = baseTopic.trim();
+			this.topicPrefix = (baseTopic.endsWith("/") ? baseTopic : baseTopic + "/");
+		}
+		
+		this.qosLevel =
+			configUtil.getInteger(this.configSectionName, ConfigConst.DEFAULT_QOS_KEY, ConfigConst.DEFAULT_QOS);
+		
+		this.mqttClient   = new MqttClientConnector(this.configSectionName);
+		this.uplinkFilter = new UplinkFilter();
+		
+		this.downlinkRouter = new DownlinkRouter(this.topicPrefix);
+		this.mqttClient.setMessageHandler(this.downlinkRouter::routeMessage);
+		
+		if (getBoolean(configUtil, ConfigConst.ENABLE_SPOOL_KEY, false)) {
+			initSpool(configUtil);
+		}
+		
+		if (getBoolean(configUtil, ConfigConst.ENABLE_BATCHING_KEY, false)) {
+			initBatcher(configUtil);
+		}
+		
+		if (getBoolean(configUtil, ConfigConst.ENABLE_RATE_CONTROL_KEY, false)) {
+			initRateController(configUtil);
+		}
 	}
 	
 	
 	// public methods
 	
+	/**
+	 * Connects, subscribes to the cloud events requested so far, and starts
+	 * the batcher and draining the spool (if enabled). The spool is drained
+	 * whenever the connection is up, including after an automatic reconnect.
+	 * 
+	 */
 	@Override
 	public boolean connectClient()
 	{
-		return false;
+		boolean success = this.mqttClient.connectClient();
+		
+		if (success) {
+			for (ResourceNameEnum resource : this.cloudEventResources) {
+				this.mqttClient.subscribeToTopic(getEventTopic(resource), this.qosLevel);
+			}
+		}
+		
+		if (this.uplinkBatcher != null) {
+			this.uplinkBatcher.startBatcher();
+		}
+		
+		if (this.rateController != null) {
+			this.rateController.startController(this.rateControlIntervalMillis);
+		}
+		
+		startSpoolDrain();
+		
+		return success;
 	}
 
+	/**
+	 * Publishes (or spools) the open downsampling buckets and batches, stops
+	 * draining the spool, then disconnects.
+	 * 
+	 */
 	@Override
 	public boolean disconnectClient()
 	{
-		return false;
+		this.uplinkFilter.flushBuckets(
+			data -> publishSensorData(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, data));
+		
+		if (this.uplinkBatcher != null) {
+			this.uplinkBatcher.stopBatcher(BATCH_STOP_TIMEOUT_MILLIS);
+		}
+		
+		if (this.rateController != null) {
+			this.rateController.stopController();
+		}
+		
+		stopSpoolDrain();
+		
+		return this.mqttClient.disconnectClient();
+	}
+	
+	public String getConfigSectionName()
+	{
+		return this.configSectionName;
+	}
+	
+	/**
+	 * Returns the batcher used in batching mode.
+	 * 
+	 * @return UplinkBatcher The batcher, or null if batching is disabled.
+	 */
+	public UplinkBatcher getUplinkBatcher()
+	{
+		return this.uplinkBatcher;
+	}
+	
+	/**
+	 * Returns the router that dispatches subscribed cloud events, e.g. for
+	 * its latency metrics.
+	 * 
+	 * @return DownlinkRouter
+	 */
+	public DownlinkRouter getDownlinkRouter()
+	{
+		return this.downlinkRouter;
+	}
+	
+	/**
+	 * Returns the controller that adapts the uplink to the link conditions.
+	 * 
+	 * @return UplinkRateController The controller, or null if rate control is disabled.
+	 */
+	public UplinkRateController getRateController()
+	{
+		return this.rateController;
+	}
+	
+	/**
+	 * Returns the spool for messages that couldn't be published.
+	 * 
+	 * @return DiskSpool The spool, or null if spooling is disabled.
+	 */
+	public DiskSpool getSpool()
+	{
+		return this.spool;
+	}
+	
+	/**
+	 * Returns the filter applied to sensor readings before they're sent.
+	 * 
+	 * @return UplinkFilter
+	 */
+	public UplinkFilter getUplinkFilter()
+	{
+		return this.uplinkFilter;
 	}
 
 	@Override
 	public boolean setDataMessageListener(IDataMessageListener listener)
 	{
-		return false;
+		if (listener != null) {
+			this.downlinkRouter.setDataMessageListener(listener);
+		}
+		
+		return this.mqttClient.setDataMessageListener(listener);
 	}
 
+	/**
+	 * Passes 'data' through the uplink filter and publishes the readings
+	 * it emits, if any. A reading the filter holds back or suppresses is
+	 * still considered accepted.
+	 * 
+	 */
 	@Override
 	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
 	{
-		return false;
+		if (resource == null || data == null) {
+			return false;
+		}
+		
+		final boolean[] success = { true };
+		
+		this.uplinkFilter.filterSensorData(data, d -> success[0] &= publishSensorData(resource, d));
+		
+		return success[0];
 	}
 
 	@Override
 	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
 	{
-		return false;
+		if (resource == null || data == null) {
+			return false;
+		}
+		
+		return publish(getTopic(resource), DataUtil.getInstance().systemPerformanceDataToJsonBytes(data));
 	}
 
+	/**
+	 * Subscribes to the cloud topic of 'resource' (in this connector's data
+	 * format), or if not connected, on connect.
+	 * 
+	 * @return boolean True if subscribed, or if the subscription is deferred until connect.
+	 */
 	@Override
 	public boolean subscribeToCloudEvents(ResourceNameEnum resource)
 	{
-		return false;
+		if (resource == null) {
+			return false;
+		}
+		
+		this.cloudEventResources.add(resource);
+		
+		if (! this.mqttClient.isConnected()) {
+			_Logger.info("Not connected. Subscribing to cloud events on connect: " + resource);
+			
+			return true;
+		}
+		
+		return this.mqttClient.subscribeToTopic(getEventTopic(resource), this.qosLevel);
 	}
 
 	@Override
 	public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
 	{
-		return false;
+		if (resource == null || ! this.cloudEventResources.remove(resource)) {
+			return false;
+		}
+		
+		return (! this.mqttClient.isConnected() || this.mqttClient.unsubscribeFromTopic(getEventTopic(resource)));
 	}
 	
 	
 	// private methods
 	
+	private String getTopic(ResourceNameEnum resource)
+	{
+		return this.topicPrefix + resource.getResourceName();
+	}
+	
+	private String getEventTopic(ResourceNameEnum resource)
+	{
+		return this.topicPrefix + this.mqttClient.getDataFormat().getTopicName(resource);
+	}
+	
+	private void initSpool(ConfigUtil configUtil)
+	{
+		// not inherited, as each section needs its own spool
+		String dirName =
+			configUtil.getProperty(
+				this.configSectionName, ConfigConst.SPOOL_DIR_KEY, DEFAULT_SPOOL_DIR_PREFIX + this.configSectionName);
+		
+		this.spool =
+			new DiskSpool(
+				new File(dirName),
+				getInteger(configUtil, ConfigConst.SPOOL_SEGMENT_BYTES_KEY, DiskSpool.DEFAULT_SEGMENT_BYTES),
+				getInteger(configUtil, ConfigConst.SPOOL_MAX_BYTES_KEY, (int) DiskSpool.DEFAULT_MAX_BYTES),
+				getInteger(configUtil, ConfigConst.SPOOL_MAX_AGE_MILLIS_KEY, (int) DiskSpool.DEFAULT_MAX_AGE_MILLIS));
+		
+		int drainRate = getInteger(configUtil, ConfigConst.SPOOL_DRAIN_RATE_KEY, DEFAULT_SPOOL_DRAIN_RATE);
+		
+		if (drainRate > 0) {
+			this.spoolDrainBatchSize = (int) Math.max(1L, drainRate * SPOOL_DRAIN_INTERVAL_MILLIS / 1000L);
+		}
+	}
+	
+	private void initBatcher(ConfigUtil configUtil)
+	{
+		this.uplinkBatcher =
+			new UplinkBatcher(
+				this::publish,
+				DataFormatEnum.JSON,
+				getInteger(configUtil, ConfigConst.BATCH_MIN_ITEMS_KEY, UplinkBatcher.DEFAULT_MIN_BATCH_ITEMS),
+				getInteger(configUtil, ConfigConst.BATCH_MAX_ITEMS_KEY, UplinkBatcher.DEFAULT_MAX_BATCH_ITEMS),
+				getInteger(configUtil, ConfigConst.BATCH_MAX_DELAY_MILLIS_KEY, (int) UplinkBatcher.DEFAULT_MAX_DELAY_MILLIS),
+				getInteger(configUtil, ConfigConst.MAX_INFLIGHT_BATCHES_KEY, UplinkBatcher.DEFAULT_MAX_INFLIGHT));
+	}
+	
+	private void initRateController(ConfigUtil configUtil)
+	{
+		int budgetBytesPerHour = getInteger(configUtil, ConfigConst.UPLINK_BUDGET_BYTES_PER_HOUR_KEY, 0);
+		
+		if (budgetBytesPerHour > 0 && this.spool == null) {
+			_Logger.warning(
+				"Uplink budget requires " + ConfigConst.ENABLE_SPOOL_KEY + " in section " +
+				this.configSectionName + ". Ignoring budget of " + budgetBytesPerHour + " bytes per hour.");
+			
+			budgetBytesPerHour = 0;
+		}
+		
+		this.rateControlIntervalMillis =
+			getInteger(
+				configUtil, ConfigConst.RATE_CONTROL_INTERVAL_MILLIS_KEY,
+				(int) UplinkRateController.DEFAULT_CONTROL_INTERVAL_MILLIS);
+		
+		this.rateController =
+			new UplinkRateController(
+				this.uplinkFilter, this.uplinkBatcher,
+				getInteger(
+					configUtil, ConfigConst.TARGET_ACK_LATENCY_MILLIS_KEY,
+					(int) UplinkRateController.DEFAULT_TARGET_ACK_LATENCY_MILLIS),
+				configUtil.getFloat(
+					this.configSectionName, ConfigConst.MAX_FAILURE_RATE_KEY,
+					configUtil.getFloat(
+						ConfigConst.CLOUD_GATEWAY_SERVICE, ConfigConst.MAX_FAILURE_RATE_KEY,
+						UplinkRateController.DEFAULT_MAX_FAILURE_RATE)),
+				getInteger(
+					configUtil, ConfigConst.MAX_BUCKET_MILLIS_KEY, (int) UplinkRateController.DEFAULT_MAX_BUCKET_MILLIS),
+				getInteger(
+					configUtil, ConfigConst.MAX_COMPRESSION_LEVEL_KEY, UplinkRateController.DEFAULT_MAX_COMPRESSION_LEVEL),
+				budgetBytesPerHour);
+	}
+	
+	/**
+	 * Reads 'key' from this connector's section, falling back to
+	 * {@link ConfigConst#CLOUD_GATEWAY_SERVICE}.
+	 * 
+	 */
+	private boolean getBoolean(ConfigUtil configUtil, String key, boolean defaultVal)
+	{
+		return configUtil.getBoolean(
+			this.configSectionName, key, configUtil.getBoolean(ConfigConst.CLOUD_GATEWAY_SERVICE, key, defaultVal));
+	}
+	
+	/**
+	 * Reads 'key' from this connector's section, falling back to
+	 * {@link ConfigConst#CLOUD_GATEWAY_SERVICE}.
+	 * 
+	 */
+	private int getInteger(ConfigUtil configUtil, String key, int defaultVal)
+	{
+		return configUtil.getInteger(
+			this.configSectionName, key, configUtil.getInteger(ConfigConst.CLOUD_GATEWAY_SERVICE, key, defaultVal));
+	}
+	
+	private synchronized void startSpoolDrain()
+	{
+		if (this.spool != null && this.spoolExecSvc == null) {
+			this.spoolExecSvc = Executors.newScheduledThreadPool(1);
+			this.spoolExecSvc.scheduleWithFixedDelay(
+				this::drainSpool, SPOOL_DRAIN_INTERVAL_MILLIS, SPOOL_DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private synchronized void stopSpoolDrain()
+	{
+		if (this.spoolExecSvc != null) {
+			this.spoolExecSvc.shutdown();
+			this.spoolExecSvc = null;
+			
+			this.spool.sync();
+			
+			_Logger.info("Stopped draining spool: " + this.spool);
+		}
+	}
+	
+	private void drainSpool()
+	{
+		try {
+			if (this.mqttClient.isConnected() && beginDrain()) {
+				try {
+					int count =
+						this.spool.drain(
+							this.spoolDrainBatchSize,
+							this::transmit);
+					
+					if (count > 0 && this.spool.isEmpty()) {
+						_Logger.info("Spool drained: " + this.spool);
+					}
+				} finally {
+					synchronized (this.spoolLock) {
+						this.isDraining = false;
+					}
+				}
+			}
+			
+			this.spool.sync();
+		} catch (Exception e) {
+			// keep the scheduled task alive
+			_Logger.log(Level.WARNING, "Failed to drain spool.", e);
+		}
+	}
+	
+	/**
+	 * Marks the spool as being drained, so live messages queue behind the
+	 * spooled ones until the drain returns.
+	 * 
+	 * @return boolean True if there's anything to drain; false otherwise.
+	 */
+	private boolean beginDrain()
+	{
+		synchronized (this.spoolLock) {
+			if (this.spool.isEmpty()) {
+				return false;
+			}
+			
+			this.isDraining = true;
+			
+			return true;
+		}
+	}
+	
+	private boolean publish(String topic, byte[] payload)
+	{
+		if (this.spool == null) {
+			return transmit(topic, payload);
+		}
+		
+		// once anything is spooled, or while the spool is drained, new
+		// messages queue behind the spooled ones to preserve ordering
+		synchronized (this.spoolLock) {
+			if (this.isDraining || ! this.spool.isEmpty() || ! this.mqttClient.isConnected()) {
+				return this.spool.append(topic, payload);
+			}
+		}
+		
+		return (transmit(topic, payload) || this.spool.append(topic, payload));
+	}
+	
+	/**
+	 * Publishes the message, compressed if the rate controller says so, and
+	 * reports the outcome to the rate controller once the publish completes
+	 * (in async mode, this method returns before then). Fails without
+	 * publishing if the bandwidth budget is used up.
+	 * 
+	 */
+	private boolean transmit(String topic, byte[] payload)
+	{
+		UplinkRateController controller = this.rateController;
+		
+		if (controller == null) {
+			return this.mqttClient.publishMessage(topic, payload, this.qosLevel);
+		}
+		
+		byte[] compressed = controller.compressPayload(payload);
+		
+		if (compressed != null) {
+			topic   = topic + UplinkRateController.COMPRESSED_TOPIC_SUFFIX;
+			payload = compressed;
+		}
+		
+		if (! controller.acquireBudget(payload.length)) {
+			return false;
+		}
+		
+		long startTime = System.nanoTime();
+		int  length    = payload.length;
+		
+		CompletableFuture<Boolean> future = this.mqttClient.publishMessageAsync(topic, payload, this.qosLevel);
+		
+		future.whenComplete(
+			(success, e) -> controller.recordPublish(System.nanoTime() - startTime, length, Boolean.TRUE.equals(success)));
+		
+		if (this.mqttClient.isAsyncEnabled()) {
+			// only failures known by now (e.g. not connected) are reported
+			return (! future.isDone() || future.join());
+		}
+		
+		return future.join();
+	}
+	
+	/**
+	 * Adds the reading to its batch in batching mode, or publishes it.
+	 * 
+	 */
+	private boolean publishSensorData(ResourceNameEnum resource, SensorData data)
+	{
+		String topic = getTopic(resource);
+		
+		if (this.uplinkBatcher != null && this.uplinkBatcher.addItem(topic, data)) {
+			return true;
+		}
+		
+		return publish(topic, DataUtil.getInstance().sensorDataToJsonBytes(data));
+	}
 	
 }
@@ -8,6 +8,7 @@
 
 package programmingtheiot.gda.connection;
 
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,6 +20,9 @@ import org.eclipse.californium.core.coap.MediaTypeRegistry;
 
 import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.ConfigSnapshot;
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.common.IConfigUpdateListener;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
 
@@ -28,7 +32,7 @@ import programmingtheiot.data.DataUtil;
  * Shell representation of class for student implementation.
  *
  */
-public class CoapClientConnector implements IRequestResponseClient
+public class CoapClientConnector implements IRequestResponseClient, IConfigUpdateListener
 {
 	// static
 	
@@ -37,6 +41,8 @@ public class CoapClientConnector implements IRequestResponseClient
 	
 	// params
 	
+	private volatile DataFormatEnum dataFormat = DataFormatEnum.JSON;
+	
 	
 	// constructors
 	
@@ -47,6 +53,12 @@ public class CoapClientConnector implements IRequestResponseClient
 	 */
 	public CoapClientConnector()
 	{
+		this.dataFormat =
+			DataFormatEnum.getEnumFromName(
+				ConfigUtil.getInstance().getProperty(
+					ConfigConst.COAP_GATEWAY_SERVICE, ConfigConst.DATA_FORMAT_KEY, DataFormatEnum.JSON.getName()));
+		
+		ConfigUtil.getInstance().addConfigUpdateListener(ConfigConst.COAP_GATEWAY_SERVICE, this);
 	}
 		
 	/**
@@ -63,6 +75,18 @@ public class CoapClientConnector implements IRequestResponseClient
 	
 	// public methods
 	
+	/**
+	 * Returns the payload encoding configured for this connector. Requests
+	 * carrying a payload should set the CoAP content-format option to
+	 * {@link DataFormatEnum#getContentFormat()}.
+	 * 
+	 * @return DataFormatEnum
+	 */
+	public DataFormatEnum getDataFormat()
+	{
+		return this.dataFormat;
+	}
+	
 	@Override
 	public boolean sendDiscoveryRequest(int timeout)
 	{
@@ -120,6 +144,26 @@ public class CoapClientConnector implements IRequestResponseClient
 	}
 
 	
+	// callbacks
+	
+	/**
+	 * Applies a changed payload encoding in place. Messages sent after
+	 * the update use the new format.
+	 * 
+	 */
+	@Override
+	public void onConfigUpdate(String section, Set<String> updatedKeys, ConfigSnapshot snapshot)
+	{
+		if (updatedKeys.contains(ConfigConst.DATA_FORMAT_KEY)) {
+			this.dataFormat =
+				DataFormatEnum.getEnumFromName(
+					snapshot.getProperty(section, ConfigConst.DATA_FORMAT_KEY, DataFormatEnum.JSON.getName()));
+			
+			_Logger.info("Updated data format: " + this.dataFormat);
+		}
+	}
+	
+	
 	// private methods
 	
 }
@@ -46,6 +46,21 @@ public interface IPubSubClient
 	 */
 	public boolean publishMessage(ResourceNameEnum topicName, String msg, int qos);
 
+	/**
+	 * Attempts to publish a binary payload to the given topic with the given qos
+	 * to the pub/sub broker / server. This is intended for payloads that are
+	 * already encoded (e.g. CBOR, or a batch of readings), so they don't need to
+	 * be converted to a String first. If not already connected, the sub-class
+	 * implementation should either throw an exception, or handle the exception
+	 * and log a message, and return False.
+	 * 
+	 * @param topicEnum The topic Enum containing the topic value to publish the message to.
+	 * @param payload The encoded payload to publish.
+	 * @param qos The QoS level. This is expected to be 0 - 2.
+	 * @return bool True on success, False otherwise.
+	 */
+	public boolean publishMessage(ResourceNameEnum topicName, byte[] payload, int qos);
+
 	/**
 	 * Attempts to subscribe to a topic with the given qos hosted by the
 	 * pub/sub broker / server. If not already connected, the sub-class
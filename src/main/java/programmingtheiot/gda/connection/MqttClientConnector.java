@@ -8,119 +8,1006 @@
 
 package programmingtheiot.gda.connection;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.net.ssl.SSLSocketFactory;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 import org.eclipse.paho.client.mqttv3.MqttSecurityException;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 
 import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.ConfigSnapshot;
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.common.IConfigUpdateListener;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.common.SimpleCertManagementUtil;
+
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.gda.cloud.DiskSpool;
 
 /**
- * Shell representation of class for student implementation.
+ * MQTT client connector for the GDA, based on the Paho
+ * {@link MqttAsyncClient}.
+ * <p>
+ * Each connection has a publish window of 'maxInflight' messages (see
+ * {@link ConfigConst#MAX_INFLIGHT_KEY}); publishing blocks while the window
+ * is full. By default, {@link #publishMessage(ResourceNameEnum, byte[], int)}
+ * waits for the message to be delivered (sent for QoS 0, acknowledged for
+ * QoS 1 and 2), like the blocking Paho {@link MqttClient}. If
+ * {@link ConfigConst#ENABLE_ASYNC_KEY} is set, it returns as soon as the
+ * message is queued, so QoS 1 and 2 publishes are pipelined instead of
+ * paying one round trip each; failures are then only logged and counted
+ * (see {@link #getPublishFailedCount()}). Callers that need the outcome
+ * use {@link #publishMessageAsync(String, byte[], int)}, which returns a
+ * future in either mode.
+ * <p>
+ * QoS 1 and 2 messages in flight are kept in memory, or if
+ * {@link ConfigConst#PERSISTENCE_TYPE_KEY} is {@link #PERSISTENCE_TYPE_LOG},
+ * in a {@link SegmentedLogPersistence} under
+ * {@link ConfigConst#PERSISTENCE_DIR_KEY}, so they're resent after a restart
+ * ({@link #PERSISTENCE_TYPE_FILE} selects Paho's file per message
+ * persistence instead).
+ * <p>
+ * If {@link ConfigConst#OFFLINE_BUFFER_TYPE_KEY} is set, messages published
+ * while the connection is down are kept in an {@link OfflinePublishBuffer}
+ * (in memory, or spilled to disk) and reported as published. When the
+ * connection is lost, the connector reconnects itself, with an exponential
+ * backoff and random jitter between attempts (see
+ * {@link ConfigConst#RECONNECT_MAX_DELAY_MILLIS_KEY}), rather than using
+ * Paho's fixed backoff, so gateways that lost the same broker don't all
+ * retry at once. Once reconnected, the buffer is drained in the background
+ * at up to {@link ConfigConst#OFFLINE_BUFFER_DRAIN_RATE_KEY} messages per
+ * second, and only while at least half of the publish window is free, so
+ * live messages (which aren't queued behind the buffer) keep flowing.
+ * <p>
+ * Control-plane messages (see {@link ResourceNameEnum#isControlResource()})
+ * are published on a second, dedicated connection with its own in-flight
+ * window (see {@link ConfigConst#CONTROL_MAX_INFLIGHT_KEY}). Each Paho
+ * connection serializes its writes through one socket and one sender
+ * thread, so this keeps actuator commands from queuing behind bulk
+ * telemetry, or being rejected because telemetry has used up the window.
+ * Subscriptions are always handled by the primary connection.
+ * <p>
+ * Incoming messages are first passed to the handlers registered for
+ * matching topic filters (see {@link #addMessageHandler(String, BiPredicate)}),
+ * which are looked up in a {@link TopicTrie}, and otherwise mapped to their
+ * {@link ResourceNameEnum} and data format via a table of all resource
+ * topics, built once. Sensor and system performance batches (published on
+ * the resource topic plus {@link ConfigConst#BATCH_TOPIC_SUFFIX}) are
+ * decoded and passed to the listener one entry at a time.
  * 
  */
-public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
+public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended, IConfigUpdateListener
 {
 	// static
 	
 	private static final Logger _Logger =
 		Logger.getLogger(MqttClientConnector.class.getName());
 	
+	public static final String CONTROL_CLIENT_ID_SUFFIX = "-ctl";
+	
+	public static final String PERSISTENCE_TYPE_MEMORY = "memory";
+	public static final String PERSISTENCE_TYPE_LOG    = "log";
+	public static final String PERSISTENCE_TYPE_FILE   = "file";
+	public static final String DEFAULT_PERSISTENCE_DIR = "./mqttstore";
+	
+	public static final String OFFLINE_BUFFER_TYPE_NONE   = "none";
+	public static final String OFFLINE_BUFFER_TYPE_MEMORY = "memory";
+	public static final String OFFLINE_BUFFER_TYPE_DISK   = "disk";
+	public static final String DEFAULT_OFFLINE_BUFFER_DIR = "./spool/mqtt";
+	
+	public static final int  DEFAULT_OFFLINE_BUFFER_DRAIN_RATE  = 200;
+	public static final long DEFAULT_RECONNECT_MIN_DELAY_MILLIS = 1000L;
+	public static final long DEFAULT_RECONNECT_MAX_DELAY_MILLIS = 60000L;
+	
+	private static final long OFFLINE_BUFFER_DRAIN_INTERVAL_MILLIS = 100L;
+	
+	// every resource topic, in every data format, plus the batch topics
+	private static final Map<String, ResourceTopic> _ResourceTopicMap = new HashMap<>();
+	
+	static {
+		for (ResourceNameEnum resource : ResourceNameEnum.values()) {
+			for (DataFormatEnum format : DataFormatEnum.values()) {
+				_ResourceTopicMap.put(format.getTopicName(resource), new ResourceTopic(resource, format, false));
+			}
+		}
+		
+		for (DataFormatEnum format : DataFormatEnum.values()) {
+			for (ResourceNameEnum resource : List.of(
+				ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, ResourceNameEnum.CDA_SYSTEM_PERF_MSG_RESOURCE)) {
+				_ResourceTopicMap.put(
+					format.getTopicName(resource) + ConfigConst.BATCH_TOPIC_SUFFIX, new ResourceTopic(resource, format, true));
+			}
+		}
+	}
+	
+	public static final int DEFAULT_MAX_INFLIGHT         = 100;
+	public static final int DEFAULT_CONTROL_MAX_INFLIGHT = 10;
+	
 	// params
 	
+	private volatile DataFormatEnum dataFormat = DataFormatEnum.JSON;
+	
+	private String  host        = ConfigConst.DEFAULT_HOST;
+	private String  protocol    = ConfigConst.DEFAULT_MQTT_PROTOCOL;
+	private int     port        = ConfigConst.DEFAULT_MQTT_PORT;
+	private int     brokerKeepAlive = ConfigConst.DEFAULT_KEEP_ALIVE;
+	private String  clientID    = null;
+	private String  clientIDSuffix = "";
+	private String  brokerAddr  = null;
+	private boolean enableControlConnection = false;
+	private String  persistenceType = PERSISTENCE_TYPE_MEMORY;
+	private String  persistenceDir  = DEFAULT_PERSISTENCE_DIR;
+	
+	private MqttConnectOptions connOpts        = null;
+	private MqttConnectOptions controlConnOpts = null;
+	
+	private MqttAsyncClient mqttClient    = null;
+	private MqttAsyncClient controlClient = null;
+	
+	private boolean   enableAsync          = false;
+	private Semaphore publishWindow        = null;
+	private Semaphore controlPublishWindow = null;
+	
+	private final AtomicLong publishFailedCount = new AtomicLong();
+	
+	private long reconnectMinDelayMillis = DEFAULT_RECONNECT_MIN_DELAY_MILLIS;
+	private long reconnectMaxDelayMillis = DEFAULT_RECONNECT_MAX_DELAY_MILLIS;
+	
+	private volatile boolean isStopped      = true;
+	private volatile boolean isReconnecting = false;
+	private final AtomicInteger reconnectAttempts = new AtomicInteger();
+	
+	private OfflinePublishBuffer offlineBuffer = null;
+	private int offlineBufferDrainBatchSize = Integer.MAX_VALUE;
+	private volatile ScheduledExecutorService execSvc = null;
+	
+	private final String configSectionName;
+	
+	private IDataMessageListener dataMsgListener = null;
+	private BiPredicate<String, byte[]> messageHandler = null;
+	
+	private final TopicTrie<BiPredicate<String, byte[]>> topicHandlers = new TopicTrie<>();
+	
 	
 	// constructors
 	
 	/**
-	 * Default.
+	 * Default. Uses the {@link ConfigConst#MQTT_GATEWAY_SERVICE} section.
 	 * 
 	 */
 	public MqttClientConnector()
+	{
+		this(ConfigConst.MQTT_GATEWAY_SERVICE);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters (e.g. a cloud service section).
+	 */
+	public MqttClientConnector(String configSectionName)
+	{
+		this(configSectionName, null);
+	}
+	
+	/**
+	 * Constructor for an additional connection of a {@link MqttConnectionPool}.
+	 * 
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 * @param clientIDSuffix Appended to the configured client ID (and offline
+	 * buffer directory), so the connection has its own session on the broker.
+	 * If set, the connection doesn't open a control connection of its own.
+	 */
+	public MqttClientConnector(String configSectionName, String clientIDSuffix)
 	{
 		super();
+		
+		if (clientIDSuffix != null) {
+			this.clientIDSuffix = clientIDSuffix;
+		}
+		
+		this.configSectionName = configSectionName;
+		
+		this.dataFormat =
+			DataFormatEnum.getEnumFromName(
+				ConfigUtil.getInstance().getProperty(
+					configSectionName, ConfigConst.DATA_FORMAT_KEY, DataFormatEnum.JSON.getName()));
+		
+		initClientParameters(configSectionName);
+		
+		// removed on disconnect, so a discarded connector isn't kept alive
+		ConfigUtil.getInstance().addConfigUpdateListener(configSectionName, this);
 	}
 	
 	
 	// public methods
 	
+	/**
+	 * Returns the payload encoding configured for this connector. Non-JSON
+	 * encodings are published to the resource topic plus the format's
+	 * topic suffix (see {@link DataFormatEnum#getTopicName(ResourceNameEnum)}).
+	 * 
+	 * @return DataFormatEnum
+	 */
+	public DataFormatEnum getDataFormat()
+	{
+		return this.dataFormat;
+	}
+	
 	@Override
 	public boolean connectClient()
 	{
+		ConfigUtil.getInstance().addConfigUpdateListener(this.configSectionName, this);
+		
+		try {
+			if (this.mqttClient == null) {
+				this.mqttClient = new MqttAsyncClient(this.brokerAddr, this.clientID, createPersistence());
+				this.mqttClient.setCallback(this);
+			}
+			
+			if (this.mqttClient.isConnected()) {
+				_Logger.warning("MQTT client already connected to broker: " + this.brokerAddr);
+				
+				return false;
+			}
+			
+			_Logger.info("MQTT client connecting to broker: " + this.brokerAddr);
+			
+			this.mqttClient.connect(this.connOpts).waitForCompletion();
+			
+			if (this.enableControlConnection) {
+				connectControlClient();
+			}
+			
+			this.isStopped = false;
+			startBackgroundTasks();
+			
+			return true;
+		} catch (MqttSecurityException e) {
+			_Logger.log(Level.SEVERE, "MQTT client failed to authenticate with broker: " + this.brokerAddr, e);
+		} catch (MqttException e) {
+			_Logger.log(Level.SEVERE, "MQTT client failed to connect to broker: " + this.brokerAddr, e);
+		}
+		
 		return false;
 	}
 
+	/**
+	 * Disconnects, and stops reconnecting and draining the offline buffer
+	 * (if enabled), even if the connection is already down. Buffered
+	 * messages are kept, to be drained after the next connect. Config
+	 * updates are ignored until then.
+	 * 
+	 */
 	@Override
 	public boolean disconnectClient()
 	{
+		this.isStopped = true;
+		stopBackgroundTasks();
+		
+		ConfigUtil.getInstance().removeConfigUpdateListener(this.configSectionName, this);
+		
+		if (! isConnected()) {
+			_Logger.warning("MQTT client not connected to broker: " + this.brokerAddr);
+			
+			return false;
+		}
+		
+		try {
+			if (this.controlClient != null && this.controlClient.isConnected()) {
+				this.controlClient.disconnect().waitForCompletion();
+			}
+			
+			this.mqttClient.disconnect().waitForCompletion();
+			
+			_Logger.info("MQTT client disconnected from broker: " + this.brokerAddr);
+			
+			return true;
+		} catch (MqttException e) {
+			_Logger.log(Level.SEVERE, "MQTT client failed to disconnect from broker: " + this.brokerAddr, e);
+		}
+		
 		return false;
 	}
 
+	/**
+	 * 
+	 * @return String The MQTT client ID of the primary connection.
+	 */
+	public String getClientID()
+	{
+		return this.clientID;
+	}
+	
 	public boolean isConnected()
 	{
-		return false;
+		return (this.mqttClient != null && this.mqttClient.isConnected());
+	}
+	
+	/**
+	 * 
+	 * @return boolean True if {@link #publishMessage(String, byte[], int)}
+	 * returns once the message is queued.
+	 */
+	public boolean isAsyncEnabled()
+	{
+		return this.enableAsync;
+	}
+	
+	/**
+	 * 
+	 * @return long The number of publishes that failed, including those
+	 * that failed after being queued.
+	 */
+	public long getPublishFailedCount()
+	{
+		return this.publishFailedCount.get();
+	}
+	
+	/**
+	 * Returns the buffer for messages published while disconnected.
+	 * 
+	 * @return OfflinePublishBuffer The buffer, or null if buffering is disabled.
+	 */
+	public OfflinePublishBuffer getOfflineBuffer()
+	{
+		return this.offlineBuffer;
 	}
 	
 	@Override
 	public boolean publishMessage(ResourceNameEnum topicName, String msg, int qos)
 	{
-		return false;
+		if (msg == null) {
+			_Logger.warning("Message is null. Ignoring.");
+			
+			return false;
+		}
+		
+		return publishMessage(topicName, msg.getBytes(StandardCharsets.UTF_8), qos);
+	}
+
+	/**
+	 * Publishes 'payload' to the topic for 'topicName' and the configured
+	 * data format. Control-plane resources are published on the control
+	 * connection if it's connected, and otherwise fall back to the primary
+	 * connection.
+	 * 
+	 */
+	@Override
+	public boolean publishMessage(ResourceNameEnum topicName, byte[] payload, int qos)
+	{
+		if (topicName == null || payload == null) {
+			_Logger.warning("Resource or payload is null. Ignoring.");
+			
+			return false;
+		}
+		
+		return publishMessage(getPublishClient(topicName), this.dataFormat.getTopicName(topicName), payload, qos);
+	}
+	
+	/**
+	 * Publishes 'payload' to an arbitrary topic on the primary connection,
+	 * e.g. a cloud service topic that doesn't map to a {@link ResourceNameEnum}.
+	 * 
+	 * @param topic The full topic name.
+	 * @param payload The payload.
+	 * @param qos The QoS level.
+	 * @return boolean True on success; false otherwise.
+	 */
+	public boolean publishMessage(String topic, byte[] payload, int qos)
+	{
+		if (topic == null || payload == null) {
+			_Logger.warning("Topic or payload is null. Ignoring.");
+			
+			return false;
+		}
+		
+		return publishMessage(isConnected() ? this.mqttClient : null, topic, payload, qos);
+	}
+	
+	/**
+	 * Publishes 'payload' like {@link #publishMessage(ResourceNameEnum, byte[], int)},
+	 * but returns once the message is queued, in either mode.
+	 * 
+	 * @param topicName The resource.
+	 * @param payload The payload.
+	 * @param qos The QoS level.
+	 * @return CompletableFuture<Boolean> Completed with true once the message
+	 * is delivered, or with false if it failed.
+	 */
+	public CompletableFuture<Boolean> publishMessageAsync(ResourceNameEnum topicName, byte[] payload, int qos)
+	{
+		if (topicName == null || payload == null) {
+			_Logger.warning("Resource or payload is null. Ignoring.");
+			
+			return CompletableFuture.completedFuture(false);
+		}
+		
+		return publishMessageAsync(getPublishClient(topicName), this.dataFormat.getTopicName(topicName), payload, qos);
+	}
+	
+	/**
+	 * Publishes 'payload' like {@link #publishMessage(String, byte[], int)},
+	 * but returns once the message is queued, in either mode.
+	 * 
+	 * @param topic The full topic name.
+	 * @param payload The payload.
+	 * @param qos The QoS level.
+	 * @return CompletableFuture<Boolean> Completed with true once the message
+	 * is delivered, or with false if it failed.
+	 */
+	public CompletableFuture<Boolean> publishMessageAsync(String topic, byte[] payload, int qos)
+	{
+		if (topic == null || payload == null) {
+			_Logger.warning("Topic or payload is null. Ignoring.");
+			
+			return CompletableFuture.completedFuture(false);
+		}
+		
+		return publishMessageAsync(isConnected() ? this.mqttClient : null, topic, payload, qos);
 	}
 
 	@Override
 	public boolean subscribeToTopic(ResourceNameEnum topicName, int qos)
 	{
+		return (topicName != null && subscribeToTopic(this.dataFormat.getTopicName(topicName), qos));
+	}
+	
+	/**
+	 * Subscribes to an arbitrary topic (filter) on the primary connection.
+	 * Incoming messages that don't map to a {@link ResourceNameEnum} are ignored.
+	 * 
+	 * @param topic The topic or topic filter.
+	 * @param qos The QoS level.
+	 * @return boolean True on success; false otherwise.
+	 */
+	public boolean subscribeToTopic(String topic, int qos)
+	{
+		if (topic == null || ! isConnected()) {
+			return false;
+		}
+		
+		try {
+			this.mqttClient.subscribe(topic, validateQos(qos)).waitForCompletion();
+			
+			_Logger.info("Subscribed to topic: " + topic);
+			
+			return true;
+		} catch (MqttException e) {
+			_Logger.log(Level.WARNING, "Failed to subscribe to topic: " + topic, e);
+		}
+		
 		return false;
 	}
 
 	@Override
 	public boolean unsubscribeFromTopic(ResourceNameEnum topicName)
 	{
+		return (topicName != null && unsubscribeFromTopic(this.dataFormat.getTopicName(topicName)));
+	}
+	
+	/**
+	 * Unsubscribes from an arbitrary topic (filter) on the primary connection.
+	 * 
+	 * @param topic The topic or topic filter.
+	 * @return boolean True on success; false otherwise.
+	 */
+	public boolean unsubscribeFromTopic(String topic)
+	{
+		if (topic == null || ! isConnected()) {
+			return false;
+		}
+		
+		try {
+			this.mqttClient.unsubscribe(topic).waitForCompletion();
+			
+			_Logger.info("Unsubscribed from topic: " + topic);
+			
+			return true;
+		} catch (MqttException e) {
+			_Logger.log(Level.WARNING, "Failed to unsubscribe from topic: " + topic, e);
+		}
+		
 		return false;
 	}
 
 	@Override
 	public boolean setDataMessageListener(IDataMessageListener listener)
 	{
+		if (listener != null) {
+			this.dataMsgListener = listener;
+			
+			return true;
+		}
+		
 		return false;
 	}
 	
+	/**
+	 * Sets a handler that's given every incoming message (topic and raw
+	 * payload) before it's mapped to a {@link ResourceNameEnum}, e.g. to
+	 * route topics with a prefix. If the handler returns true, the message
+	 * is considered handled and isn't passed to the data message listener.
+	 * This is the same as registering the handler for the '#' filter, and
+	 * replaces the handler set by a previous call.
+	 * 
+	 * @param handler The handler, or null to remove it.
+	 */
+	public synchronized void setMessageHandler(BiPredicate<String, byte[]> handler)
+	{
+		if (this.messageHandler != null) {
+			this.topicHandlers.removeHandler(TopicTrie.MULTI_LEVEL_WILDCARD, this.messageHandler);
+		}
+		
+		this.messageHandler = handler;
+		
+		if (handler != null) {
+			this.topicHandlers.addHandler(TopicTrie.MULTI_LEVEL_WILDCARD, handler);
+		}
+	}
+	
+	/**
+	 * Registers a handler for incoming messages on topics matching
+	 * 'topicFilter', which may include the '+' and '#' wildcards. Handlers
+	 * for a topic are called in the order they were added, until one
+	 * returns true; if none does, the message is mapped to a
+	 * {@link ResourceNameEnum} and passed to the data message listener.
+	 * <p>
+	 * This doesn't subscribe to the topic filter; see
+	 * {@link #subscribeToTopic(String, int)}.
+	 * 
+	 * @param topicFilter The topic filter.
+	 * @param handler The handler.
+	 * @return boolean True on success; false if the filter is invalid or
+	 * the handler is already registered for it.
+	 */
+	public boolean addMessageHandler(String topicFilter, BiPredicate<String, byte[]> handler)
+	{
+		return this.topicHandlers.addHandler(topicFilter, handler);
+	}
+	
+	/**
+	 * Unregisters a handler added by {@link #addMessageHandler(String, BiPredicate)}.
+	 * 
+	 * @param topicFilter The topic filter, exactly as when the handler was added.
+	 * @param handler The handler.
+	 * @return boolean True if the handler was registered for the filter.
+	 */
+	public boolean removeMessageHandler(String topicFilter, BiPredicate<String, byte[]> handler)
+	{
+		return this.topicHandlers.removeHandler(topicFilter, handler);
+	}
+	
 	// callbacks
 	
+	/**
+	 * Applies a changed payload encoding in place. Messages sent after
+	 * the update use the new format. Other settings (broker, QoS, windows,
+	 * persistence) are read once, and need a restart to take effect; QoS
+	 * is chosen per publish by the caller.
+	 * 
+	 */
+	@Override
+	public void onConfigUpdate(String section, Set<String> updatedKeys, ConfigSnapshot snapshot)
+	{
+		if (updatedKeys.contains(ConfigConst.DATA_FORMAT_KEY)) {
+			this.dataFormat =
+				DataFormatEnum.getEnumFromName(
+					snapshot.getProperty(section, ConfigConst.DATA_FORMAT_KEY, DataFormatEnum.JSON.getName()));
+			
+			_Logger.info("Updated data format: " + this.dataFormat);
+		}
+	}
+	
+	/**
+	 * Ends the reconnect cycle started by {@link #connectionLost(Throwable)}.
+	 * Paho only flags its own automatic reconnects, so a connect made by
+	 * the cycle is treated as a reconnect as well.
+	 * 
+	 */
 	@Override
 	public void connectComplete(boolean reconnect, String serverURI)
 	{
+		_Logger.info("MQTT connection successful (is reconnect = " + reconnect + "). Broker: " + serverURI);
+		
+		if (reconnect || this.isReconnecting) {
+			this.isReconnecting = false;
+			this.reconnectAttempts.set(0);
+			
+			if (this.offlineBuffer != null && ! this.offlineBuffer.isEmpty()) {
+				_Logger.info("Draining offline publish buffer: " + this.offlineBuffer);
+			}
+		}
 	}
 
 	@Override
 	public void connectionLost(Throwable t)
 	{
+		_Logger.log(Level.WARNING, "Lost connection to MQTT broker: " + this.brokerAddr, t);
+		
+		if (! this.isStopped) {
+			this.isReconnecting = true;
+			scheduleReconnect();
+		}
 	}
 	
 	@Override
 	public void deliveryComplete(IMqttDeliveryToken token)
 	{
+		_Logger.fine("Delivered MQTT message with ID: " + token.getMessageId());
 	}
 	
 	@Override
 	public void messageArrived(String topic, MqttMessage msg) throws Exception
 	{
+		byte[] payload = msg.getPayload();
+		
+		for (BiPredicate<String, byte[]> handler : this.topicHandlers.getHandlers(topic)) {
+			if (handler.test(topic, payload)) {
+				return;
+			}
+		}
+		
+		ResourceTopic resourceTopic = _ResourceTopicMap.get(topic);
+		
+		if (resourceTopic == null || this.dataMsgListener == null) {
+			_Logger.fine("Ignoring MQTT message for topic: " + topic);
+			
+			return;
+		}
+		
+		ResourceNameEnum resource = resourceTopic.resource;
+		DataFormatEnum   format   = resourceTopic.format;
+		
+		if (resourceTopic.isBatch) {
+			DataUtil   dataUtil = DataUtil.getInstance();
+			ByteBuffer data     = ByteBuffer.wrap(payload);
+			
+			int count =
+				(resource == ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE ?
+					dataUtil.handleSensorDataBatch(resource, data, format, this.dataMsgListener) :
+					dataUtil.handleSystemPerformanceDataBatch(resource, data, format, this.dataMsgListener));
+			
+			if (count < 0) {
+				_Logger.warning("Failed to decode batch from topic: " + topic);
+			}
+			
+			return;
+		}
+		
+		if (format == DataFormatEnum.CBOR) {
+			DataUtil dataUtil = DataUtil.getInstance();
+			
+			switch (resource) {
+				case CDA_SENSOR_MSG_RESOURCE:
+					this.dataMsgListener.handleSensorMessage(resource, dataUtil.cborToSensorData(payload));
+					return;
+					
+				case CDA_ACTUATOR_RESPONSE_RESOURCE:
+					this.dataMsgListener.handleActuatorCommandResponse(resource, dataUtil.cborToActuatorData(payload));
+					return;
+					
+				case CDA_SYSTEM_PERF_MSG_RESOURCE:
+					this.dataMsgListener.handleSystemPerformanceMessage(resource, dataUtil.cborToSystemPerformanceData(payload));
+					return;
+					
+				default:
+					// no CBOR decoder - passing the binary payload on as a string would corrupt it
+					_Logger.warning("No CBOR decoder for resource " + resource + ". Dropping message from topic: " + topic);
+					return;
+			}
+		}
+		
+		this.dataMsgListener.handleIncomingMessage(resource, new String(payload, StandardCharsets.UTF_8));
 	}
 
 	
 	// private methods
 	
+	/**
+	 * Connects the dedicated control-plane connection. A failure is logged
+	 * but not fatal: control messages then share the primary connection.
+	 * 
+	 */
+	private void connectControlClient()
+	{
+		try {
+			if (this.controlClient == null) {
+				this.controlClient =
+					new MqttAsyncClient(this.brokerAddr, this.clientID + CONTROL_CLIENT_ID_SUFFIX, createPersistence());
+			}
+			
+			if (! this.controlClient.isConnected()) {
+				this.controlClient.connect(this.controlConnOpts).waitForCompletion();
+			}
+		} catch (MqttException e) {
+			_Logger.log(Level.WARNING, "Failed to connect MQTT control connection. Using primary connection.", e);
+		}
+	}
+	
+	/**
+	 * Publishes on 'client' (null if not connected), waiting for delivery
+	 * unless in async mode.
+	 * 
+	 */
+	private boolean publishMessage(MqttAsyncClient client, String topic, byte[] payload, int qos)
+	{
+		CompletableFuture<Boolean> future = publishMessageAsync(client, topic, payload, qos);
+		
+		if (this.enableAsync) {
+			// only failures known by now (e.g. not connected) are reported
+			return (! future.isDone() || future.join());
+		}
+		
+		return future.join();
+	}
+	
+	private CompletableFuture<Boolean> publishMessageAsync(
+		MqttAsyncClient client, String topic, byte[] payload, int qos)
+	{
+		if (client == null) {
+			if (bufferMessage(topic, payload, qos)) {
+				return CompletableFuture.completedFuture(true);
+			}
+			
+			_Logger.warning("MQTT client not connected. Dropping message for topic: " + topic);
+			
+			this.publishFailedCount.incrementAndGet();
+			
+			return CompletableFuture.completedFuture(false);
+		}
+		
+		return sendMessage(client, topic, payload, qos, true);
+	}
+	
+	/**
+	 * Publishes on 'client'. If 'canBuffer' is true, a message that fails
+	 * because the connection dropped in the meantime is buffered instead.
+	 * 
+	 */
+	private CompletableFuture<Boolean> sendMessage(
+		MqttAsyncClient client, String topic, byte[] payload, int qos, boolean canBuffer)
+	{
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		
+		Semaphore window = (client == this.controlClient ? this.controlPublishWindow : this.publishWindow);
+		
+		try {
+			window.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			
+			this.publishFailedCount.incrementAndGet();
+			future.complete(false);
+			
+			return future;
+		}
+		
+		try {
+			MqttMessage mqttMsg = new MqttMessage(payload);
+			mqttMsg.setQos(validateQos(qos));
+			
+			client.publish(topic, mqttMsg, null, new PublishListener(topic, window, future));
+			
+			return future;
+		} catch (MqttPersistenceException e) {
+			_Logger.log(Level.WARNING, "Persistence exception thrown when publishing to topic: " + topic, e);
+		} catch (MqttException e) {
+			if (canBuffer && e.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED &&
+				bufferMessage(topic, payload, qos)) {
+				window.release();
+				future.complete(true);
+				
+				return future;
+			}
+			
+			_Logger.log(Level.WARNING, "Failed to publish message to topic: " + topic, e);
+		}
+		
+		window.release();
+		
+		this.publishFailedCount.incrementAndGet();
+		future.complete(false);
+		
+		return future;
+	}
+	
+	private boolean bufferMessage(String topic, byte[] payload, int qos)
+	{
+		return (this.offlineBuffer != null && this.offlineBuffer.append(topic, payload, validateQos(qos)));
+	}
+	
+	/**
+	 * Publishes a buffered message on the primary connection, as long as
+	 * more than half of its publish window is free for live messages.
+	 * 
+	 */
+	private boolean sendBufferedMessage(String topic, byte[] payload, int qos)
+	{
+		MqttAsyncClient client = this.mqttClient;
+		
+		if (! isConnected() || this.publishWindow.availablePermits() <= this.connOpts.getMaxInflight() / 2) {
+			return false;
+		}
+		
+		CompletableFuture<Boolean> future = sendMessage(client, topic, payload, qos, false);
+		
+		// only failures known by now keep the message in the buffer
+		return (! future.isDone() || future.join());
+	}
+	
+	private void drainOfflineBuffer()
+	{
+		try {
+			if (isConnected() && ! this.offlineBuffer.isEmpty()) {
+				int count = this.offlineBuffer.drain(this.offlineBufferDrainBatchSize, this::sendBufferedMessage);
+				
+				if (count > 0 && this.offlineBuffer.isEmpty()) {
+					_Logger.info("Offline publish buffer drained: " + this.offlineBuffer);
+				}
+			}
+			
+			this.offlineBuffer.sync();
+		} catch (Exception e) {
+			// keep the scheduled task alive
+			_Logger.log(Level.WARNING, "Failed to drain offline publish buffer.", e);
+		}
+	}
+	
+	private synchronized void startBackgroundTasks()
+	{
+		if (this.execSvc == null) {
+			this.execSvc = Executors.newScheduledThreadPool(1);
+			
+			if (this.offlineBuffer != null) {
+				this.execSvc.scheduleWithFixedDelay(
+					this::drainOfflineBuffer,
+					OFFLINE_BUFFER_DRAIN_INTERVAL_MILLIS, OFFLINE_BUFFER_DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+	
+	private synchronized void stopBackgroundTasks()
+	{
+		if (this.execSvc != null) {
+			// also cancels a pending reconnect
+			this.execSvc.shutdownNow();
+			this.execSvc = null;
+		}
+		
+		if (this.offlineBuffer != null) {
+			this.offlineBuffer.sync();
+		}
+	}
+	
+	private void scheduleReconnect()
+	{
+		ScheduledExecutorService execSvc = this.execSvc;
+		
+		if (this.isStopped || execSvc == null) {
+			return;
+		}
+		
+		int  attempt     = this.reconnectAttempts.getAndIncrement();
+		long delayMillis = getReconnectDelay(attempt);
+		
+		_Logger.info(
+			"Reconnecting to MQTT broker " + this.brokerAddr + " in " + delayMillis + " ms (attempt " + (attempt + 1) + ").");
+		
+		try {
+			execSvc.schedule(this::attemptReconnect, delayMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// disconnected in the meantime
+		}
+	}
+	
+	private void attemptReconnect()
+	{
+		if (this.isStopped || isConnected()) {
+			return;
+		}
+		
+		try {
+			this.mqttClient.connect(this.connOpts, null, new ReconnectListener());
+		} catch (MqttException e) {
+			_Logger.log(Level.WARNING, "Failed to reconnect to MQTT broker: " + this.brokerAddr, e);
+			
+			scheduleReconnect();
+		}
+	}
+	
+	/**
+	 * Returns the delay before reconnect 'attempt' (starting at 0): a random
+	 * value between half and all of the exponential backoff, so clients that
+	 * lost the same broker spread out their attempts.
+	 * 
+	 */
+	private long getReconnectDelay(int attempt)
+	{
+		long backoff =
+			Math.min(this.reconnectMaxDelayMillis, this.reconnectMinDelayMillis << Math.min(attempt, 20));
+		
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+	
+	/**
+	 * Returns the connection to publish messages for 'resource' on, or
+	 * null if not connected.
+	 * 
+	 */
+	private MqttAsyncClient getPublishClient(ResourceNameEnum resource)
+	{
+		if (resource.isControlResource()) {
+			MqttAsyncClient client = this.controlClient;
+			
+			if (client != null && client.isConnected()) {
+				return client;
+			}
+		}
+		
+		return (isConnected() ? this.mqttClient : null);
+	}
+	
+	/**
+	 * Creates the persistence for a new Paho client. Each client needs its
+	 * own instance (and directory, which is named after the client ID).
+	 * 
+	 */
+	private MqttClientPersistence createPersistence()
+	{
+		switch (this.persistenceType) {
+			case PERSISTENCE_TYPE_LOG:
+				return new SegmentedLogPersistence(this.persistenceDir);
+				
+			case PERSISTENCE_TYPE_FILE:
+				return new MqttDefaultFilePersistence(this.persistenceDir);
+				
+			default:
+				return new MemoryPersistence();
+		}
+	}
+	
+	private int validateQos(int qos)
+	{
+		return (qos < 0 || qos > 2 ? ConfigConst.DEFAULT_QOS : qos);
+	}
+	
 	/**
 	 * Called by the constructor to set the MQTT client parameters to be used for the connection.
 	 * 
@@ -129,7 +1016,136 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
 	 */
 	private void initClientParameters(String configSectionName)
 	{
-		// TODO: implement this
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+		
+		this.host =
+			configUtil.getProperty(configSectionName, ConfigConst.HOST_KEY, ConfigConst.DEFAULT_HOST);
+		this.port =
+			configUtil.getInteger(configSectionName, ConfigConst.PORT_KEY, ConfigConst.DEFAULT_MQTT_PORT);
+		this.brokerKeepAlive =
+			configUtil.getInteger(configSectionName, ConfigConst.KEEP_ALIVE_KEY, ConfigConst.DEFAULT_KEEP_ALIVE);
+		this.enableControlConnection =
+			configUtil.getBoolean(configSectionName, ConfigConst.ENABLE_CONTROL_CONNECTION_KEY, false);
+		
+		// each section gets its own broker session, even when several
+		// sections point at the same broker
+		this.clientID =
+			configUtil.getProperty(
+				configSectionName, ConfigConst.CLIENT_ID_KEY,
+				configUtil.getProperty(
+					ConfigConst.GATEWAY_DEVICE, ConfigConst.DEVICE_LOCATION_ID_KEY, MqttClient.generateClientId()) +
+				"-" + configSectionName);
+		
+		if (! this.clientIDSuffix.isEmpty()) {
+			// the pool's control messages use the first connection's control connection
+			this.clientID += this.clientIDSuffix;
+			this.enableControlConnection = false;
+		}
+		
+		this.enableAsync =
+			configUtil.getBoolean(configSectionName, ConfigConst.ENABLE_ASYNC_KEY, false);
+		this.persistenceType =
+			configUtil.getProperty(
+				configSectionName, ConfigConst.PERSISTENCE_TYPE_KEY, PERSISTENCE_TYPE_MEMORY).trim().toLowerCase();
+		this.persistenceDir =
+			configUtil.getProperty(configSectionName, ConfigConst.PERSISTENCE_DIR_KEY, DEFAULT_PERSISTENCE_DIR);
+		
+		this.reconnectMinDelayMillis = Math.max(1L,
+			configUtil.getInteger(
+				configSectionName, ConfigConst.RECONNECT_MIN_DELAY_MILLIS_KEY, (int) DEFAULT_RECONNECT_MIN_DELAY_MILLIS));
+		this.reconnectMaxDelayMillis = Math.max(this.reconnectMinDelayMillis,
+			configUtil.getInteger(
+				configSectionName, ConfigConst.RECONNECT_MAX_DELAY_MILLIS_KEY, (int) DEFAULT_RECONNECT_MAX_DELAY_MILLIS));
+		
+		initOfflineBuffer(configSectionName);
+		
+		// the primary connection is reconnected by this connector (see connectionLost())
+		this.connOpts        = createConnectOptions(
+			configUtil.getInteger(configSectionName, ConfigConst.MAX_INFLIGHT_KEY, DEFAULT_MAX_INFLIGHT), false);
+		this.controlConnOpts = createConnectOptions(
+			configUtil.getInteger(configSectionName, ConfigConst.CONTROL_MAX_INFLIGHT_KEY, DEFAULT_CONTROL_MAX_INFLIGHT), true);
+		
+		// the windows match Paho's limits, so a publish never fails for lack of a slot
+		this.publishWindow        = new Semaphore(this.connOpts.getMaxInflight());
+		this.controlPublishWindow = new Semaphore(this.controlConnOpts.getMaxInflight());
+		
+		if (configUtil.getBoolean(configSectionName, ConfigConst.ENABLE_AUTH_KEY, false)) {
+			initCredentialConnectionParameters(configSectionName);
+		}
+		
+		if (configUtil.getBoolean(configSectionName, ConfigConst.ENABLE_CRYPT_KEY, false)) {
+			initSecureConnectionParameters(configSectionName);
+		}
+		
+		this.brokerAddr = this.protocol + "://" + this.host + ":" + this.port;
+		
+		_Logger.info("Using MQTT broker address: " + this.brokerAddr);
+	}
+	
+	/**
+	 * Called by {@link #initClientParameters(String)} to create the offline
+	 * publish buffer, if enabled.
+	 * 
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 */
+	private void initOfflineBuffer(String configSectionName)
+	{
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+		
+		String bufferType =
+			configUtil.getProperty(
+				configSectionName, ConfigConst.OFFLINE_BUFFER_TYPE_KEY, OFFLINE_BUFFER_TYPE_NONE).trim().toLowerCase();
+		
+		switch (bufferType) {
+			case OFFLINE_BUFFER_TYPE_MEMORY:
+				this.offlineBuffer =
+					new OfflinePublishBuffer(
+						configUtil.getInteger(
+							configSectionName, ConfigConst.OFFLINE_BUFFER_MAX_MESSAGES_KEY,
+							OfflinePublishBuffer.DEFAULT_MAX_MESSAGES));
+				break;
+				
+			case OFFLINE_BUFFER_TYPE_DISK:
+				String bufferDir =
+					configUtil.getProperty(
+						configSectionName, ConfigConst.OFFLINE_BUFFER_DIR_KEY, DEFAULT_OFFLINE_BUFFER_DIR);
+				
+				this.offlineBuffer =
+					new OfflinePublishBuffer(
+						new DiskSpool(
+							new File(bufferDir + this.clientIDSuffix),
+							DiskSpool.DEFAULT_SEGMENT_BYTES,
+							DiskSpool.DEFAULT_MAX_BYTES,
+							DiskSpool.DEFAULT_MAX_AGE_MILLIS));
+				break;
+				
+			default:
+				return;
+		}
+		
+		int drainRate =
+			configUtil.getInteger(
+				configSectionName, ConfigConst.OFFLINE_BUFFER_DRAIN_RATE_KEY, DEFAULT_OFFLINE_BUFFER_DRAIN_RATE);
+		
+		if (drainRate > 0) {
+			this.offlineBufferDrainBatchSize =
+				(int) Math.max(1L, drainRate * OFFLINE_BUFFER_DRAIN_INTERVAL_MILLIS / 1000L);
+		}
+		
+		_Logger.info("Using offline publish buffer: " + this.offlineBuffer);
+	}
+	
+	private MqttConnectOptions createConnectOptions(int maxInflight, boolean autoReconnect)
+	{
+		MqttConnectOptions opts = new MqttConnectOptions();
+		
+		opts.setKeepAliveInterval(this.brokerKeepAlive);
+		opts.setCleanSession(false);
+		opts.setAutomaticReconnect(autoReconnect);
+		opts.setMaxInflight(Math.max(1, maxInflight));
+		
+		return opts;
 	}
 	
 	/**
@@ -140,7 +1156,21 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
 	 */
 	private void initCredentialConnectionParameters(String configSectionName)
 	{
-		// TODO: implement this
+		Properties props = ConfigUtil.getInstance().getCredentials(configSectionName);
+		
+		if (props == null) {
+			_Logger.warning("No credentials found for section: " + configSectionName);
+			
+			return;
+		}
+		
+		String userName = props.getProperty(ConfigConst.USER_NAME_TOKEN_KEY, "");
+		char[] password = props.getProperty(ConfigConst.USER_AUTH_TOKEN_KEY, "").toCharArray();
+		
+		for (MqttConnectOptions opts : new MqttConnectOptions[] { this.connOpts, this.controlConnOpts }) {
+			opts.setUserName(userName);
+			opts.setPassword(password);
+		}
 	}
 	
 	/**
@@ -151,6 +1181,106 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
 	 */
 	private void initSecureConnectionParameters(String configSectionName)
 	{
-		// TODO: implement this
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+		
+		String certFile = configUtil.getProperty(configSectionName, ConfigConst.CERT_FILE_KEY);
+		
+		if (certFile == null) {
+			_Logger.warning("No certificate file configured. Using unencrypted connection.");
+			
+			return;
+		}
+		
+		SSLSocketFactory socketFactory =
+			SimpleCertManagementUtil.getInstance().loadCertificate(certFile);
+		
+		if (socketFactory == null) {
+			_Logger.warning("Failed to load certificate file: " + certFile + ". Using unencrypted connection.");
+			
+			return;
+		}
+		
+		this.connOpts.setSocketFactory(socketFactory);
+		this.controlConnOpts.setSocketFactory(socketFactory);
+		
+		this.protocol = ConfigConst.DEFAULT_MQTT_SECURE_PROTOCOL;
+		this.port =
+			configUtil.getInteger(configSectionName, ConfigConst.SECURE_PORT_KEY, ConfigConst.DEFAULT_MQTT_SECURE_PORT);
 	}
+	
+	
+	// private classes
+	
+	private static final class ResourceTopic
+	{
+		final ResourceNameEnum resource;
+		final DataFormatEnum   format;
+		final boolean          isBatch;
+		
+		ResourceTopic(ResourceNameEnum resource, DataFormatEnum format, boolean isBatch)
+		{
+			this.resource = resource;
+			this.format   = format;
+			this.isBatch  = isBatch;
+		}
+	}
+	
+	/**
+	 * Schedules the next attempt if a reconnect fails. A successful one is
+	 * handled by {@link MqttClientConnector#connectComplete(boolean, String)}.
+	 * 
+	 */
+	private final class ReconnectListener implements IMqttActionListener
+	{
+		@Override
+		public void onSuccess(IMqttToken token)
+		{
+		}
+		
+		@Override
+		public void onFailure(IMqttToken token, Throwable t)
+		{
+			_Logger.warning("Failed to reconnect to MQTT broker: " + brokerAddr + ". " + t);
+			
+			scheduleReconnect();
+		}
+	}
+	
+	/**
+	 * Frees the publish window slot and completes the future once the
+	 * message is delivered or has failed.
+	 * 
+	 */
+	private final class PublishListener implements IMqttActionListener
+	{
+		private final String topic;
+		private final Semaphore window;
+		private final CompletableFuture<Boolean> future;
+		
+		PublishListener(String topic, Semaphore window, CompletableFuture<Boolean> future)
+		{
+			this.topic  = topic;
+			this.window = window;
+			this.future = future;
+		}
+		
+		@Override
+		public void onSuccess(IMqttToken token)
+		{
+			this.window.release();
+			this.future.complete(true);
+		}
+		
+		@Override
+		public void onFailure(IMqttToken token, Throwable t)
+		{
+			this.window.release();
+			
+			publishFailedCount.incrementAndGet();
+			_Logger.log(Level.WARNING, "Failed to deliver message to topic: " + this.topic, t);
+			
+			this.future.complete(false);
+		}
+	}
+	
 }
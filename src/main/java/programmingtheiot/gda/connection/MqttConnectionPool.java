@@ -0,0 +1,296 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+
+/**
+ * MQTT client that spreads publishes over a pool of
+ * {@link MqttClientConnector} connections to the same broker.
+ * <p>
+ * Each Paho connection writes through one socket and one sender thread,
+ * which caps the publish rate of a single connection; with several
+ * connections, publishes from several threads are sent in parallel. Each
+ * topic is always published on the same connection (chosen by the hash of
+ * the topic name), so messages on a topic stay in order. This also means
+ * a single busy topic doesn't get faster: the pool scales with the number
+ * of topics published at once.
+ * <p>
+ * The first connection uses the configured client ID and handles all
+ * subscriptions (and so all incoming messages), as well as all control
+ * plane messages (see {@link ResourceNameEnum#isControlResource()}), which
+ * use its control connection if enabled. The other connections append
+ * {@link #POOL_CLIENT_ID_SUFFIX} and their index to the client ID, and
+ * only publish.
+ * <p>
+ * The pool size is set via {@link ConfigConst#CONNECTION_POOL_SIZE_KEY};
+ * all other parameters are read from the same section by each connection.
+ * 
+ */
+public class MqttConnectionPool implements IPubSubClient
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(MqttConnectionPool.class.getName());
+	
+	public static final String POOL_CLIENT_ID_SUFFIX = "-p";
+	
+	public static final int DEFAULT_POOL_SIZE = 1;
+	
+	
+	// private var's
+	
+	private final List<MqttClientConnector> connections;
+	
+	// precomputed, as resources are the common case
+	private final Map<ResourceNameEnum, MqttClientConnector> resourceConnections =
+		new EnumMap<>(ResourceNameEnum.class);
+	
+	
+	// constructors
+	
+	/**
+	 * Default. Uses the {@link ConfigConst#MQTT_GATEWAY_SERVICE} section.
+	 * 
+	 */
+	public MqttConnectionPool()
+	{
+		this(ConfigConst.MQTT_GATEWAY_SERVICE);
+	}
+	
+	/**
+	 * Constructor. Reads the pool size from 'configSectionName'.
+	 * 
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 */
+	public MqttConnectionPool(String configSectionName)
+	{
+		this(
+			configSectionName,
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.CONNECTION_POOL_SIZE_KEY, DEFAULT_POOL_SIZE));
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 * @param poolSize The number of connections.
+	 */
+	public MqttConnectionPool(String configSectionName, int poolSize)
+	{
+		super();
+		
+		List<MqttClientConnector> connList = new ArrayList<>();
+		
+		connList.add(new MqttClientConnector(configSectionName));
+		
+		for (int i = 1; i < Math.max(1, poolSize); i++) {
+			connList.add(new MqttClientConnector(configSectionName, POOL_CLIENT_ID_SUFFIX + i));
+		}
+		
+		this.connections = Collections.unmodifiableList(connList);
+		
+		for (ResourceNameEnum resource : ResourceNameEnum.values()) {
+			this.resourceConnections.put(
+				resource,
+				resource.isControlResource() ? connList.get(0) : getConnection(resource.getResourceName()));
+		}
+		
+		_Logger.info("Created MQTT connection pool with " + connList.size() + " connections.");
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Connects all connections. If any fails, those already connected are
+	 * disconnected again.
+	 * 
+	 * @return boolean True if all connections are connected; false otherwise.
+	 */
+	@Override
+	public boolean connectClient()
+	{
+		for (MqttClientConnector conn : this.connections) {
+			if (! conn.connectClient()) {
+				_Logger.warning("Failed to connect MQTT connection pool: " + conn.getClientID());
+				
+				disconnectClient();
+				
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Disconnects all connections.
+	 * 
+	 * @return boolean True if all connections were connected and are now
+	 * disconnected; false otherwise.
+	 */
+	@Override
+	public boolean disconnectClient()
+	{
+		boolean success = true;
+		
+		for (MqttClientConnector conn : this.connections) {
+			success &= conn.disconnectClient();
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * 
+	 * @return boolean True if all connections are connected.
+	 */
+	public boolean isConnected()
+	{
+		for (MqttClientConnector conn : this.connections) {
+			if (! conn.isConnected()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public boolean publishMessage(ResourceNameEnum topicName, String msg, int qos)
+	{
+		return (topicName != null && getConnection(topicName).publishMessage(topicName, msg, qos));
+	}
+	
+	@Override
+	public boolean publishMessage(ResourceNameEnum topicName, byte[] payload, int qos)
+	{
+		return (topicName != null && getConnection(topicName).publishMessage(topicName, payload, qos));
+	}
+	
+	/**
+	 * Publishes 'payload' to an arbitrary topic, on the connection for 'topic'.
+	 * 
+	 * @param topic The full topic name.
+	 * @param payload The payload.
+	 * @param qos The QoS level.
+	 * @return boolean True on success; false otherwise.
+	 */
+	public boolean publishMessage(String topic, byte[] payload, int qos)
+	{
+		return (topic != null && getConnection(topic).publishMessage(topic, payload, qos));
+	}
+	
+	@Override
+	public boolean subscribeToTopic(ResourceNameEnum topicName, int qos)
+	{
+		return this.connections.get(0).subscribeToTopic(topicName, qos);
+	}
+	
+	@Override
+	public boolean unsubscribeFromTopic(ResourceNameEnum topicName)
+	{
+		return this.connections.get(0).unsubscribeFromTopic(topicName);
+	}
+	
+	/**
+	 * Sets the listener on the first connection, which handles all
+	 * subscriptions.
+	 * 
+	 */
+	@Override
+	public boolean setDataMessageListener(IDataMessageListener listener)
+	{
+		return this.connections.get(0).setDataMessageListener(listener);
+	}
+	
+	/**
+	 * Returns the connection that publishes messages for 'resource'.
+	 * 
+	 * @param resource The resource.
+	 * @return MqttClientConnector The connection.
+	 */
+	public MqttClientConnector getConnection(ResourceNameEnum resource)
+	{
+		return this.resourceConnections.get(resource);
+	}
+	
+	/**
+	 * Returns the connection that publishes messages for 'topic'.
+	 * 
+	 * @param topic The full topic name.
+	 * @return MqttClientConnector The connection.
+	 */
+	public MqttClientConnector getConnection(String topic)
+	{
+		int size = this.connections.size();
+		
+		if (size == 1) {
+			return this.connections.get(0);
+		}
+		
+		// spread the high bits, as topics often differ only at the end
+		int hash = topic.hashCode();
+		
+		return this.connections.get(Math.floorMod(hash ^ (hash >>> 16), size));
+	}
+	
+	/**
+	 * Returns the payload encoding of the pool. All connections read the
+	 * same section, so the first one speaks for all of them.
+	 * 
+	 * @return DataFormatEnum
+	 */
+	public DataFormatEnum getDataFormat()
+	{
+		return this.connections.get(0).getDataFormat();
+	}
+	
+	/**
+	 * 
+	 * @return List<MqttClientConnector> The connections; the first one
+	 * handles subscriptions.
+	 */
+	public List<MqttClientConnector> getConnections()
+	{
+		return this.connections;
+	}
+	
+	/**
+	 * 
+	 * @return long The number of failed publishes over all connections.
+	 */
+	public long getPublishFailedCount()
+	{
+		long count = 0L;
+		
+		for (MqttClientConnector conn : this.connections) {
+			count += conn.getPublishFailedCount();
+		}
+		
+		return count;
+	}
+	
+}
@@ -0,0 +1,248 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.cloud.CloudTarget;
+
+/**
+ * Cloud client that fans edge data out to several cloud services in
+ * parallel. Each service is a {@link CloudTarget} wrapping its own
+ * {@link CloudClientConnector} (and so its own connection, filter, spool
+ * and batcher), with its own queue, sender thread and retry policy, so a
+ * slow or failed service never throttles the others.
+ * <p>
+ * The services are listed (separated by spaces) via
+ * {@link ConfigConst#CLOUD_TARGETS_KEY} in
+ * {@link ConfigConst#CLOUD_GATEWAY_SERVICE}, and each is configured in the
+ * section returned by {@link ConfigUtil#getCloudSectionName(String)}, e.g.
+ * 'Cloud.GatewayService.AWS'. The queue size and retry parameters are read
+ * from the service's section, falling back to
+ * {@link ConfigConst#CLOUD_GATEWAY_SERVICE}.
+ * 
+ */
+public class MultiCloudClientConnector implements ICloudClient
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(MultiCloudClientConnector.class.getName());
+	
+	private static final long STOP_TIMEOUT_MILLIS = 5000L;
+	
+	
+	// private var's
+	
+	private final List<CloudTarget> targets;
+	
+	
+	// constructors
+	
+	/**
+	 * Default. Creates a target for each configured cloud service.
+	 * 
+	 */
+	public MultiCloudClientConnector()
+	{
+		super();
+		
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+		List<CloudTarget> targetList = new ArrayList<>();
+		
+		for (String name : getTargetNames()) {
+			String section = configUtil.getCloudSectionName(name);
+			
+			targetList.add(
+				new CloudTarget(
+					name, new CloudClientConnector(section),
+					getInteger(configUtil, section, ConfigConst.TARGET_QUEUE_SIZE_KEY, CloudTarget.DEFAULT_QUEUE_SIZE),
+					getInteger(configUtil, section, ConfigConst.MAX_RETRIES_KEY, CloudTarget.DEFAULT_MAX_RETRIES),
+					getInteger(configUtil, section, ConfigConst.RETRY_BASE_MILLIS_KEY, (int) CloudTarget.DEFAULT_RETRY_BASE_MILLIS),
+					getInteger(configUtil, section, ConfigConst.RETRY_MAX_MILLIS_KEY, (int) CloudTarget.DEFAULT_RETRY_MAX_MILLIS)));
+		}
+		
+		this.targets = Collections.unmodifiableList(targetList);
+		
+		_Logger.info("Cloud targets: " + getTargetNames());
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param targets The cloud targets.
+	 */
+	public MultiCloudClientConnector(List<CloudTarget> targets)
+	{
+		super();
+		
+		this.targets = Collections.unmodifiableList(new ArrayList<>(targets));
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Returns the configured cloud service names.
+	 * 
+	 * @return List<String> The names; empty if none are configured.
+	 */
+	public static List<String> getTargetNames()
+	{
+		String names =
+			ConfigUtil.getInstance().getProperty(ConfigConst.CLOUD_GATEWAY_SERVICE, ConfigConst.CLOUD_TARGETS_KEY, "");
+		
+		List<String> nameList = new ArrayList<>();
+		
+		for (String name : names.trim().split("\\s+")) {
+			if (name.length() > 0 && ! nameList.contains(name)) {
+				nameList.add(name);
+			}
+		}
+		
+		return nameList;
+	}
+	
+	/**
+	 * Starts all targets. Each target connects on its own sender thread,
+	 * so this doesn't wait for any connection.
+	 * 
+	 * @return boolean True if there's at least one target.
+	 */
+	@Override
+	public boolean connectClient()
+	{
+		for (CloudTarget target : this.targets) {
+			target.startTarget();
+		}
+		
+		return ! this.targets.isEmpty();
+	}
+	
+	/**
+	 * Stops all targets, each sending its queued messages first.
+	 * 
+	 */
+	@Override
+	public boolean disconnectClient()
+	{
+		for (CloudTarget target : this.targets) {
+			target.stopTarget(STOP_TIMEOUT_MILLIS);
+		}
+		
+		return ! this.targets.isEmpty();
+	}
+	
+	/**
+	 * Returns the cloud targets, e.g. for their throughput and lag metrics.
+	 * 
+	 * @return List<CloudTarget>
+	 */
+	public List<CloudTarget> getTargets()
+	{
+		return this.targets;
+	}
+	
+	@Override
+	public boolean setDataMessageListener(IDataMessageListener listener)
+	{
+		boolean success = ! this.targets.isEmpty();
+		
+		for (CloudTarget target : this.targets) {
+			success &= target.getCloudClient().setDataMessageListener(listener);
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * Queues 'data' for every target.
+	 * 
+	 * @return boolean True if at least one target accepted the data.
+	 */
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
+	{
+		boolean success = false;
+		
+		for (CloudTarget target : this.targets) {
+			success |= target.sendData(resource, data);
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * Queues 'data' for every target.
+	 * 
+	 * @return boolean True if at least one target accepted the data.
+	 */
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
+	{
+		boolean success = false;
+		
+		for (CloudTarget target : this.targets) {
+			success |= target.sendData(resource, data);
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * 
+	 * @return boolean True if at least one target subscribed.
+	 */
+	@Override
+	public boolean subscribeToCloudEvents(ResourceNameEnum resource)
+	{
+		boolean success = false;
+		
+		for (CloudTarget target : this.targets) {
+			success |= target.getCloudClient().subscribeToCloudEvents(resource);
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * 
+	 * @return boolean True if at least one target unsubscribed.
+	 */
+	@Override
+	public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
+	{
+		boolean success = false;
+		
+		for (CloudTarget target : this.targets) {
+			success |= target.getCloudClient().unsubscribeFromCloudEvents(resource);
+		}
+		
+		return success;
+	}
+	
+	
+	// private methods
+	
+	private int getInteger(ConfigUtil configUtil, String section, String key, int defaultVal)
+	{
+		return configUtil.getInteger(
+			section, key, configUtil.getInteger(ConfigConst.CLOUD_GATEWAY_SERVICE, key, defaultVal));
+	}
+	
+}
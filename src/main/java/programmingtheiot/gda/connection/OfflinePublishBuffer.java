@@ -0,0 +1,304 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.logging.Logger;
+
+import programmingtheiot.gda.cloud.DiskSpool;
+
+/**
+ * Bounded buffer of messages (topic, payload and QoS) published while the
+ * MQTT connection is down, to be sent once it's back up.
+ * <p>
+ * The buffer is either kept in memory, holding up to a maximum number of
+ * messages and dropping the oldest when full, or spills to a
+ * {@link DiskSpool}, which bounds it by size and age and keeps it across
+ * restarts. In either case, messages are drained in order, and dropped
+ * messages are counted (see {@link #getDroppedCount()}).
+ * <p>
+ * All methods are thread-safe. Only one thread may drain at a time; the
+ * sender passed to {@link #drain(int, IMessageSender)} is called without
+ * holding the buffer's lock, so appending isn't blocked while a message
+ * is sent.
+ * 
+ */
+public class OfflinePublishBuffer
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(OfflinePublishBuffer.class.getName());
+	
+	public static final int DEFAULT_MAX_MESSAGES = 10000;
+	
+	/**
+	 * Sends a buffered message.
+	 * 
+	 */
+	public interface IMessageSender
+	{
+		/**
+		 * 
+		 * @param topic The topic.
+		 * @param payload The payload.
+		 * @param qos The QoS level.
+		 * @return boolean True if the message was sent; false to stop draining
+		 * and keep it at the head of the buffer.
+		 */
+		boolean sendMessage(String topic, byte[] payload, int qos);
+	}
+	
+	
+	// private var's
+	
+	private final int       maxMessages;
+	private final DiskSpool spool;
+	
+	private final Deque<BufferedMessage> messages = new ArrayDeque<>();
+	
+	private long bufferedCount = 0L;
+	private long droppedCount  = 0L;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor for an in-memory buffer.
+	 * 
+	 * @param maxMessages The maximum number of messages held; the oldest
+	 * message is dropped to make room for a new one.
+	 */
+	public OfflinePublishBuffer(int maxMessages)
+	{
+		super();
+		
+		this.maxMessages = Math.max(1, maxMessages);
+		this.spool       = null;
+	}
+	
+	/**
+	 * Constructor for a buffer that spills to disk. The spool's own
+	 * retention limits bound the buffer.
+	 * 
+	 * @param spool The spool to append messages to.
+	 */
+	public OfflinePublishBuffer(DiskSpool spool)
+	{
+		super();
+		
+		this.maxMessages = 0;
+		this.spool       = spool;
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Appends a message to the buffer.
+	 * 
+	 * @param topic The topic.
+	 * @param payload The payload.
+	 * @param qos The QoS level.
+	 * @return boolean True on success; false if the message can't be
+	 * buffered (e.g. the spool isn't open).
+	 */
+	public boolean append(String topic, byte[] payload, int qos)
+	{
+		if (topic == null || payload == null) {
+			return false;
+		}
+		
+		if (this.spool != null) {
+			// the QoS is stored in front of the payload
+			byte[] data = new byte[payload.length + 1];
+			data[0] = (byte) qos;
+			
+			System.arraycopy(payload, 0, data, 1, payload.length);
+			
+			if (! this.spool.append(topic, data)) {
+				return false;
+			}
+			
+			synchronized (this) {
+				this.bufferedCount++;
+			}
+			
+			return true;
+		}
+		
+		synchronized (this) {
+			if (this.messages.size() >= this.maxMessages) {
+				this.messages.pollFirst();
+				
+				if (this.droppedCount++ == 0L) {
+					_Logger.warning("Offline publish buffer full. Dropping oldest messages.");
+				}
+			}
+			
+			this.messages.addLast(new BufferedMessage(topic, payload, qos));
+			this.bufferedCount++;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Passes up to 'maxCount' messages in order to 'sender', stopping at
+	 * the first one it doesn't send. That message stays at the head of the
+	 * buffer, to be passed again on the next call.
+	 * 
+	 * @param maxCount The maximum number of messages to pass.
+	 * @param sender Called with each message.
+	 * @return int The number of messages sent.
+	 */
+	public int drain(int maxCount, IMessageSender sender)
+	{
+		if (this.spool != null) {
+			return this.spool.drain(
+				maxCount,
+				(topic, data) -> sender.sendMessage(topic, Arrays.copyOfRange(data, 1, data.length), data[0]));
+		}
+		
+		int count = 0;
+		
+		while (count < maxCount) {
+			BufferedMessage msg;
+			
+			synchronized (this) {
+				msg = this.messages.peekFirst();
+			}
+			
+			if (msg == null || ! sender.sendMessage(msg.topic, msg.payload, msg.qos)) {
+				break;
+			}
+			
+			synchronized (this) {
+				// unless dropped to make room in the meantime
+				if (this.messages.peekFirst() == msg) {
+					this.messages.pollFirst();
+				}
+			}
+			
+			count++;
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Forces spooled messages to disk. Does nothing for an in-memory buffer.
+	 * 
+	 */
+	public void sync()
+	{
+		if (this.spool != null) {
+			this.spool.sync();
+		}
+	}
+	
+	/**
+	 * Syncs and closes the spool, if any. Messages still in an in-memory
+	 * buffer are kept, but lost when the process exits.
+	 * 
+	 */
+	public void close()
+	{
+		if (this.spool != null) {
+			this.spool.close();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return boolean True if messages are kept on disk.
+	 */
+	public boolean isDurable()
+	{
+		return (this.spool != null);
+	}
+	
+	public boolean isEmpty()
+	{
+		return (getPendingCount() == 0L);
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages waiting to be sent.
+	 */
+	public long getPendingCount()
+	{
+		if (this.spool != null) {
+			return this.spool.getPendingCount();
+		}
+		
+		synchronized (this) {
+			return this.messages.size();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages appended.
+	 */
+	public synchronized long getBufferedCount()
+	{
+		return this.bufferedCount;
+	}
+	
+	/**
+	 * 
+	 * @return long The number of messages dropped before being sent,
+	 * because the buffer was full (or, when spooling, they were too old).
+	 */
+	public long getDroppedCount()
+	{
+		if (this.spool != null) {
+			return this.spool.getDroppedCount();
+		}
+		
+		synchronized (this) {
+			return this.droppedCount;
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("type=").append(isDurable() ? "disk" : "memory").append(',');
+		sb.append("pending=").append(getPendingCount()).append(',');
+		sb.append("buffered=").append(getBufferedCount()).append(',');
+		sb.append("dropped=").append(getDroppedCount());
+		
+		return sb.toString();
+	}
+	
+	
+	// private classes
+	
+	private static final class BufferedMessage
+	{
+		final String topic;
+		final byte[] payload;
+		final int    qos;
+		
+		BufferedMessage(String topic, byte[] payload, int qos)
+		{
+			this.topic   = topic;
+			this.payload = payload;
+			this.qos     = qos;
+		}
+	}
+	
+}
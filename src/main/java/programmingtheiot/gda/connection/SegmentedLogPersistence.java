@@ -0,0 +1,685 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+/**
+ * Durable {@link MqttClientPersistence} that appends to a segmented log,
+ * so QoS 1 and 2 messages in flight survive a crash or restart.
+ * <p>
+ * Each put and remove is appended to the active segment file (one
+ * directory per client ID and server URI, like Paho's
+ * MqttDefaultFilePersistence, but no file per message). A put returns once
+ * its record is on disk; concurrent puts share one fsync (group commit): while
+ * one thread syncs, the others' records accumulate and are covered by the
+ * next sync. A remove isn't synced by itself: if it's lost in a crash, the
+ * message is resent, which at-least-once delivery allows.
+ * <p>
+ * The live records are also kept in memory for {@link #get(String)} and
+ * {@link #keys()}. When the active segment exceeds 'segmentBytes', a new
+ * segment is started, and the oldest segments are deleted once none of
+ * their records is live. If more than {@link #MAX_SEGMENTS} segments are
+ * pinned by old records, those records are copied to the active segment.
+ * On open, the segments are replayed, and a torn record at the tail is
+ * truncated.
+ * <p>
+ * Record layout: int length (of the rest), int CRC32 (of the rest),
+ * byte type, short key length, key (UTF-8), int header length, header,
+ * payload.
+ * 
+ */
+public class SegmentedLogPersistence implements MqttClientPersistence
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(SegmentedLogPersistence.class.getName());
+	
+	public static final int DEFAULT_SEGMENT_BYTES = 1048576;
+	
+	/** The number of segments above which pinned records are copied forward. */
+	public static final int MAX_SEGMENTS = 4;
+	
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final int    PREFIX_BYTES   = 8;
+	
+	private static final byte TYPE_PUT    = 1;
+	private static final byte TYPE_REMOVE = 2;
+	
+	private static final byte[] EMPTY_BYTES = new byte[0];
+	
+	
+	// private var's
+	
+	private final File baseDir;
+	private final int  segmentBytes;
+	
+	private File dir = null;
+	
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	
+	// guarded by writeLock
+	private final Object writeLock = new Object();
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+	private Segment     activeSegment = null;
+	private FileChannel activeChannel = null;
+	private long        writtenSeq    = 0L;
+	
+	// guarded by syncLock
+	private final Object syncLock = new Object();
+	private long    syncedSeq = 0L;
+	private boolean isSyncing = false;
+	
+	private volatile boolean isOpen = false;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param directory The base directory.
+	 */
+	public SegmentedLogPersistence(String directory)
+	{
+		this(directory, DEFAULT_SEGMENT_BYTES);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param directory The base directory.
+	 * @param segmentBytes The size at which a new segment is started.
+	 */
+	public SegmentedLogPersistence(String directory, int segmentBytes)
+	{
+		super();
+		
+		this.baseDir      = new File(directory);
+		this.segmentBytes = Math.max(1024, segmentBytes);
+	}
+	
+	
+	// public methods
+	
+	@Override
+	public void open(String clientId, String serverURI) throws MqttPersistenceException
+	{
+		String name = (clientId + "-" + serverURI).replaceAll("[^A-Za-z0-9_.-]", "");
+		
+		synchronized (this.writeLock) {
+			if (this.isOpen) {
+				throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+			}
+			
+			try {
+				this.dir = new File(this.baseDir, name);
+				Files.createDirectories(this.dir.toPath());
+				
+				recoverSegments();
+				
+				long nextId = (this.segments.isEmpty() ? 0L : this.segments.lastKey() + 1L);
+				
+				startSegment(nextId);
+				trimSegments();
+				
+				this.isOpen = true;
+				
+				_Logger.info("Opened MQTT persistence: " + this.dir + " (" + this.entries.size() + " records)");
+			} catch (IOException e) {
+				_Logger.log(Level.SEVERE, "Failed to open MQTT persistence: " + this.dir, e);
+				
+				throw new MqttPersistenceException(e);
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws MqttPersistenceException
+	{
+		synchronized (this.writeLock) {
+			if (! this.isOpen) {
+				return;
+			}
+			
+			this.isOpen = false;
+			
+			try {
+				this.activeChannel.force(false);
+				this.activeChannel.close();
+			} catch (IOException e) {
+				throw new MqttPersistenceException(e);
+			} finally {
+				this.activeChannel = null;
+				this.activeSegment = null;
+				this.segments.clear();
+				this.entries.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Appends the record and waits until it's on disk.
+	 * 
+	 */
+	@Override
+	public void put(String key, MqttPersistable persistable) throws MqttPersistenceException
+	{
+		Entry entry =
+			new Entry(
+				key,
+				copyBytes(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength()),
+				copyBytes(persistable.getPayloadBytes(), persistable.getPayloadOffset(), persistable.getPayloadLength()));
+		
+		long seq;
+		
+		synchronized (this.writeLock) {
+			checkIsOpen();
+			
+			try {
+				appendRecord(TYPE_PUT, key, entry.header, entry.payload);
+			} catch (IOException e) {
+				throw new MqttPersistenceException(e);
+			}
+			
+			entry.segment = this.activeSegment;
+			entry.segment.liveCount++;
+			
+			Entry old = this.entries.put(key, entry);
+			
+			if (old != null) {
+				old.segment.liveCount--;
+			}
+			
+			seq = ++this.writtenSeq;
+			
+			rollIfFull();
+		}
+		
+		awaitSync(seq);
+	}
+	
+	@Override
+	public MqttPersistable get(String key) throws MqttPersistenceException
+	{
+		checkIsOpen();
+		
+		return this.entries.get(key);
+	}
+	
+	/**
+	 * Appends a remove record, without waiting for it to be on disk.
+	 * 
+	 */
+	@Override
+	public void remove(String key) throws MqttPersistenceException
+	{
+		synchronized (this.writeLock) {
+			checkIsOpen();
+			
+			Entry old = this.entries.remove(key);
+			
+			if (old == null) {
+				return;
+			}
+			
+			old.segment.liveCount--;
+			
+			try {
+				appendRecord(TYPE_REMOVE, key, EMPTY_BYTES, EMPTY_BYTES);
+			} catch (IOException e) {
+				throw new MqttPersistenceException(e);
+			}
+			
+			++this.writtenSeq;
+			
+			rollIfFull();
+		}
+	}
+	
+	@Override
+	public Enumeration<String> keys() throws MqttPersistenceException
+	{
+		checkIsOpen();
+		
+		return Collections.enumeration(new ArrayList<>(this.entries.keySet()));
+	}
+	
+	@Override
+	public void clear() throws MqttPersistenceException
+	{
+		synchronized (this.writeLock) {
+			checkIsOpen();
+			
+			try {
+				this.activeChannel.close();
+				
+				for (Segment segment : this.segments.values()) {
+					Files.deleteIfExists(segment.file.toPath());
+				}
+				
+				long nextId = this.activeSegment.id + 1L;
+				
+				this.segments.clear();
+				this.entries.clear();
+				
+				startSegment(nextId);
+			} catch (IOException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+	}
+	
+	@Override
+	public boolean containsKey(String key) throws MqttPersistenceException
+	{
+		checkIsOpen();
+		
+		return this.entries.containsKey(key);
+	}
+	
+	/**
+	 * 
+	 * @return int The number of segment files.
+	 */
+	public int getSegmentCount()
+	{
+		synchronized (this.writeLock) {
+			return this.segments.size();
+		}
+	}
+	
+	
+	// private methods
+	
+	private void checkIsOpen() throws MqttPersistenceException
+	{
+		if (! this.isOpen) {
+			throw new MqttPersistenceException();
+		}
+	}
+	
+	private byte[] copyBytes(byte[] bytes, int offset, int length)
+	{
+		if (bytes == null || length <= 0) {
+			return EMPTY_BYTES;
+		}
+		
+		byte[] copy = new byte[length];
+		System.arraycopy(bytes, offset, copy, 0, length);
+		
+		return copy;
+	}
+	
+	/**
+	 * Writes a record to the active segment. The caller must hold writeLock.
+	 * 
+	 */
+	private void appendRecord(byte type, String key, byte[] header, byte[] payload) throws IOException
+	{
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int    bodyLen  = 1 + 2 + keyBytes.length + 4 + header.length + payload.length;
+		
+		ByteBuffer buf = ByteBuffer.allocate(PREFIX_BYTES + bodyLen);
+		
+		buf.putInt(bodyLen);
+		buf.putInt(0);
+		buf.put(type);
+		buf.putShort((short) keyBytes.length);
+		buf.put(keyBytes);
+		buf.putInt(header.length);
+		buf.put(header);
+		buf.put(payload);
+		
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), PREFIX_BYTES, bodyLen);
+		buf.putInt(4, (int) crc.getValue());
+		
+		buf.flip();
+		
+		while (buf.hasRemaining()) {
+			this.activeChannel.write(buf);
+		}
+		
+		this.activeSegment.size += PREFIX_BYTES + bodyLen;
+	}
+	
+	/**
+	 * Waits until the record with sequence number 'seq' is on disk, syncing
+	 * the active segment if no other thread is syncing.
+	 * 
+	 */
+	private void awaitSync(long seq) throws MqttPersistenceException
+	{
+		synchronized (this.syncLock) {
+			while (this.syncedSeq < seq && this.isSyncing) {
+				try {
+					this.syncLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					
+					throw new MqttPersistenceException(e);
+				}
+			}
+			
+			if (this.syncedSeq >= seq) {
+				return;
+			}
+			
+			this.isSyncing = true;
+		}
+		
+		long targetSeq = 0L;
+		
+		try {
+			while (true) {
+				FileChannel channel;
+				
+				synchronized (this.writeLock) {
+					checkIsOpen();
+					
+					targetSeq = this.writtenSeq;
+					channel   = this.activeChannel;
+				}
+				
+				try {
+					channel.force(false);
+					
+					break;
+				} catch (ClosedChannelException e) {
+					// rolled over (the old segment was synced on roll), so sync the new one
+				}
+			}
+		} catch (IOException e) {
+			targetSeq = 0L;
+			
+			throw new MqttPersistenceException(e);
+		} finally {
+			synchronized (this.syncLock) {
+				this.isSyncing = false;
+				this.syncedSeq = Math.max(this.syncedSeq, targetSeq);
+				this.syncLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Starts a new segment if the active one is full. The caller must hold writeLock.
+	 * 
+	 */
+	private void rollIfFull() throws MqttPersistenceException
+	{
+		if (this.activeSegment.size < this.segmentBytes) {
+			return;
+		}
+		
+		try {
+			this.activeChannel.force(false);
+			this.activeChannel.close();
+			
+			startSegment(this.activeSegment.id + 1L);
+			trimSegments();
+		} catch (IOException e) {
+			throw new MqttPersistenceException(e);
+		}
+	}
+	
+	/**
+	 * Creates and opens segment 'id' as the active segment. The caller must hold writeLock.
+	 * 
+	 */
+	private void startSegment(long id) throws IOException
+	{
+		File file = new File(this.dir, String.format("%020d", id) + SEGMENT_SUFFIX);
+		
+		this.activeChannel =
+			FileChannel.open(
+				file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.activeSegment = new Segment(id, file);
+		
+		this.segments.put(id, this.activeSegment);
+	}
+	
+	/**
+	 * Deletes the oldest segments while none of their records is live,
+	 * copying pinned records to the active segment if there are more than
+	 * {@link #MAX_SEGMENTS} segments. Only the oldest segments are deleted,
+	 * so a remove record is never deleted while the put it cancels is kept.
+	 * The caller must hold writeLock.
+	 * 
+	 */
+	private void trimSegments() throws IOException
+	{
+		while (this.segments.size() > 1) {
+			Segment oldest = this.segments.firstEntry().getValue();
+			
+			if (oldest == this.activeSegment) {
+				break;
+			}
+			
+			if (oldest.liveCount > 0) {
+				if (this.segments.size() <= MAX_SEGMENTS) {
+					break;
+				}
+				
+				for (Entry entry : this.entries.values()) {
+					if (entry.segment == oldest) {
+						appendRecord(TYPE_PUT, entry.key, entry.header, entry.payload);
+						
+						entry.segment = this.activeSegment;
+						this.activeSegment.liveCount++;
+					}
+				}
+				
+				// the copies must be on disk before the originals are deleted
+				this.activeChannel.force(false);
+			}
+			
+			Files.deleteIfExists(oldest.file.toPath());
+			this.segments.remove(oldest.id);
+		}
+	}
+	
+	/**
+	 * Replays all segments into the live records, truncating a torn or
+	 * corrupt tail. The caller must hold writeLock.
+	 * 
+	 */
+	private void recoverSegments() throws IOException
+	{
+		this.segments.clear();
+		this.entries.clear();
+		
+		File[] files = this.dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+		
+		if (files == null) {
+			return;
+		}
+		
+		List<Segment> found = new ArrayList<>();
+		
+		for (File file : files) {
+			try {
+				long id = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+				
+				found.add(new Segment(id, file));
+			} catch (NumberFormatException e) {
+				_Logger.warning("Ignoring unknown file in MQTT persistence: " + file);
+			}
+		}
+		
+		found.sort((a, b) -> Long.compare(a.id, b.id));
+		
+		for (Segment segment : found) {
+			this.segments.put(segment.id, segment);
+			
+			replaySegment(segment);
+		}
+	}
+	
+	private void replaySegment(Segment segment) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(segment.file.toPath()));
+		CRC32 crc = new CRC32();
+		
+		while (buf.remaining() >= PREFIX_BYTES) {
+			int start   = buf.position();
+			int bodyLen = buf.getInt();
+			int bodyCrc = buf.getInt();
+			
+			if (bodyLen < 7 || bodyLen > buf.remaining()) {
+				buf.position(start);
+				
+				break;
+			}
+			
+			crc.reset();
+			crc.update(buf.array(), buf.position(), bodyLen);
+			
+			if ((int) crc.getValue() != bodyCrc) {
+				buf.position(start);
+				
+				break;
+			}
+			
+			byte type = buf.get();
+			byte[] keyBytes = new byte[buf.getShort() & 0xFFFF];
+			buf.get(keyBytes);
+			
+			String key = new String(keyBytes, StandardCharsets.UTF_8);
+			
+			byte[] header  = new byte[buf.getInt()];
+			buf.get(header);
+			
+			byte[] payload = new byte[start + PREFIX_BYTES + bodyLen - buf.position()];
+			buf.get(payload);
+			
+			Entry old;
+			
+			if (type == TYPE_PUT) {
+				Entry entry = new Entry(key, header, payload);
+				entry.segment = segment;
+				segment.liveCount++;
+				
+				old = this.entries.put(key, entry);
+			} else {
+				old = this.entries.remove(key);
+			}
+			
+			if (old != null) {
+				old.segment.liveCount--;
+			}
+		}
+		
+		segment.size = buf.position();
+		
+		if (buf.hasRemaining()) {
+			_Logger.warning(
+				"Truncating torn tail of MQTT persistence segment " + segment.file + " at " + segment.size);
+			
+			try (FileChannel channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(segment.size);
+				channel.force(false);
+			}
+		}
+	}
+	
+	
+	// private classes
+	
+	private static final class Segment
+	{
+		final long id;
+		final File file;
+		
+		long size      = 0L;
+		int  liveCount = 0;
+		
+		Segment(long id, File file)
+		{
+			this.id   = id;
+			this.file = file;
+		}
+	}
+	
+	private static final class Entry implements MqttPersistable
+	{
+		final String key;
+		final byte[] header;
+		final byte[] payload;
+		
+		Segment segment = null;
+		
+		Entry(String key, byte[] header, byte[] payload)
+		{
+			this.key     = key;
+			this.header  = header;
+			this.payload = payload;
+		}
+		
+		@Override
+		public byte[] getHeaderBytes()
+		{
+			return this.header;
+		}
+		
+		@Override
+		public int getHeaderLength()
+		{
+			return this.header.length;
+		}
+		
+		@Override
+		public int getHeaderOffset()
+		{
+			return 0;
+		}
+		
+		@Override
+		public byte[] getPayloadBytes()
+		{
+			return this.payload;
+		}
+		
+		@Override
+		public int getPayloadLength()
+		{
+			return this.payload.length;
+		}
+		
+		@Override
+		public int getPayloadOffset()
+		{
+			return 0;
+		}
+	}
+	
+}
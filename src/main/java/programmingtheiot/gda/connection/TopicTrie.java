@@ -0,0 +1,381 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Maps MQTT topics to the handlers registered for matching topic filters,
+ * including the '+' (one level) and '#' (any remaining levels, or none)
+ * wildcards.
+ * <p>
+ * Filters are stored in a trie with one node per topic level, so matching
+ * a topic visits at most one exact and one '+' child per level, however
+ * many filters are registered. The result for each topic (including an
+ * empty one) is cached, so a topic is only parsed the first time it's
+ * seen; the cache is cleared when a handler is added or removed, or when
+ * it reaches its maximum size.
+ * <p>
+ * Handlers are returned in the order they were added, each handler once,
+ * even if it's registered for several matching filters. As in MQTT,
+ * wildcards at the first level don't match topics starting with '$'.
+ * <p>
+ * All methods are thread-safe. Lookups of cached topics don't lock.
+ * 
+ */
+public class TopicTrie<T>
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(TopicTrie.class.getName());
+	
+	public static final String LEVEL_SEPARATOR       = "/";
+	public static final String SINGLE_LEVEL_WILDCARD = "+";
+	public static final String MULTI_LEVEL_WILDCARD  = "#";
+	
+	public static final int DEFAULT_MAX_CACHE_SIZE = 10000;
+	
+	/**
+	 * Checks that 'topicFilter' is a valid MQTT topic filter: not empty,
+	 * with wildcards only as whole levels, and '#' only as the last level.
+	 * 
+	 * @param topicFilter The topic filter.
+	 * @return boolean True if valid; false otherwise.
+	 */
+	public static boolean isValidFilter(String topicFilter)
+	{
+		if (topicFilter == null || topicFilter.isEmpty()) {
+			return false;
+		}
+		
+		int start = 0;
+		
+		while (start <= topicFilter.length()) {
+			int end = nextSeparator(topicFilter, start);
+			
+			for (int i = start; i < end; i++) {
+				char c = topicFilter.charAt(i);
+				
+				if ((c == '+' || c == '#') && end - start != 1) {
+					return false;
+				}
+				
+				if (c == '#' && end != topicFilter.length()) {
+					return false;
+				}
+			}
+			
+			start = end + 1;
+		}
+		
+		return true;
+	}
+	
+	
+	// private var's
+	
+	private final Node<T> root = new Node<>();
+	private final int maxCacheSize;
+	
+	private final Map<String, List<T>> cache = new ConcurrentHashMap<>();
+	
+	private long nextSequenceNo = 0L;
+	private int  handlerCount   = 0;
+	
+	
+	// constructors
+	
+	/**
+	 * Default.
+	 * 
+	 */
+	public TopicTrie()
+	{
+		this(DEFAULT_MAX_CACHE_SIZE);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxCacheSize The maximum number of topics whose handlers are cached.
+	 */
+	public TopicTrie(int maxCacheSize)
+	{
+		super();
+		
+		this.maxCacheSize = Math.max(1, maxCacheSize);
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Registers 'handler' for topics matching 'topicFilter'.
+	 * 
+	 * @param topicFilter The topic filter, which may include wildcards.
+	 * @param handler The handler.
+	 * @return boolean True on success; false if the filter is invalid, or
+	 * the handler is null or already registered for the filter.
+	 */
+	public synchronized boolean addHandler(String topicFilter, T handler)
+	{
+		if (handler == null || ! isValidFilter(topicFilter)) {
+			_Logger.warning("Invalid topic filter or handler. Ignoring: " + topicFilter);
+			
+			return false;
+		}
+		
+		Node<T> node = this.root;
+		int start = 0;
+		
+		while (start <= topicFilter.length()) {
+			int end = nextSeparator(topicFilter, start);
+			
+			node = node.children.computeIfAbsent(topicFilter.substring(start, end), level -> new Node<>());
+			start = end + 1;
+		}
+		
+		for (Entry<T> entry : node.entries) {
+			if (entry.handler == handler) {
+				return false;
+			}
+		}
+		
+		node.entries.add(new Entry<>(this.nextSequenceNo++, handler));
+		
+		this.handlerCount++;
+		this.cache.clear();
+		
+		return true;
+	}
+	
+	/**
+	 * Unregisters 'handler' for 'topicFilter', which must be given exactly
+	 * as when it was added.
+	 * 
+	 * @param topicFilter The topic filter.
+	 * @param handler The handler.
+	 * @return boolean True if the handler was registered for the filter.
+	 */
+	public synchronized boolean removeHandler(String topicFilter, T handler)
+	{
+		if (handler == null || ! isValidFilter(topicFilter)) {
+			return false;
+		}
+		
+		List<Node<T>> path = new ArrayList<>();
+		List<String>  levels = new ArrayList<>();
+		
+		Node<T> node = this.root;
+		int start = 0;
+		
+		while (node != null && start <= topicFilter.length()) {
+			int end = nextSeparator(topicFilter, start);
+			String level = topicFilter.substring(start, end);
+			
+			path.add(node);
+			levels.add(level);
+			
+			node  = node.children.get(level);
+			start = end + 1;
+		}
+		
+		if (node == null || ! node.entries.removeIf(entry -> entry.handler == handler)) {
+			return false;
+		}
+		
+		// prune nodes left without handlers or children
+		for (int i = path.size() - 1; i >= 0 && node.entries.isEmpty() && node.children.isEmpty(); i--) {
+			path.get(i).children.remove(levels.get(i));
+			node = path.get(i);
+		}
+		
+		this.handlerCount--;
+		this.cache.clear();
+		
+		return true;
+	}
+	
+	/**
+	 * Removes all handlers.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		this.root.children.clear();
+		this.handlerCount = 0;
+		this.cache.clear();
+	}
+	
+	/**
+	 * Returns the handlers registered for filters matching 'topic'.
+	 * 
+	 * @param topic The topic name (without wildcards).
+	 * @return List<T> The handlers in the order they were added; empty
+	 * (never null) if none match. The list can't be modified.
+	 */
+	public List<T> getHandlers(String topic)
+	{
+		if (topic == null) {
+			return Collections.emptyList();
+		}
+		
+		List<T> handlers = this.cache.get(topic);
+		
+		if (handlers == null) {
+			handlers = matchTopic(topic);
+		}
+		
+		return handlers;
+	}
+	
+	/**
+	 * 
+	 * @return int The number of registered handlers (per filter).
+	 */
+	public synchronized int getHandlerCount()
+	{
+		return this.handlerCount;
+	}
+	
+	/**
+	 * 
+	 * @return int The number of topics currently cached.
+	 */
+	public int getCacheSize()
+	{
+		return this.cache.size();
+	}
+	
+	
+	// private methods
+	
+	private static int nextSeparator(String topic, int start)
+	{
+		int end = topic.indexOf('/', start);
+		
+		return (end < 0 ? topic.length() : end);
+	}
+	
+	/**
+	 * Walks the trie and caches the result. Done under the lock, so a
+	 * result is never cached after a concurrent change cleared the cache.
+	 * 
+	 */
+	private synchronized List<T> matchTopic(String topic)
+	{
+		List<T> handlers = this.cache.get(topic);
+		
+		if (handlers != null) {
+			return handlers;
+		}
+		
+		List<Entry<T>> entries = new ArrayList<>();
+		
+		matchLevel(this.root, topic, 0, ! topic.startsWith("$"), entries);
+		
+		if (entries.isEmpty()) {
+			handlers = Collections.emptyList();
+		} else {
+			entries.sort(null);
+			
+			List<T> handlerList = new ArrayList<>(entries.size());
+			
+			for (Entry<T> entry : entries) {
+				if (! handlerList.contains(entry.handler)) {
+					handlerList.add(entry.handler);
+				}
+			}
+			
+			handlers = Collections.unmodifiableList(handlerList);
+		}
+		
+		if (this.cache.size() >= this.maxCacheSize) {
+			this.cache.clear();
+		}
+		
+		this.cache.put(topic, handlers);
+		
+		return handlers;
+	}
+	
+	/**
+	 * Collects the entries of 'node' and its descendants that match the
+	 * levels of 'topic' from 'start' on.
+	 * 
+	 */
+	private void matchLevel(Node<T> node, String topic, int start, boolean allowWildcards, List<Entry<T>> entries)
+	{
+		if (allowWildcards) {
+			// '#' also matches the parent level, e.g. 'a/#' matches 'a'
+			Node<T> multiLevel = node.children.get(MULTI_LEVEL_WILDCARD);
+			
+			if (multiLevel != null) {
+				entries.addAll(multiLevel.entries);
+			}
+		}
+		
+		if (start > topic.length()) {
+			entries.addAll(node.entries);
+			
+			return;
+		}
+		
+		int end = nextSeparator(topic, start);
+		
+		Node<T> child = node.children.get(topic.substring(start, end));
+		
+		if (child != null) {
+			matchLevel(child, topic, end + 1, true, entries);
+		}
+		
+		if (allowWildcards) {
+			Node<T> singleLevel = node.children.get(SINGLE_LEVEL_WILDCARD);
+			
+			if (singleLevel != null) {
+				matchLevel(singleLevel, topic, end + 1, true, entries);
+			}
+		}
+	}
+	
+	
+	// private classes
+	
+	private static final class Node<T>
+	{
+		final Map<String, Node<T>> children = new HashMap<>();
+		final List<Entry<T>> entries = new ArrayList<>(1);
+	}
+	
+	private static final class Entry<T> implements Comparable<Entry<T>>
+	{
+		final long sequenceNo;
+		final T    handler;
+		
+		Entry(long sequenceNo, T handler)
+		{
+			this.sequenceNo = sequenceNo;
+			this.handler    = handler;
+		}
+		
+		@Override
+		public int compareTo(Entry<T> other)
+		{
+			return Long.compare(this.sequenceNo, other.sequenceNo);
+		}
+	}
+	
+}
@@ -0,0 +1,61 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.pipeline;
+
+/**
+ * Load-shedding policies applied by the {@link IngestController} when
+ * a resource's ingest queue is full.
+ *
+ */
+public enum BackpressurePolicyEnum
+{
+	/**
+	 * Blocks the producer (transport) thread until space is available,
+	 * up to the configured block timeout, after which the message is dropped.
+	 */
+	BLOCK,
+	
+	/**
+	 * Drops the oldest queued message of the same resource to make room.
+	 */
+	DROP_OLDEST,
+	
+	/**
+	 * Drops the new message.
+	 */
+	DROP_NEWEST,
+	
+	/**
+	 * Once the queue is half full, accepts only every Nth message (the
+	 * configured sample rate) until it drains; drops the new message when full.
+	 */
+	SAMPLE;
+	
+	
+	/**
+	 * Returns the policy with the given name (case insensitive).
+	 * 
+	 * @param name The policy name, e.g. "DROP_OLDEST".
+	 * @param defaultPolicy The policy to return if 'name' is null or unknown.
+	 * @return BackpressurePolicyEnum
+	 */
+	public static BackpressurePolicyEnum getEnumFromName(String name, BackpressurePolicyEnum defaultPolicy)
+	{
+		if (name != null) {
+			for (BackpressurePolicyEnum policy : values()) {
+				if (policy.name().equalsIgnoreCase(name.trim())) {
+					return policy;
+				}
+			}
+		}
+		
+		return defaultPolicy;
+	}
+	
+}
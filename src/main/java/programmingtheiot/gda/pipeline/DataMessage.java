@@ -0,0 +1,218 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.BaseIotData;
+
+/**
+ * Envelope for a single message passing through the
+ * {@link DataMessagePipeline}. A message enters the pipeline either
+ * already decoded (e.g. SensorData from a transport that decoded it)
+ * or as a raw payload, which the decode stage converts to the
+ * {@link BaseIotData} sub-class appropriate for the resource.
+ * <p>
+ * Each message has a partition key, which determines the worker that
+ * handles it in each stage (see {@link PartitionedExecutor}). This keeps
+ * all messages of one device in order through the pipeline. The key is
+ * the data's location ID. Raw payloads are keyed by the device name of
+ * the resource until they're decoded, and re-keyed by the decoded data's
+ * location ID for the stages that follow.
+ *
+ */
+public class DataMessage
+{
+	// static
+	
+	private static final int STATE_WAITING   = 0;
+	private static final int STATE_ACTIVE    = 1;
+	private static final int STATE_CANCELLED = 2;
+	
+	
+	// private var's
+	
+	private final ResourceNameEnum resource;
+	private final String           payload;
+	private final long             ingestTimeNanos;
+	
+	private volatile BaseIotData data         = null;
+	private volatile String      partitionKey = null;
+	
+	// ingest state - see IngestController
+	private final AtomicInteger state = new AtomicInteger(STATE_WAITING);
+	private IngestController.ResourceQueue resourceQueue = null;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor for a decoded message.
+	 * 
+	 * @param resource The resource the message was received on.
+	 * @param data The decoded data.
+	 */
+	public DataMessage(ResourceNameEnum resource, BaseIotData data)
+	{
+		this(resource, data, null);
+	}
+	
+	/**
+	 * Constructor for a raw message that still needs to be decoded.
+	 * 
+	 * @param resource The resource the message was received on.
+	 * @param payload The raw (JSON) payload.
+	 */
+	public DataMessage(ResourceNameEnum resource, String payload)
+	{
+		this(resource, null, payload);
+	}
+	
+	private DataMessage(ResourceNameEnum resource, BaseIotData data, String payload)
+	{
+		super();
+		
+		this.resource        = resource;
+		this.data            = data;
+		this.payload         = payload;
+		this.ingestTimeNanos = System.nanoTime();
+		
+		if (data != null) {
+			this.partitionKey = data.getLocationID();
+		} else {
+			this.partitionKey = (resource != null ? resource.getDeviceName() : null);
+		}
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Returns the decoded data, or null if the message hasn't been decoded
+	 * (or its resource has no data type, e.g. a management status message).
+	 * 
+	 * @return BaseIotData
+	 */
+	public BaseIotData getData()
+	{
+		return this.data;
+	}
+	
+	/**
+	 * Returns the {@link System#nanoTime()} value at which the message
+	 * entered the pipeline.
+	 * 
+	 * @return long
+	 */
+	public long getIngestTimeNanos()
+	{
+		return this.ingestTimeNanos;
+	}
+	
+	/**
+	 * Returns the key used to assign this message to a pipeline partition.
+	 * 
+	 * @return String
+	 */
+	public String getPartitionKey()
+	{
+		return this.partitionKey;
+	}
+	
+	public String getPayload()
+	{
+		return this.payload;
+	}
+	
+	public ResourceNameEnum getResource()
+	{
+		return this.resource;
+	}
+	
+	/**
+	 * Returns true if the message was dropped by the {@link IngestController}
+	 * before it could be processed.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isCancelled()
+	{
+		return (this.state.get() == STATE_CANCELLED);
+	}
+	
+	public boolean isDecoded()
+	{
+		return (this.data != null);
+	}
+	
+	public String toString()
+	{
+		return "resource=" + this.resource + ",data=" + this.data + ",payload=" + this.payload;
+	}
+	
+	
+	// package methods
+	
+	/**
+	 * Moves the message from waiting to active, releasing its slot in the
+	 * ingest queue.
+	 * 
+	 * @return boolean True on success; false if the message was cancelled
+	 * (or already activated).
+	 */
+	boolean activate()
+	{
+		if (this.state.compareAndSet(STATE_WAITING, STATE_ACTIVE)) {
+			if (this.resourceQueue != null) {
+				this.resourceQueue.release();
+			}
+			
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Cancels the message if it hasn't been activated yet.
+	 * 
+	 * @return boolean True if cancelled by this call; false otherwise.
+	 */
+	boolean cancel()
+	{
+		return this.state.compareAndSet(STATE_WAITING, STATE_CANCELLED);
+	}
+	
+	boolean isWaiting()
+	{
+		return (this.state.get() == STATE_WAITING);
+	}
+	
+	/**
+	 * Sets the decoded data, and re-keys the message by the data's
+	 * location ID, so later stages partition it by device.
+	 * 
+	 * @param data The decoded data.
+	 */
+	void setData(BaseIotData data)
+	{
+		this.data = data;
+		
+		if (data != null && data.getLocationID() != null) {
+			this.partitionKey = data.getLocationID();
+		}
+	}
+	
+	void setResourceQueue(IngestController.ResourceQueue resourceQueue)
+	{
+		this.resourceQueue = resourceQueue;
+	}
+	
+}
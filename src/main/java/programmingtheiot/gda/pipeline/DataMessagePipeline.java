@@ -0,0 +1,304 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.pipeline;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+
+/**
+ * Staged, asynchronous processing of incoming data messages:
+ * <p>
+ * ingest -> decode -> analyze -> fan-out
+ * <p>
+ * Ingest is performed by the caller (typically a transport callback
+ * thread), which only enqueues the message via {@link #ingestMessage(DataMessage)}.
+ * Each of the remaining stages is a {@link PipelineStage} with its own
+ * partitioned, bounded queues and worker threads, so slow analysis or slow downstream
+ * connections (persistence, cloud, SMTP) never run on, or stall, the
+ * MQTT and CoAP I/O threads.
+ * <p>
+ * Within each stage, messages are partitioned by device (see
+ * {@link DataMessage#getPartitionKey()}), so messages from one device are
+ * never reordered, while different devices are processed in parallel.
+ * <p>
+ * Control-plane messages (see {@link ResourceNameEnum#isControlResource()})
+ * run through a separate lane of stages with their own queues and workers,
+ * so actuator commands and responses never wait behind bulk telemetry.
+ * Ordering is preserved per device within each lane.
+ * <p>
+ * Queue sizes and worker counts are read from the
+ * {@link ConfigConst#GATEWAY_DEVICE} section.
+ *
+ */
+public class DataMessagePipeline
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(DataMessagePipeline.class.getName());
+	
+	public static final int  DEFAULT_QUEUE_SIZE   = 1024;
+	public static final int  DEFAULT_WORKER_COUNT = 1;
+	public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 2000L;
+	
+	public static final String DECODE_STAGE_NAME  = "Decode";
+	public static final String ANALYZE_STAGE_NAME = "Analyze";
+	public static final String FAN_OUT_STAGE_NAME = "FanOut";
+	public static final String CONTROL_LANE_PREFIX = "Control";
+	
+	
+	// private var's
+	
+	private final IngestController ingestController;
+	
+	private final List<PipelineStage> dataStages;
+	private final List<PipelineStage> controlStages;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param analyzer The handler for the analyze stage (e.g. threshold checks
+	 * that may generate actuator commands).
+	 * @param fanOut The handler for the fan-out stage (e.g. persistence and
+	 * upstream transmission).
+	 */
+	public DataMessagePipeline(IDataMessageHandler analyzer, IDataMessageHandler fanOut)
+	{
+		super();
+		
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+		
+		this.ingestController = new IngestController();
+		
+		int queueSize =
+			configUtil.getInteger(ConfigConst.GATEWAY_DEVICE, ConfigConst.PIPELINE_QUEUE_SIZE_KEY, DEFAULT_QUEUE_SIZE);
+		int controlWorkers =
+			configUtil.getInteger(ConfigConst.GATEWAY_DEVICE, ConfigConst.CONTROL_WORKERS_KEY, DEFAULT_WORKER_COUNT);
+		
+		this.dataStages =
+			createLane(
+				"",
+				configUtil.getInteger(ConfigConst.GATEWAY_DEVICE, ConfigConst.DECODE_WORKERS_KEY, DEFAULT_WORKER_COUNT),
+				configUtil.getInteger(ConfigConst.GATEWAY_DEVICE, ConfigConst.ANALYZE_WORKERS_KEY, DEFAULT_WORKER_COUNT),
+				configUtil.getInteger(ConfigConst.GATEWAY_DEVICE, ConfigConst.FAN_OUT_WORKERS_KEY, DEFAULT_WORKER_COUNT),
+				queueSize, analyzer, fanOut);
+		
+		this.controlStages =
+			createLane(
+				CONTROL_LANE_PREFIX, controlWorkers, controlWorkers, controlWorkers, queueSize, analyzer, fanOut);
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Returns the controller that bounds and sheds ingest load per resource,
+	 * e.g. to retrieve the drop counters.
+	 * 
+	 * @return IngestController
+	 */
+	public IngestController getIngestController()
+	{
+		return this.ingestController;
+	}
+	
+	/**
+	 * Returns the telemetry stages in processing order.
+	 * 
+	 * @return List<PipelineStage>
+	 */
+	public List<PipelineStage> getStages()
+	{
+		return this.dataStages;
+	}
+	
+	/**
+	 * Returns the control-plane stages in processing order.
+	 * 
+	 * @return List<PipelineStage>
+	 */
+	public List<PipelineStage> getControlStages()
+	{
+		return this.controlStages;
+	}
+	
+	/**
+	 * Enqueues 'msg' for processing in the lane for its resource, subject
+	 * to the backpressure policy of the resource (see {@link IngestController}).
+	 * Only blocks if the policy is {@link BackpressurePolicyEnum#BLOCK}, or
+	 * the message is a control message and the control lane is full, and
+	 * then for no longer than the configured block timeout.
+	 * 
+	 * @param msg The message to process.
+	 * @return boolean True if the message was accepted; false if it was
+	 * dropped or the pipeline is not running.
+	 */
+	public boolean ingestMessage(DataMessage msg)
+	{
+		if (msg == null || ! this.ingestController.admitMessage(msg)) {
+			return false;
+		}
+		
+		boolean isControl = IngestController.isCriticalResource(msg.getResource());
+		PipelineStage decodeStage = (isControl ? this.controlStages : this.dataStages).get(0);
+		
+		if (decodeStage.submit(msg)) {
+			return true;
+		}
+		
+		if (isControl || this.ingestController.getPolicy(msg.getResource()) == BackpressurePolicyEnum.BLOCK) {
+			try {
+				if (decodeStage.submitAndWait(msg, this.ingestController.getBlockTimeoutMillis())) {
+					return true;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		this.ingestController.rejectMessage(msg);
+		
+		_Logger.fine("Pipeline rejected message: " + msg);
+		
+		return false;
+	}
+	
+	public void startPipeline()
+	{
+		ConfigUtil.getInstance().addConfigUpdateListener(ConfigConst.INGEST_GATEWAY_SERVICE, this.ingestController);
+		
+		// start from the end, so each stage has a running consumer
+		for (int i = this.dataStages.size() - 1; i >= 0; i--) {
+			this.controlStages.get(i).startStage();
+			this.dataStages.get(i).startStage();
+		}
+		
+		_Logger.info("Data message pipeline started.");
+	}
+	
+	public void stopPipeline()
+	{
+		ConfigUtil.getInstance().removeConfigUpdateListener(ConfigConst.INGEST_GATEWAY_SERVICE, this.ingestController);
+		
+		// stop from the start, so each stage drains into a running consumer
+		stopLane(this.dataStages);
+		stopLane(this.controlStages);
+		
+		for (ResourceNameEnum resource : ResourceNameEnum.values()) {
+			long dropped = this.ingestController.getDroppedCount(resource);
+			
+			if (dropped > 0L) {
+				_Logger.info(
+					"Ingest dropped " + dropped + " of " + this.ingestController.getAcceptedCount(resource) +
+					" accepted messages for " + resource + " (policy " + this.ingestController.getPolicy(resource) + ").");
+			}
+		}
+	}
+	
+	
+	// private methods
+	
+	/**
+	 * Creates a decode -> analyze -> fan-out chain of stages.
+	 * 
+	 * @param prefix The prefix for the stage (and thread) names.
+	 * @return List<PipelineStage> The stages in processing order.
+	 */
+	private List<PipelineStage> createLane(
+		String prefix, int decodeWorkers, int analyzeWorkers, int fanOutWorkers, int queueSize,
+		IDataMessageHandler analyzer, IDataMessageHandler fanOut)
+	{
+		PipelineStage decodeStage =
+			new PipelineStage(prefix + DECODE_STAGE_NAME, decodeWorkers, queueSize, this::decodeMessage);
+		PipelineStage analyzeStage =
+			new PipelineStage(prefix + ANALYZE_STAGE_NAME, analyzeWorkers, queueSize, analyzer);
+		PipelineStage fanOutStage =
+			new PipelineStage(prefix + FAN_OUT_STAGE_NAME, fanOutWorkers, queueSize, fanOut);
+		
+		decodeStage.setNextStage(analyzeStage);
+		analyzeStage.setNextStage(fanOutStage);
+		
+		return Collections.unmodifiableList(Arrays.asList(decodeStage, analyzeStage, fanOutStage));
+	}
+	
+	private void stopLane(List<PipelineStage> stages)
+	{
+		for (PipelineStage stage : stages) {
+			stage.stopStage(DEFAULT_DRAIN_TIMEOUT_MILLIS);
+			
+			_Logger.info(
+				"Stage " + stage.getName() + " stopped. Processed: " + stage.getProcessedCount() +
+				", failed: " + stage.getFailedCount() + ", rejected: " + stage.getRejectedCount() +
+				", partition skew: " + String.format("%.2f", stage.getExecutor().getPartitionSkew()));
+		}
+	}
+	
+	/**
+	 * Decode stage handler: converts a raw JSON payload to the data type
+	 * associated with the message's resource. Messages that are already
+	 * decoded, or whose resource has no associated data type, pass through.
+	 * 
+	 * @param msg The message to decode.
+	 * @return boolean False if the message was dropped while waiting or the payload
+	 * is malformed; true otherwise.
+	 */
+	private boolean decodeMessage(DataMessage msg)
+	{
+		if (! msg.activate()) {
+			// dropped by the ingest controller while waiting
+			return false;
+		}
+		
+		if (msg.isDecoded() || msg.getPayload() == null || msg.getResource() == null) {
+			return true;
+		}
+		
+		DataUtil dataUtil = DataUtil.getInstance();
+		BaseIotData data = null;
+		
+		switch (msg.getResource()) {
+			case CDA_SENSOR_MSG_RESOURCE:
+				data = dataUtil.jsonToSensorData(msg.getPayload()); break;
+				
+			case CDA_ACTUATOR_CMD_RESOURCE:
+			case CDA_ACTUATOR_RESPONSE_RESOURCE:
+				data = dataUtil.jsonToActuatorData(msg.getPayload()); break;
+				
+			case CDA_SYSTEM_PERF_MSG_RESOURCE:
+			case GDA_SYSTEM_PERF_MSG_RESOURCE:
+				data = dataUtil.jsonToSystemPerformanceData(msg.getPayload()); break;
+				
+			default:
+				// no data type - e.g. management messages are passed on as-is
+				return true;
+		}
+		
+		if (data == null) {
+			_Logger.warning("Dropping malformed message: " + msg);
+			
+			return false;
+		}
+		
+		msg.setData(data);
+		
+		return true;
+	}
+	
+}
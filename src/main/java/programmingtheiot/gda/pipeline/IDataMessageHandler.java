@@ -0,0 +1,27 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.pipeline;
+
+/**
+ * Interface definition for the work performed by a single
+ * {@link PipelineStage} on each message.
+ *
+ */
+public interface IDataMessageHandler
+{
+	/**
+	 * Processes 'msg'.
+	 * 
+	 * @param msg The message to process.
+	 * @return boolean True if the message should be passed to the next
+	 * stage; false if it has been consumed or filtered out.
+	 */
+	public boolean handleDataMessage(DataMessage msg);
+	
+}
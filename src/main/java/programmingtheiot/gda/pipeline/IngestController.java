@@ -0,0 +1,419 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigSnapshot;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IConfigUpdateListener;
+import programmingtheiot.common.ResourceNameEnum;
+
+/**
+ * Bounds the number of messages per {@link ResourceNameEnum} that are
+ * waiting to enter the {@link DataMessagePipeline}, and applies a
+ * {@link BackpressurePolicyEnum} when a resource's bound is reached.
+ * <p>
+ * A message counts against its resource's bound from ingest until the
+ * decode stage starts handling it. When downstream processing slows
+ * (e.g. during a cloud outage), the stages push back on each other, the
+ * waiting count grows, and the policy sheds load instead of the heap
+ * growing without limit.
+ * <p>
+ * Control-plane messages (see {@link ResourceNameEnum#isControlResource()})
+ * are never shed: they bypass the bounds and block the producer if the
+ * pipeline is full.
+ * <p>
+ * Configured in the {@link ConfigConst#INGEST_GATEWAY_SERVICE} section,
+ * which may override the default policy per resource using the resource's
+ * enum name as the key (e.g. CDA_SENSOR_MSG_RESOURCE = SAMPLE). Changes
+ * are applied in place when the config file is reloaded.
+ *
+ */
+public class IngestController implements IConfigUpdateListener
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(IngestController.class.getName());
+	
+	public static final int  DEFAULT_QUEUE_SIZE  = 256;
+	public static final int  DEFAULT_SAMPLE_RATE = 10;
+	public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000L;
+	
+	public static final BackpressurePolicyEnum DEFAULT_POLICY = BackpressurePolicyEnum.DROP_OLDEST;
+	
+	/**
+	 * Returns true if messages for 'resource' must never be shed.
+	 * 
+	 * @param resource The resource to check.
+	 * @return boolean
+	 */
+	public static boolean isCriticalResource(ResourceNameEnum resource)
+	{
+		return (resource != null && resource.isControlResource());
+	}
+	
+	
+	// private var's
+	
+	private final Map<ResourceNameEnum, ResourceQueue> queues = new EnumMap<>(ResourceNameEnum.class);
+	
+	private volatile long blockTimeoutMillis = DEFAULT_BLOCK_TIMEOUT_MILLIS;
+	
+	
+	// constructors
+	
+	/**
+	 * Default. Reads the policies from the current configuration.
+	 * 
+	 */
+	public IngestController()
+	{
+		super();
+		
+		for (ResourceNameEnum resource : ResourceNameEnum.values()) {
+			this.queues.put(resource, new ResourceQueue(resource));
+		}
+		
+		applyConfig(ConfigUtil.getInstance().getSnapshot());
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Admits 'msg' into the pipeline if its resource's bound and policy
+	 * allow it. Depending on the policy, this may block, or may drop an
+	 * older message of the same resource.
+	 * 
+	 * @param msg The message to admit.
+	 * @return boolean True if the message may enter the pipeline; false if
+	 * it has been dropped.
+	 */
+	public boolean admitMessage(DataMessage msg)
+	{
+		ResourceQueue queue = (msg.getResource() != null ? this.queues.get(msg.getResource()) : null);
+		
+		if (queue == null) {
+			return false;
+		}
+		
+		return queue.admit(msg);
+	}
+	
+	/**
+	 * Records that an admitted message could not be handed to the pipeline.
+	 * 
+	 * @param msg The admitted message.
+	 */
+	public void rejectMessage(DataMessage msg)
+	{
+		if (msg.cancel()) {
+			ResourceQueue queue = this.queues.get(msg.getResource());
+			
+			queue.droppedCount.incrementAndGet();
+			queue.release();
+		}
+	}
+	
+	public BackpressurePolicyEnum getPolicy(ResourceNameEnum resource)
+	{
+		return this.queues.get(resource).policy;
+	}
+	
+	/**
+	 * Returns the number of messages for 'resource' admitted into the pipeline.
+	 * 
+	 * @param resource The resource.
+	 * @return long
+	 */
+	public long getAcceptedCount(ResourceNameEnum resource)
+	{
+		return this.queues.get(resource).acceptedCount.get();
+	}
+	
+	/**
+	 * Returns the maximum time a {@link BackpressurePolicyEnum#BLOCK} caller
+	 * waits for queue space before its message is rejected.
+	 * 
+	 * @return long
+	 */
+	public long getBlockTimeoutMillis()
+	{
+		return this.blockTimeoutMillis;
+	}
+	
+	/**
+	 * Returns the number of messages for 'resource' dropped by the policy,
+	 * including those dropped after admission by {@link BackpressurePolicyEnum#DROP_OLDEST}.
+	 * 
+	 * @param resource The resource.
+	 * @return long
+	 */
+	public long getDroppedCount(ResourceNameEnum resource)
+	{
+		return this.queues.get(resource).droppedCount.get();
+	}
+	
+	/**
+	 * Returns the number of messages dropped across all resources.
+	 * 
+	 * @return long
+	 */
+	public long getDroppedCount()
+	{
+		long count = 0L;
+		
+		for (ResourceQueue queue : this.queues.values()) {
+			count += queue.droppedCount.get();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Returns the number of messages for 'resource' waiting to be decoded.
+	 * 
+	 * @param resource The resource.
+	 * @return int
+	 */
+	public int getWaitingCount(ResourceNameEnum resource)
+	{
+		return this.queues.get(resource).getWaitingCount();
+	}
+	
+	
+	// callbacks
+	
+	@Override
+	public void onConfigUpdate(String section, Set<String> updatedKeys, ConfigSnapshot snapshot)
+	{
+		applyConfig(snapshot);
+	}
+	
+	
+	// private methods
+	
+	private void applyConfig(ConfigSnapshot snapshot)
+	{
+		String section = ConfigConst.INGEST_GATEWAY_SERVICE;
+		
+		int queueSize  = snapshot.getInteger(section, ConfigConst.QUEUE_SIZE_KEY, DEFAULT_QUEUE_SIZE);
+		int sampleRate = snapshot.getInteger(section, ConfigConst.SAMPLE_RATE_KEY, DEFAULT_SAMPLE_RATE);
+		
+		BackpressurePolicyEnum defaultPolicy =
+			BackpressurePolicyEnum.getEnumFromName(
+				snapshot.getProperty(section, ConfigConst.DEFAULT_POLICY_KEY, null), DEFAULT_POLICY);
+		
+		this.blockTimeoutMillis =
+			snapshot.getInteger(section, ConfigConst.BLOCK_TIMEOUT_MILLIS_KEY, (int) DEFAULT_BLOCK_TIMEOUT_MILLIS);
+		
+		for (ResourceQueue queue : this.queues.values()) {
+			queue.capacity   = Math.max(1, queueSize);
+			queue.sampleRate = Math.max(1, sampleRate);
+			queue.policy     =
+				BackpressurePolicyEnum.getEnumFromName(
+					snapshot.getProperty(section, queue.resource.name(), null), defaultPolicy);
+		}
+		
+		_Logger.info("Ingest queue size: " + queueSize + ", default policy: " + defaultPolicy);
+	}
+	
+	
+	// package classes
+	
+	/**
+	 * The bounded set of messages of one resource waiting to enter the pipeline.
+	 * 
+	 */
+	final class ResourceQueue
+	{
+		final ResourceNameEnum resource;
+		final AtomicLong acceptedCount = new AtomicLong();
+		final AtomicLong droppedCount  = new AtomicLong();
+		
+		volatile BackpressurePolicyEnum policy = DEFAULT_POLICY;
+		volatile int capacity   = DEFAULT_QUEUE_SIZE;
+		volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+		
+		private final ReentrantLock lock    = new ReentrantLock();
+		private final Condition     notFull = this.lock.newCondition();
+		
+		// candidates for DROP_OLDEST, in ingest order; may contain messages
+		// that have since been activated, which are removed lazily
+		private final ArrayDeque<DataMessage> waitingMsgs = new ArrayDeque<>();
+		
+		private int waitingCount = 0;
+		private int sampleCount  = 0;
+		
+		ResourceQueue(ResourceNameEnum resource)
+		{
+			this.resource = resource;
+		}
+		
+		int getWaitingCount()
+		{
+			this.lock.lock();
+			
+			try {
+				return this.waitingCount;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		
+		boolean admit(DataMessage msg)
+		{
+			if (isCriticalResource(this.resource)) {
+				msg.setResourceQueue(this);
+				
+				this.lock.lock();
+				
+				try {
+					this.waitingCount++;
+				} finally {
+					this.lock.unlock();
+				}
+				
+				this.acceptedCount.incrementAndGet();
+				
+				return true;
+			}
+			
+			this.lock.lock();
+			
+			try {
+				pruneWaitingMsgs();
+				
+				if (this.waitingCount >= this.capacity || (this.policy == BackpressurePolicyEnum.SAMPLE && this.waitingCount >= this.capacity / 2)) {
+					if (! makeRoom()) {
+						this.droppedCount.incrementAndGet();
+						
+						return false;
+					}
+				} else {
+					this.sampleCount = 0;
+				}
+				
+				msg.setResourceQueue(this);
+				
+				this.waitingCount++;
+				
+				if (this.policy == BackpressurePolicyEnum.DROP_OLDEST) {
+					this.waitingMsgs.addLast(msg);
+				}
+				
+				this.acceptedCount.incrementAndGet();
+				
+				return true;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		
+		/**
+		 * Called by the pipeline when a message leaves the ingest queue
+		 * (i.e. is activated by the decode stage, or cancelled).
+		 * 
+		 */
+		void release()
+		{
+			this.lock.lock();
+			
+			try {
+				this.waitingCount--;
+				this.notFull.signal();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		
+		/**
+		 * Removes messages that are no longer waiting from the DROP_OLDEST
+		 * candidates. Must be called with the lock held.
+		 * 
+		 */
+		private void pruneWaitingMsgs()
+		{
+			while (! this.waitingMsgs.isEmpty() && ! this.waitingMsgs.peekFirst().isWaiting()) {
+				this.waitingMsgs.pollFirst();
+			}
+			
+			// messages can be activated out of order across partitions
+			if (this.waitingMsgs.size() > 2 * this.capacity) {
+				this.waitingMsgs.removeIf(m -> ! m.isWaiting());
+			}
+			
+			if (this.policy != BackpressurePolicyEnum.DROP_OLDEST) {
+				this.waitingMsgs.clear();
+			}
+		}
+		
+		/**
+		 * Applies the policy to a full (or, for SAMPLE, half full) queue.
+		 * Must be called with the lock held.
+		 * 
+		 * @return boolean True if the new message may be admitted.
+		 */
+		private boolean makeRoom()
+		{
+			switch (this.policy) {
+				case BLOCK:
+					long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+					
+					try {
+						while (this.waitingCount >= this.capacity) {
+							if (nanos <= 0L) {
+								return false;
+							}
+							
+							nanos = this.notFull.awaitNanos(nanos);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						
+						return false;
+					}
+					
+					return true;
+					
+				case DROP_OLDEST:
+					DataMessage oldest;
+					
+					while ((oldest = this.waitingMsgs.pollFirst()) != null) {
+						if (oldest.cancel()) {
+							this.waitingCount--;
+							this.droppedCount.incrementAndGet();
+							
+							return true;
+						}
+					}
+					
+					return false;
+					
+				case SAMPLE:
+					return (this.waitingCount < this.capacity && ++this.sampleCount % this.sampleRate == 0);
+					
+				default:
+					return false;
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,323 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes tasks on a fixed number of partitions, each with its own
+ * bounded queue and a single worker thread. Tasks are assigned to a
+ * partition by hashing a key (e.g. the device location ID), so tasks
+ * with the same key run one at a time, in submission order, while
+ * tasks with different keys run in parallel across partitions.
+ * <p>
+ * Per-partition task counts are tracked so the partition skew (see
+ * {@link #getPartitionSkew()}) can be used to tune the partition count:
+ * a few busy keys hashing to the same partition shows up as a skew
+ * well above 1.0.
+ *
+ */
+public class PartitionedExecutor
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(PartitionedExecutor.class.getName());
+	
+	
+	// private var's
+	
+	private final String      name;
+	private final Partition[] partitions;
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name The executor name, used for worker thread names.
+	 * @param partitionCount The number of partitions (minimum 1).
+	 * @param queueSize The capacity of each partition's queue (minimum 1).
+	 */
+	public PartitionedExecutor(String name, int partitionCount, int queueSize)
+	{
+		super();
+		
+		this.name       = name;
+		this.partitions = new Partition[Math.max(1, partitionCount)];
+		
+		for (int i = 0; i < this.partitions.length; i++) {
+			this.partitions[i] = new Partition(Math.max(1, queueSize));
+		}
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Enqueues 'task' on the partition for 'key' without blocking.
+	 * 
+	 * @param key The partition key. Null keys all map to the same partition.
+	 * @param task The task to run.
+	 * @return boolean True if enqueued; false if the partition's queue is full.
+	 */
+	public boolean submit(Object key, Runnable task)
+	{
+		Partition p = this.partitions[getPartition(key)];
+		
+		p.pendingCount.incrementAndGet();
+		
+		if (p.queue.offer(task)) {
+			return true;
+		}
+		
+		p.pendingCount.decrementAndGet();
+		
+		return false;
+	}
+	
+	/**
+	 * Enqueues 'task' on the partition for 'key', waiting up to
+	 * 'timeoutMillis' while the partition's queue is full.
+	 * 
+	 * @param key The partition key. Null keys all map to the same partition.
+	 * @param task The task to run.
+	 * @param timeoutMillis The maximum time to wait for queue space.
+	 * @return boolean True if enqueued; false if the queue stayed full.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public boolean submit(Object key, Runnable task, long timeoutMillis) throws InterruptedException
+	{
+		Partition p = this.partitions[getPartition(key)];
+		boolean isQueued = false;
+		
+		p.pendingCount.incrementAndGet();
+		
+		try {
+			isQueued = p.queue.offer(task, Math.max(0L, timeoutMillis), TimeUnit.MILLISECONDS);
+		} finally {
+			if (! isQueued) {
+				p.pendingCount.decrementAndGet();
+			}
+		}
+		
+		return isQueued;
+	}
+	
+	/**
+	 * Enqueues 'task' on the partition for 'key', blocking while the
+	 * partition's queue is full.
+	 * 
+	 * @param key The partition key. Null keys all map to the same partition.
+	 * @param task The task to run.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void execute(Object key, Runnable task) throws InterruptedException
+	{
+		Partition p = this.partitions[getPartition(key)];
+		boolean isQueued = false;
+		
+		p.pendingCount.incrementAndGet();
+		
+		try {
+			p.queue.put(task);
+			isQueued = true;
+		} finally {
+			if (! isQueued) {
+				p.pendingCount.decrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the partition index for 'key'.
+	 * 
+	 * @param key The partition key.
+	 * @return int A value from 0 to {@link #getPartitionCount()} - 1.
+	 */
+	public int getPartition(Object key)
+	{
+		if (key == null || this.partitions.length == 1) {
+			return 0;
+		}
+		
+		int h = key.hashCode();
+		
+		return ((h ^ (h >>> 16)) & 0x7fffffff) % this.partitions.length;
+	}
+	
+	public int getPartitionCount()
+	{
+		return this.partitions.length;
+	}
+	
+	/**
+	 * Returns the number of tasks run by the given partition.
+	 * 
+	 * @param partition The partition index.
+	 * @return long
+	 */
+	public long getExecutedCount(int partition)
+	{
+		return this.partitions[partition].executedCount.get();
+	}
+	
+	/**
+	 * Returns the number of tasks queued on the given partition.
+	 * 
+	 * @param partition The partition index.
+	 * @return int
+	 */
+	public int getQueueSize(int partition)
+	{
+		return this.partitions[partition].queue.size();
+	}
+	
+	/**
+	 * Returns the number of tasks queued across all partitions.
+	 * 
+	 * @return int
+	 */
+	public int getQueueSize()
+	{
+		int size = 0;
+		
+		for (Partition p : this.partitions) {
+			size += p.queue.size();
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Returns the ratio of the busiest partition's task count to the mean
+	 * task count across all partitions. 1.0 means perfectly even load;
+	 * {@link #getPartitionCount()} means all tasks ran on one partition.
+	 * 
+	 * @return double The skew, or 1.0 if no tasks have run.
+	 */
+	public double getPartitionSkew()
+	{
+		long max   = 0L;
+		long total = 0L;
+		
+		for (Partition p : this.partitions) {
+			long count = p.executedCount.get();
+			
+			max    = Math.max(max, count);
+			total += count;
+		}
+		
+		return (total > 0L ? (double) max * this.partitions.length / total : 1.0);
+	}
+	
+	/**
+	 * Returns true if no partition has a queued or running task. A task
+	 * counts as pending from before it's enqueued until after it has run,
+	 * so there's no window in which a task is in neither state.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isIdle()
+	{
+		for (Partition p : this.partitions) {
+			if (p.pendingCount.get() > 0) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	public synchronized void startExecutor()
+	{
+		for (int i = 0; i < this.partitions.length; i++) {
+			Partition p = this.partitions[i];
+			
+			if (p.thread == null) {
+				p.thread = new Thread(p, this.name + "-" + i);
+				p.thread.setDaemon(true);
+				p.thread.start();
+			}
+		}
+	}
+	
+	/**
+	 * Stops all partition threads. Queued tasks are discarded.
+	 * 
+	 * @return int The number of discarded tasks.
+	 */
+	public synchronized int stopExecutor()
+	{
+		int discardCount = 0;
+		
+		for (Partition p : this.partitions) {
+			if (p.thread != null) {
+				p.thread.interrupt();
+				p.thread = null;
+			}
+			
+			int count = p.queue.size();
+			
+			p.queue.clear();
+			p.pendingCount.addAndGet(-count);
+			discardCount += count;
+		}
+		
+		return discardCount;
+	}
+	
+	
+	// private classes
+	
+	private static final class Partition implements Runnable
+	{
+		final BlockingQueue<Runnable> queue;
+		final AtomicLong executedCount = new AtomicLong();
+		
+		// queued plus running tasks
+		final AtomicInteger pendingCount = new AtomicInteger();
+		
+		Thread thread = null;
+		
+		Partition(int queueSize)
+		{
+			this.queue = new ArrayBlockingQueue<>(queueSize);
+		}
+		
+		@Override
+		public void run()
+		{
+			try {
+				while (! Thread.currentThread().isInterrupted()) {
+					Runnable task = this.queue.take();
+					
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						_Logger.log(Level.WARNING, "Partition task failed.", e);
+					} finally {
+						this.executedCount.incrementAndGet();
+						this.pendingCount.decrementAndGet();
+					}
+				}
+			} catch (InterruptedException e) {
+				// stopped
+			}
+		}
+	}
+	
+}
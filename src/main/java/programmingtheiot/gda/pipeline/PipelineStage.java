@@ -0,0 +1,259 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single stage of the {@link DataMessagePipeline}: the stage's
+ * {@link IDataMessageHandler}, run on a {@link PartitionedExecutor}
+ * whose partitions each have a bounded queue (an array-backed ring
+ * buffer) and a single worker thread. After handling a message, the
+ * worker passes it on to the next stage.
+ * <p>
+ * Messages are assigned to partitions by {@link DataMessage#getPartitionKey()},
+ * so messages from the same device are handled one at a time and in
+ * order by every stage, while different devices are handled in parallel.
+ * <p>
+ * Producers outside the pipeline use {@link #submit(DataMessage)},
+ * which never blocks. Hand-off between stages blocks while the next
+ * stage's partition is full, so a slow stage pushes back on the stages
+ * before it rather than growing the heap.
+ *
+ */
+public class PipelineStage
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(PipelineStage.class.getName());
+	
+	
+	// private var's
+	
+	private final String name;
+	private final IDataMessageHandler handler;
+	private final PartitionedExecutor executor;
+	
+	private PipelineStage    nextStage   = null;
+	private volatile boolean isAccepting = false;
+	
+	private final AtomicLong processedCount = new AtomicLong();
+	private final AtomicLong failedCount    = new AtomicLong();
+	private final AtomicLong rejectedCount  = new AtomicLong();
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name The stage name, used for worker thread names and logging.
+	 * @param workerCount The number of partitions, each with one worker thread (minimum 1).
+	 * @param queueSize The capacity of each partition's queue (minimum 1).
+	 * @param handler The work performed on each message.
+	 */
+	public PipelineStage(String name, int workerCount, int queueSize, IDataMessageHandler handler)
+	{
+		super();
+		
+		this.name     = name;
+		this.handler  = handler;
+		this.executor = new PartitionedExecutor(name, workerCount, queueSize);
+	}
+	
+	
+	// public methods
+	
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	public int getWorkerCount()
+	{
+		return this.executor.getPartitionCount();
+	}
+	
+	/**
+	 * Returns the executor running this stage, e.g. to retrieve
+	 * per-partition metrics such as {@link PartitionedExecutor#getPartitionSkew()}.
+	 * 
+	 * @return PartitionedExecutor
+	 */
+	public PartitionedExecutor getExecutor()
+	{
+		return this.executor;
+	}
+	
+	/**
+	 * Returns the number of messages currently queued for this stage.
+	 * 
+	 * @return int
+	 */
+	public int getQueueSize()
+	{
+		return this.executor.getQueueSize();
+	}
+	
+	/**
+	 * Returns the number of messages successfully handled by this stage.
+	 * 
+	 * @return long
+	 */
+	public long getProcessedCount()
+	{
+		return this.processedCount.get();
+	}
+	
+	/**
+	 * Returns the number of messages for which the handler threw an exception.
+	 * 
+	 * @return long
+	 */
+	public long getFailedCount()
+	{
+		return this.failedCount.get();
+	}
+	
+	/**
+	 * Returns the number of messages rejected by {@link #submit(DataMessage)}
+	 * because the partition's queue was full or the stage wasn't running.
+	 * 
+	 * @return long
+	 */
+	public long getRejectedCount()
+	{
+		return this.rejectedCount.get();
+	}
+	
+	/**
+	 * Sets the stage that receives each message after it has been handled
+	 * by this stage. Must be called before {@link #startStage()}.
+	 * 
+	 * @param nextStage The next stage, or null if this is the last stage.
+	 */
+	public void setNextStage(PipelineStage nextStage)
+	{
+		this.nextStage = nextStage;
+	}
+	
+	/**
+	 * Enqueues 'msg' without blocking.
+	 * 
+	 * @param msg The message to enqueue.
+	 * @return boolean True if enqueued; false if the partition's queue is
+	 * full or the stage isn't running.
+	 */
+	public boolean submit(DataMessage msg)
+	{
+		if (msg != null && this.isAccepting && this.executor.submit(msg.getPartitionKey(), () -> processMessage(msg))) {
+			return true;
+		}
+		
+		this.rejectedCount.incrementAndGet();
+		
+		return false;
+	}
+	
+	/**
+	 * Enqueues 'msg', waiting up to 'timeoutMillis' while the partition's
+	 * queue is full.
+	 * 
+	 * @param msg The message to enqueue.
+	 * @param timeoutMillis The maximum time to wait for queue space.
+	 * @return boolean True if enqueued; false if the queue stayed full or
+	 * the stage isn't running.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public boolean submitAndWait(DataMessage msg, long timeoutMillis) throws InterruptedException
+	{
+		if (msg != null && this.isAccepting &&
+			this.executor.submit(msg.getPartitionKey(), () -> processMessage(msg), timeoutMillis)) {
+			return true;
+		}
+		
+		this.rejectedCount.incrementAndGet();
+		
+		return false;
+	}
+	
+	public synchronized void startStage()
+	{
+		this.executor.startExecutor();
+		this.isAccepting = true;
+	}
+	
+	/**
+	 * Stops accepting new messages, waits up to 'drainTimeoutMillis' for
+	 * the queued messages to be handled, then stops the workers.
+	 * 
+	 * @param drainTimeoutMillis The maximum time to wait for the queues to drain.
+	 */
+	public synchronized void stopStage(long drainTimeoutMillis)
+	{
+		this.isAccepting = false;
+		
+		long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+		
+		try {
+			while (! this.executor.isIdle() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10L);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		int discardCount = this.executor.stopExecutor();
+		
+		if (discardCount > 0) {
+			_Logger.warning("Stage " + this.name + " stopped with " + discardCount + " messages pending.");
+		}
+	}
+	
+	
+	// package methods
+	
+	/**
+	 * Hands 'msg' to this stage from the previous stage, blocking while
+	 * the partition's queue is full. The partition is chosen by the
+	 * message's current key, so messages re-keyed by the decode stage
+	 * are spread across this stage's partitions by device.
+	 * 
+	 * @param msg The message to enqueue.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	void forward(DataMessage msg) throws InterruptedException
+	{
+		this.executor.execute(msg.getPartitionKey(), () -> processMessage(msg));
+	}
+	
+	
+	// private methods
+	
+	private void processMessage(DataMessage msg)
+	{
+		try {
+			if (this.handler.handleDataMessage(msg) && this.nextStage != null) {
+				this.nextStage.forward(msg);
+			}
+			
+			this.processedCount.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			this.failedCount.incrementAndGet();
+			
+			_Logger.log(Level.WARNING, "Stage " + this.name + " failed to handle message: " + msg, e);
+		}
+	}
+	
+}
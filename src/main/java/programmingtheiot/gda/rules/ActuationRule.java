@@ -0,0 +1,387 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.configuration.ConversionException;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigSnapshot;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.SensorData;
+
+/**
+ * A compiled actuation rule for one sensor type.
+ * <p>
+ * Each reading is reduced to a metric (see {@link RuleTriggerEnum}), which
+ * is compared against two limits: the rule activates (issuing an ON
+ * command) when the metric reaches 'onValue', and deactivates (issuing an
+ * OFF command) when it returns to 'offValue'. The band between the two is
+ * the hysteresis that keeps a noisy reading from toggling the actuator.
+ * If 'onValue' is above 'offValue' the rule activates on rising values
+ * (e.g. cooling), otherwise on falling values (e.g. humidifying).
+ * <p>
+ * State (active flag, previous reading, averaging window) is kept per
+ * device location ID, and updated incrementally in constant time. No
+ * objects are allocated per reading, except the command on a transition
+ * and the state for a newly seen device.
+ * 
+ */
+public final class ActuationRule
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(ActuationRule.class.getName());
+	
+	public static final int DEFAULT_WINDOW_SIZE = 10;
+	
+	/**
+	 * Creates a rule from the given config section, which must at least
+	 * contain the sensor type, actuator type and on / off values.
+	 * 
+	 * @param section The name of the rule's config section.
+	 * @param snapshot The config snapshot to read from.
+	 * @return ActuationRule The rule, or null if the section is incomplete or invalid.
+	 */
+	public static ActuationRule createRule(String section, ConfigSnapshot snapshot)
+	{
+		String name =
+			(section.startsWith(ConfigConst.RULE_SECTION_PREFIX) ?
+				section.substring(ConfigConst.RULE_SECTION_PREFIX.length()) : section);
+		
+		try {
+			RuleTriggerEnum trigger =
+				RuleTriggerEnum.getEnumFromName(
+					snapshot.getProperty(section, ConfigConst.TRIGGER_KEY, null), RuleTriggerEnum.THRESHOLD);
+			
+			return new ActuationRule(
+				name,
+				snapshot.getInteger(section, ConfigConst.SENSOR_TYPE_KEY),
+				trigger,
+				snapshot.getFloat(section, ConfigConst.ON_VALUE_KEY),
+				snapshot.getFloat(section, ConfigConst.OFF_VALUE_KEY),
+				snapshot.getInteger(section, ConfigConst.WINDOW_SIZE_KEY, DEFAULT_WINDOW_SIZE),
+				snapshot.getInteger(section, ConfigConst.ACTUATOR_TYPE_KEY),
+				snapshot.getProperty(section, ConfigConst.ACTUATOR_NAME_KEY, name),
+				snapshot.getFloat(section, ConfigConst.ACTUATOR_VALUE_KEY, Float.NaN));
+		} catch (RuntimeException e) {
+			// NoSuchElementException or ConversionException
+			_Logger.warning("Ignoring invalid rule in section " + section + ": " + e.getMessage());
+		}
+		
+		return null;
+	}
+	
+	
+	// private var's
+	
+	private final String name;
+	private final int    sensorType;
+	private final RuleTriggerEnum trigger;
+	private final float  onValue;
+	private final float  offValue;
+	private final boolean activateAbove;
+	private final int    windowSize;
+	private final int    actuatorType;
+	private final String actuatorName;
+	private final float  actuatorValue;
+	
+	private final ConcurrentHashMap<String, RuleState> states = new ConcurrentHashMap<>();
+	
+	
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name The rule name.
+	 * @param sensorType The sensor type ID the rule applies to.
+	 * @param trigger The metric to compare.
+	 * @param onValue The limit at which the rule activates.
+	 * @param offValue The limit at which the rule deactivates.
+	 * @param windowSize The number of readings averaged by {@link RuleTriggerEnum#WINDOWED_AVERAGE}.
+	 * @param actuatorType The type ID of the actuator to command.
+	 * @param actuatorName The name of the actuator to command.
+	 * @param actuatorValue The value to send with the ON command, or NaN
+	 * to send the metric that triggered it.
+	 */
+	public ActuationRule(
+		String name, int sensorType, RuleTriggerEnum trigger, float onValue, float offValue,
+		int windowSize, int actuatorType, String actuatorName, float actuatorValue)
+	{
+		super();
+		
+		if (trigger == null || Float.isNaN(onValue) || Float.isNaN(offValue)) {
+			throw new ConversionException("Rule requires a trigger and numeric on / off values.");
+		}
+		
+		this.name          = name;
+		this.sensorType    = sensorType;
+		this.trigger       = trigger;
+		this.onValue       = onValue;
+		this.offValue      = offValue;
+		this.activateAbove = (onValue >= offValue);
+		this.windowSize    = Math.max(1, windowSize);
+		this.actuatorType  = actuatorType;
+		this.actuatorName  = actuatorName;
+		this.actuatorValue = actuatorValue;
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Updates the state for the reading's device and returns the command
+	 * to send if the rule activated or deactivated.
+	 * <p>
+	 * Readings from one device must be passed in order; readings from
+	 * different devices may be passed concurrently.
+	 * 
+	 * @param data The sensor reading. Its type ID is not checked.
+	 * @return ActuatorData The command, or null if the rule's state is unchanged.
+	 */
+	public ActuatorData evaluate(SensorData data)
+	{
+		String    locationID = (data.getLocationID() != null ? data.getLocationID() : "");
+		RuleState state      = this.states.get(locationID);
+		
+		if (state == null) {
+			RuleState newState = new RuleState(this.trigger == RuleTriggerEnum.WINDOWED_AVERAGE ? this.windowSize : 0);
+			
+			state = this.states.putIfAbsent(locationID, newState);
+			
+			if (state == null) {
+				state = newState;
+			}
+		}
+		
+		synchronized (state) {
+			float metric = updateMetric(state, data);
+			
+			if (Float.isNaN(metric)) {
+				return null;
+			}
+			
+			if (! state.isActive && (this.activateAbove ? metric >= this.onValue : metric <= this.onValue)) {
+				state.isActive = true;
+				
+				return createCommand(ConfigConst.ON_COMMAND, Float.isNaN(this.actuatorValue) ? metric : this.actuatorValue, data.getLocationID());
+			}
+			
+			if (state.isActive && (this.activateAbove ? metric <= this.offValue : metric >= this.offValue)) {
+				state.isActive = false;
+				
+				return createCommand(ConfigConst.OFF_COMMAND, metric, data.getLocationID());
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Deactivates the rule for all devices, e.g. because it was removed or
+	 * replaced, and returns an OFF command for each device it was active for.
+	 * 
+	 * @return List<ActuatorData> The OFF commands; empty if the rule wasn't active.
+	 */
+	public List<ActuatorData> deactivate()
+	{
+		List<ActuatorData> commands = new ArrayList<>();
+		
+		for (Map.Entry<String, RuleState> e : this.states.entrySet()) {
+			RuleState state = e.getValue();
+			
+			synchronized (state) {
+				if (state.isActive) {
+					state.isActive = false;
+					
+					// the location ID was mapped to "" if the reading had none
+					String locationID = (e.getKey().isEmpty() ? null : e.getKey());
+					
+					commands.add(createCommand(ConfigConst.OFF_COMMAND, this.offValue, locationID));
+				}
+			}
+		}
+		
+		return commands;
+	}
+	
+	/**
+	 * Returns true if 'rule' has the same name and settings as this rule,
+	 * in which case this rule's state can be kept across a reload.
+	 * 
+	 * @param rule The rule to compare.
+	 * @return boolean
+	 */
+	public boolean hasSameDefinition(ActuationRule rule)
+	{
+		return (rule != null &&
+			this.name.equals(rule.name) &&
+			this.sensorType == rule.sensorType &&
+			this.trigger == rule.trigger &&
+			Float.compare(this.onValue, rule.onValue) == 0 &&
+			Float.compare(this.offValue, rule.offValue) == 0 &&
+			this.windowSize == rule.windowSize &&
+			this.actuatorType == rule.actuatorType &&
+			Objects.equals(this.actuatorName, rule.actuatorName) &&
+			Float.compare(this.actuatorValue, rule.actuatorValue) == 0);
+	}
+	
+	public int getActuatorType()
+	{
+		return this.actuatorType;
+	}
+	
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	public int getSensorType()
+	{
+		return this.sensorType;
+	}
+	
+	public RuleTriggerEnum getTrigger()
+	{
+		return this.trigger;
+	}
+	
+	/**
+	 * Returns true if the rule is currently active for the given device.
+	 * 
+	 * @param locationID The device location ID.
+	 * @return boolean
+	 */
+	public boolean isActive(String locationID)
+	{
+		RuleState state = this.states.get(locationID != null ? locationID : "");
+		
+		if (state != null) {
+			synchronized (state) {
+				return state.isActive;
+			}
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return this.name + "[sensorType=" + this.sensorType + ",trigger=" + this.trigger +
+			",on=" + this.onValue + ",off=" + this.offValue + ",actuatorType=" + this.actuatorType + "]";
+	}
+	
+	
+	// private methods
+	
+	private ActuatorData createCommand(int command, float value, String locationID)
+	{
+		ActuatorData ad = new ActuatorData();
+		
+		ad.setName(this.actuatorName);
+		ad.setTypeID(this.actuatorType);
+		ad.setLocationID(locationID);
+		ad.setCommand(command);
+		ad.setValue(value);
+		
+		_Logger.fine("Rule " + this.name + " issued command " + command + " for " + locationID);
+		
+		return ad;
+	}
+	
+	/**
+	 * Adds the reading to 'state' and returns the rule's metric, or NaN if
+	 * there isn't enough data yet. Must be called with the state's lock held.
+	 * 
+	 */
+	private float updateMetric(RuleState state, SensorData data)
+	{
+		float value = data.getValue();
+		
+		switch (this.trigger) {
+			case RATE_OF_CHANGE:
+				long  timeMillis = data.getTimeStampMillis();
+				float rate       = Float.NaN;
+				
+				if (state.hasPrevious && timeMillis > state.prevTimeMillis) {
+					rate = (value - state.prevValue) * 1000.0f / (timeMillis - state.prevTimeMillis);
+				}
+				
+				state.hasPrevious    = true;
+				state.prevValue      = value;
+				state.prevTimeMillis = timeMillis;
+				
+				return rate;
+			
+			case WINDOWED_AVERAGE:
+				float[] window = state.window;
+				
+				state.windowSum += value - window[state.windowIndex];
+				window[state.windowIndex] = value;
+				
+				if (++state.windowIndex == window.length) {
+					state.windowIndex = 0;
+					
+					// recompute once per pass to discard accumulated rounding error
+					double sum = 0.0d;
+					
+					for (float v : window) {
+						sum += v;
+					}
+					
+					state.windowSum = sum;
+				}
+				
+				if (state.windowCount < window.length) {
+					state.windowCount++;
+				}
+				
+				return (state.windowCount < window.length ? Float.NaN : (float) (state.windowSum / window.length));
+			
+			default:
+				return value;
+		}
+	}
+	
+	
+	// private classes
+	
+	/**
+	 * Per-device evaluation state.
+	 * 
+	 */
+	private static final class RuleState
+	{
+		boolean isActive    = false;
+		
+		boolean hasPrevious = false;
+		float   prevValue   = 0.0f;
+		long    prevTimeMillis = 0L;
+		
+		final float[] window;
+		double windowSum   = 0.0d;
+		int    windowIndex = 0;
+		int    windowCount = 0;
+		
+		RuleState(int windowSize)
+		{
+			this.window = new float[windowSize];
+		}
+	}
+	
+}
@@ -0,0 +1,304 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigSnapshot;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IActuatorDataListener;
+import programmingtheiot.common.IConfigUpdateListener;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.SensorData;
+
+/**
+ * Evaluates the configured {@link ActuationRule}s against each incoming
+ * sensor reading, and passes the resulting actuator commands to an
+ * {@link IActuatorDataListener}.
+ * <p>
+ * Rules are read from every config section whose name starts with
+ * {@link ConfigConst#RULE_SECTION_PREFIX}, and are enabled via
+ * {@link ConfigConst#ENABLE_RULES_KEY} in {@link ConfigConst#RULES_GATEWAY_SERVICE}.
+ * They are compiled into a dispatch table indexed by sensor type ID, so a
+ * reading is only evaluated against the rules for its own type. The table
+ * is rebuilt and swapped in when any of these sections is added, changed or
+ * removed. Rules whose settings didn't change keep their state; rules that
+ * were removed or changed send an OFF command to each device they were
+ * active for, so no actuator is left on.
+ * 
+ */
+public class ActuationRuleEngine implements IConfigUpdateListener
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(ActuationRuleEngine.class.getName());
+	
+	/**
+	 * Type ID's above this aren't supported, as they'd need a sparse table.
+	 */
+	public static final int MAX_SENSOR_TYPE_ID = 4095;
+	
+	private static final ActuationRule[]   _NoRules    = new ActuationRule[0];
+	private static final ActuationRule[][] _EmptyTable = new ActuationRule[0][];
+	
+	
+	// private var's
+	
+	private volatile ActuationRule[][] dispatchTable = _EmptyTable;
+	private volatile int ruleCount = 0;
+	
+	// guarded by 'this'; the rules currently in the dispatch table, by name
+	private Map<String, ActuationRule> loadedRules = Collections.emptyMap();
+	
+	private volatile IActuatorDataListener actuatorDataListener = null;
+	
+	private boolean isStarted = false;
+	
+	
+	// constructors
+	
+	/**
+	 * Default. Compiles the rules from the current configuration.
+	 * 
+	 */
+	public ActuationRuleEngine()
+	{
+		super();
+		
+		loadRules(ConfigUtil.getInstance().getSnapshot());
+	}
+	
+	
+	// public methods
+	
+	/**
+	 * Evaluates 'data' against the rules for its type ID, and passes any
+	 * resulting commands to the actuator data listener.
+	 * <p>
+	 * Readings from one device must be passed in order.
+	 * 
+	 * @param data The sensor reading.
+	 * @return int The number of commands issued.
+	 */
+	public int evaluateSensorData(SensorData data)
+	{
+		if (data == null) {
+			return 0;
+		}
+		
+		ActuationRule[][] table  = this.dispatchTable;
+		int               typeID = data.getTypeID();
+		
+		if (typeID < 0 || typeID >= table.length) {
+			return 0;
+		}
+		
+		ActuationRule[] rules = table[typeID];
+		int count = 0;
+		
+		for (int i = 0; i < rules.length; i++) {
+			ActuatorData command = rules[i].evaluate(data);
+			
+			if (command != null) {
+				count++;
+				
+				sendCommand(rules[i], command);
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Returns the rules compiled for the given sensor type ID.
+	 * 
+	 * @param sensorType The sensor type ID.
+	 * @return List<ActuationRule>
+	 */
+	public List<ActuationRule> getRules(int sensorType)
+	{
+		ActuationRule[][] table = this.dispatchTable;
+		
+		if (sensorType < 0 || sensorType >= table.length) {
+			return Collections.emptyList();
+		}
+		
+		return Collections.unmodifiableList(Arrays.asList(table[sensorType]));
+	}
+	
+	/**
+	 * Returns the total number of compiled rules.
+	 * 
+	 * @return int
+	 */
+	public int getRuleCount()
+	{
+		return this.ruleCount;
+	}
+	
+	/**
+	 * Compiles the rules in 'snapshot' and replaces the current rules.
+	 * Unchanged rules are kept with their state; removed or changed rules
+	 * are deactivated, sending an OFF command for each active device.
+	 * 
+	 * @param snapshot The configuration to read the rules from.
+	 * @return int The number of rules compiled.
+	 */
+	public synchronized int loadRules(ConfigSnapshot snapshot)
+	{
+		List<ActuationRule> rules = new ArrayList<>();
+		int maxSensorType = -1;
+		
+		if (snapshot.getBoolean(ConfigConst.RULES_GATEWAY_SERVICE, ConfigConst.ENABLE_RULES_KEY, false)) {
+			for (String section : snapshot.getSectionNames()) {
+				if (! section.startsWith(ConfigConst.RULE_SECTION_PREFIX)) {
+					continue;
+				}
+				
+				ActuationRule rule = ActuationRule.createRule(section, snapshot);
+				
+				if (rule == null) {
+					continue;
+				}
+				
+				if (rule.getSensorType() < 0 || rule.getSensorType() > MAX_SENSOR_TYPE_ID) {
+					_Logger.warning("Ignoring rule with unsupported sensor type: " + rule);
+					
+					continue;
+				}
+				
+				ActuationRule loadedRule = this.loadedRules.get(rule.getName());
+				
+				if (rule.hasSameDefinition(loadedRule)) {
+					rule = loadedRule;
+				}
+				
+				rules.add(rule);
+				maxSensorType = Math.max(maxSensorType, rule.getSensorType());
+			}
+		}
+		
+		// sort by name, so rules for one type are evaluated in a stable order
+		rules.sort((a, b) -> a.getName().compareTo(b.getName()));
+		
+		ActuationRule[][] table = new ActuationRule[maxSensorType + 1][];
+		
+		for (int typeID = 0; typeID < table.length; typeID++) {
+			List<ActuationRule> typeRules = new ArrayList<>();
+			
+			for (ActuationRule rule : rules) {
+				if (rule.getSensorType() == typeID) {
+					typeRules.add(rule);
+				}
+			}
+			
+			table[typeID] = (typeRules.isEmpty() ? _NoRules : typeRules.toArray(new ActuationRule[typeRules.size()]));
+		}
+		
+		Map<String, ActuationRule> ruleMap = new HashMap<>();
+		
+		for (ActuationRule rule : rules) {
+			ruleMap.put(rule.getName(), rule);
+		}
+		
+		Map<String, ActuationRule> prevRules = this.loadedRules;
+		
+		this.dispatchTable = table;
+		this.ruleCount     = rules.size();
+		this.loadedRules   = ruleMap;
+		
+		_Logger.info("Loaded " + rules.size() + " actuation rules: " + rules);
+		
+		// switch off whatever the replaced rules left on
+		for (ActuationRule prevRule : prevRules.values()) {
+			if (ruleMap.get(prevRule.getName()) != prevRule) {
+				for (ActuatorData command : prevRule.deactivate()) {
+					sendCommand(prevRule, command);
+				}
+			}
+		}
+		
+		return rules.size();
+	}
+	
+	public void setActuatorDataListener(IActuatorDataListener listener)
+	{
+		this.actuatorDataListener = listener;
+	}
+	
+	/**
+	 * Starts listening for rule configuration changes.
+	 * 
+	 */
+	public synchronized void startEngine()
+	{
+		if (! this.isStarted) {
+			this.isStarted = true;
+			
+			ConfigUtil configUtil = ConfigUtil.getInstance();
+			
+			configUtil.addConfigUpdateListener(ConfigConst.RULES_GATEWAY_SERVICE, this);
+			configUtil.addConfigPrefixListener(ConfigConst.RULE_SECTION_PREFIX, this);
+		}
+	}
+	
+	/**
+	 * Stops listening for rule configuration changes.
+	 * 
+	 */
+	public synchronized void stopEngine()
+	{
+		if (this.isStarted) {
+			this.isStarted = false;
+			
+			ConfigUtil configUtil = ConfigUtil.getInstance();
+			
+			configUtil.removeConfigUpdateListener(ConfigConst.RULES_GATEWAY_SERVICE, this);
+			configUtil.removeConfigPrefixListener(ConfigConst.RULE_SECTION_PREFIX, this);
+		}
+	}
+	
+	
+	// callbacks
+	
+	/**
+	 * Recompiles all rules when the rules section changes, or a rule
+	 * section is added, changed or removed.
+	 * 
+	 */
+	@Override
+	public void onConfigUpdate(String section, Set<String> updatedKeys, ConfigSnapshot snapshot)
+	{
+		loadRules(snapshot);
+	}
+	
+	
+	// private methods
+	
+	private void sendCommand(ActuationRule rule, ActuatorData command)
+	{
+		IActuatorDataListener listener = this.actuatorDataListener;
+		
+		if (listener != null) {
+			listener.onActuatorDataUpdate(command);
+		} else {
+			_Logger.warning("No actuator data listener. Dropping command from rule " + rule.getName());
+		}
+	}
+	
+}
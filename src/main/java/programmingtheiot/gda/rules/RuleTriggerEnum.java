@@ -0,0 +1,56 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.gda.rules;
+
+/**
+ * The metric an {@link ActuationRule} derives from each sensor reading
+ * before applying its on / off (hysteresis) limits.
+ *
+ */
+public enum RuleTriggerEnum
+{
+	/**
+	 * The reading's value.
+	 */
+	THRESHOLD,
+	
+	/**
+	 * The change in value per second since the previous reading from the
+	 * same device.
+	 */
+	RATE_OF_CHANGE,
+	
+	/**
+	 * The mean of the last N readings from the same device (the configured
+	 * window size). Not evaluated until the window is full.
+	 */
+	WINDOWED_AVERAGE;
+	
+	
+	/**
+	 * Returns the trigger with the given name (case insensitive).
+	 * 
+	 * @param name The trigger name, e.g. "THRESHOLD".
+	 * @param defaultTrigger The trigger to return if 'name' is null or unknown.
+	 * @return RuleTriggerEnum
+	 */
+	public static RuleTriggerEnum getEnumFromName(String name, RuleTriggerEnum defaultTrigger)
+	{
+		if (name != null) {
+			for (RuleTriggerEnum trigger : values()) {
+				if (trigger.name().equalsIgnoreCase(name.trim())) {
+					return trigger;
+				}
+			}
+		}
+		
+		return defaultTrigger;
+	}
+	
+}
@@ -8,25 +8,50 @@
 
 package programmingtheiot.gda.system;
 
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigSnapshot;
 import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IConfigUpdateListener;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
 import programmingtheiot.data.SystemPerformanceData;
 
 /**
- * Shell representation of class for student implementation.
+ * Polls the system utilization tasks at the configured rate and passes
+ * the results to the data message listener as SystemPerformanceData.
+ * <p>
+ * The poll rate ({@link ConfigConst#POLL_CYCLES_KEY}) is applied in place
+ * when the configuration file is reloaded while the manager is running.
  * 
  */
-public class SystemPerformanceManager
+public class SystemPerformanceManager implements IConfigUpdateListener
 {
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(SystemPerformanceManager.class.getName());
+	
+	
 	// private var's
 	
+	private int pollRate = ConfigConst.DEFAULT_POLL_CYCLES;
+	
+	private ScheduledExecutorService schedExecSvc = null;
+	private ScheduledFuture<?>       schedFuture  = null;
+	
+	private SystemCpuUtilTask sysCpuUtilTask = null;
+	private SystemMemUtilTask sysMemUtilTask = null;
+	
+	private volatile IDataMessageListener dataMsgListener = null;
+	
 	
 	// constructors
 	
@@ -36,25 +61,142 @@ public class SystemPerformanceManager
 	 */
 	public SystemPerformanceManager()
 	{
+		super();
+		
+		this.pollRate =
+			validatePollRate(
+				ConfigUtil.getInstance().getInteger(
+					ConfigConst.GATEWAY_DEVICE, ConfigConst.POLL_CYCLES_KEY, ConfigConst.DEFAULT_POLL_CYCLES));
+		
+		this.sysCpuUtilTask = new SystemCpuUtilTask();
+		this.sysMemUtilTask = new SystemMemUtilTask();
 	}
 	
 	
 	// public methods
 	
+	/**
+	 * Returns the current poll rate, in seconds.
+	 * 
+	 * @return int
+	 */
+	public synchronized int getPollRate()
+	{
+		return this.pollRate;
+	}
+	
 	public void handleTelemetry()
 	{
+		try {
+			float cpuUtil = this.sysCpuUtilTask.getTelemetryValue();
+			float memUtil = this.sysMemUtilTask.getTelemetryValue();
+			
+			_Logger.fine("CPU utilization: " + cpuUtil + ", Mem utilization: " + memUtil);
+			
+			SystemPerformanceData spd = new SystemPerformanceData();
+			spd.setCpuUtilization(cpuUtil);
+			spd.setMemoryUtilization(memUtil);
+			
+			IDataMessageListener listener = this.dataMsgListener;
+			
+			if (listener != null) {
+				listener.handleSystemPerformanceMessage(ResourceNameEnum.GDA_SYSTEM_PERF_MSG_RESOURCE, spd);
+			}
+		} catch (Exception e) {
+			// an exception would cancel the scheduled task, ending all telemetry
+			_Logger.log(Level.WARNING, "Failed to handle system performance telemetry.", e);
+		}
 	}
 	
 	public void setDataMessageListener(IDataMessageListener listener)
 	{
+		this.dataMsgListener = listener;
 	}
 	
-	public void startManager()
+	public synchronized void startManager()
+	{
+		if (this.schedExecSvc == null) {
+			this.schedExecSvc = Executors.newScheduledThreadPool(1);
+			
+			scheduleTelemetry();
+			
+			ConfigUtil.getInstance().addConfigUpdateListener(ConfigConst.GATEWAY_DEVICE, this);
+			
+			_Logger.info("SystemPerformanceManager started. Poll rate (secs): " + this.pollRate);
+		} else {
+			_Logger.info("SystemPerformanceManager is already started.");
+		}
+	}
+	
+	public synchronized void stopManager()
+	{
+		if (this.schedExecSvc != null) {
+			ConfigUtil.getInstance().removeConfigUpdateListener(ConfigConst.GATEWAY_DEVICE, this);
+			
+			this.schedExecSvc.shutdown();
+			this.schedExecSvc = null;
+			this.schedFuture  = null;
+			
+			_Logger.info("SystemPerformanceManager stopped.");
+		}
+	}
+	
+	
+	// callbacks
+	
+	/**
+	 * Applies a changed poll rate by rescheduling the telemetry task.
+	 * The next poll occurs one new poll period after the change.
+	 * 
+	 */
+	@Override
+	public void onConfigUpdate(String section, Set<String> updatedKeys, ConfigSnapshot snapshot)
+	{
+		if (! updatedKeys.contains(ConfigConst.POLL_CYCLES_KEY)) {
+			return;
+		}
+		
+		int newPollRate =
+			validatePollRate(
+				snapshot.getInteger(
+					ConfigConst.GATEWAY_DEVICE, ConfigConst.POLL_CYCLES_KEY, ConfigConst.DEFAULT_POLL_CYCLES));
+		
+		synchronized (this) {
+			if (newPollRate == this.pollRate) {
+				return;
+			}
+			
+			_Logger.info("Updating poll rate (secs): " + this.pollRate + " -> " + newPollRate);
+			
+			this.pollRate = newPollRate;
+			
+			if (this.schedFuture != null) {
+				this.schedFuture.cancel(false);
+				
+				scheduleTelemetry();
+			}
+		}
+	}
+	
+	
+	// private methods
+	
+	private void scheduleTelemetry()
 	{
+		this.schedFuture =
+			this.schedExecSvc.scheduleAtFixedRate(
+				this::handleTelemetry, this.pollRate, this.pollRate, TimeUnit.SECONDS);
 	}
 	
-	public void stopManager()
+	private int validatePollRate(int rate)
 	{
+		if (rate <= 0) {
+			_Logger.warning("Invalid poll rate: " + rate + ". Using default: " + ConfigConst.DEFAULT_POLL_CYCLES);
+			
+			return ConfigConst.DEFAULT_POLL_CYCLES;
+		}
+		
+		return rate;
 	}
 	
 }
@@ -11,13 +11,17 @@ package programmingtheiot.part01.unit.common;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.StringReader;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+
 import programmingtheiot.common.*;
 
 /**
@@ -103,6 +107,70 @@ public class ConfigUtilTest
 		assertTrue(Boolean.parseBoolean(enableLogging));
 	}
 	
+	@Test
+	public void testGetDeviceMetadata()
+	{
+		DeviceMetadata metadata = ConfigUtil.getInstance().getDeviceMetadata();
+		
+		assertNotNull(metadata);
+		assertEquals(
+			ConfigUtil.getInstance().getProperty(
+				ConfigConst.GATEWAY_DEVICE, ConfigConst.DEVICE_LOCATION_ID_KEY, ConfigConst.NOT_SET),
+			metadata.getLocationID());
+		
+		assertTrue(ConfigUtil.getInstance().reloadConfig());
+		assertEquals(metadata.getLocationID(), ConfigUtil.getInstance().getDeviceMetadata().getLocationID());
+	}
+	
+	@Test
+	public void testGetSnapshot()
+	{
+		ConfigSnapshot snapshot = ConfigUtil.getInstance().getSnapshot();
+		
+		assertSame(snapshot, ConfigUtil.getInstance().getSnapshot());
+		assertEquals(PORT_VAL, snapshot.getInteger(ConfigConst.MQTT_GATEWAY_SERVICE, ConfigConst.PORT_KEY));
+		assertEquals(HOST_VAL, snapshot.getSection(ConfigConst.MQTT_GATEWAY_SERVICE).get(ConfigConst.HOST_KEY));
+		assertEquals(-1, snapshot.getInteger(ConfigConst.MQTT_GATEWAY_SERVICE, "noSuchKey", -1));
+		assertFalse(snapshot.hasSection("NoSuchSection"));
+		
+		assertTrue(ConfigUtil.getInstance().reloadConfig());
+		assertNotSame(snapshot, ConfigUtil.getInstance().getSnapshot());
+	}
+	
+	@Test
+	public void testSnapshotUpdatedKeys() throws Exception
+	{
+		HierarchicalINIConfiguration oldConfig = new HierarchicalINIConfiguration();
+		oldConfig.load(new StringReader("[GatewayDevice]\npollCycleSecs = 60\nenableLogging = True\nfoo = 1\n"));
+		
+		HierarchicalINIConfiguration newConfig = new HierarchicalINIConfiguration();
+		newConfig.load(new StringReader("[GatewayDevice]\npollCycleSecs = 5\nenableLogging = True\nbar = 2\n"));
+		
+		ConfigSnapshot oldSnapshot = new ConfigSnapshot(oldConfig);
+		ConfigSnapshot newSnapshot = new ConfigSnapshot(newConfig);
+		
+		Set<String> updatedKeys = newSnapshot.getUpdatedKeys(ConfigConst.GATEWAY_DEVICE, oldSnapshot);
+		
+		assertEquals(3, updatedKeys.size());
+		assertTrue(updatedKeys.contains(ConfigConst.POLL_CYCLES_KEY));
+		assertTrue(updatedKeys.contains("foo"));
+		assertTrue(updatedKeys.contains("bar"));
+		assertEquals(5, newSnapshot.getInteger(ConfigConst.GATEWAY_DEVICE, ConfigConst.POLL_CYCLES_KEY));
+		assertTrue(newSnapshot.getUpdatedKeys(ConfigConst.MQTT_GATEWAY_SERVICE, oldSnapshot).isEmpty());
+	}
+	
+	@Test
+	public void testReloadWithoutChangesSkipsListeners()
+	{
+		int[] updateCount = { 0 };
+		IConfigUpdateListener listener = (section, updatedKeys, snapshot) -> updateCount[0]++;
+		
+		assertTrue(ConfigUtil.getInstance().addConfigUpdateListener(ConfigConst.GATEWAY_DEVICE, listener));
+		assertTrue(ConfigUtil.getInstance().reloadConfig());
+		assertEquals(0, updateCount[0]);
+		assertTrue(ConfigUtil.getInstance().removeConfigUpdateListener(ConfigConst.GATEWAY_DEVICE, listener));
+	}
+	
 	/**
 	 * Test method for {@link com.labbenchstudios.edu.connecteddevices.common.ConfigUtil#getIntegerProperty(java.lang.String, java.lang.String)}.
 	 */
@@ -82,4 +82,14 @@ public class ResourceNameTest
 		assertTrue(resourceA == resourceB);
 	}
 	
+	@Test
+	public void testControlResources()
+	{
+		assertTrue(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE.isControlResource());
+		assertTrue(ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE.isControlResource());
+		assertTrue(ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE.isControlResource());
+		assertFalse(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.isControlResource());
+		assertFalse(ResourceNameEnum.GDA_SYSTEM_PERF_MSG_RESOURCE.isControlResource());
+	}
+	
 }
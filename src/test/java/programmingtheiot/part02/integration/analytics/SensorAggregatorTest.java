@@ -0,0 +1,132 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part02.integration.analytics;
+
+import static org.junit.Assert.*;
+
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.analytics.SensorAggregator;
+import programmingtheiot.gda.analytics.SensorWindow;
+import programmingtheiot.gda.analytics.WindowStats;
+
+/**
+ * This test case class contains very basic tests for
+ * SensorAggregator and SensorWindow. It should not be considered
+ * complete, but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class SensorAggregatorTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(SensorAggregatorTest.class.getName());
+	
+	private static final String LOCATION_ID = "constraineddevice001";
+	private static final String SENSOR_NAME = "TempSensor";
+	
+	
+	// member var's
+	
+	private SensorAggregator aggregator = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.aggregator = new SensorAggregator(5, 0L);
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testRollingAggregates()
+	{
+		float[] values = { 10.0f, 30.0f, 20.0f, 50.0f, 40.0f, 60.0f, 5.0f };
+		
+		for (float value : values) {
+			this.aggregator.addSensorData(createSensorData(value));
+		}
+		
+		// window now holds 20, 50, 40, 60, 5
+		WindowStats stats = this.aggregator.getStats(LOCATION_ID, ConfigConst.TEMP_SENSOR_TYPE, SENSOR_NAME);
+		
+		_Logger.info("Stats: " + stats);
+		
+		assertNotNull(stats);
+		assertEquals(5, stats.getCount());
+		assertEquals(5.0f, stats.getMin(), 0.001f);
+		assertEquals(60.0f, stats.getMax(), 0.001f);
+		assertEquals(35.0f, stats.getMean(), 0.001f);
+		assertEquals(20.0f, stats.getStdDev(), 0.001f);
+		assertEquals(40.0f, stats.getMedian(), 0.001f);
+		assertEquals(60.0f, stats.getP99(), 0.001f);
+		assertEquals(5.0f, stats.getLastValue(), 0.001f);
+		
+		assertNull(this.aggregator.getStats(LOCATION_ID, ConfigConst.HUMIDITY_SENSOR_TYPE, SENSOR_NAME));
+		assertEquals(1, this.aggregator.getStreamKeys().size());
+	}
+	
+	@Test
+	public void testMinMaxAfterEviction()
+	{
+		SensorWindow window = new SensorWindow(3, 0L);
+		
+		float[] values = { 9.0f, 1.0f, 5.0f, 7.0f, 8.0f, 6.0f };
+		float[] mins   = { 9.0f, 1.0f, 1.0f, 1.0f, 5.0f, 6.0f };
+		float[] maxs   = { 9.0f, 9.0f, 9.0f, 7.0f, 8.0f, 8.0f };
+		
+		for (int i = 0; i < values.length; i++) {
+			window.addValue(values[i], i);
+			
+			assertEquals(mins[i], window.getMin(), 0.001f);
+			assertEquals(maxs[i], window.getMax(), 0.001f);
+		}
+	}
+	
+	@Test
+	public void testTimeBoundedWindow()
+	{
+		SensorWindow window = new SensorWindow(100, 1000L);
+		
+		window.addValue(100.0f, 0L);
+		window.addValue(1.0f, 500L);
+		window.addValue(2.0f, 1200L);
+		
+		// the first reading is more than 1000 ms older than the newest
+		assertEquals(2, window.getCount());
+		assertEquals(2.0f, window.getMax(), 0.001f);
+		assertEquals(1.5f, window.getMean(), 0.001f);
+	}
+	
+	
+	// private methods
+	
+	private SensorData createSensorData(float value)
+	{
+		SensorData sd = new SensorData(ConfigConst.TEMP_SENSOR_TYPE);
+		sd.setName(SENSOR_NAME);
+		sd.setLocationID(LOCATION_ID);
+		sd.setValue(value);
+		
+		return sd;
+	}
+	
+}
@@ -0,0 +1,218 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part02.integration.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.pipeline.DataMessage;
+import programmingtheiot.gda.pipeline.DataMessagePipeline;
+import programmingtheiot.gda.pipeline.PartitionedExecutor;
+import programmingtheiot.gda.pipeline.PipelineStage;
+
+/**
+ * This test case class contains very basic tests for
+ * DataMessagePipeline. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class DataMessagePipelineTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(DataMessagePipelineTest.class.getName());
+	
+	
+	// member var's
+	
+	private List<DataMessage> analyzedMsgs = new CopyOnWriteArrayList<>();
+	private Map<String, String> analyzeThreads = new ConcurrentHashMap<>();
+	private List<DataMessage> fanOutMsgs   = new CopyOnWriteArrayList<>();
+	private CountDownLatch    fanOutLatch  = null;
+	
+	private DataMessagePipeline pipeline = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.pipeline =
+			new DataMessagePipeline(
+				msg -> {
+					if (msg.getData() != null && msg.getData().getLocationID() != null) {
+						this.analyzeThreads.put(msg.getData().getLocationID(), Thread.currentThread().getName());
+					}
+					
+					return this.analyzedMsgs.add(msg);
+				},
+				msg -> { this.fanOutMsgs.add(msg); this.fanOutLatch.countDown(); return false; });
+		
+		this.pipeline.startPipeline();
+	}
+	
+	@After
+	public void tearDown() throws Exception
+	{
+		this.pipeline.stopPipeline();
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testDecodedAndRawMessages() throws Exception
+	{
+		this.fanOutLatch = new CountDownLatch(2);
+		
+		SensorData sd = new SensorData();
+		sd.setName("TempSensor");
+		sd.setValue(22.5f);
+		
+		assertTrue(this.pipeline.ingestMessage(new DataMessage(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sd)));
+		assertTrue(
+			this.pipeline.ingestMessage(
+				new DataMessage(
+					ResourceNameEnum.CDA_SYSTEM_PERF_MSG_RESOURCE,
+					DataUtil.getInstance().systemPerformanceDataToJson(new SystemPerformanceData()))));
+		
+		assertTrue(this.fanOutLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(2, this.analyzedMsgs.size());
+		
+		for (DataMessage msg : this.fanOutMsgs) {
+			assertTrue(msg.isDecoded());
+			_Logger.info("Fan-out received: " + msg);
+		}
+	}
+	
+	@Test
+	public void testMalformedMessageIsDropped() throws Exception
+	{
+		this.fanOutLatch = new CountDownLatch(1);
+		
+		assertTrue(this.pipeline.ingestMessage(new DataMessage(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, "{bad")));
+		assertTrue(this.pipeline.ingestMessage(new DataMessage(ResourceNameEnum.CDA_MGMT_STATUS_MSG_RESOURCE, "status")));
+		
+		assertTrue(this.fanOutLatch.await(5, TimeUnit.SECONDS));
+		
+		// the decode stage counts a message only after forwarding it, so
+		// stop (and drain) the pipeline before checking the counts
+		this.pipeline.stopPipeline();
+		
+		assertEquals(1, this.fanOutMsgs.size());
+		assertFalse(this.fanOutMsgs.get(0).isDecoded());
+		
+		PipelineStage decodeStage = this.pipeline.getStages().get(0);
+		
+		assertEquals(2, decodeStage.getProcessedCount());
+	}
+	
+	@Test
+	public void testRawMessagesPartitionedByLocation() throws Exception
+	{
+		PartitionedExecutor analyzeExecutor = this.pipeline.getStages().get(1).getExecutor();
+		
+		assertTrue(analyzeExecutor.getPartitionCount() > 1);
+		
+		// find two location IDs that hash to different analyze partitions
+		String locationA = "constraineddevice001";
+		String locationB = null;
+		
+		for (int i = 2; locationB == null && i < 100; i++) {
+			String location = String.format("constraineddevice%03d", i);
+			
+			if (analyzeExecutor.getPartition(location) != analyzeExecutor.getPartition(locationA)) {
+				locationB = location;
+			}
+		}
+		
+		assertNotNull(locationB);
+		
+		this.fanOutLatch = new CountDownLatch(2);
+		
+		for (String location : new String[] { locationA, locationB }) {
+			SensorData sd = new SensorData();
+			sd.setLocationID(location);
+			
+			assertTrue(
+				this.pipeline.ingestMessage(
+					new DataMessage(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, DataUtil.getInstance().sensorDataToJson(sd))));
+		}
+		
+		assertTrue(this.fanOutLatch.await(5, TimeUnit.SECONDS));
+		
+		for (DataMessage msg : this.fanOutMsgs) {
+			assertEquals(msg.getData().getLocationID(), msg.getPartitionKey());
+		}
+		
+		assertNotNull(this.analyzeThreads.get(locationA));
+		assertNotNull(this.analyzeThreads.get(locationB));
+		assertFalse(this.analyzeThreads.get(locationA).equals(this.analyzeThreads.get(locationB)));
+	}
+	
+	@Test
+	public void testControlLaneBypassesBlockedTelemetry() throws Exception
+	{
+		CountDownLatch releaseLatch = new CountDownLatch(1);
+		CountDownLatch controlLatch = new CountDownLatch(1);
+		
+		DataMessagePipeline blockedPipeline =
+			new DataMessagePipeline(
+				msg -> {
+					if (! msg.getResource().isControlResource()) {
+						try { releaseLatch.await(); } catch (InterruptedException e) { }
+					}
+					
+					return true;
+				},
+				msg -> { if (msg.getResource().isControlResource()) controlLatch.countDown(); return false; });
+		
+		blockedPipeline.startPipeline();
+		
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertTrue(blockedPipeline.ingestMessage(new DataMessage(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, new SensorData())));
+			}
+			
+			ActuatorData ad = new ActuatorData();
+			ad.setCommand(ConfigConst.ON_COMMAND);
+			
+			assertTrue(blockedPipeline.ingestMessage(new DataMessage(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, ad)));
+			
+			// telemetry is still blocked in the analyze stage
+			assertTrue(controlLatch.await(5, TimeUnit.SECONDS));
+			assertEquals(1, blockedPipeline.getControlStages().get(2).getProcessedCount());
+		} finally {
+			releaseLatch.countDown();
+			blockedPipeline.stopPipeline();
+		}
+	}
+	
+}
@@ -0,0 +1,122 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part02.integration.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigSnapshot;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.pipeline.BackpressurePolicyEnum;
+import programmingtheiot.gda.pipeline.DataMessage;
+import programmingtheiot.gda.pipeline.IngestController;
+
+/**
+ * This test case class contains very basic tests for
+ * IngestController. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class IngestControllerTest
+{
+	// static
+	
+	private static final int QUEUE_SIZE = 4;
+	
+	
+	// member var's
+	
+	private IngestController ingestController = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		HierarchicalINIConfiguration config = new HierarchicalINIConfiguration();
+		
+		config.load(new StringReader(
+			"[" + ConfigConst.INGEST_GATEWAY_SERVICE + "]\n" +
+			ConfigConst.QUEUE_SIZE_KEY + " = " + QUEUE_SIZE + "\n" +
+			ConfigConst.DEFAULT_POLICY_KEY + " = DROP_NEWEST\n" +
+			ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.name() + " = DROP_OLDEST\n"));
+		
+		this.ingestController = new IngestController();
+		this.ingestController.onConfigUpdate(
+			ConfigConst.INGEST_GATEWAY_SERVICE, Collections.emptySet(), new ConfigSnapshot(config));
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testDropNewest()
+	{
+		ResourceNameEnum resource = ResourceNameEnum.CDA_SYSTEM_PERF_MSG_RESOURCE;
+		
+		assertEquals(BackpressurePolicyEnum.DROP_NEWEST, this.ingestController.getPolicy(resource));
+		
+		for (int i = 0; i < QUEUE_SIZE; i++) {
+			assertTrue(this.ingestController.admitMessage(new DataMessage(resource, "{}")));
+		}
+		
+		assertFalse(this.ingestController.admitMessage(new DataMessage(resource, "{}")));
+		assertEquals(QUEUE_SIZE, this.ingestController.getAcceptedCount(resource));
+		assertEquals(1, this.ingestController.getDroppedCount(resource));
+		assertEquals(QUEUE_SIZE, this.ingestController.getWaitingCount(resource));
+	}
+	
+	@Test
+	public void testDropOldest()
+	{
+		ResourceNameEnum resource = ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE;
+		List<DataMessage> msgs = new ArrayList<>();
+		
+		assertEquals(BackpressurePolicyEnum.DROP_OLDEST, this.ingestController.getPolicy(resource));
+		
+		for (int i = 0; i < QUEUE_SIZE + 2; i++) {
+			DataMessage msg = new DataMessage(resource, new SensorData());
+			
+			msgs.add(msg);
+			assertTrue(this.ingestController.admitMessage(msg));
+		}
+		
+		assertTrue(msgs.get(0).isCancelled());
+		assertTrue(msgs.get(1).isCancelled());
+		assertFalse(msgs.get(2).isCancelled());
+		assertEquals(2, this.ingestController.getDroppedCount(resource));
+		assertEquals(QUEUE_SIZE, this.ingestController.getWaitingCount(resource));
+	}
+	
+	@Test
+	public void testActuatorCommandsAreNeverDropped()
+	{
+		ResourceNameEnum resource = ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE;
+		
+		for (int i = 0; i < QUEUE_SIZE * 4; i++) {
+			assertTrue(this.ingestController.admitMessage(new DataMessage(resource, "{}")));
+		}
+		
+		assertEquals(0, this.ingestController.getDroppedCount(resource));
+	}
+	
+}
@@ -0,0 +1,144 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part02.integration.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import programmingtheiot.gda.pipeline.PartitionedExecutor;
+
+/**
+ * This test case class contains very basic tests for
+ * PartitionedExecutor. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class PartitionedExecutorTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(PartitionedExecutorTest.class.getName());
+	
+	public static final int PARTITION_COUNT = 4;
+	public static final int DEVICE_COUNT    = 8;
+	public static final int TASKS_PER_DEVICE = 500;
+	
+	
+	// test methods
+	
+	@Test
+	public void testPerKeyOrdering() throws Exception
+	{
+		PartitionedExecutor executor = new PartitionedExecutor("Test", PARTITION_COUNT, 64);
+		Map<String, List<Integer>> results = new ConcurrentHashMap<>();
+		CountDownLatch latch = new CountDownLatch(DEVICE_COUNT * TASKS_PER_DEVICE);
+		
+		executor.startExecutor();
+		
+		for (int i = 0; i < TASKS_PER_DEVICE; i++) {
+			for (int d = 0; d < DEVICE_COUNT; d++) {
+				String key = "device" + d;
+				int    seq = i;
+				
+				executor.execute(key, () -> {
+					results.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(seq);
+					latch.countDown();
+				});
+			}
+		}
+		
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		
+		for (List<Integer> seqList : results.values()) {
+			for (int i = 0; i < TASKS_PER_DEVICE; i++) {
+				assertEquals(i, seqList.get(i).intValue());
+			}
+		}
+		
+		double skew = executor.getPartitionSkew();
+		_Logger.info("Partition skew: " + skew);
+		
+		assertTrue(skew >= 1.0 && skew <= PARTITION_COUNT);
+		assertEquals(0, executor.stopExecutor());
+	}
+	
+	@Test
+	public void testSingleKeySkew() throws Exception
+	{
+		PartitionedExecutor executor = new PartitionedExecutor("Test", PARTITION_COUNT, 64);
+		CountDownLatch latch = new CountDownLatch(10);
+		
+		executor.startExecutor();
+		
+		for (int i = 0; i < 10; i++) {
+			assertTrue(executor.submit("device0", latch::countDown));
+		}
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		
+		while (! executor.isIdle()) {
+			Thread.sleep(10L);
+		}
+		
+		assertEquals(PARTITION_COUNT, executor.getPartitionSkew(), 0.001);
+		
+		executor.stopExecutor();
+	}
+	
+	@Test
+	public void testSubmitTimesOutWhenFull() throws Exception
+	{
+		PartitionedExecutor executor = new PartitionedExecutor("Test", 1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		
+		executor.startExecutor();
+		
+		// one task blocks the worker, the next fills the queue
+		assertTrue(executor.submit("device0", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		
+		assertFalse(executor.isIdle());
+		
+		while (! executor.submit("device0", () -> {})) {
+			Thread.sleep(1L);
+		}
+		
+		long startMillis = System.currentTimeMillis();
+		
+		assertFalse(executor.submit("device0", () -> {}, 100L));
+		assertTrue(System.currentTimeMillis() - startMillis >= 90L);
+		
+		release.countDown();
+		
+		while (! executor.isIdle()) {
+			Thread.sleep(10L);
+		}
+		
+		assertEquals(0, executor.getQueueSize());
+		assertEquals(0, executor.stopExecutor());
+	}
+	
+}
@@ -0,0 +1,198 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part02.integration.rules;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.configuration.HierarchicalINIConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigSnapshot;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.rules.ActuationRuleEngine;
+
+/**
+ * This test case class contains very basic tests for
+ * ActuationRuleEngine. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class ActuationRuleEngineTest
+{
+	// static
+	
+	private static final String RULES_CONFIG =
+		"[" + ConfigConst.RULES_GATEWAY_SERVICE + "]\n" +
+		"enableRules = True\n" +
+		"[Rule.TempHvac]\n" +
+		"sensorType = " + ConfigConst.TEMP_SENSOR_TYPE + "\n" +
+		"onValue = 26.0\n" +
+		"offValue = 23.0\n" +
+		"actuatorType = " + ConfigConst.HVAC_ACTUATOR_TYPE + "\n" +
+		"actuatorValue = 22.0\n" +
+		"[Rule.HumidityAverage]\n" +
+		"sensorType = " + ConfigConst.HUMIDITY_SENSOR_TYPE + "\n" +
+		"trigger = WINDOWED_AVERAGE\n" +
+		"windowSize = 3\n" +
+		"onValue = 30.0\n" +
+		"offValue = 35.0\n" +
+		"actuatorType = " + ConfigConst.HUMIDIFIER_ACTUATOR_TYPE + "\n" +
+		"[Rule.PressureRate]\n" +
+		"sensorType = " + ConfigConst.PRESSURE_SENSOR_TYPE + "\n" +
+		"trigger = RATE_OF_CHANGE\n" +
+		"onValue = 5.0\n" +
+		"offValue = 1.0\n" +
+		"actuatorType = " + ConfigConst.LED_ACTUATOR_TYPE + "\n" +
+		"[Rule.Invalid]\n" +
+		"sensorType = " + ConfigConst.TEMP_SENSOR_TYPE + "\n";
+	
+	
+	// member var's
+	
+	private List<ActuatorData> commands = new CopyOnWriteArrayList<>();
+	
+	private ActuationRuleEngine ruleEngine = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.ruleEngine = new ActuationRuleEngine();
+		this.ruleEngine.setActuatorDataListener(data -> this.commands.add(data));
+		
+		assertEquals(3, this.ruleEngine.loadRules(createSnapshot(RULES_CONFIG)));
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testThresholdWithHysteresis()
+	{
+		assertEquals(1, this.ruleEngine.getRules(ConfigConst.TEMP_SENSOR_TYPE).size());
+		
+		float[] values = { 24.0f, 26.5f, 27.0f, 24.0f, 22.9f, 23.5f };
+		
+		for (float value : values) {
+			this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.TEMP_SENSOR_TYPE, value, 0L));
+		}
+		
+		// ON at 26.5, no repeat at 27.0 or inside the band, OFF at 22.9
+		assertEquals(2, this.commands.size());
+		assertEquals(ConfigConst.ON_COMMAND, this.commands.get(0).getCommand());
+		assertEquals(22.0f, this.commands.get(0).getValue(), 0.001f);
+		assertEquals(ConfigConst.HVAC_ACTUATOR_TYPE, this.commands.get(0).getTypeID());
+		assertEquals(ConfigConst.OFF_COMMAND, this.commands.get(1).getCommand());
+	}
+	
+	@Test
+	public void testWindowedAverage()
+	{
+		// falling values activate, as onValue < offValue
+		float[] values = { 20.0f, 40.0f, 40.0f, 10.0f, 40.0f };
+		
+		for (float value : values) {
+			this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.HUMIDITY_SENSOR_TYPE, value, 0L));
+		}
+		
+		// averages: -, -, 33.3, 30.0 (ON), 30.0
+		assertEquals(1, this.commands.size());
+		assertEquals(ConfigConst.ON_COMMAND, this.commands.get(0).getCommand());
+		assertEquals(30.0f, this.commands.get(0).getValue(), 0.001f);
+	}
+	
+	@Test
+	public void testRateOfChange()
+	{
+		this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.PRESSURE_SENSOR_TYPE, 100.0f, 1000L));
+		this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.PRESSURE_SENSOR_TYPE, 103.0f, 2000L));
+		
+		assertTrue(this.commands.isEmpty());
+		
+		this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.PRESSURE_SENSOR_TYPE, 106.0f, 2500L));
+		
+		assertEquals(1, this.commands.size());
+		
+		this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.PRESSURE_SENSOR_TYPE, 106.5f, 3500L));
+		
+		assertEquals(2, this.commands.size());
+		assertEquals(ConfigConst.OFF_COMMAND, this.commands.get(1).getCommand());
+	}
+	
+	@Test
+	public void testReloadKeepsStateOrSwitchesOff() throws Exception
+	{
+		this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.TEMP_SENSOR_TYPE, 27.0f, 0L));
+		
+		assertEquals(1, this.commands.size());
+		
+		// unchanged: the rule stays active, so no repeated ON and no OFF
+		this.ruleEngine.loadRules(createSnapshot(RULES_CONFIG));
+		this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.TEMP_SENSOR_TYPE, 27.0f, 0L));
+		
+		assertEquals(1, this.commands.size());
+		assertTrue(this.ruleEngine.getRules(ConfigConst.TEMP_SENSOR_TYPE).get(0).isActive("constraineddevice001"));
+		
+		// removed: the active device is switched off
+		this.ruleEngine.loadRules(createSnapshot(RULES_CONFIG.replace("[Rule.TempHvac]", "[Unused.TempHvac]")));
+		
+		assertEquals(2, this.commands.size());
+		assertEquals(ConfigConst.OFF_COMMAND, this.commands.get(1).getCommand());
+		assertEquals(ConfigConst.HVAC_ACTUATOR_TYPE, this.commands.get(1).getTypeID());
+		assertEquals("constraineddevice001", this.commands.get(1).getLocationID());
+		assertEquals(0, this.ruleEngine.getRules(ConfigConst.TEMP_SENSOR_TYPE).size());
+	}
+	
+	@Test
+	public void testUnmatchedType()
+	{
+		assertEquals(0, this.ruleEngine.evaluateSensorData(createSensorData(ConfigConst.CAMERA_SENSOR_TYPE, 99.0f, 0L)));
+		assertEquals(0, this.ruleEngine.evaluateSensorData(createSensorData(-1, 99.0f, 0L)));
+	}
+	
+	
+	// private methods
+	
+	private ConfigSnapshot createSnapshot(String configData) throws Exception
+	{
+		HierarchicalINIConfiguration config = new HierarchicalINIConfiguration();
+		config.load(new StringReader(configData));
+		
+		return new ConfigSnapshot(config);
+	}
+	
+	private SensorData createSensorData(int typeID, float value, long timeStampMillis)
+	{
+		if (timeStampMillis > 0L) {
+			// the time stamp can only be set by decoding
+			return DataUtil.getInstance().jsonToSensorData(
+				"{\"typeID\":" + typeID + ",\"value\":" + value + ",\"locationID\":\"constraineddevice001\"" +
+				",\"timeStampMillis\":" + timeStampMillis + "}");
+		}
+		
+		SensorData sd = new SensorData(typeID);
+		sd.setLocationID("constraineddevice001");
+		sd.setValue(value);
+		
+		return sd;
+	}
+	
+}
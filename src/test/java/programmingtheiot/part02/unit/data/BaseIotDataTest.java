@@ -10,6 +10,8 @@ package programmingtheiot.part02.unit.data;
 
 import static org.junit.Assert.*;
 
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.util.logging.Logger;
 
 import org.junit.After;
@@ -19,6 +21,8 @@ import org.junit.Test;
 import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
 import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
 
 /**
  * This test case class contains very basic unit tests for
@@ -107,6 +111,25 @@ public class BaseIotDataTest
 		assertEquals(td.getStatusCode(), DEFAULT_STATUS_CODE);
 	}
 	
+	@Test
+	public void testTimeStampFormat()
+	{
+		TestIotData td = new TestIotData();
+		
+		assertEquals(td.getTimeStampMillis(), Instant.parse(td.getTimeStamp()).toEpochMilli());
+		assertSame(td.getTimeStamp(), td.getTimeStamp());
+		
+		long[] millisList =
+			{ 0L, 1L, 999L, 1000L, 951782400000L, 1608999210000L, 1609459199999L, 4102444800123L, 253402300799999L, 253402300800000L };
+		
+		for (long millis : millisList) {
+			String jsonData = "{\"" + ConfigConst.TIMESTAMP_MILLIS_PROP + "\":" + millis + "}";
+			SensorData sd = DataUtil.getInstance().jsonToSensorData(jsonData);
+			
+			assertEquals(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(millis)), sd.getTimeStamp());
+		}
+	}
+	
 	
 	// private
 	
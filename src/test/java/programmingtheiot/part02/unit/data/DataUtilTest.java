@@ -10,10 +10,16 @@ package programmingtheiot.part02.unit.data;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.junit.Test;
 
+import programmingtheiot.common.DataFormatEnum;
 import programmingtheiot.data.*;
 
 /**
@@ -135,4 +141,252 @@ public class DataUtilTest
 		assertTrue(data.getCommand() == data2.getCommand());
 	}
 	
+	@Test
+	public void testSensorDataToJsonBytesAndBack()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		SensorData data = new SensorData();
+		data.setName(DEFAULT_NAME);
+		data.setLocationID(DEFAULT_LOCATION);
+		data.setStatusCode(DEFAULT_STATUS);
+		data.setValue(DEFAULT_VAL);
+		
+		byte[] jsonBytes = dataUtil.sensorDataToJsonBytes(data);
+		
+		assertNotNull(jsonBytes);
+		assertEquals(dataUtil.sensorDataToJson(data), new String(jsonBytes, StandardCharsets.UTF_8));
+		
+		SensorData data2 = dataUtil.jsonToSensorData(jsonBytes);
+		
+		assertEquals(data.getName(), data2.getName());
+		assertEquals(data.getLocationID(), data2.getLocationID());
+		assertEquals(data.getTimeStampMillis(), data2.getTimeStampMillis());
+		assertTrue(data.getStatusCode() == data2.getStatusCode());
+		assertTrue(data.getValue() == data2.getValue());
+	}
+	
+	@Test
+	public void testActuatorDataToByteBufferAndBack()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		ActuatorData data = new ActuatorData();
+		data.setName("Actuator \u00e9\u20ac\ud83d\ude00");
+		data.setCommand(DEFAULT_CMD);
+		data.setValue(DEFAULT_VAL);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		
+		int len = dataUtil.actuatorDataToJson(data, buffer);
+		
+		assertTrue(len > 0);
+		assertEquals(len, buffer.position());
+		
+		buffer.flip();
+		
+		ActuatorData data2 = dataUtil.jsonToActuatorData(buffer);
+		
+		assertEquals(0, buffer.position());
+		assertEquals(data.getName(), data2.getName());
+		assertTrue(data.getCommand() == data2.getCommand());
+		assertTrue(data.getValue() == data2.getValue());
+		
+		assertEquals(-1, dataUtil.actuatorDataToJson(data, ByteBuffer.allocate(8)));
+	}
+	
+	@Test
+	public void testMalformedJsonReturnsNull()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		assertNull(dataUtil.jsonToSensorData("{\"value\": "));
+		assertNull(dataUtil.jsonToSensorData("{\"value\": \"abc\"}".getBytes()));
+	}
+	
+	@Test
+	public void testSensorDataToCborAndBack()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		SensorData data = new SensorData();
+		data.setName(DEFAULT_NAME);
+		data.setLocationID(DEFAULT_LOCATION);
+		data.setStatusCode(DEFAULT_STATUS);
+		data.setValue(DEFAULT_VAL);
+		
+		byte[] cborData  = dataUtil.sensorDataToCbor(data);
+		byte[] jsonBytes = dataUtil.sensorDataToJsonBytes(data);
+		
+		assertNotNull(cborData);
+		assertTrue(cborData.length < jsonBytes.length / 2);
+		
+		_Logger.info("SensorData size. JSON: " + jsonBytes.length + ", CBOR: " + cborData.length);
+		
+		SensorData data2 = dataUtil.cborToSensorData(cborData);
+		
+		assertEquals(data.getName(), data2.getName());
+		assertEquals(data.getLocationID(), data2.getLocationID());
+		assertEquals(data.getTimeStampMillis(), data2.getTimeStampMillis());
+		assertTrue(data.getStatusCode() == data2.getStatusCode());
+		assertTrue(data.getValue() == data2.getValue());
+	}
+	
+	@Test
+	public void testSystemStateDataToCborAndBack()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		SystemStateData data = new SystemStateData();
+		data.setCommand(DEFAULT_CMD);
+		
+		SensorData sensorData = new SensorData();
+		sensorData.setValue(DEFAULT_VAL);
+		data.addSensorData(sensorData);
+		
+		SystemPerformanceData sysPerfData = new SystemPerformanceData();
+		sysPerfData.setCpuUtilization(DEFAULT_VAL);
+		data.addSystemPerformanceData(sysPerfData);
+		
+		byte[] cborData = dataUtil.dataToBytes(data, DataFormatEnum.CBOR);
+		
+		SystemStateData data2 = dataUtil.bytesToData(cborData, SystemStateData.class, DataFormatEnum.CBOR);
+		
+		assertEquals(data.getName(), data2.getName());
+		assertTrue(data.getCommand() == data2.getCommand());
+		assertEquals(1, data2.getSensorDataList().size());
+		assertEquals(1, data2.getSystemPerformanceDataList().size());
+		assertTrue(data2.getSensorDataList().get(0).getValue() == DEFAULT_VAL);
+		assertTrue(data2.getSystemPerformanceDataList().get(0).getCpuUtilization() == DEFAULT_VAL);
+	}
+	
+	@Test
+	public void testMalformedCborReturnsNull()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		byte[] cborData = dataUtil.sensorDataToCbor(new SensorData());
+		byte[] truncated = Arrays.copyOf(cborData, cborData.length - 3);
+		
+		assertNull(dataUtil.cborToSensorData(truncated));
+		assertNull(dataUtil.cborToSensorData(new byte[] { '{', '}' }));
+	}
+	
+	@Test
+	public void testNegativeCborLengthReturnsNull()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		byte[] ff = new byte[8];
+		Arrays.fill(ff, (byte) 0xFF);
+		
+		// map of one entry, whose key has an 8-byte length of -1
+		ByteBuffer negativeKey = ByteBuffer.allocate(12).put((byte) 0xA1).put((byte) 0x7B).put(ff);
+		
+		// map with an 8-byte entry count of -1
+		ByteBuffer negativeMap = ByteBuffer.allocate(12).put((byte) 0xBB).put(ff);
+		
+		assertNull(dataUtil.cborToSensorData(negativeKey.array()));
+		assertNull(dataUtil.cborToSensorData(negativeMap.array()));
+		assertNull(dataUtil.bytesToSensorDataBatch(negativeMap.array(), DataFormatEnum.CBOR));
+	}
+	
+	@Test
+	public void testSensorDataBatchToBytesAndBack()
+	{
+		for (DataFormatEnum format : DataFormatEnum.values()) {
+			DataUtil dataUtil = DataUtil.getInstance();
+			
+			List<SensorData> dataList = new ArrayList<>();
+			
+			for (int i = 0; i < 20; i++) {
+				SensorData data = new SensorData(i < 10 ? 1 : 3);
+				data.setName(DEFAULT_NAME + i);
+				data.setLocationID(DEFAULT_LOCATION);
+				data.setValue(DEFAULT_VAL + i);
+				
+				if (i == 5) data.setStatusCode(DEFAULT_STATUS);
+				
+				dataList.add(data);
+			}
+			
+			byte[] batchData = dataUtil.sensorDataBatchToBytes(dataList, format);
+			
+			int singleTotal = 0;
+			
+			for (SensorData data : dataList) {
+				singleTotal += dataUtil.dataToBytes(data, format).length;
+			}
+			
+			_Logger.info("SensorData x 20 (" + format + "). Single: " + singleTotal + ", batch: " + batchData.length);
+			
+			assertTrue(batchData.length < singleTotal / 2);
+			
+			List<SensorData> dataList2 = dataUtil.bytesToSensorDataBatch(batchData, format);
+			
+			assertEquals(dataList.size(), dataList2.size());
+			
+			for (int i = 0; i < dataList.size(); i++) {
+				SensorData data  = dataList.get(i);
+				SensorData data2 = dataList2.get(i);
+				
+				assertEquals(data.getName(), data2.getName());
+				assertEquals(data.getLocationID(), data2.getLocationID());
+				assertEquals(data.getTimeStampMillis(), data2.getTimeStampMillis());
+				assertEquals(data.getTypeID(), data2.getTypeID());
+				assertEquals(data.getStatusCode(), data2.getStatusCode());
+				assertTrue(data.getValue() == data2.getValue());
+			}
+		}
+	}
+	
+	@Test
+	public void testEmptyBatch()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		for (DataFormatEnum format : DataFormatEnum.values()) {
+			byte[] batchData = dataUtil.systemPerformanceDataBatchToBytes(new ArrayList<>(), format);
+			
+			assertNotNull(batchData);
+			assertTrue(dataUtil.bytesToSystemPerformanceDataBatch(batchData, format).isEmpty());
+		}
+	}
+	
+	@Test
+	public void testDecodeIntoPooledInstance()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		IotDataObjectPool<SensorData> pool = dataUtil.getSensorDataPool();
+		
+		SensorData sd = new SensorData();
+		sd.setName("TempSensor");
+		sd.setValue(21.5f);
+		
+		for (DataFormatEnum format : DataFormatEnum.values()) {
+			ByteBuffer data = ByteBuffer.wrap(dataUtil.dataToBytes(sd, format));
+			
+			SensorData target = pool.acquire();
+			String locationID = target.getLocationID();
+			
+			assertSame(target, dataUtil.bytesToSensorData(data, format, target));
+			assertEquals(21.5f, target.getValue(), 0.001f);
+			assertEquals(sd.getTimeStampMillis(), target.getTimeStampMillis());
+			assertEquals(0, data.position());
+			
+			if (format == DataFormatEnum.CBOR) {
+				assertSame(locationID, target.getLocationID());
+			}
+			
+			pool.release(target);
+			
+			assertEquals(0.0f, target.getValue(), 0.001f);
+			assertSame(target, pool.acquire());
+		}
+		
+		ActuatorData target = dataUtil.getActuatorDataPool().acquire();
+		
+		assertNull(dataUtil.bytesToActuatorData(ByteBuffer.wrap(new byte[] {0x7b}), DataFormatEnum.JSON, target));
+	}
+	
 }
@@ -11,16 +11,24 @@ package programmingtheiot.part03.integration.connection;
 
 import static org.junit.Assert.*;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
+import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.common.DefaultDataMessageListener;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
 import programmingtheiot.gda.connection.*;
 
 /**
@@ -231,4 +239,116 @@ public class MqttClientConnectorTest
 		assertTrue(this.mqttClient.disconnectClient());
 	}
 	
+	/**
+	 * Test method for {@link programmingtheiot.gda.connection.MqttClientConnector#addMessageHandler(String, java.util.function.BiPredicate)}.
+	 * Doesn't require a broker.
+	 */
+	@Test
+	public void testMessageHandlerDispatch() throws Exception
+	{
+		List<String> handled  = new ArrayList<>();
+		List<String> incoming = new ArrayList<>();
+		
+		String cmdTopic = ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE.getResourceName();
+		String msgTopic = ResourceNameEnum.CDA_MGMT_STATUS_MSG_RESOURCE.getResourceName();
+		
+		this.mqttClient.setDataMessageListener(new DefaultDataMessageListener() {
+			@Override
+			public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg)
+			{
+				return incoming.add(resourceName + ":" + msg);
+			}
+		});
+		
+		// handles commands only; everything else falls through to the listener
+		assertTrue(this.mqttClient.addMessageHandler("PIOT/+/ActuatorCmd", (topic, payload) -> handled.add(topic)));
+		assertFalse(this.mqttClient.addMessageHandler("PIOT/#/ActuatorCmd", (topic, payload) -> true));
+		
+		this.mqttClient.messageArrived(cmdTopic, new MqttMessage("on".getBytes(StandardCharsets.UTF_8)));
+		this.mqttClient.messageArrived(msgTopic, new MqttMessage("ok".getBytes(StandardCharsets.UTF_8)));
+		this.mqttClient.messageArrived("PIOT/Unknown/Topic", new MqttMessage(new byte[0]));
+		
+		_Logger.info("Handled: " + handled + ", incoming: " + incoming);
+		
+		assertEquals(List.of(cmdTopic), handled);
+		assertEquals(List.of(ResourceNameEnum.CDA_MGMT_STATUS_MSG_RESOURCE + ":ok"), incoming);
+	}
+	
+	/**
+	 * Test method for {@link programmingtheiot.gda.connection.MqttClientConnector#messageArrived(String, MqttMessage)}.
+	 * Doesn't require a broker.
+	 */
+	@Test
+	public void testCborWithoutDecoderIsDropped() throws Exception
+	{
+		List<String> incoming = new ArrayList<>();
+		
+		this.mqttClient.setDataMessageListener(new DefaultDataMessageListener() {
+			@Override
+			public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg)
+			{
+				return incoming.add(resourceName + ":" + msg);
+			}
+		});
+		
+		ResourceNameEnum resource = ResourceNameEnum.CDA_MGMT_STATUS_MSG_RESOURCE;
+		
+		this.mqttClient.messageArrived(
+			DataFormatEnum.CBOR.getTopicName(resource), new MqttMessage(new byte[] { (byte) 0xa1, 0x00, 0x01 }));
+		this.mqttClient.messageArrived(
+			resource.getResourceName(), new MqttMessage("ok".getBytes(StandardCharsets.UTF_8)));
+		
+		assertEquals(List.of(resource + ":ok"), incoming);
+	}
+	
+	/**
+	 * Test method for {@link programmingtheiot.gda.connection.MqttClientConnector#getClientID()}.
+	 * Doesn't require a broker.
+	 */
+	@Test
+	public void testClientIDPerSection()
+	{
+		MqttClientConnector cloudClient = new MqttClientConnector(ConfigConst.CLOUD_GATEWAY_SERVICE);
+		MqttClientConnector poolClient  = new MqttClientConnector(ConfigConst.MQTT_GATEWAY_SERVICE, MqttConnectionPool.POOL_CLIENT_ID_SUFFIX + 1);
+		
+		_Logger.info("Client IDs: " + this.mqttClient.getClientID() + ", " + cloudClient.getClientID() + ", " + poolClient.getClientID());
+		
+		// sections sharing a broker mustn't take over each other's session
+		assertFalse(this.mqttClient.getClientID().equals(cloudClient.getClientID()));
+		assertEquals(this.mqttClient.getClientID() + MqttConnectionPool.POOL_CLIENT_ID_SUFFIX + 1, poolClient.getClientID());
+		
+		cloudClient.disconnectClient();
+		poolClient.disconnectClient();
+	}
+	
+	@Test
+	public void testSensorDataBatchDispatch() throws Exception
+	{
+		List<Float> values = new ArrayList<>();
+		
+		this.mqttClient.setDataMessageListener(new DefaultDataMessageListener() {
+			@Override
+			public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
+			{
+				return values.add(data.getValue());
+			}
+		});
+		
+		List<SensorData> batch = new ArrayList<>();
+		
+		for (int i = 0; i < 3; i++) {
+			SensorData data = new SensorData(ConfigConst.TEMP_SENSOR_TYPE);
+			data.setValue(20.0f + i);
+			batch.add(data);
+		}
+		
+		String topic =
+			DataFormatEnum.CBOR.getTopicName(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE) + ConfigConst.BATCH_TOPIC_SUFFIX;
+		
+		this.mqttClient.messageArrived(
+			topic, new MqttMessage(DataUtil.getInstance().sensorDataBatchToBytes(batch, DataFormatEnum.CBOR)));
+		
+		assertEquals(List.of(20.0f, 21.0f, 22.0f), values);
+	}
+	
 }
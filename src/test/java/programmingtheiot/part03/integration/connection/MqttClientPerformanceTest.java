@@ -11,6 +11,8 @@ package programmingtheiot.part03.integration.connection;
 
 import static org.junit.Assert.*;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 import org.junit.After;
@@ -111,6 +113,24 @@ public class MqttClientPerformanceTest
 		execTestPublish(MAX_TEST_RUNS, 2);
 	}
 	
+	/**
+	 * Test method for {@link programmingtheiot.gda.connection.MqttClientConnector#publishMessageAsync(programmingtheiot.common.ResourceNameEnum, byte[], int)}.
+	 */
+	@Test
+	public void testPublishAsyncQoS1()
+	{
+		execTestPublishAsync(MAX_TEST_RUNS, 1);
+	}
+	
+	/**
+	 * Test method for {@link programmingtheiot.gda.connection.MqttClientConnector#publishMessageAsync(programmingtheiot.common.ResourceNameEnum, byte[], int)}.
+	 */
+	@Test
+	public void testPublishAsyncQoS2()
+	{
+		execTestPublishAsync(MAX_TEST_RUNS, 2);
+	}
+	
 	// private methods
 	
 	/**
@@ -146,4 +166,49 @@ public class MqttClientPerformanceTest
 		_Logger.info(msg);
 	}
 	
+	/**
+	 * Publishes without waiting for each round trip (up to the in-flight
+	 * window), then waits for all messages to be acknowledged.
+	 * 
+	 * @param maxTestRuns
+	 * @param qos
+	 */
+	private void execTestPublishAsync(int maxTestRuns, int qos)
+	{
+		assertTrue(this.mqttClient.connectClient());
+		
+		SensorData sensorData = new SensorData();
+		
+		byte[] payload = DataUtil.getInstance().sensorDataToJson(sensorData).getBytes(StandardCharsets.UTF_8);
+		
+		@SuppressWarnings("unchecked")
+		CompletableFuture<Boolean>[] futures = new CompletableFuture[maxTestRuns];
+		
+		long startMillis = System.currentTimeMillis();
+		
+		for (int sequenceNo = 0; sequenceNo < maxTestRuns; sequenceNo++) {
+			futures[sequenceNo] =
+				this.mqttClient.publishMessageAsync(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, payload, qos);
+		}
+		
+		CompletableFuture.allOf(futures).join();
+		
+		long endMillis = System.currentTimeMillis();
+		long elapsedMillis = endMillis - startMillis;
+		
+		for (CompletableFuture<Boolean> future : futures) {
+			assertTrue(future.join());
+		}
+		
+		assertTrue(this.mqttClient.disconnectClient());
+		
+		String msg =
+			String.format(
+				"\\n\\tTesting Async Publish: QoS = %s | msgs = %s | payload size = %s | start = %s | end = %s | elapsed = %s",
+				qos, maxTestRuns, payload.length,
+				(float) startMillis / 1000, (float) endMillis / 1000, (float) elapsedMillis / 1000);
+		
+		_Logger.info(msg);
+	}
+	
 }
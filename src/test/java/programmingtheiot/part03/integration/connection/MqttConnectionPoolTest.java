@@ -0,0 +1,159 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.part03.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.gda.connection.MqttClientConnector;
+import programmingtheiot.gda.connection.MqttConnectionPool;
+
+/**
+ * This test case class contains very basic tests for
+ * MqttConnectionPool. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ * 
+ * The publish tests require a running MQTT broker.
+ * 
+ */
+public class MqttConnectionPoolTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(MqttConnectionPoolTest.class.getName());
+	
+	public static final int MAX_TEST_RUNS = 10000;
+	public static final int POOL_SIZE     = 4;
+	public static final int TOPIC_COUNT   = 16;
+	
+	private static final String TOPIC_PREFIX = "PIOT/PoolTest/Topic";
+	
+	
+	// test methods
+	
+	@Test
+	public void testTopicRouting()
+	{
+		ConfigUtil.getInstance();
+		
+		MqttConnectionPool pool = new MqttConnectionPool(ConfigConst.MQTT_GATEWAY_SERVICE, POOL_SIZE);
+		MqttClientConnector first = pool.getConnections().get(0);
+		
+		assertEquals(POOL_SIZE, pool.getConnections().size());
+		
+		Set<String> clientIDs = new HashSet<>();
+		Set<MqttClientConnector> usedConnections = new HashSet<>();
+		
+		for (MqttClientConnector conn : pool.getConnections()) {
+			clientIDs.add(conn.getClientID());
+		}
+		
+		assertEquals(POOL_SIZE, clientIDs.size());
+		
+		for (int i = 0; i < 100; i++) {
+			String topic = TOPIC_PREFIX + i;
+			
+			// always the same connection for a topic
+			assertSame(pool.getConnection(topic), pool.getConnection(topic));
+			
+			usedConnections.add(pool.getConnection(topic));
+		}
+		
+		assertEquals(POOL_SIZE, usedConnections.size());
+		
+		for (ResourceNameEnum resource : ResourceNameEnum.values()) {
+			if (resource.isControlResource()) {
+				assertSame(first, pool.getConnection(resource));
+			} else {
+				assertSame(pool.getConnection(resource.getResourceName()), pool.getConnection(resource));
+			}
+		}
+	}
+	
+	@Test
+	public void testPublishSingleConnection() throws Exception
+	{
+		execTestPublish(1, 1);
+	}
+	
+	@Test
+	public void testPublishPooledConnections() throws Exception
+	{
+		execTestPublish(POOL_SIZE, 1);
+	}
+	
+	
+	// private methods
+	
+	/**
+	 * Publishes MAX_TEST_RUNS messages over TOPIC_COUNT topics, with one
+	 * thread per topic.
+	 * 
+	 */
+	private void execTestPublish(int poolSize, int qos) throws Exception
+	{
+		MqttConnectionPool pool = new MqttConnectionPool(ConfigConst.MQTT_GATEWAY_SERVICE, poolSize);
+		
+		assertTrue(pool.connectClient());
+		
+		byte[] payload = "{\"name\":\"TempSensor\",\"value\":22.5}".getBytes(StandardCharsets.UTF_8);
+		int runsPerTopic = MAX_TEST_RUNS / TOPIC_COUNT;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(TOPIC_COUNT);
+		Future<?>[] results = new Future<?>[TOPIC_COUNT];
+		
+		long startMillis = System.currentTimeMillis();
+		
+		for (int i = 0; i < TOPIC_COUNT; i++) {
+			final String topic = TOPIC_PREFIX + i;
+			
+			results[i] = executor.submit(() -> {
+				for (int j = 0; j < runsPerTopic; j++) {
+					assertTrue(pool.publishMessage(topic, payload, qos));
+				}
+				
+				return null;
+			});
+		}
+		
+		for (Future<?> result : results) {
+			result.get();
+		}
+		
+		long endMillis = System.currentTimeMillis();
+		long elapsedMillis = Math.max(1L, endMillis - startMillis);
+		
+		executor.shutdown();
+		
+		assertTrue(pool.disconnectClient());
+		assertEquals(0L, pool.getPublishFailedCount());
+		
+		_Logger.info(
+			"\n\tTesting pooled publish: connections = " + poolSize + " | QoS = " + qos +
+			"\n\tMessage count: " + (runsPerTopic * TOPIC_COUNT) + " (" + TOPIC_COUNT + " topics / threads)" +
+			"\n\tElapsed time: " + elapsedMillis + " ms" +
+			"\n\tThroughput: " + (runsPerTopic * TOPIC_COUNT * 1000L / elapsedMillis) + " msgs/sec");
+	}
+	
+}
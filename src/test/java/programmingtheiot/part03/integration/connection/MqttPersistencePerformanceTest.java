@@ -0,0 +1,204 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.part03.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.SegmentedLogPersistence;
+
+/**
+ * This test case class contains very basic performance tests for
+ * the MQTT client persistence options. It should not be considered
+ * complete, but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ * 
+ * Each test stores and then removes MAX_TEST_RUNS messages, as Paho
+ * does for a QoS 1 publish and its PUBACK, from THREAD_COUNT threads.
+ * 
+ */
+public class MqttPersistencePerformanceTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(MqttPersistencePerformanceTest.class.getName());
+	
+	public static final int MAX_TEST_RUNS = 2000;
+	public static final int THREAD_COUNT  = 4;
+	
+	private static final String CLIENT_ID  = "gatewaydevice001";
+	private static final String SERVER_URI = "tcp://localhost:1883";
+	
+	
+	// member var's
+	
+	private Path tempDir = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.tempDir = Files.createTempDirectory("mqttstore");
+	}
+	
+	@After
+	public void tearDown() throws Exception
+	{
+		try (Stream<Path> paths = Files.walk(this.tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testMemoryPersistence() throws Exception
+	{
+		execTestPersistence(new MemoryPersistence());
+	}
+	
+	@Test
+	public void testDefaultFilePersistence() throws Exception
+	{
+		execTestPersistence(new MqttDefaultFilePersistence(this.tempDir.toString()));
+	}
+	
+	@Test
+	public void testSegmentedLogPersistence() throws Exception
+	{
+		execTestPersistence(new SegmentedLogPersistence(this.tempDir.toString()));
+	}
+	
+	
+	// private methods
+	
+	private void execTestPersistence(MqttClientPersistence persistence) throws Exception
+	{
+		persistence.open(CLIENT_ID, SERVER_URI);
+		
+		byte[] payload = "{\"name\":\"TempSensor\",\"value\":22.5}".getBytes(StandardCharsets.UTF_8);
+		int runsPerThread = MAX_TEST_RUNS / THREAD_COUNT;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		Future<?>[] results = new Future<?>[THREAD_COUNT];
+		
+		long startMillis = System.currentTimeMillis();
+		
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			final int threadId = i;
+			
+			results[i] = executor.submit(() -> {
+				for (int j = 0; j < runsPerThread; j++) {
+					String key = "s-" + (threadId * runsPerThread + j);
+					
+					persistence.put(key, new TestPersistable(payload));
+					persistence.remove(key);
+				}
+				
+				return null;
+			});
+		}
+		
+		for (Future<?> result : results) {
+			result.get();
+		}
+		
+		long endMillis = System.currentTimeMillis();
+		long elapsedMillis = Math.max(1L, endMillis - startMillis);
+		
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		
+		assertFalse(persistence.keys().hasMoreElements());
+		
+		persistence.close();
+		
+		_Logger.info(
+			"\n\tTesting persistence: " + persistence.getClass().getSimpleName() +
+			"\n\tMessage count: " + MAX_TEST_RUNS + " (" + THREAD_COUNT + " threads)" +
+			"\n\tElapsed time: " + elapsedMillis + " ms" +
+			"\n\tThroughput: " + (MAX_TEST_RUNS * 1000L / elapsedMillis) + " msgs/sec");
+	}
+	
+	
+	// private classes
+	
+	private static class TestPersistable implements MqttPersistable
+	{
+		private static final byte[] HEADER = { 0x32, 0x2A, 0x00, 0x10 };
+		
+		private final byte[] payload;
+		
+		TestPersistable(byte[] payload)
+		{
+			this.payload = payload;
+		}
+		
+		@Override
+		public byte[] getHeaderBytes()
+		{
+			return HEADER;
+		}
+		
+		@Override
+		public int getHeaderLength()
+		{
+			return HEADER.length;
+		}
+		
+		@Override
+		public int getHeaderOffset()
+		{
+			return 0;
+		}
+		
+		@Override
+		public byte[] getPayloadBytes()
+		{
+			return this.payload;
+		}
+		
+		@Override
+		public int getPayloadLength()
+		{
+			return this.payload.length;
+		}
+		
+		@Override
+		public int getPayloadOffset()
+		{
+			return 0;
+		}
+	}
+	
+}
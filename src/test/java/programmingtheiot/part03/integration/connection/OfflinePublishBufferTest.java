@@ -0,0 +1,165 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.part03.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.gda.cloud.DiskSpool;
+import programmingtheiot.gda.connection.OfflinePublishBuffer;
+
+/**
+ * This test case class contains very basic tests for
+ * OfflinePublishBuffer. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ * 
+ */
+public class OfflinePublishBufferTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(OfflinePublishBufferTest.class.getName());
+	
+	private static final String TOPIC = "PIOT/GatewayDevice/SensorMsg";
+	
+	
+	// member var's
+	
+	private Path tempDir = null;
+	
+	private List<String>  sentPayloads = null;
+	private List<Integer> sentQos      = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.tempDir = Files.createTempDirectory("offlinebuffer");
+		
+		this.sentPayloads = new ArrayList<>();
+		this.sentQos      = new ArrayList<>();
+	}
+	
+	@After
+	public void tearDown() throws Exception
+	{
+		try (Stream<Path> paths = Files.walk(this.tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testMemoryBufferDropsOldest()
+	{
+		OfflinePublishBuffer buffer = new OfflinePublishBuffer(3);
+		
+		for (int i = 1; i <= 5; i++) {
+			assertTrue(buffer.append(TOPIC, toBytes("msg" + i), 1));
+		}
+		
+		_Logger.info("Memory buffer: " + buffer);
+		
+		assertFalse(buffer.isDurable());
+		assertEquals(3, buffer.getPendingCount());
+		assertEquals(5, buffer.getBufferedCount());
+		assertEquals(2, buffer.getDroppedCount());
+		
+		assertEquals(3, buffer.drain(10, this::send));
+		assertEquals(List.of("msg3", "msg4", "msg5"), this.sentPayloads);
+		assertTrue(buffer.isEmpty());
+	}
+	
+	@Test
+	public void testDrainStopsWhenNotSent()
+	{
+		OfflinePublishBuffer buffer = new OfflinePublishBuffer(OfflinePublishBuffer.DEFAULT_MAX_MESSAGES);
+		
+		for (int i = 1; i <= 5; i++) {
+			buffer.append(TOPIC, toBytes("msg" + i), 0);
+		}
+		
+		// rate limited: only two per call
+		assertEquals(2, buffer.drain(2, this::send));
+		assertEquals(3, buffer.getPendingCount());
+		
+		// the sender refuses (e.g. no free window): nothing is removed
+		assertEquals(0, buffer.drain(10, (topic, payload, qos) -> false));
+		assertEquals(3, buffer.getPendingCount());
+		
+		assertEquals(3, buffer.drain(10, this::send));
+		assertEquals(List.of("msg1", "msg2", "msg3", "msg4", "msg5"), this.sentPayloads);
+	}
+	
+	@Test
+	public void testDiskBufferKeepsQosAcrossRestart()
+	{
+		File dir = this.tempDir.toFile();
+		
+		OfflinePublishBuffer buffer = new OfflinePublishBuffer(createSpool(dir));
+		
+		assertTrue(buffer.isDurable());
+		
+		buffer.append(TOPIC, toBytes("msg1"), 0);
+		buffer.append(TOPIC, toBytes("msg2"), 2);
+		buffer.close();
+		
+		OfflinePublishBuffer reopened = new OfflinePublishBuffer(createSpool(dir));
+		
+		assertEquals(2, reopened.getPendingCount());
+		assertEquals(2, reopened.drain(10, this::send));
+		assertEquals(List.of("msg1", "msg2"), this.sentPayloads);
+		assertEquals(List.of(0, 2), this.sentQos);
+		
+		reopened.close();
+	}
+	
+	
+	// private methods
+	
+	private DiskSpool createSpool(File dir)
+	{
+		return new DiskSpool(dir, DiskSpool.DEFAULT_SEGMENT_BYTES, DiskSpool.DEFAULT_MAX_BYTES, DiskSpool.DEFAULT_MAX_AGE_MILLIS);
+	}
+	
+	private boolean send(String topic, byte[] payload, int qos)
+	{
+		assertEquals(TOPIC, topic);
+		
+		this.sentQos.add(qos);
+		
+		return this.sentPayloads.add(new String(payload, StandardCharsets.UTF_8));
+	}
+	
+	private byte[] toBytes(String msg)
+	{
+		return msg.getBytes(StandardCharsets.UTF_8);
+	}
+	
+}
@@ -0,0 +1,240 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.part03.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.SegmentedLogPersistence;
+
+/**
+ * This test case class contains very basic tests for
+ * SegmentedLogPersistence. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ * 
+ */
+public class SegmentedLogPersistenceTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(SegmentedLogPersistenceTest.class.getName());
+	
+	private static final String CLIENT_ID  = "gatewaydevice001";
+	private static final String SERVER_URI = "tcp://localhost:1883";
+	
+	
+	// member var's
+	
+	private Path tempDir = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.tempDir = Files.createTempDirectory("mqttstore");
+	}
+	
+	@After
+	public void tearDown() throws Exception
+	{
+		try (Stream<Path> paths = Files.walk(this.tempDir)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testPutGetRemove() throws Exception
+	{
+		SegmentedLogPersistence persistence = openPersistence(SegmentedLogPersistence.DEFAULT_SEGMENT_BYTES);
+		
+		persistence.put("s-1", new TestPersistable("header1", "payload1"));
+		persistence.put("s-2", new TestPersistable("header2", null));
+		
+		assertTrue(persistence.containsKey("s-1"));
+		assertEquals("payload1", getPayload(persistence.get("s-1")));
+		assertEquals("header2", getHeader(persistence.get("s-2")));
+		assertEquals(0, persistence.get("s-2").getPayloadLength());
+		
+		persistence.remove("s-1");
+		
+		assertFalse(persistence.containsKey("s-1"));
+		assertNull(persistence.get("s-1"));
+		assertEquals(1, Collections.list(persistence.keys()).size());
+		
+		persistence.clear();
+		
+		assertFalse(persistence.keys().hasMoreElements());
+		
+		persistence.close();
+	}
+	
+	@Test
+	public void testRecoveryAfterReopen() throws Exception
+	{
+		SegmentedLogPersistence persistence = openPersistence(SegmentedLogPersistence.DEFAULT_SEGMENT_BYTES);
+		
+		persistence.put("s-1", new TestPersistable("header1", "payload1"));
+		persistence.put("s-2", new TestPersistable("header2", "payload2"));
+		persistence.put("s-1", new TestPersistable("header1", "payload1b"));
+		persistence.remove("s-2");
+		persistence.put("s-3", new TestPersistable("header3", "payload3"));
+		
+		// simulate a crash: no close(), and a torn record at the tail
+		File segment = findSegments().get(0);
+		
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.seek(file.length());
+			file.write(new byte[] { 0, 0, 0, 100, 1, 2 });
+		}
+		
+		SegmentedLogPersistence reopened = openPersistence(SegmentedLogPersistence.DEFAULT_SEGMENT_BYTES);
+		
+		List<String> keys = Collections.list(reopened.keys());
+		Collections.sort(keys);
+		
+		assertEquals(List.of("s-1", "s-3"), keys);
+		assertEquals("payload1b", getPayload(reopened.get("s-1")));
+		assertEquals("payload3", getPayload(reopened.get("s-3")));
+		
+		reopened.close();
+	}
+	
+	@Test
+	public void testSegmentTrimming() throws Exception
+	{
+		SegmentedLogPersistence persistence = openPersistence(1024);
+		
+		// a message that's never acknowledged pins the first segment
+		persistence.put("s-0", new TestPersistable("header0", "pinned"));
+		
+		for (int i = 1; i <= 500; i++) {
+			persistence.put("s-" + i, new TestPersistable("header", "payload " + i));
+			persistence.remove("s-" + i);
+		}
+		
+		_Logger.info("Segments after 500 messages: " + persistence.getSegmentCount());
+		
+		assertTrue(persistence.getSegmentCount() <= SegmentedLogPersistence.MAX_SEGMENTS + 1);
+		assertEquals(persistence.getSegmentCount(), findSegments().size());
+		
+		persistence.close();
+		
+		SegmentedLogPersistence reopened = openPersistence(1024);
+		
+		assertEquals(List.of("s-0"), Collections.list(reopened.keys()));
+		assertEquals("pinned", getPayload(reopened.get("s-0")));
+		
+		reopened.close();
+	}
+	
+	
+	// private methods
+	
+	private SegmentedLogPersistence openPersistence(int segmentBytes) throws MqttPersistenceException
+	{
+		SegmentedLogPersistence persistence = new SegmentedLogPersistence(this.tempDir.toString(), segmentBytes);
+		persistence.open(CLIENT_ID, SERVER_URI);
+		
+		return persistence;
+	}
+	
+	private List<File> findSegments() throws Exception
+	{
+		try (Stream<Path> paths = Files.walk(this.tempDir)) {
+			return paths.filter(p -> p.toString().endsWith(".log")).map(Path::toFile).sorted().toList();
+		}
+	}
+	
+	private String getHeader(MqttPersistable data) throws MqttPersistenceException
+	{
+		return new String(data.getHeaderBytes(), data.getHeaderOffset(), data.getHeaderLength(), StandardCharsets.UTF_8);
+	}
+	
+	private String getPayload(MqttPersistable data) throws MqttPersistenceException
+	{
+		return new String(data.getPayloadBytes(), data.getPayloadOffset(), data.getPayloadLength(), StandardCharsets.UTF_8);
+	}
+	
+	
+	// private classes
+	
+	private static class TestPersistable implements MqttPersistable
+	{
+		private final byte[] header;
+		private final byte[] payload;
+		
+		TestPersistable(String header, String payload)
+		{
+			// offset by one, as Paho's wire messages may be
+			this.header  = ("#" + header).getBytes(StandardCharsets.UTF_8);
+			this.payload = (payload != null ? ("#" + payload).getBytes(StandardCharsets.UTF_8) : null);
+		}
+		
+		@Override
+		public byte[] getHeaderBytes()
+		{
+			return this.header;
+		}
+		
+		@Override
+		public int getHeaderLength()
+		{
+			return this.header.length - 1;
+		}
+		
+		@Override
+		public int getHeaderOffset()
+		{
+			return 1;
+		}
+		
+		@Override
+		public byte[] getPayloadBytes()
+		{
+			return this.payload;
+		}
+		
+		@Override
+		public int getPayloadLength()
+		{
+			return (this.payload != null ? this.payload.length - 1 : 0);
+		}
+		
+		@Override
+		public int getPayloadOffset()
+		{
+			return (this.payload != null ? 1 : 0);
+		}
+	}
+	
+}
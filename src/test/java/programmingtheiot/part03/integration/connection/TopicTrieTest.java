@@ -0,0 +1,158 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.part03.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.TopicTrie;
+
+/**
+ * This test case class contains very basic tests for
+ * TopicTrie. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ * 
+ */
+public class TopicTrieTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(TopicTrieTest.class.getName());
+	
+	public static final int MAX_TEST_RUNS = 1000000;
+	public static final int CDA_COUNT     = 500;
+	
+	
+	// member var's
+	
+	private TopicTrie<String> trie = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.trie = new TopicTrie<>();
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testExactAndWildcardMatches()
+	{
+		assertTrue(this.trie.addHandler("PIOT/cda01/SensorMsg", "exact"));
+		assertTrue(this.trie.addHandler("PIOT/+/SensorMsg", "single"));
+		assertTrue(this.trie.addHandler("PIOT/#", "multi"));
+		assertTrue(this.trie.addHandler("#", "all"));
+		
+		assertEquals(List.of("exact", "single", "multi", "all"), this.trie.getHandlers("PIOT/cda01/SensorMsg"));
+		assertEquals(List.of("single", "multi", "all"), this.trie.getHandlers("PIOT/cda02/SensorMsg"));
+		assertEquals(List.of("multi", "all"), this.trie.getHandlers("PIOT/cda02/SensorMsg/cbor"));
+		
+		// '#' also matches the parent level
+		assertEquals(List.of("multi", "all"), this.trie.getHandlers("PIOT"));
+		assertEquals(List.of("all"), this.trie.getHandlers("Other/cda01/SensorMsg"));
+		
+		// '+' matches exactly one (possibly empty) level
+		assertEquals(List.of("single", "multi", "all"), this.trie.getHandlers("PIOT//SensorMsg"));
+		
+		// wildcards at the first level don't match '$' topics
+		assertTrue(this.trie.getHandlers("$SYS/broker/uptime").isEmpty());
+	}
+	
+	@Test
+	public void testHandlerOrderAndDuplicates()
+	{
+		assertTrue(this.trie.addHandler("a/#", "h1"));
+		assertTrue(this.trie.addHandler("a/b", "h2"));
+		assertTrue(this.trie.addHandler("a/+", "h1"));
+		
+		assertFalse(this.trie.addHandler("a/b", "h2"));
+		
+		// in order added, each handler once
+		assertEquals(List.of("h1", "h2"), this.trie.getHandlers("a/b"));
+		assertEquals(3, this.trie.getHandlerCount());
+	}
+	
+	@Test
+	public void testCacheInvalidation()
+	{
+		this.trie.addHandler("PIOT/+/ActuatorCmd", "cmd");
+		
+		assertEquals(List.of("cmd"), this.trie.getHandlers("PIOT/cda01/ActuatorCmd"));
+		assertTrue(this.trie.getHandlers("PIOT/cda01/SensorMsg").isEmpty());
+		assertEquals(2, this.trie.getCacheSize());
+		
+		this.trie.addHandler("PIOT/cda01/#", "cda01");
+		
+		assertEquals(0, this.trie.getCacheSize());
+		assertEquals(List.of("cda01"), this.trie.getHandlers("PIOT/cda01/SensorMsg"));
+		
+		assertTrue(this.trie.removeHandler("PIOT/+/ActuatorCmd", "cmd"));
+		assertFalse(this.trie.removeHandler("PIOT/+/ActuatorCmd", "cmd"));
+		
+		assertEquals(List.of("cda01"), this.trie.getHandlers("PIOT/cda01/ActuatorCmd"));
+		assertTrue(this.trie.getHandlers("PIOT/cda02/ActuatorCmd").isEmpty());
+	}
+	
+	@Test
+	public void testInvalidFilters()
+	{
+		assertFalse(TopicTrie.isValidFilter(null));
+		assertFalse(TopicTrie.isValidFilter(""));
+		assertFalse(TopicTrie.isValidFilter("PIOT/#/SensorMsg"));
+		assertFalse(TopicTrie.isValidFilter("PIOT/cda+/SensorMsg"));
+		assertFalse(TopicTrie.isValidFilter("PIOT/cda#"));
+		
+		assertTrue(TopicTrie.isValidFilter("PIOT/+/SensorMsg"));
+		assertTrue(TopicTrie.isValidFilter("PIOT//+/#"));
+		
+		assertFalse(this.trie.addHandler("PIOT/#/SensorMsg", "invalid"));
+		assertEquals(0, this.trie.getHandlerCount());
+	}
+	
+	@Test
+	public void testLookupPerformance()
+	{
+		// one exact filter per CDA, plus a few wildcards
+		for (int i = 0; i < CDA_COUNT; i++) {
+			this.trie.addHandler("PIOT/cda" + i + "/SensorMsg", "cda" + i);
+		}
+		
+		this.trie.addHandler("PIOT/+/ActuatorResponse", "responses");
+		this.trie.addHandler("PIOT/#", "monitor");
+		
+		long startNanos = System.nanoTime();
+		
+		for (int i = 0; i < MAX_TEST_RUNS; i++) {
+			String topic = "PIOT/cda" + (i % CDA_COUNT) + ((i & 1) == 0 ? "/SensorMsg" : "/ActuatorResponse");
+			
+			assertEquals(2, this.trie.getHandlers(topic).size());
+		}
+		
+		long elapsedMillis = Math.max(1L, (System.nanoTime() - startNanos) / 1000000L);
+		
+		_Logger.info(
+			"\n\tTesting topic lookups: filters = " + this.trie.getHandlerCount() +
+			"\n\tLookup count: " + MAX_TEST_RUNS + " (" + this.trie.getCacheSize() + " distinct topics)" +
+			"\n\tElapsed time: " + elapsedMillis + " ms" +
+			"\n\tThroughput: " + (MAX_TEST_RUNS * 1000L / elapsedMillis) + " lookups/sec");
+	}
+	
+}
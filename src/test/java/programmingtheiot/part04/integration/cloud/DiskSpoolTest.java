@@ -0,0 +1,189 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part04.integration.cloud;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.gda.cloud.DiskSpool;
+
+/**
+ * This test case class contains very basic tests for
+ * DiskSpool. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class DiskSpoolTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(DiskSpoolTest.class.getName());
+	
+	private static final String TOPIC = "PIOT/ConstrainedDevice/SensorMsg";
+	
+	
+	// member var's
+	
+	private File spoolDir = null;
+	private List<String> received = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.spoolDir = Files.createTempDirectory("spool").toFile();
+		this.received = new ArrayList<>();
+	}
+	
+	@After
+	public void tearDown() throws Exception
+	{
+		for (File file : this.spoolDir.listFiles()) {
+			file.delete();
+		}
+		
+		this.spoolDir.delete();
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testDrainInOrder()
+	{
+		DiskSpool spool = new DiskSpool(this.spoolDir, 1024, 0L, 0L);
+		
+		for (int i = 0; i < 100; i++) {
+			assertTrue(spool.append(TOPIC, createPayload(i)));
+		}
+		
+		assertEquals(100, spool.getPendingCount());
+		
+		// the consumer rejects the 11th message, which stays at the head
+		assertEquals(10, spool.drain(1000, (topic, payload) -> accept(payload, 10)));
+		assertEquals(90, spool.getPendingCount());
+		
+		assertEquals(90, spool.drain(1000, (topic, payload) -> accept(payload, Integer.MAX_VALUE)));
+		assertTrue(spool.isEmpty());
+		
+		for (int i = 0; i < 100; i++) {
+			assertEquals("msg-" + i, this.received.get(i));
+		}
+		
+		_Logger.info("Spool: " + spool);
+		
+		assertEquals(100, spool.getReplayedCount());
+		assertTrue(spool.getReplayRate() > 0.0d);
+		
+		spool.close();
+	}
+	
+	@Test
+	public void testRecoverAfterReopen() throws Exception
+	{
+		DiskSpool spool = new DiskSpool(this.spoolDir, 1024, 0L, 0L);
+		
+		for (int i = 0; i < 50; i++) {
+			spool.append(TOPIC, createPayload(i));
+		}
+		
+		spool.drain(20, (topic, payload) -> accept(payload, Integer.MAX_VALUE));
+		spool.close();
+		
+		// tear the last record, as if the process died while appending
+		File[] segments = this.spoolDir.listFiles((d, name) -> name.endsWith(DiskSpool.SEGMENT_FILE_EXT));
+		File   lastSeg  = segments[0];
+		
+		for (File seg : segments) {
+			if (seg.getName().compareTo(lastSeg.getName()) > 0) {
+				lastSeg = seg;
+			}
+		}
+		
+		try (RandomAccessFile raf = new RandomAccessFile(lastSeg, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+		
+		spool = new DiskSpool(this.spoolDir, 1024, 0L, 0L);
+		
+		assertEquals(29, spool.getPendingCount());
+		
+		spool.drain(1000, (topic, payload) -> accept(payload, Integer.MAX_VALUE));
+		
+		assertEquals(49, this.received.size());
+		assertEquals("msg-20", this.received.get(20));
+		assertEquals("msg-48", this.received.get(48));
+		
+		// appending continues after the truncated record
+		assertTrue(spool.append(TOPIC, createPayload(99)));
+		assertEquals(1, spool.drain(1000, (topic, payload) -> accept(payload, Integer.MAX_VALUE)));
+		assertEquals("msg-99", this.received.get(49));
+		
+		spool.close();
+	}
+	
+	@Test
+	public void testRetentionByBytes()
+	{
+		DiskSpool spool = new DiskSpool(this.spoolDir, 1024, 4096L, 0L);
+		
+		for (int i = 0; i < 1000; i++) {
+			spool.append(TOPIC, createPayload(i));
+		}
+		
+		_Logger.info("Spool: " + spool);
+		
+		assertTrue(spool.getTotalBytes() <= 4096L);
+		assertTrue(spool.getDroppedCount() > 0);
+		assertEquals(1000, spool.getPendingCount() + spool.getDroppedCount());
+		
+		// the newest messages are kept
+		spool.drain(1000, (topic, payload) -> accept(payload, Integer.MAX_VALUE));
+		
+		assertEquals("msg-999", this.received.get(this.received.size() - 1));
+		
+		spool.close();
+	}
+	
+	
+	// private methods
+	
+	private boolean accept(byte[] payload, int maxCount)
+	{
+		if (this.received.size() >= maxCount) {
+			return false;
+		}
+		
+		this.received.add(new String(payload, StandardCharsets.UTF_8));
+		
+		return true;
+	}
+	
+	private byte[] createPayload(int index)
+	{
+		return ("msg-" + index).getBytes(StandardCharsets.UTF_8);
+	}
+	
+}
@@ -0,0 +1,176 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.part04.integration.cloud;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.common.IActuatorDataListener;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.cloud.DownlinkRouter;
+
+/**
+ * This test case class contains very basic tests for
+ * DownlinkRouter. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ * 
+ */
+public class DownlinkRouterTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(DownlinkRouterTest.class.getName());
+	
+	private static final String TOPIC_PREFIX = "edge/gateway01/";
+	
+	
+	// member var's
+	
+	private List<ActuatorData> commands = null;
+	private List<String>       messages = null;
+	
+	private DownlinkRouter router = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.commands = new ArrayList<>();
+		this.messages = new ArrayList<>();
+		
+		this.router = new DownlinkRouter(TOPIC_PREFIX);
+		this.router.setDataMessageListener(new TestListener());
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testRouteActuatorCommand()
+	{
+		ActuatorData data = new ActuatorData();
+		data.setName("HvacActuator");
+		data.setCommand(ConfigConst.ON_COMMAND);
+		data.setValue(22.5f);
+		
+		DataUtil dataUtil = DataUtil.getInstance();
+		ResourceNameEnum resource = ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE;
+		
+		assertTrue(this.router.routeMessage(
+			TOPIC_PREFIX + resource.getResourceName(), dataUtil.actuatorDataToJsonBytes(data)));
+		assertTrue(this.router.routeMessage(
+			TOPIC_PREFIX + DataFormatEnum.CBOR.getTopicName(resource), dataUtil.actuatorDataToCbor(data)));
+		
+		assertEquals(2, this.commands.size());
+		
+		for (ActuatorData cmd : this.commands) {
+			assertEquals("HvacActuator", cmd.getName());
+			assertEquals(22.5f, cmd.getValue(), 0.001f);
+		}
+		
+		assertEquals(2, this.router.getRoutedCount());
+		assertEquals(2, this.router.getTransitLatencyStats().getCount());
+		assertEquals(2, this.router.getDispatchLatencyStats().getCount());
+		
+		_Logger.info("Transit latency: " + this.router.getTransitLatencyStats());
+	}
+	
+	@Test
+	public void testRouteManagementMessage()
+	{
+		String msg = "{\"command\":\"reload\"}";
+		
+		assertTrue(this.router.routeMessage(
+			TOPIC_PREFIX + ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE.getResourceName(),
+			msg.getBytes(StandardCharsets.UTF_8)));
+		
+		assertEquals(1, this.messages.size());
+		assertEquals(msg, this.messages.get(0));
+		assertNull(this.router.getTransitLatencyStats());
+	}
+	
+	@Test
+	public void testUnknownAndInvalidMessages()
+	{
+		ResourceNameEnum resource = ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE;
+		byte[] payload = DataUtil.getInstance().actuatorDataToJsonBytes(new ActuatorData());
+		
+		// no prefix, or a different one
+		assertFalse(this.router.routeMessage(resource.getResourceName(), payload));
+		assertFalse(this.router.routeMessage("other/" + resource.getResourceName(), payload));
+		assertFalse(this.router.isRoutable(resource.getResourceName()));
+		assertTrue(this.router.isRoutable(TOPIC_PREFIX + resource.getResourceName()));
+		
+		// routable, but not decodable
+		assertTrue(this.router.routeMessage(
+			TOPIC_PREFIX + resource.getResourceName(), "not json".getBytes(StandardCharsets.UTF_8)));
+		
+		assertEquals(0, this.commands.size());
+		assertEquals(2, this.router.getUnknownCount());
+		assertEquals(1, this.router.getFailedCount());
+		assertEquals(0, this.router.getRoutedCount());
+	}
+	
+	
+	// private classes
+	
+	private class TestListener implements IDataMessageListener
+	{
+		@Override
+		public boolean handleActuatorCommandResponse(ResourceNameEnum resourceName, ActuatorData data)
+		{
+			assertEquals(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, resourceName);
+			
+			return commands.add(data);
+		}
+		
+		@Override
+		public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg)
+		{
+			return messages.add(msg);
+		}
+		
+		@Override
+		public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
+		{
+			return false;
+		}
+		
+		@Override
+		public boolean handleSystemPerformanceMessage(ResourceNameEnum resourceName, SystemPerformanceData data)
+		{
+			return false;
+		}
+		
+		@Override
+		public void setActuatorDataListener(String name, IActuatorDataListener listener)
+		{
+		}
+	}
+	
+}
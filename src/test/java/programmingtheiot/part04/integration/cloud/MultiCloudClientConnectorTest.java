@@ -0,0 +1,187 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part04.integration.cloud;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.cloud.CloudTarget;
+import programmingtheiot.gda.connection.ICloudClient;
+import programmingtheiot.gda.connection.MultiCloudClientConnector;
+
+/**
+ * This test case class contains very basic tests for
+ * MultiCloudClientConnector and CloudTarget. It should not be considered
+ * complete, but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class MultiCloudClientConnectorTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(MultiCloudClientConnectorTest.class.getName());
+	
+	
+	// test methods
+	
+	@Test
+	public void testSlowTargetDoesNotThrottleOthers() throws Exception
+	{
+		TestCloudClient fastClient = new TestCloudClient(0L, 0);
+		TestCloudClient slowClient = new TestCloudClient(200L, 0);
+		
+		CloudTarget fastTarget = new CloudTarget("Fast", fastClient, 100, 0, 10L, 100L);
+		CloudTarget slowTarget = new CloudTarget("Slow", slowClient, 10, 0, 10L, 100L);
+		
+		MultiCloudClientConnector cloudClient =
+			new MultiCloudClientConnector(Arrays.asList(fastTarget, slowTarget));
+		
+		assertTrue(cloudClient.connectClient());
+		
+		SensorData[] dataArray = new SensorData[50];
+		
+		for (int i = 0; i < dataArray.length; i++) {
+			dataArray[i] = createSensorData(i);
+		}
+		
+		long startTime = System.currentTimeMillis();
+		
+		for (SensorData data : dataArray) {
+			assertTrue(cloudClient.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, data));
+		}
+		
+		// queuing never waits for a target
+		assertTrue(System.currentTimeMillis() - startTime < 200L);
+		
+		Thread.sleep(500L);
+		
+		_Logger.info("Targets: " + cloudClient.getTargets());
+		
+		assertEquals(50, fastTarget.getSentCount());
+		assertTrue(slowTarget.getSentCount() < 10);
+		assertTrue(slowTarget.getDroppedCount() > 0);
+		assertTrue(slowTarget.getLagMillis() > 0L);
+		
+		cloudClient.disconnectClient();
+	}
+	
+	@Test
+	public void testConnectAndSendRetries() throws Exception
+	{
+		// fails the first two connects and the first two sends
+		TestCloudClient client = new TestCloudClient(0L, 2);
+		CloudTarget target = new CloudTarget("Flaky", client, 100, 3, 10L, 50L);
+		
+		target.startTarget();
+		target.sendData(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, createSensorData(1));
+		
+		Thread.sleep(500L);
+		
+		_Logger.info("Target: " + target);
+		
+		assertTrue(target.isConnected());
+		assertEquals(3, client.connectCount.get());
+		assertEquals(1, target.getSentCount());
+		assertEquals(2, target.getRetryCount());
+		assertEquals(0, target.getFailedCount());
+		
+		target.stopTarget(1000L);
+	}
+	
+	
+	// private methods
+	
+	private SensorData createSensorData(float value)
+	{
+		SensorData sd = new SensorData(ConfigConst.TEMP_SENSOR_TYPE);
+		sd.setValue(value);
+		
+		return sd;
+	}
+	
+	
+	// private classes
+	
+	private static class TestCloudClient implements ICloudClient
+	{
+		final AtomicInteger connectCount = new AtomicInteger();
+		final AtomicInteger sendCount    = new AtomicInteger();
+		
+		private final long sendDelayMillis;
+		private final int  failCount;
+		
+		TestCloudClient(long sendDelayMillis, int failCount)
+		{
+			this.sendDelayMillis = sendDelayMillis;
+			this.failCount       = failCount;
+		}
+		
+		@Override
+		public boolean connectClient()
+		{
+			return (this.connectCount.incrementAndGet() > this.failCount);
+		}
+		
+		@Override
+		public boolean disconnectClient()
+		{
+			return true;
+		}
+		
+		@Override
+		public boolean setDataMessageListener(IDataMessageListener listener)
+		{
+			return true;
+		}
+		
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
+		{
+			try {
+				Thread.sleep(this.sendDelayMillis);
+			} catch (InterruptedException e) {
+				return false;
+			}
+			
+			return (this.sendCount.incrementAndGet() > this.failCount);
+		}
+		
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
+		{
+			return true;
+		}
+		
+		@Override
+		public boolean subscribeToCloudEvents(ResourceNameEnum resource)
+		{
+			return true;
+		}
+		
+		@Override
+		public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
+		{
+			return true;
+		}
+	}
+	
+}
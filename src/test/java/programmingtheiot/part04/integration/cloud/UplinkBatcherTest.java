@@ -0,0 +1,159 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part04.integration.cloud;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.cloud.UplinkBatcher;
+
+/**
+ * This test case class contains very basic tests for
+ * UplinkBatcher. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class UplinkBatcherTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkBatcherTest.class.getName());
+	
+	private static final String TOPIC = "PIOT/ConstrainedDevice/SensorMsg";
+	
+	
+	// member var's
+	
+	private List<byte[]> payloads = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.payloads = new CopyOnWriteArrayList<>();
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testFlushOnMaxDelay() throws Exception
+	{
+		UplinkBatcher batcher = new UplinkBatcher(this::send, DataFormatEnum.JSON, 10, 10, 50L, 2);
+		batcher.startBatcher();
+		
+		for (int i = 0; i < 3; i++) {
+			assertTrue(batcher.addItem(TOPIC, createItem(i)));
+		}
+		
+		Thread.sleep(300L);
+		
+		assertEquals(1, this.payloads.size());
+		
+		List<SensorData> batch = parse(this.payloads.get(0), DataFormatEnum.JSON);
+		
+		assertEquals(3, batch.size());
+		assertEquals(2.0f, batch.get(2).getValue(), 0.001f);
+		
+		batcher.stopBatcher(1000L);
+	}
+	
+	@Test
+	public void testBatchSizeFollowsAckLatency() throws Exception
+	{
+		UplinkBatcher batcher = new UplinkBatcher((topic, payload) -> sleepAndSend(topic, payload, 50L), DataFormatEnum.CBOR, 1, 200, 100L, 2);
+		batcher.startBatcher();
+		
+		// ~1000 items per second against a 50 ms round trip
+		for (int i = 0; i < 1000; i++) {
+			batcher.addItem(TOPIC, createItem(i));
+			
+			Thread.sleep(1L);
+		}
+		
+		batcher.stopBatcher(5000L);
+		
+		_Logger.info("Batcher: " + batcher);
+		
+		int itemCount = 0;
+		
+		for (byte[] payload : this.payloads) {
+			itemCount += parse(payload, DataFormatEnum.CBOR).size();
+		}
+		
+		assertEquals(1000, itemCount);
+		assertEquals(1000, batcher.getSentItemCount());
+		assertTrue(batcher.getBatchSize() > 1);
+		assertTrue(this.payloads.size() < 200);
+	}
+	
+	@Test
+	public void testAddBeforeStart()
+	{
+		UplinkBatcher batcher = new UplinkBatcher(this::send, DataFormatEnum.JSON, 1, 10, 100L, 1);
+		
+		assertFalse(batcher.addItem(TOPIC, createItem(0)));
+	}
+	
+	
+	// private methods
+	
+	private SensorData createItem(int index)
+	{
+		SensorData data = new SensorData(ConfigConst.TEMP_SENSOR_TYPE);
+		data.setName("TempSensor");
+		data.setValue(index);
+		
+		return data;
+	}
+	
+	private List<SensorData> parse(byte[] payload, DataFormatEnum format)
+	{
+		return DataUtil.getInstance().bytesToSensorDataBatch(payload, format);
+	}
+	
+	private boolean send(String topic, byte[] payload)
+	{
+		// batches must not be mistaken for single readings
+		if (! topic.equals(TOPIC + ConfigConst.BATCH_TOPIC_SUFFIX)) {
+			return false;
+		}
+		
+		this.payloads.add(payload);
+		
+		return true;
+	}
+	
+	private boolean sleepAndSend(String topic, byte[] payload, long delayMillis)
+	{
+		try {
+			Thread.sleep(delayMillis);
+		} catch (InterruptedException e) {
+			return false;
+		}
+		
+		return send(topic, payload);
+	}
+	
+}
@@ -0,0 +1,133 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */ 
+
+package programmingtheiot.part04.integration.cloud;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.cloud.UplinkFilter;
+
+/**
+ * This test case class contains very basic tests for
+ * UplinkFilter. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ *
+ */
+public class UplinkFilterTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkFilterTest.class.getName());
+	
+	private static final String SENSOR_NAME = "TempSensor";
+	
+	
+	// member var's
+	
+	private List<SensorData> sent = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.sent = new ArrayList<>();
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testDeadband()
+	{
+		UplinkFilter filter = new UplinkFilter(0.5f, 0L, 0L, false);
+		
+		float[] values = { 20.0f, 20.2f, 20.4f, 20.6f, 20.3f, 19.9f };
+		
+		for (int i = 0; i < values.length; i++) {
+			filter.filterSensorData(createSensorData(values[i], 1000L * (i + 1)), this.sent::add);
+		}
+		
+		// 20.0 (first), 20.6 (> 0.5 from 20.0), 19.9 (> 0.5 from 20.6)
+		assertEquals(3, this.sent.size());
+		assertEquals(20.6f, this.sent.get(1).getValue(), 0.001f);
+		assertEquals(19.9f, this.sent.get(2).getValue(), 0.001f);
+		assertEquals(6, filter.getReceivedCount());
+		assertEquals(3, filter.getSuppressedCount());
+	}
+	
+	@Test
+	public void testHeartbeat()
+	{
+		UplinkFilter filter = new UplinkFilter(1.0f, 5000L, 0L, false);
+		
+		for (int i = 0; i <= 10; i++) {
+			filter.filterSensorData(createSensorData(20.0f, 1000L * (i + 1)), this.sent::add);
+		}
+		
+		// steady stream: sent at 1000, 6000 and 11000 ms
+		assertEquals(3, this.sent.size());
+		assertEquals(6000L, this.sent.get(1).getTimeStampMillis());
+		assertEquals(11000L, this.sent.get(2).getTimeStampMillis());
+	}
+	
+	@Test
+	public void testBucketAggregates()
+	{
+		UplinkFilter filter = new UplinkFilter(0.0f, 0L, 10000L, true);
+		
+		filter.filterSensorData(createSensorData(10.0f, 10000L), this.sent::add);
+		filter.filterSensorData(createSensorData(20.0f, 13000L), this.sent::add);
+		filter.filterSensorData(createSensorData(30.0f, 19999L), this.sent::add);
+		
+		assertTrue(this.sent.isEmpty());
+		
+		// first reading of the next bucket completes the previous one
+		assertEquals(3, filter.filterSensorData(createSensorData(50.0f, 20000L), this.sent::add));
+		
+		_Logger.info("Bucket aggregates: " + this.sent);
+		
+		assertEquals(SENSOR_NAME, this.sent.get(0).getName());
+		assertEquals(20.0f, this.sent.get(0).getValue(), 0.001f);
+		assertEquals(SENSOR_NAME + UplinkFilter.MIN_NAME_SUFFIX, this.sent.get(1).getName());
+		assertEquals(10.0f, this.sent.get(1).getValue(), 0.001f);
+		assertEquals(SENSOR_NAME + UplinkFilter.MAX_NAME_SUFFIX, this.sent.get(2).getName());
+		assertEquals(30.0f, this.sent.get(2).getValue(), 0.001f);
+		
+		this.sent.clear();
+		
+		assertEquals(3, filter.flushBuckets(this.sent::add));
+		assertEquals(50.0f, this.sent.get(0).getValue(), 0.001f);
+	}
+	
+	
+	// private methods
+	
+	private SensorData createSensorData(float value, long timeStampMillis)
+	{
+		// the time stamp can only be set by decoding
+		return DataUtil.getInstance().jsonToSensorData(
+			"{\"typeID\":" + ConfigConst.TEMP_SENSOR_TYPE + ",\"name\":\"" + SENSOR_NAME + "\",\"value\":" + value +
+			",\"locationID\":\"constraineddevice001\",\"timeStampMillis\":" + timeStampMillis + "}");
+	}
+	
+}
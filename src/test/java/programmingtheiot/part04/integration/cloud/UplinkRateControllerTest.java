@@ -0,0 +1,206 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * Copyright (c) 2020 by Andrew D. King
+ */
+
+package programmingtheiot.part04.integration.cloud;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import java.util.zip.Inflater;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.common.DataFormatEnum;
+import programmingtheiot.gda.cloud.UplinkBatcher;
+import programmingtheiot.gda.cloud.UplinkFilter;
+import programmingtheiot.gda.cloud.UplinkRateController;
+
+/**
+ * This test case class contains very basic tests for
+ * UplinkRateController. It should not be considered complete,
+ * but serve as a starting point for the student implementing
+ * additional functionality within their Programming the IoT
+ * environment.
+ * 
+ */
+public class UplinkRateControllerTest
+{
+	// static
+	
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkRateControllerTest.class.getName());
+	
+	private static final long TARGET_LATENCY_MILLIS = 100L;
+	private static final long SLOW_NANOS = 500L * 1000000L;
+	private static final long FAST_NANOS = 10L * 1000000L;
+	
+	
+	// member var's
+	
+	private UplinkFilter  filter  = null;
+	private UplinkBatcher batcher = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.filter  = new UplinkFilter(0.5f, 0L, 1000L, false);
+		this.batcher = new UplinkBatcher((topic, payload) -> true, DataFormatEnum.JSON, 1, 101, 1000L, 4);
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testCongestionAndRecovery()
+	{
+		UplinkRateController controller =
+			new UplinkRateController(this.filter, this.batcher, TARGET_LATENCY_MILLIS, 0.05f, 9000L, 8, 0L);
+		
+		for (int i = 1; i <= UplinkRateController.MAX_LEVEL + 1; i++) {
+			controller.recordPublish(SLOW_NANOS, 100, true);
+			
+			assertEquals(Math.min(i, UplinkRateController.MAX_LEVEL), controller.updateLevel());
+		}
+		
+		_Logger.info("Congested: " + controller);
+		
+		assertEquals(9000L, this.filter.getBucketMillis());
+		assertEquals(2.5f, this.filter.getDeadband(), 0.001f);
+		assertEquals(101, this.batcher.getMinBatchItems());
+		assertEquals(8, controller.getCompressionLevel());
+		
+		// the level only goes down after several healthy intervals
+		for (int i = 0; i < UplinkRateController.RECOVERY_INTERVALS * UplinkRateController.MAX_LEVEL; i++) {
+			controller.recordPublish(FAST_NANOS, 100, true);
+			controller.updateLevel();
+		}
+		
+		assertEquals(0, controller.getLevel());
+		assertEquals(1000L, this.filter.getBucketMillis());
+		assertEquals(0.5f, this.filter.getDeadband(), 0.001f);
+		assertEquals(1, this.batcher.getMinBatchItems());
+		assertEquals(0, controller.getCompressionLevel());
+	}
+	
+	@Test
+	public void testProportionalSteps()
+	{
+		// bucketing disabled at level 0
+		UplinkFilter disabledFilter = new UplinkFilter(0.0f, 0L, 0L, false);
+		
+		UplinkRateController controller =
+			new UplinkRateController(disabledFilter, this.batcher, TARGET_LATENCY_MILLIS, 0.05f, 16000L, 8, 0L);
+		
+		long[] bucketMillis = new long[UplinkRateController.MAX_LEVEL + 1];
+		int[]  batchItems   = new int[UplinkRateController.MAX_LEVEL + 1];
+		
+		for (int i = 1; i <= UplinkRateController.MAX_LEVEL; i++) {
+			controller.recordPublish(SLOW_NANOS, 100, true);
+			controller.updateLevel();
+			
+			bucketMillis[i] = disabledFilter.getBucketMillis();
+			batchItems[i]   = this.batcher.getMinBatchItems();
+		}
+		
+		_Logger.info("Bucket millis per level: " + Arrays.toString(bucketMillis));
+		
+		// doubles per level from max / 2^MAX_LEVEL, rather than jumping to max / MAX_LEVEL
+		assertEquals(2000L, bucketMillis[1]);
+		assertEquals(4000L, bucketMillis[2]);
+		assertEquals(16000L, bucketMillis[UplinkRateController.MAX_LEVEL]);
+		
+		// 1 to 101 items grows by the same factor each level
+		for (int i = 2; i < UplinkRateController.MAX_LEVEL; i++) {
+			assertTrue(batchItems[i] > batchItems[i - 1]);
+		}
+		
+		assertTrue(batchItems[1] < 101 / UplinkRateController.MAX_LEVEL);
+		assertEquals(101, batchItems[UplinkRateController.MAX_LEVEL]);
+	}
+	
+	@Test
+	public void testFailureRate()
+	{
+		UplinkRateController controller =
+			new UplinkRateController(this.filter, null, TARGET_LATENCY_MILLIS, 0.05f, 9000L, 8, 0L);
+		
+		// no publishes: no change
+		assertEquals(0, controller.updateLevel());
+		
+		for (int i = 0; i < 9; i++) {
+			controller.recordPublish(FAST_NANOS, 100, true);
+		}
+		
+		controller.recordPublish(0L, 0, false);
+		
+		assertEquals(1, controller.updateLevel());
+		assertEquals(0.1d, controller.getFailureRate(), 0.001d);
+	}
+	
+	@Test
+	public void testCompression() throws Exception
+	{
+		UplinkRateController controller =
+			new UplinkRateController(this.filter, null, TARGET_LATENCY_MILLIS, 0.05f, 9000L, 9, 0L);
+		
+		StringBuilder sb = new StringBuilder("[");
+		
+		for (int i = 0; i < 50; i++) {
+			sb.append("{\"name\":\"TempSensor\",\"value\":").append(20 + i % 3).append("},");
+		}
+		
+		byte[] payload = sb.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+		
+		// level 0: no compression
+		assertNull(controller.compressPayload(payload));
+		
+		controller.recordPublish(SLOW_NANOS, payload.length, true);
+		controller.updateLevel();
+		
+		byte[] compressed = controller.compressPayload(payload);
+		
+		assertNotNull(compressed);
+		assertTrue(compressed.length < payload.length);
+		
+		Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+		
+		byte[] decompressed = new byte[payload.length];
+		assertEquals(payload.length, inflater.inflate(decompressed));
+		assertArrayEquals(payload, decompressed);
+		
+		inflater.end();
+		
+		// small payloads aren't compressed
+		assertNull(controller.compressPayload("{}".getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	@Test
+	public void testBudget()
+	{
+		// 360000 bytes per hour: up to 6000 bytes (one minute's worth) at once
+		UplinkRateController controller =
+			new UplinkRateController(this.filter, null, TARGET_LATENCY_MILLIS, 0.05f, 9000L, 0, 360000L);
+		
+		assertTrue(controller.acquireBudget(5000));
+		assertTrue(controller.acquireBudget(2000));
+		assertFalse(controller.acquireBudget(100));
+		assertEquals(1, controller.getBudgetDeniedCount());
+		assertEquals(0L, controller.getBudgetRemainingBytes());
+		
+		// over budget counts as congestion, even without publishes
+		assertEquals(1, controller.updateLevel());
+	}
+	
+}